@@ -17,6 +17,8 @@ package io.cryostat;
 
 public class ConfigProperties {
     public static final String AWS_BUCKET_NAME_ARCHIVES = "storage.buckets.archives.name";
+    public static final String AWS_BUCKET_NAME_ARCHIVE_CHUNKS =
+            "storage.buckets.archive-chunks.name";
     public static final String AWS_BUCKET_NAME_EVENT_TEMPLATES =
             "storage.buckets.event-templates.name";
     public static final String AWS_OBJECT_EXPIRATION_LABELS =
@@ -30,6 +32,33 @@ public class ConfigProperties {
     public static final String CONNECTIONS_TTL = "cryostat.connections.ttl";
     public static final String CONNECTIONS_FAILED_BACKOFF = "cryostat.connections.failed-backoff";
     public static final String CONNECTIONS_FAILED_TIMEOUT = "cryostat.connections.failed-timeout";
+    public static final String CONNECTIONS_DESCRIPTOR_CACHE_TTL =
+            "cryostat.connections.descriptor-cache-ttl";
+
+    public static final String HTTP_LIMITS_MAX_BODY_SIZE = "cryostat.http.limits.max-body-size";
+
+    public static final String RECORDINGS_FAN_OUT_BUFFER_CHUNKS =
+            "cryostat.recordings.fan-out.buffer-chunks";
+    public static final String RECORDINGS_FAN_OUT_MAX_CONCURRENT =
+            "cryostat.recordings.fan-out.max-concurrent";
+    public static final String RECORDINGS_TIMERS_WORKERS = "cryostat.recordings.timers.workers";
+    public static final String RECORDINGS_SNAPSHOT_COALESCE_WINDOW =
+            "cryostat.recordings.snapshot.coalesce-window";
+    public static final String RECORDINGS_BULK_CONCURRENCY = "cryostat.recordings.bulk.concurrency";
+    public static final String RECORDINGS_BULK_TARGET_TIMEOUT =
+            "cryostat.recordings.bulk.target-timeout";
+    public static final String RECORDINGS_RECONCILE_ENABLED =
+            "cryostat.recordings.reconcile.enabled";
+    public static final String RECORDINGS_RECONCILE_MIN_INTERVAL =
+            "cryostat.recordings.reconcile.min-interval";
+    public static final String RECORDINGS_RECONCILE_MAX_INTERVAL =
+            "cryostat.recordings.reconcile.max-interval";
+    public static final String RECORDINGS_RECONCILE_PARALLELISM =
+            "cryostat.recordings.reconcile.parallelism";
+    public static final String ARCHIVE_JOBS_WORKERS = "cryostat.archive-jobs.workers";
+    public static final String ARCHIVE_JOBS_QUEUE_SIZE = "cryostat.archive-jobs.queue-size";
+    public static final String ARCHIVE_JOBS_PROGRESS_INTERVAL =
+            "cryostat.archive-jobs.progress-interval";
 
     public static final String REPORTS_SIDECAR_URL = "cryostat.services.reports.url";
     public static final String MEMORY_CACHE_ENABLED =
@@ -46,9 +75,29 @@ public class ConfigProperties {
     public static final String GRAFANA_DATASOURCE_URL = "grafana-datasource.url";
 
     public static final String STORAGE_EXT_URL = "storage-ext.url";
+    public static final String STORAGE_BACKEND = "storage.backend";
+    public static final String STORAGE_FILESYSTEM_PATH = "storage.filesystem.path";
     public static final String STORAGE_PRESIGNED_DOWNLOADS_ENABLED =
             "storage.presigned-downloads.enabled";
     public static final String STORAGE_TRANSIENT_ARCHIVES_ENABLED =
             "storage.transient-archives.enabled";
     public static final String STORAGE_TRANSIENT_ARCHIVES_TTL = "storage.transient-archives.ttl";
+    public static final String STORAGE_ARCHIVES_CODEC = "storage.archives.codec";
+    public static final String STORAGE_ARCHIVES_DEDUP_ENABLED = "storage.archives.dedup.enabled";
+    public static final String STORAGE_ARCHIVES_DEDUP_GC_GRACE = "storage.archives.dedup.gc-grace";
+    public static final String STORAGE_ARCHIVES_DISK_CACHE_ENABLED =
+            "storage.archives.disk-cache.enabled";
+    public static final String STORAGE_ARCHIVES_DISK_CACHE_PATH =
+            "storage.archives.disk-cache.path";
+    public static final String STORAGE_ARCHIVES_DISK_CACHE_MAX_BYTES =
+            "storage.archives.disk-cache.max-bytes";
+    public static final String STORAGE_ARCHIVES_DISK_CACHE_VALIDATION_TTL =
+            "storage.archives.disk-cache.validation-ttl";
+    public static final String STORAGE_UPLOADS_CONCURRENCY = "storage.uploads.concurrency";
+    public static final String STORAGE_UPLOADS_PART_RETRIES = "storage.uploads.part-retries";
+    public static final String STORAGE_UPLOADS_RESUME_ATTEMPTS = "storage.uploads.resume-attempts";
+    public static final String STORAGE_UPLOADS_STREAMING_WORKERS =
+            "storage.uploads.streaming.workers";
+    public static final String STORAGE_UPLOADS_CHECKPOINT_TTL = "storage.uploads.checkpoint-ttl";
+    public static final String STORAGE_BUFFERS_MAX_BYTES = "storage.buffers.max-bytes";
 }
@@ -18,6 +18,7 @@ package io.cryostat;
 import java.util.NoSuchElementException;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 
 import io.cryostat.util.EntityExistsException;
 
@@ -86,6 +87,12 @@ public class ExceptionMappers {
         return RestResponse.status(HttpResponseStatus.BAD_REQUEST.code());
     }
 
+    @ServerExceptionMapper
+    public RestResponse<Void> mapRejectedExecutionException(RejectedExecutionException ex) {
+        logger.warn(ex);
+        return RestResponse.status(HttpResponseStatus.SERVICE_UNAVAILABLE.code());
+    }
+
     @ServerExceptionMapper
     public RestResponse<Void> mapMutinyTimeoutException(TimeoutException ex) {
         logger.warn(ex);
@@ -16,6 +16,7 @@
 package io.cryostat;
 
 import java.net.URI;
+import java.nio.file.Path;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
@@ -24,7 +25,11 @@ import java.util.concurrent.ScheduledExecutorService;
 import io.cryostat.core.reports.InterruptibleReportGenerator;
 import io.cryostat.core.sys.Clock;
 import io.cryostat.core.sys.FileSystem;
+import io.cryostat.storage.FileSystemStorage;
+import io.cryostat.storage.StorageBackend;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.quarkus.amazon.s3.runtime.S3ClientProducer;
 import io.quarkus.arc.DefaultBean;
 import io.vertx.mutiny.core.Vertx;
 import io.vertx.mutiny.ext.web.client.WebClient;
@@ -38,6 +43,7 @@ import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.projectnessie.cel.tools.ScriptHost;
 import org.projectnessie.cel.types.jackson.JacksonRegistry;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.S3Configuration;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import software.amazon.awssdk.utils.StringUtils;
@@ -105,6 +111,24 @@ public class Producers {
         return WebClient.create(vertx);
     }
 
+    @Produces
+    @ApplicationScoped
+    // replaces the quarkus-amazon-s3 default bean. The extension's producer is still used to build
+    // the SDK client from the quarkus.s3 configuration when the S3 backend is selected
+    public static S3Client produceS3Client(
+            @ConfigProperty(name = ConfigProperties.STORAGE_BACKEND) StorageBackend backend,
+            @ConfigProperty(name = ConfigProperties.STORAGE_FILESYSTEM_PATH) Path path,
+            S3ClientProducer sdkClients,
+            ObjectMapper mapper) {
+        switch (backend) {
+            case FILESYSTEM:
+                return new FileSystemStorage(path, mapper);
+            case S3:
+            default:
+                return sdkClients.client();
+        }
+    }
+
     @Produces
     @ApplicationScoped
     public static S3Presigner produceS3Presigner(
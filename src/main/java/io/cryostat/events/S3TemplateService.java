@@ -143,7 +143,7 @@ public class S3TemplateService implements MutableTemplateService {
 
     private List<S3Object> getObjects() {
         var builder = ListObjectsV2Request.builder().bucket(bucket);
-        return storage.listObjectsV2(builder.build()).contents();
+        return storage.listObjectsV2Paginator(builder.build()).contents().stream().toList();
     }
 
     private Template convertObject(S3Object object) throws InvalidEventTemplateException {
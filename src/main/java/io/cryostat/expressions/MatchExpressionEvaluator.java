@@ -93,6 +93,15 @@ public class MatchExpressionEvaluator {
         }
     }
 
+    /**
+     * Check that the given script compiles as a match expression, without persisting it.
+     *
+     * @throws ScriptCreateException if the script is invalid
+     */
+    public void validate(String matchExpression) throws ScriptCreateException {
+        createScript(matchExpression);
+    }
+
     @CacheResult(cacheName = CACHE_NAME)
     boolean load(String matchExpression, Target target) throws ScriptException {
         Script script = createScript(matchExpression);
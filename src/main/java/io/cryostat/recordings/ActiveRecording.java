@@ -109,23 +109,7 @@ public class ActiveRecording extends PanacheEntity {
         recording.target = target;
         recording.remoteId = descriptor.getId();
         recording.name = descriptor.getName();
-        switch (descriptor.getState()) {
-            case CREATED:
-                recording.state = RecordingState.DELAYED;
-                break;
-            case RUNNING:
-                recording.state = RecordingState.RUNNING;
-                break;
-            case STOPPING:
-                recording.state = RecordingState.RUNNING;
-                break;
-            case STOPPED:
-                recording.state = RecordingState.STOPPED;
-                break;
-            default:
-                recording.state = RecordingState.NEW;
-                break;
-        }
+        recording.state = toState(descriptor.getState());
         recording.duration = descriptor.getDuration().in(UnitLookup.MILLISECOND).longValue();
         recording.startTime = descriptor.getStartTime().in(UnitLookup.EPOCH_MS).longValue();
         recording.continuous = descriptor.isContinuous();
@@ -137,6 +121,21 @@ public class ActiveRecording extends PanacheEntity {
         return recording;
     }
 
+    public static RecordingState toState(IRecordingDescriptor.RecordingState state) {
+        switch (state) {
+            case CREATED:
+                return RecordingState.DELAYED;
+            case RUNNING:
+                return RecordingState.RUNNING;
+            case STOPPING:
+                return RecordingState.RUNNING;
+            case STOPPED:
+                return RecordingState.STOPPED;
+            default:
+                return RecordingState.NEW;
+        }
+    }
+
     public static ActiveRecording getByName(String name) {
         return find("name", name).singleResult();
     }
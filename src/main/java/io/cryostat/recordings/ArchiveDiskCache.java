@@ -0,0 +1,516 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import io.cryostat.ConfigProperties;
+import io.cryostat.core.sys.Clock;
+import io.cryostat.recordings.Recordings.ArchivedRecording;
+import io.cryostat.recordings.Recordings.ArchivedRecordingBatch;
+
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.vertx.ConsumeEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+import jdk.jfr.Period;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import org.jboss.resteasy.reactive.PathPart;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+/**
+ * Size-bounded, least-recently-used local disk cache of archived recording objects. Each cached
+ * copy is identified by its storage key and the ETag of the object it was copied from. A cached
+ * copy is served without contacting storage for {@link
+ * ConfigProperties#STORAGE_ARCHIVES_DISK_CACHE_VALIDATION_TTL} after it was last validated, and
+ * after that a conditional GetObject request revalidates it, so a hit costs at most one small round
+ * trip to storage rather than a full transfer. Copies are dropped as soon as Cryostat writes or
+ * deletes the archive, so the TTL only bounds staleness against changes made by other writers.
+ * Misses are copied into the cache as the caller consumes the object. The cache is emptied at
+ * startup.
+ */
+@ApplicationScoped
+public class ArchiveDiskCache {
+
+    private static final int HTTP_NOT_MODIFIED = 304;
+
+    @ConfigProperty(name = ConfigProperties.STORAGE_ARCHIVES_DISK_CACHE_ENABLED)
+    boolean enabled;
+
+    @ConfigProperty(name = ConfigProperties.STORAGE_ARCHIVES_DISK_CACHE_PATH)
+    Path directory;
+
+    @ConfigProperty(name = ConfigProperties.STORAGE_ARCHIVES_DISK_CACHE_MAX_BYTES)
+    long maxBytes;
+
+    @ConfigProperty(name = ConfigProperties.STORAGE_ARCHIVES_DISK_CACHE_VALIDATION_TTL)
+    Duration validationTtl;
+
+    @Inject S3Client storage;
+    @Inject Clock clock;
+    @Inject RecordingHelper recordingHelper;
+    @Inject Logger logger;
+
+    // access-ordered, so iteration begins with the least recently used entry
+    private final Map<String, CachedArchive> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long sizeBytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final Runnable statisticsHook = this::emitStatistics;
+
+    void onStart(@Observes StartupEvent evt) throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        try (Stream<Path> stale = Files.list(directory)) {
+            for (var p : stale.toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+        logger.infov("Archive disk cache at {0} with capacity {1} bytes", directory, maxBytes);
+        FlightRecorder.addPeriodicEvent(ArchiveDiskCacheStatistics.class, statisticsHook);
+    }
+
+    void onStop(@Observes ShutdownEvent evt) {
+        FlightRecorder.removePeriodicEvent(statisticsHook);
+    }
+
+    /**
+     * Open the stored object, serving it from the local cache if the cached copy is still current.
+     * The returned stream yields the object exactly as stored, so it must still be decoded with the
+     * archive's {@link StorageCodec}.
+     */
+    public InputStream open(String bucket, String key) throws IOException {
+        return openObject(bucket, key).stream();
+    }
+
+    /** Like {@link #open(String, String)}, along with the stored object's attributes. */
+    public StoredObject openObject(String bucket, String key) {
+        GetObjectRequest.Builder req = GetObjectRequest.builder().bucket(bucket).key(key);
+        if (!enabled) {
+            var object = storage.getObject(req.build());
+            return new StoredObject(object, info(object.response()));
+        }
+        CachedArchive cached = get(key);
+        if (cached != null) {
+            if (isFresh(cached)) {
+                var hit = readCached(key, cached, null);
+                return hit != null ? hit : openObject(bucket, key);
+            }
+            req.ifNoneMatch(cached.eTag());
+        }
+        ResponseInputStream<GetObjectResponse> object;
+        try {
+            object = storage.getObject(req.build());
+        } catch (S3Exception e) {
+            if (cached == null || e.statusCode() != HTTP_NOT_MODIFIED) {
+                throw e;
+            }
+            var hit = readCached(key, revalidate(key, cached), null);
+            // evicted since the lookup above, so retry without the cached copy
+            return hit != null ? hit : openObject(bucket, key);
+        }
+        misses.incrementAndGet();
+        if (cached != null) {
+            remove(key, cached);
+        }
+        GetObjectResponse response = object.response();
+        String eTag = response.eTag();
+        Long length = response.contentLength();
+        if (eTag == null || length == null || length > maxBytes) {
+            return new StoredObject(object, info(response));
+        }
+        try {
+            Path tmp = Files.createTempFile(directory, "fill-", ".tmp");
+            return new StoredObject(
+                    new PopulatingInputStream(object, key, eTag, response.lastModified(), tmp),
+                    info(response));
+        } catch (IOException ioe) {
+            logger.warn(ioe);
+            return new StoredObject(object, info(response));
+        }
+    }
+
+    /**
+     * The stored object's attributes, taken from the cached copy if it was validated recently
+     * enough.
+     */
+    public ObjectInfo head(String bucket, String key) {
+        CachedArchive cached = enabled ? get(key) : null;
+        if (cached != null && isFresh(cached)) {
+            return cached.info();
+        }
+        var head = storage.headObject(HeadObjectRequest.builder().bucket(bucket).key(key).build());
+        if (cached != null && cached.eTag().equals(head.eTag())) {
+            revalidate(key, cached);
+        }
+        return new ObjectInfo(head.eTag(), head.lastModified(), head.contentLength());
+    }
+
+    /**
+     * Open a byte range of the stored object, which must still have the given ETag. The range is
+     * read from the cached copy if there is a current one. Otherwise it is requested from storage
+     * and not cached, since only whole objects are cached.
+     */
+    public StoredObject openRange(String bucket, String key, ByteRange range, String eTag) {
+        CachedArchive cached = enabled ? get(key) : null;
+        if (cached != null && cached.eTag().equals(eTag) && isFresh(cached)) {
+            var hit = readCached(key, cached, range);
+            if (hit != null) {
+                return hit;
+            }
+        }
+        if (enabled) {
+            misses.incrementAndGet();
+        }
+        var object =
+                storage.getObject(
+                        GetObjectRequest.builder()
+                                .bucket(bucket)
+                                .key(key)
+                                .range(range.toRangeHeader())
+                                .ifMatch(eTag)
+                                .build());
+        return new StoredObject(object, info(object.response()));
+    }
+
+    public void invalidate(String key) {
+        CachedArchive removed;
+        synchronized (entries) {
+            removed = entries.remove(key);
+            if (removed != null) {
+                sizeBytes -= removed.size();
+            }
+        }
+        if (removed != null) {
+            deleteQuietly(removed.path());
+        }
+    }
+
+    // an archive may be re-written under the same key, ex. by a merge, so any copy of a previous
+    // version of it is dropped straight away rather than waiting for revalidation
+    @ConsumeEvent(value = Recordings.ARCHIVED_RECORDING_CREATED, blocking = true)
+    void onArchivedRecordingCreated(ArchivedRecording recording) {
+        onArchivedRecordingDeleted(recording);
+    }
+
+    @ConsumeEvent(value = Recordings.ARCHIVED_RECORDING_DELETED, blocking = true)
+    void onArchivedRecordingDeleted(ArchivedRecording recording) {
+        if (!enabled) {
+            return;
+        }
+        String jvmId = recording.metadata().labels().get("jvmId");
+        if (jvmId != null) {
+            invalidate(recordingHelper.archivedRecordingKey(jvmId, recording.name()));
+        }
+    }
+
+    @ConsumeEvent(value = Recordings.ARCHIVED_RECORDING_BATCH_DELETED, blocking = true)
+    void onArchivedRecordingBatchDeleted(ArchivedRecordingBatch batch) {
+        batch.recordings().forEach(this::onArchivedRecordingDeleted);
+    }
+
+    private CachedArchive get(String key) {
+        synchronized (entries) {
+            return entries.get(key);
+        }
+    }
+
+    private boolean isFresh(CachedArchive cached) {
+        return clock.now().isBefore(cached.validated().plus(validationTtl));
+    }
+
+    private CachedArchive revalidate(String key, CachedArchive cached) {
+        var validated = cached.withValidated(clock.now());
+        synchronized (entries) {
+            entries.replace(key, cached, validated);
+        }
+        return validated;
+    }
+
+    /**
+     * The cached copy, or the given range of it. Returns null if the copy has been evicted in the
+     * meantime.
+     */
+    private StoredObject readCached(String key, CachedArchive cached, ByteRange range) {
+        try {
+            if (Files.size(cached.path()) != cached.size()) {
+                throw new IOException("Cached copy has been replaced");
+            }
+            var part =
+                    range == null
+                            ? new PathPart(cached.path(), 0, cached.size())
+                            : new PathPart(cached.path(), range.start(), range.length());
+            hits.incrementAndGet();
+            return new StoredObject(part, cached.info());
+        } catch (IOException ioe) {
+            logger.debugv(ioe, "Cached copy of {0} unavailable", key);
+            remove(key, cached);
+            return null;
+        }
+    }
+
+    private static ObjectInfo info(GetObjectResponse response) {
+        return new ObjectInfo(
+                response.eTag(),
+                response.lastModified(),
+                response.contentLength() == null ? -1 : response.contentLength());
+    }
+
+    private void remove(String key, CachedArchive expected) {
+        boolean removed;
+        synchronized (entries) {
+            removed = entries.remove(key, expected);
+            if (removed) {
+                sizeBytes -= expected.size();
+            }
+        }
+        if (removed) {
+            deleteQuietly(expected.path());
+        }
+    }
+
+    private void commit(String key, String eTag, Instant lastModified, Path tmp, long size)
+            throws IOException {
+        Path path = directory.resolve(DigestUtils.sha256Hex(key + '\0' + eTag));
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        var cached = new CachedArchive(eTag, path, size, lastModified, clock.now());
+        synchronized (entries) {
+            var previous = entries.put(key, cached);
+            sizeBytes += size;
+            if (previous != null) {
+                sizeBytes -= previous.size();
+                if (!previous.path().equals(path)) {
+                    deleteQuietly(previous.path());
+                }
+            }
+            Iterator<CachedArchive> it = entries.values().iterator();
+            while (sizeBytes > maxBytes && it.hasNext()) {
+                var eldest = it.next();
+                it.remove();
+                sizeBytes -= eldest.size();
+                deleteQuietly(eldest.path());
+            }
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ioe) {
+            logger.warn(ioe);
+        }
+    }
+
+    private void emitStatistics() {
+        var evt = new ArchiveDiskCacheStatistics();
+        evt.hits = hits.get();
+        evt.misses = misses.get();
+        long total = evt.hits + evt.misses;
+        evt.hitRate = total == 0 ? 0 : (double) evt.hits / total;
+        synchronized (entries) {
+            evt.entries = entries.size();
+            evt.sizeBytes = sizeBytes;
+        }
+        evt.capacityBytes = maxBytes;
+        evt.commit();
+    }
+
+    /** Attributes of a stored archive object. The content length is -1 if it is unknown. */
+    public record ObjectInfo(String eTag, Instant lastModified, long contentLength) {}
+
+    /**
+     * A stored object, read either from storage or from a region of a cached copy on local disk. A
+     * cached region can be sent as a {@link PathPart} response entity, which the server transfers
+     * straight from the file (ex. with sendfile) rather than copying it through a stream. A copy
+     * evicted before it is read cannot be read any longer, so the read fails as a storage read
+     * would.
+     */
+    public record StoredObject(InputStream remote, PathPart cached, ObjectInfo info) {
+        StoredObject(InputStream remote, ObjectInfo info) {
+            this(remote, null, info);
+        }
+
+        StoredObject(PathPart cached, ObjectInfo info) {
+            this(null, cached, info);
+        }
+
+        /** Open the object's content. The stream must be closed by the caller. */
+        public InputStream stream() throws IOException {
+            if (cached == null) {
+                return remote;
+            }
+            var ch = FileChannel.open(cached.file, StandardOpenOption.READ);
+            ch.position(cached.offset);
+            return new BoundedInputStream(Channels.newInputStream(ch), cached.count);
+        }
+
+        /** The object's content as a response entity. */
+        public Object entity() {
+            return cached != null ? cached : remote;
+        }
+    }
+
+    private record CachedArchive(
+            String eTag, Path path, long size, Instant lastModified, Instant validated) {
+        CachedArchive withValidated(Instant validated) {
+            return new CachedArchive(eTag, path, size, lastModified, validated);
+        }
+
+        ObjectInfo info() {
+            return new ObjectInfo(eTag, lastModified, size);
+        }
+    }
+
+    /**
+     * Copies the object into a temporary file as it is read, and adds the file to the cache once
+     * the object has been read to completion. Partially read objects are discarded.
+     */
+    private class PopulatingInputStream extends FilterInputStream {
+        private final String key;
+        private final String eTag;
+        private final Instant lastModified;
+        private final Path tmp;
+        private OutputStream copy;
+        private long written;
+        private boolean complete;
+
+        PopulatingInputStream(
+                InputStream in, String key, String eTag, Instant lastModified, Path tmp)
+                throws IOException {
+            super(in);
+            this.key = key;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.tmp = tmp;
+            this.copy = Files.newOutputStream(tmp);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0) {
+                complete = true;
+            } else {
+                tee(new byte[] {(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n < 0) {
+                complete = true;
+            } else {
+                tee(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes are not copied, so the cached copy would be incomplete
+            abandon();
+            return super.skip(n);
+        }
+
+        private void tee(byte[] b, int off, int len) {
+            if (copy == null) {
+                return;
+            }
+            try {
+                copy.write(b, off, len);
+                written += len;
+            } catch (IOException ioe) {
+                logger.warn(ioe);
+                abandon();
+            }
+        }
+
+        private void abandon() {
+            IOUtils.closeQuietly(copy);
+            copy = null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (copy != null && complete) {
+                    try {
+                        copy.close();
+                        copy = null;
+                        commit(key, eTag, lastModified, tmp, written);
+                    } catch (IOException ioe) {
+                        logger.warn(ioe);
+                    }
+                }
+                abandon();
+                deleteQuietly(tmp);
+            }
+        }
+    }
+
+    @Name("io.cryostat.recordings.ArchiveDiskCache.ArchiveDiskCacheStatistics")
+    @Label("Archive Disk Cache Statistics")
+    @Category("Cryostat")
+    @Period("10 s")
+    public static class ArchiveDiskCacheStatistics extends Event {
+        long hits;
+        long misses;
+        @Percentage double hitRate;
+        int entries;
+        @DataAmount long sizeBytes;
+        @DataAmount long capacityBytes;
+    }
+}
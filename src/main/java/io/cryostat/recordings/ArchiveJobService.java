@@ -0,0 +1,263 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.cryostat.ConfigProperties;
+import io.cryostat.core.sys.Clock;
+import io.cryostat.ws.MessagingServer;
+import io.cryostat.ws.Notification;
+
+import io.vertx.mutiny.core.eventbus.EventBus;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import jakarta.ws.rs.NotFoundException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+/**
+ * Runs archive (save) operations for active recordings as background jobs on a bounded worker pool,
+ * so that HTTP clients do not wait for the whole transfer from the target to storage. Job progress
+ * is published as periodic {@link MessagingServer} notifications, and job state can be queried
+ * until some time after the job has finished.
+ */
+@ApplicationScoped
+public class ArchiveJobService {
+
+    public static final String ARCHIVE_JOB_PROGRESS = "ArchiveJobProgress";
+    public static final String ARCHIVE_JOB_COMPLETED = "ArchiveJobCompleted";
+    public static final String ARCHIVE_JOB_FAILED = "ArchiveJobFailed";
+
+    // how long finished jobs remain queryable
+    static final Duration JOB_RETENTION = Duration.ofMinutes(10);
+
+    @Inject RecordingHelper recordingHelper;
+    @Inject ScheduledExecutorService scheduler;
+    @Inject EventBus bus;
+    @Inject Clock clock;
+    @Inject Logger logger;
+
+    @ConfigProperty(name = ConfigProperties.ARCHIVE_JOBS_PROGRESS_INTERVAL)
+    Duration progressInterval;
+
+    private final Map<String, ArchiveJob> jobs = new ConcurrentHashMap<>();
+    private final ExecutorService workers;
+
+    ArchiveJobService(
+            @ConfigProperty(name = ConfigProperties.ARCHIVE_JOBS_WORKERS) int workers,
+            @ConfigProperty(name = ConfigProperties.ARCHIVE_JOBS_QUEUE_SIZE) int queueSize) {
+        this.workers =
+                new ThreadPoolExecutor(
+                        workers,
+                        workers,
+                        0,
+                        TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<>(queueSize),
+                        r -> {
+                            var t = new Thread(r, "archive-job");
+                            t.setDaemon(true);
+                            return t;
+                        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Queue a save of the given recording.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException if the job queue is full
+     */
+    public ArchiveJob submit(ActiveRecording recording) {
+        var job =
+                new ArchiveJob(
+                        UUID.randomUUID().toString(),
+                        recording.id,
+                        recording.target.id,
+                        recording.remoteId,
+                        recording.name,
+                        clock);
+        jobs.put(job.id, job);
+        try {
+            workers.execute(() -> run(job));
+        } catch (RuntimeException e) {
+            jobs.remove(job.id);
+            throw e;
+        }
+        return job;
+    }
+
+    public Optional<ArchiveJob> get(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    public Collection<ArchiveJob> list() {
+        return jobs.values();
+    }
+
+    @Transactional
+    ActiveRecording loadRecording(long id) {
+        ActiveRecording recording = ActiveRecording.findById(id);
+        if (recording == null) {
+            throw new NotFoundException();
+        }
+        // initialize the lazy association before the entity is detached
+        logger.debugv("Archiving recording {0} of {1}", recording.name, recording.target.jvmId);
+        return recording;
+    }
+
+    private void run(ArchiveJob job) {
+        job.state = State.RUNNING;
+        job.startTime = clock.getWallTime();
+        long intervalMs = progressInterval.toMillis();
+        AtomicLong lastNotification = new AtomicLong(job.startTime);
+        try {
+            ActiveRecording recording = loadRecording(job.recordingId);
+            job.filename =
+                    recordingHelper.saveRecording(
+                            recording,
+                            null,
+                            null,
+                            n -> {
+                                job.bytesTransferred.addAndGet(n);
+                                long now = clock.getWallTime();
+                                long last = lastNotification.get();
+                                if (now - last >= intervalMs
+                                        && lastNotification.compareAndSet(last, now)) {
+                                    notify(ARCHIVE_JOB_PROGRESS, job);
+                                }
+                            });
+            job.state = State.COMPLETED;
+            job.endTime = clock.getWallTime();
+            notify(ARCHIVE_JOB_COMPLETED, job);
+        } catch (Exception e) {
+            logger.error("Archive job " + job.id + " failed", e);
+            job.state = State.FAILED;
+            job.error = e.getMessage() == null ? e.getClass().getName() : e.getMessage();
+            job.endTime = clock.getWallTime();
+            notify(ARCHIVE_JOB_FAILED, job);
+        } finally {
+            scheduler.schedule(
+                    () -> jobs.remove(job.id), JOB_RETENTION.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void notify(String category, ArchiveJob job) {
+        bus.publish(MessagingServer.class.getName(), new Notification(category, job.status()));
+    }
+
+    public enum State {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED,
+    }
+
+    public static class ArchiveJob {
+        final String id;
+        final long recordingId;
+        final long targetId;
+        final long remoteId;
+        final String recordingName;
+        final long submitTime;
+        private final Clock clock;
+        final AtomicLong bytesTransferred = new AtomicLong();
+        volatile State state = State.QUEUED;
+        volatile long startTime;
+        volatile long endTime;
+        volatile String filename;
+        volatile String error;
+
+        ArchiveJob(
+                String id,
+                long recordingId,
+                long targetId,
+                long remoteId,
+                String recordingName,
+                Clock clock) {
+            this.id = id;
+            this.recordingId = recordingId;
+            this.targetId = targetId;
+            this.remoteId = remoteId;
+            this.recordingName = recordingName;
+            this.clock = clock;
+            this.submitTime = clock.getWallTime();
+        }
+
+        public String id() {
+            return id;
+        }
+
+        public ArchiveJobStatus status() {
+            long bytes = bytesTransferred.get();
+            double throughput = 0;
+            if (startTime > 0) {
+                long end = endTime > 0 ? endTime : clock.getWallTime();
+                long elapsed = end - startTime;
+                if (elapsed > 0) {
+                    throughput = bytes * 1000d / elapsed;
+                }
+            }
+            return new ArchiveJobStatus(
+                    id,
+                    state,
+                    targetId,
+                    remoteId,
+                    recordingName,
+                    bytes,
+                    throughput,
+                    submitTime,
+                    startTime,
+                    endTime,
+                    filename,
+                    error);
+        }
+    }
+
+    /**
+     * Point-in-time view of an archive job. Times are epoch milliseconds, or 0 if the job has not
+     * yet reached that point. Throughput is in bytes per second.
+     */
+    public record ArchiveJobStatus(
+            String id,
+            State state,
+            long targetId,
+            long remoteId,
+            String recordingName,
+            long bytesTransferred,
+            double bytesPerSecond,
+            long submitTime,
+            long startTime,
+            long endTime,
+            String filename,
+            String error) {}
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.util.List;
+
+import io.cryostat.recordings.ArchiveJobService.ArchiveJob;
+import io.cryostat.recordings.ArchiveJobService.ArchiveJobStatus;
+
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.Path;
+import org.jboss.resteasy.reactive.RestPath;
+
+@Path("/api/v3/archive_jobs")
+public class ArchiveJobs {
+
+    @Inject ArchiveJobService service;
+
+    @GET
+    @RolesAllowed("read")
+    public List<ArchiveJobStatus> list() {
+        return service.list().stream().map(ArchiveJob::status).toList();
+    }
+
+    @GET
+    @Path("/{id}")
+    @RolesAllowed("read")
+    public ArchiveJobStatus get(@RestPath String id) {
+        return service.get(id).map(ArchiveJob::status).orElseThrow(NotFoundException::new);
+    }
+}
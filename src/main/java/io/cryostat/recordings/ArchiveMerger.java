@@ -0,0 +1,322 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import io.cryostat.ConfigProperties;
+import io.cryostat.core.sys.Clock;
+import io.cryostat.recordings.Recordings.ArchivedRecording;
+import io.cryostat.recordings.Recordings.Metadata;
+import io.cryostat.util.EntityExistsException;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.NotFoundException;
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+/**
+ * Concatenates existing archives of one JVM into a new archive. A JFR file is a sequence of
+ * self-contained chunks, so the concatenation of several recordings is itself a valid recording.
+ * The new object is assembled in storage with multipart {@code UploadPartCopy} requests, so the
+ * archive data does not pass through Cryostat. The only exception is where a source is smaller than
+ * the minimum multipart part size, in which case just enough bytes are read through to make up a
+ * full part.
+ *
+ * <p>Archives stored as {@link ChunkStore} manifests are merged by concatenating their manifests
+ * instead. Encoded archives cannot be concatenated in storage and are rejected.
+ */
+@ApplicationScoped
+public class ArchiveMerger {
+
+    static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    static final long MAX_PART_SIZE = 5L * 1024 * 1024 * 1024;
+
+    @ConfigProperty(name = ConfigProperties.AWS_BUCKET_NAME_ARCHIVES)
+    String archiveBucket;
+
+    @Inject S3Client storage;
+    @Inject RecordingHelper recordingHelper;
+    @Inject ChunkStore chunkStore;
+    @Inject Clock clock;
+    @Inject Logger logger;
+
+    /**
+     * @param jvmId the JVM whose archives are merged
+     * @param filenames the archives to merge, in order
+     * @param filename the name of the merged archive, or blank to generate one
+     * @param deleteSources whether to delete the source archives once the merged archive is indexed
+     */
+    public ArchivedRecording merge(
+            String jvmId, List<String> filenames, String filename, boolean deleteSources)
+            throws Exception {
+        if (filenames == null || filenames.size() < 2) {
+            throw new BadRequestException("At least two archives are required to merge");
+        }
+        if (StringUtils.isBlank(filename)) {
+            filename =
+                    String.format(
+                            "merged_%s.jfr",
+                            clock.now()
+                                    .truncatedTo(ChronoUnit.SECONDS)
+                                    .toString()
+                                    .replaceAll("[-:]+", ""));
+        }
+        filename = filename.strip();
+        if (filename.contains("/")) {
+            throw new BadRequestException("Invalid archive filename");
+        }
+        if (!filename.endsWith(".jfr")) {
+            filename = filename + ".jfr";
+        }
+        if (filenames.contains(filename)
+                || recordingHelper.getArchivedRecording(jvmId, filename).isPresent()) {
+            throw new EntityExistsException("Archived recording", filename);
+        }
+        List<ArchivedRecordingEntry> sources = new ArrayList<>();
+        for (String source : filenames) {
+            sources.add(
+                    recordingHelper
+                            .getArchivedRecording(jvmId, source)
+                            .orElseThrow(() -> new NotFoundException(source)));
+        }
+        if (sources.stream().anyMatch(e -> !e.storageCodec().isIdentity())) {
+            throw new BadRequestException("Encoded archives cannot be merged");
+        }
+        long chunked = sources.stream().filter(ArchivedRecordingEntry::isChunked).count();
+        if (chunked != 0 && chunked != sources.size()) {
+            throw new BadRequestException(
+                    "Chunked and unchunked archives cannot be merged together");
+        }
+
+        Metadata metadata = mergeMetadata(sources);
+        ArchivedRecordingEntry entry =
+                chunked > 0
+                        ? mergeManifests(jvmId, filename, sources, metadata)
+                        : mergeObjects(jvmId, filename, sources, metadata);
+        recordingHelper.notifyArchiveCreated(entry);
+
+        if (deleteSources) {
+            for (var source : sources) {
+                recordingHelper.deleteArchivedRecording(jvmId, source.filename);
+            }
+        }
+        return recordingHelper.toExternalForm(entry);
+    }
+
+    /** Only the labels which all of the sources agree upon are carried over to the result. */
+    static Metadata mergeMetadata(List<ArchivedRecordingEntry> sources) {
+        Map<String, String> labels = new HashMap<>(sources.get(0).metadata.labels());
+        for (var source : sources.subList(1, sources.size())) {
+            labels.entrySet()
+                    .removeIf(
+                            e ->
+                                    !Objects.equals(
+                                            e.getValue(),
+                                            source.metadata.labels().get(e.getKey())));
+        }
+        return new Metadata(labels);
+    }
+
+    private ArchivedRecordingEntry mergeManifests(
+            String jvmId, String filename, List<ArchivedRecordingEntry> sources, Metadata metadata)
+            throws Exception {
+        List<ChunkStore.ChunkRef> chunks =
+                sources.stream().flatMap(e -> e.chunks.stream()).toList();
+        chunkStore.reference(chunks);
+        try {
+            return recordingHelper.writeChunkedArchive(jvmId, filename, chunks, metadata);
+        } catch (Exception e) {
+            chunkStore.release(chunks);
+            throw e;
+        }
+    }
+
+    private ArchivedRecordingEntry mergeObjects(
+            String jvmId, String filename, List<ArchivedRecordingEntry> sources, Metadata metadata)
+            throws IOException {
+        String key = recordingHelper.archivedRecordingKey(jvmId, filename);
+        String uploadId =
+                storage.createMultipartUpload(
+                                CreateMultipartUploadRequest.builder()
+                                        .bucket(archiveBucket)
+                                        .key(key)
+                                        .contentType(RecordingHelper.JFR_MIME)
+                                        .tagging(recordingHelper.createMetadataTagging(metadata))
+                                        .build())
+                        .uploadId();
+        try {
+            var parts = new PartWriter(key, uploadId);
+            long total = 0;
+            for (var source : sources) {
+                String sourceKey = source.storageKey();
+                HeadObjectResponse head =
+                        recordingHelper.headArchivedRecording(jvmId, source.filename);
+                long size = head.contentLength();
+                if (size == 0) {
+                    continue;
+                }
+                total += size;
+                long offset = 0;
+                if (parts.buffered() > 0) {
+                    // top up the pending part from the start of this source
+                    long take = Math.min(MIN_PART_SIZE - parts.buffered(), size);
+                    parts.buffer(sourceKey, head.eTag(), 0, take);
+                    offset = take;
+                }
+                long remaining = size - offset;
+                if (remaining >= MIN_PART_SIZE) {
+                    // balance the copied ranges so none exceeds the maximum part size and none
+                    // falls below the minimum
+                    long pieces = (remaining + MAX_PART_SIZE - 1) / MAX_PART_SIZE;
+                    long piece = (remaining + pieces - 1) / pieces;
+                    while (offset < size) {
+                        long end = Math.min(size, offset + piece);
+                        parts.copy(sourceKey, head.eTag(), offset, end);
+                        offset = end;
+                    }
+                } else if (remaining > 0) {
+                    parts.buffer(sourceKey, head.eTag(), offset, remaining);
+                }
+            }
+            parts.flush();
+            storage.completeMultipartUpload(
+                    CompleteMultipartUploadRequest.builder()
+                            .bucket(archiveBucket)
+                            .key(key)
+                            .uploadId(uploadId)
+                            .multipartUpload(
+                                    CompletedMultipartUpload.builder()
+                                            .parts(parts.completed)
+                                            .build())
+                            .build());
+            logger.infov(
+                    "Merged {0} archives into {1} using {2} parts",
+                    sources.size(), key, parts.completed.size());
+            return recordingHelper.indexArchivedRecording(
+                    jvmId, filename, total, clock.now(), metadata);
+        } catch (IOException | RuntimeException e) {
+            storage.abortMultipartUpload(
+                    AbortMultipartUploadRequest.builder()
+                            .bucket(archiveBucket)
+                            .key(key)
+                            .uploadId(uploadId)
+                            .build());
+            throw e;
+        }
+    }
+
+    private class PartWriter {
+        final String key;
+        final String uploadId;
+        final List<CompletedPart> completed = new ArrayList<>();
+        final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+        PartWriter(String key, String uploadId) {
+            this.key = key;
+            this.uploadId = uploadId;
+        }
+
+        long buffered() {
+            return pending.size();
+        }
+
+        int nextPartNumber() {
+            return completed.size() + 1;
+        }
+
+        /** Copy the byte range [start, end) of a source object as a part, entirely in storage. */
+        void copy(String sourceKey, String eTag, long start, long end) {
+            int partNumber = nextPartNumber();
+            var resp =
+                    storage.uploadPartCopy(
+                            UploadPartCopyRequest.builder()
+                                    .sourceBucket(archiveBucket)
+                                    .sourceKey(sourceKey)
+                                    .copySourceIfMatch(eTag)
+                                    .copySourceRange(new ByteRange(start, end - 1).toRangeHeader())
+                                    .destinationBucket(archiveBucket)
+                                    .destinationKey(key)
+                                    .uploadId(uploadId)
+                                    .partNumber(partNumber)
+                                    .build());
+            completed.add(
+                    CompletedPart.builder()
+                            .partNumber(partNumber)
+                            .eTag(resp.copyPartResult().eTag())
+                            .build());
+        }
+
+        /**
+         * Read {@code length} bytes of a source object from {@code start} into the pending part,
+         * uploading it once it reaches the minimum part size.
+         */
+        void buffer(String sourceKey, String eTag, long start, long length) throws IOException {
+            try (var stream =
+                    storage.getObject(
+                            GetObjectRequest.builder()
+                                    .bucket(archiveBucket)
+                                    .key(sourceKey)
+                                    .ifMatch(eTag)
+                                    .range(new ByteRange(start, start + length - 1).toRangeHeader())
+                                    .build())) {
+                stream.transferTo(pending);
+            }
+            if (pending.size() >= MIN_PART_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (pending.size() == 0) {
+                return;
+            }
+            int partNumber = nextPartNumber();
+            var resp =
+                    storage.uploadPart(
+                            UploadPartRequest.builder()
+                                    .bucket(archiveBucket)
+                                    .key(key)
+                                    .uploadId(uploadId)
+                                    .partNumber(partNumber)
+                                    .build(),
+                            RequestBody.fromBytes(pending.toByteArray()));
+            completed.add(CompletedPart.builder().partNumber(partNumber).eTag(resp.eTag()).build());
+            pending.reset();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntity;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.PositiveOrZero;
+
+/**
+ * Reference count for a content-addressed JFR chunk held in the archive chunks bucket. A chunk is
+ * referenced once for each occurrence in the manifest of an indexed archive, and becomes eligible
+ * for garbage collection once it is no longer referenced.
+ */
+@Entity
+@Table(indexes = {@Index(columnList = "refCount, updated")})
+public class ArchivedChunk extends PanacheEntity {
+
+    /** Hex-encoded SHA-256 digest of the chunk content, which is also its storage key. */
+    @Column(nullable = false, unique = true)
+    @NotBlank
+    public String hash;
+
+    @PositiveOrZero public long size;
+
+    /** ID of the {@link StorageCodec} the stored chunk is encoded with, or null if unencoded. */
+    public String codec;
+
+    public long refCount;
+
+    @NotNull public Instant updated;
+
+    public StorageCodec storageCodec() {
+        return StorageCodec.fromId(codec);
+    }
+
+    public static Optional<ArchivedChunk> getByHash(String hash) {
+        return find("hash", hash).firstResultOptional();
+    }
+
+    /**
+     * @return true if the chunk is known and its reference count was adjusted
+     */
+    public static boolean adjustRefCount(String hash, int delta, Instant now) {
+        return update(
+                        "refCount = refCount + ?1, updated = ?2 where hash = ?3",
+                        (long) delta,
+                        now,
+                        hash)
+                > 0;
+    }
+
+    public static List<ArchivedChunk> listUnreferencedBefore(Instant before) {
+        return list("refCount <= 0 and updated < ?1", before);
+    }
+}
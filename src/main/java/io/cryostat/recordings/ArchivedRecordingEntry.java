@@ -0,0 +1,187 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import io.cryostat.recordings.Recordings.Metadata;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntity;
+import io.quarkus.panache.common.Page;
+import io.quarkus.panache.common.Sort;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.PositiveOrZero;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+/**
+ * Database index of the archived recording objects held in the archives storage bucket. The bucket
+ * remains the source of truth for recording data, but listing and metadata queries are served from
+ * this table so that they do not require one or more S3 requests per archived object. Entries are
+ * written when an archive upload completes, removed when the archive is deleted, and rebuilt from
+ * the bucket contents at startup.
+ */
+@Entity
+@Table(
+        uniqueConstraints = {@UniqueConstraint(columnNames = {"jvmId", "filename"})},
+        indexes = {@Index(columnList = "jvmId"), @Index(columnList = "jvmId, archivedTime")})
+public class ArchivedRecordingEntry extends PanacheEntity {
+
+    @Column(nullable = false)
+    @NotBlank
+    public String jvmId;
+
+    @Column(nullable = false)
+    @NotBlank
+    public String filename;
+
+    @PositiveOrZero public long size;
+
+    /** Seconds since epoch at which the archive was written to storage. */
+    @PositiveOrZero public long archivedTime;
+
+    /** Expiry time of transient archives, or null for archives which are retained. */
+    public Instant expiry;
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @NotNull
+    public Metadata metadata;
+
+    /** ID of the {@link StorageCodec} the stored object is encoded with, or null if unencoded. */
+    public String codec;
+
+    /**
+     * Chunks which make up the archive if it is stored as a {@link ChunkStore} manifest, or null if
+     * the archive object holds the recording content itself.
+     */
+    @JdbcTypeCode(SqlTypes.JSON)
+    public List<ChunkStore.ChunkRef> chunks;
+
+    /**
+     * ETag of the stored object when the entry was last reconciled with storage, or null if the
+     * object has been written since.
+     */
+    public String storageETag;
+
+    public String storageKey() {
+        return (jvmId + "/" + filename).strip();
+    }
+
+    public StorageCodec storageCodec() {
+        return StorageCodec.fromId(codec);
+    }
+
+    public boolean isChunked() {
+        return chunks != null;
+    }
+
+    public boolean isTransient() {
+        return expiry != null;
+    }
+
+    public static Optional<ArchivedRecordingEntry> getByKey(String jvmId, String filename) {
+        return find("jvmId = ?1 and filename = ?2", jvmId, filename).firstResultOptional();
+    }
+
+    public static List<ArchivedRecordingEntry> listRetained() {
+        return list("expiry is null", Sort.by("jvmId").and("archivedTime").and("id"));
+    }
+
+    public static List<ArchivedRecordingEntry> listRetained(String jvmId) {
+        return list("jvmId = ?1 and expiry is null", Sort.by("archivedTime").and("id"), jvmId);
+    }
+
+    /** Page of the retained archives of one JVM, ordered from oldest to newest. */
+    public static List<ArchivedRecordingEntry> listRetainedOldestPage(
+            String jvmId, int pageIndex, int pageSize) {
+        return find("jvmId = ?1 and expiry is null", Sort.by("archivedTime").and("id"), jvmId)
+                .page(Page.of(pageIndex, pageSize))
+                .list();
+    }
+
+    /**
+     * Keyset-paginated listing of retained archives ordered by ID. Pass the ID of the last entry of
+     * the previous page as {@code afterId}, or 0 to begin from the first page.
+     */
+    public static List<ArchivedRecordingEntry> listRetainedPage(long afterId, int limit) {
+        return find("expiry is null and id > ?1", Sort.by("id"), afterId)
+                .page(Page.ofSize(limit))
+                .list();
+    }
+
+    /**
+     * Keyset-paginated listing of all archives, retained or transient, ordered by ID. Pass the ID
+     * of the last entry of the previous page as {@code afterId}, or 0 to begin from the first page.
+     */
+    public static List<ArchivedRecordingEntry> listPage(long afterId, int limit) {
+        return find("id > ?1", Sort.by("id"), afterId).page(Page.ofSize(limit)).list();
+    }
+
+    public static List<ArchivedRecordingEntry> listRetainedPage(
+            String jvmId, long afterId, int limit) {
+        return find("jvmId = ?1 and expiry is null and id > ?2", Sort.by("id"), jvmId, afterId)
+                .page(Page.ofSize(limit))
+                .list();
+    }
+
+    /**
+     * Keyset-paginated listing of retained archives ordered by (jvmId, ID), so that all of the
+     * archives belonging to one JVM are contiguous across page boundaries. Pass an empty {@code
+     * afterJvmId} and 0 {@code afterId} to begin from the first page.
+     */
+    public static List<ArchivedRecordingEntry> listRetainedPageByJvmId(
+            String afterJvmId, long afterId, int limit) {
+        return find(
+                        "expiry is null and (jvmId > ?1 or (jvmId = ?1 and id > ?2))",
+                        Sort.by("jvmId").and("id"),
+                        afterJvmId,
+                        afterId)
+                .page(Page.ofSize(limit))
+                .list();
+    }
+
+    /**
+     * All archives, retained or transient, optionally restricted to one JVM and to those archived
+     * before the given time.
+     */
+    public static List<ArchivedRecordingEntry> listMatching(String jvmId, Instant archivedBefore) {
+        StringBuilder query = new StringBuilder("1 = 1");
+        Map<String, Object> params = new HashMap<>();
+        if (jvmId != null) {
+            query.append(" and jvmId = :jvmId");
+            params.put("jvmId", jvmId);
+        }
+        if (archivedBefore != null) {
+            query.append(" and archivedTime < :archivedBefore");
+            params.put("archivedBefore", archivedBefore.getEpochSecond());
+        }
+        return list(query.toString(), Sort.by("jvmId").and("id"), params);
+    }
+
+    public static boolean deleteByKey(String jvmId, String filename) {
+        return delete("jvmId = ?1 and filename = ?2", jvmId, filename) > 0;
+    }
+}
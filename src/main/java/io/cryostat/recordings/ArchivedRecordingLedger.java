@@ -0,0 +1,150 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntity;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.LockModeType;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.PositiveOrZero;
+
+/**
+ * Running totals of the retained archives indexed for each JVM. These are maintained alongside
+ * {@link ArchivedRecordingEntry} as archives are indexed and unindexed, so that retention limits
+ * can be checked on every upload without listing the JVM's archives. Each ledger is recomputed from
+ * the index whenever the index is reconciled with storage.
+ */
+@Entity
+public class ArchivedRecordingLedger extends PanacheEntity {
+
+    @Column(nullable = false, unique = true)
+    @NotBlank
+    public String jvmId;
+
+    @PositiveOrZero public long count;
+
+    @PositiveOrZero public long totalSize;
+
+    /** Seconds since epoch at which the oldest retained archive was written, or 0 if none. */
+    @PositiveOrZero public long oldestArchivedTime;
+
+    /**
+     * @param minArchivedTime seconds since epoch before which archives are expired, or 0
+     * @return true if any retained archive must be removed to satisfy the given limits
+     */
+    public boolean exceeds(long maxFiles, long maxBytes, long minArchivedTime) {
+        return count > maxFiles
+                || totalSize > maxBytes
+                || (count > 0 && oldestArchivedTime < minArchivedTime);
+    }
+
+    public static Optional<ArchivedRecordingLedger> getByJvmId(String jvmId) {
+        return find("jvmId", jvmId).firstResultOptional();
+    }
+
+    static void added(String jvmId, long size, long archivedTime) {
+        var ledger = lock(jvmId);
+        if (ledger.count == 0 || archivedTime < ledger.oldestArchivedTime) {
+            ledger.oldestArchivedTime = archivedTime;
+        }
+        ledger.count++;
+        ledger.totalSize += size;
+        ledger.persist();
+    }
+
+    /** Must be called after the corresponding index entry has been removed or updated. */
+    static void removed(String jvmId, long size, long archivedTime) {
+        var ledger = lock(jvmId);
+        ledger.count = Math.max(0, ledger.count - 1);
+        ledger.totalSize = Math.max(0, ledger.totalSize - size);
+        if (ledger.count == 0) {
+            ledger.oldestArchivedTime = 0;
+        } else if (archivedTime <= ledger.oldestArchivedTime) {
+            ledger.oldestArchivedTime =
+                    getEntityManager()
+                            .createQuery(
+                                    "select coalesce(min(e.archivedTime), 0) from"
+                                            + " ArchivedRecordingEntry e where e.jvmId = ?1 and"
+                                            + " e.expiry is null",
+                                    Long.class)
+                            .setParameter(1, jvmId)
+                            .getSingleResult();
+        }
+        ledger.persist();
+    }
+
+    /** The jvmIds which have a ledger or any indexed archive. */
+    static Set<String> listJvmIds() {
+        var jvmIds = new HashSet<String>();
+        jvmIds.addAll(
+                getEntityManager()
+                        .createQuery("select l.jvmId from ArchivedRecordingLedger l", String.class)
+                        .getResultList());
+        jvmIds.addAll(
+                getEntityManager()
+                        .createQuery(
+                                "select distinct e.jvmId from ArchivedRecordingEntry e",
+                                String.class)
+                        .getResultList());
+        return jvmIds;
+    }
+
+    /**
+     * Recompute the JVM's ledger from the current archive index. The totals are computed while
+     * holding the ledger's row lock, the same lock {@link #added(String, long, long)} and {@link
+     * #removed(String, long, long)} take after changing the index, so concurrent changes are
+     * applied either wholly before or wholly after the recomputation and are never lost.
+     */
+    static void rebuild(String jvmId) {
+        var ledger = lock(jvmId);
+        Object[] totals =
+                getEntityManager()
+                        .createQuery(
+                                "select count(e), coalesce(sum(e.size), 0),"
+                                        + " coalesce(min(e.archivedTime), 0) from"
+                                        + " ArchivedRecordingEntry e where e.jvmId = ?1 and"
+                                        + " e.expiry is null",
+                                Object[].class)
+                        .setParameter(1, jvmId)
+                        .getSingleResult();
+        ledger.count = ((Number) totals[0]).longValue();
+        ledger.totalSize = ((Number) totals[1]).longValue();
+        ledger.oldestArchivedTime = ((Number) totals[2]).longValue();
+        ledger.persist();
+    }
+
+    private static ArchivedRecordingLedger lock(String jvmId) {
+        // a row lock cannot be taken on a row which does not exist yet, so the first concurrent
+        // writers for a JVM would otherwise each try to create its ledger. Create it up front,
+        // leaving any ledger another transaction has already created as it is
+        getEntityManager()
+                .createNativeQuery(
+                        "insert into ArchivedRecordingLedger"
+                                + " (id, jvmId, count, totalSize, oldestArchivedTime)"
+                                + " values (nextval('ArchivedRecordingLedger_SEQ'), ?1, 0, 0, 0)"
+                                + " on conflict (jvmId) do nothing")
+                .setParameter(1, jvmId)
+                .executeUpdate();
+        return find("jvmId", jvmId)
+                .<ArchivedRecordingLedger>withLock(LockModeType.PESSIMISTIC_WRITE)
+                .singleResult();
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.openjdk.jmc.common.unit.IConstrainedMap;
+import org.openjdk.jmc.flightrecorder.configuration.recording.RecordingOptionsBuilder;
+
+import io.cryostat.ConfigProperties;
+import io.cryostat.core.templates.Template;
+import io.cryostat.core.templates.TemplateType;
+import io.cryostat.expressions.MatchExpression;
+import io.cryostat.expressions.MatchExpressionEvaluator;
+import io.cryostat.recordings.RecordingHelper.RecordingReplace;
+import io.cryostat.recordings.Recordings.LinkedRecordingDescriptor;
+import io.cryostat.recordings.Recordings.Metadata;
+import io.cryostat.targets.Target;
+import io.cryostat.targets.TargetConnectionManager;
+import io.cryostat.ws.MessagingServer;
+import io.cryostat.ws.Notification;
+
+import io.quarkus.runtime.ShutdownEvent;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.core.eventbus.EventBus;
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jdk.jfr.RecordingState;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import org.jboss.resteasy.reactive.RestStreamElementType;
+import org.jboss.resteasy.reactive.common.util.RestMediaType;
+import org.projectnessie.cel.tools.ScriptCreateException;
+
+/**
+ * Applies one recording operation to every target matched by a {@link MatchExpression}. Targets are
+ * processed in parallel, up to {@link ConfigProperties#RECORDINGS_BULK_CONCURRENCY} at a time, and
+ * each target is given at most {@link ConfigProperties#RECORDINGS_BULK_TARGET_TIMEOUT} to complete.
+ * Per-target results are streamed back to the client as newline-delimited JSON as soon as they are
+ * available, and a single summary {@link Notification} is published once every target has been
+ * processed.
+ */
+@Path("/api/beta/recordings/bulk")
+public class BulkRecordingOperations {
+
+    public static final String BULK_OPERATION_COMPLETED = "BulkRecordingOperationCompleted";
+
+    @Inject MatchExpressionEvaluator evaluator;
+    @Inject TargetConnectionManager connectionManager;
+    @Inject RecordingOptionsBuilderFactory recordingOptionsBuilderFactory;
+    @Inject RecordingHelper recordingHelper;
+    @Inject RecordingStopScheduler recordingStopScheduler;
+    @Inject EventBus bus;
+    @Inject Logger logger;
+
+    @ConfigProperty(name = ConfigProperties.RECORDINGS_BULK_TARGET_TIMEOUT)
+    Duration targetTimeout;
+
+    private final int concurrency;
+    private final ExecutorService workers;
+
+    BulkRecordingOperations(
+            @ConfigProperty(name = ConfigProperties.RECORDINGS_BULK_CONCURRENCY) int concurrency) {
+        this.concurrency = concurrency;
+        this.workers =
+                Executors.newFixedThreadPool(
+                        concurrency,
+                        r -> {
+                            var t = new Thread(r, "bulk-recording-operation");
+                            t.setDaemon(true);
+                            return t;
+                        });
+    }
+
+    void onStop(@Observes ShutdownEvent evt) {
+        workers.shutdownNow();
+    }
+
+    @POST
+    @RolesAllowed("write")
+    @Produces(RestMediaType.APPLICATION_NDJSON)
+    @RestStreamElementType(MediaType.APPLICATION_JSON)
+    public Multi<BulkOperationResult> execute(BulkOperationRequest request) {
+        try {
+            evaluator.validate(request.matchExpression());
+        } catch (ScriptCreateException e) {
+            throw new BadRequestException(e);
+        }
+        if (request.operation() != BulkOperation.SNAPSHOT
+                && StringUtils.isBlank(request.recordingName())) {
+            throw new BadRequestException("\"recordingName\" must be provided");
+        }
+        if (request.operation() == BulkOperation.START && StringUtils.isBlank(request.events())) {
+            throw new BadRequestException("\"events\" must be provided");
+        }
+
+        List<Target> targets = matchTargets(request.matchExpression());
+        var results = new ConcurrentLinkedQueue<BulkOperationResult>();
+        return Multi.createFrom()
+                .iterable(targets)
+                .onItem()
+                .transformToUni(target -> apply(request, target))
+                .merge(concurrency)
+                .onItem()
+                .invoke(results::add)
+                .onTermination()
+                .invoke(() -> notifyCompleted(request, targets.size(), List.copyOf(results)));
+    }
+
+    private Uni<BulkOperationResult> apply(BulkOperationRequest request, Target target) {
+        return Uni.createFrom()
+                .completionStage(() -> submit(request, target))
+                .onFailure()
+                .recoverWithItem(
+                        t -> {
+                            // a timed out operation is not interrupted, since that could leave the
+                            // target connection in an inconsistent state. It continues in the
+                            // background but its result is no longer reported
+                            if (t instanceof TimeoutException) {
+                                return BulkOperationResult.failure(
+                                        target, Outcome.TIMED_OUT, "Timed out");
+                            }
+                            logger.warnv(
+                                    t,
+                                    "Bulk {0} failed on {1}",
+                                    request.operation(),
+                                    target.connectUrl);
+                            String message =
+                                    t.getMessage() == null
+                                            ? t.getClass().getName()
+                                            : t.getMessage();
+                            return BulkOperationResult.failure(target, Outcome.FAILED, message);
+                        });
+    }
+
+    /**
+     * The workers are shared by all bulk requests, and timed out operations keep their worker until
+     * they finish, so an operation may wait in the queue for some time before it starts. Its
+     * timeout is only started once it is running, so that waiting is not reported as a timeout.
+     */
+    private CompletableFuture<BulkOperationResult> submit(
+            BulkOperationRequest request, Target target) {
+        var result = new CompletableFuture<BulkOperationResult>();
+        workers.execute(
+                () -> {
+                    result.orTimeout(targetTimeout.toMillis(), TimeUnit.MILLISECONDS);
+                    try {
+                        result.complete(applyTo(request, target.id));
+                    } catch (Exception e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+        return result;
+    }
+
+    @Transactional
+    List<Target> matchTargets(String matchExpression) {
+        return evaluator.getMatchedTargets(new MatchExpression(matchExpression));
+    }
+
+    @Transactional
+    BulkOperationResult applyTo(BulkOperationRequest request, long targetId) throws Exception {
+        Target target = Target.getTargetById(targetId);
+        switch (request.operation()) {
+            case START:
+                return BulkOperationResult.success(
+                        target, recordingHelper.toExternalForm(start(request, target)), null);
+            case STOP:
+                ActiveRecording stopped = findRecording(target, request.recordingName());
+                stopped.state = RecordingState.STOPPED;
+                stopped.persist();
+                return BulkOperationResult.success(
+                        target, recordingHelper.toExternalForm(stopped), null);
+            case SNAPSHOT:
+                return BulkOperationResult.success(
+                        target,
+                        recordingHelper.createSnapshot(target).await().atMost(targetTimeout),
+                        null);
+            case ARCHIVE:
+                ActiveRecording archived = findRecording(target, request.recordingName());
+                return BulkOperationResult.success(
+                        target,
+                        recordingHelper.toExternalForm(archived),
+                        recordingHelper.saveRecording(archived));
+            default:
+                throw new BadRequestException(String.valueOf(request.operation()));
+        }
+    }
+
+    private ActiveRecording start(BulkOperationRequest request, Target target) throws Exception {
+        Pair<String, TemplateType> pair = recordingHelper.parseEventSpecifier(request.events());
+        Template template =
+                recordingHelper.getPreferredTemplate(target, pair.getKey(), pair.getValue());
+        ActiveRecording recording =
+                connectionManager.executeConnectedTask(
+                        target,
+                        connection -> {
+                            RecordingOptionsBuilder optionsBuilder =
+                                    recordingOptionsBuilderFactory
+                                            .create(target)
+                                            .name(request.recordingName());
+                            if (request.duration() != null) {
+                                optionsBuilder.duration(
+                                        TimeUnit.SECONDS.toMillis(request.duration()));
+                            }
+                            IConstrainedMap<String> recordingOptions = optionsBuilder.build();
+                            return recordingHelper.startRecording(
+                                    target,
+                                    recordingOptions,
+                                    template,
+                                    new Metadata(request.labels()),
+                                    request.archiveOnStop(),
+                                    request.replace(),
+                                    connection);
+                        });
+        if (recording.duration > 0) {
+            recordingStopScheduler.schedule(recording, request.archiveOnStop());
+        }
+        return recording;
+    }
+
+    private static ActiveRecording findRecording(Target target, String recordingName) {
+        return target.activeRecordings.stream()
+                .filter(r -> Objects.equals(r.name, recordingName))
+                .findFirst()
+                .orElseThrow(
+                        () ->
+                                new NotFoundException(
+                                        String.format(
+                                                "No recording named \"%s\" on %s",
+                                                recordingName, target.connectUrl)));
+    }
+
+    private void notifyCompleted(
+            BulkOperationRequest request, int total, List<BulkOperationResult> results) {
+        Map<Outcome, Long> counts = new HashMap<>();
+        for (Outcome outcome : Outcome.values()) {
+            counts.put(outcome, results.stream().filter(r -> r.outcome() == outcome).count());
+        }
+        bus.publish(
+                MessagingServer.class.getName(),
+                new Notification(
+                        BULK_OPERATION_COMPLETED,
+                        Map.of(
+                                "operation", request.operation(),
+                                "matchExpression", request.matchExpression(),
+                                "total", total,
+                                "outcomes", counts,
+                                "results", results)));
+    }
+
+    public enum BulkOperation {
+        START,
+        STOP,
+        SNAPSHOT,
+        ARCHIVE,
+    }
+
+    public enum Outcome {
+        SUCCEEDED,
+        FAILED,
+        TIMED_OUT,
+    }
+
+    /**
+     * @param recordingName name of the recording to start, stop or archive. Ignored for snapshots.
+     * @param events event specifier of the recording to start.
+     * @param duration duration in seconds of the recording to start, or null for a continuous
+     *     recording.
+     */
+    public record BulkOperationRequest(
+            String matchExpression,
+            BulkOperation operation,
+            String recordingName,
+            String events,
+            Long duration,
+            boolean archiveOnStop,
+            RecordingReplace replace,
+            Map<String, String> labels) {
+        public BulkOperationRequest {
+            if (StringUtils.isBlank(matchExpression)) {
+                throw new BadRequestException("\"matchExpression\" must be provided");
+            }
+            if (operation == null) {
+                throw new BadRequestException("\"operation\" must be provided");
+            }
+            if (replace == null) {
+                replace = RecordingReplace.NEVER;
+            }
+            if (labels == null) {
+                labels = new HashMap<>();
+            }
+        }
+    }
+
+    /**
+     * Result of the operation on one target. {@code recording} is the started, stopped, archived or
+     * snapshot recording, and {@code archivedFilename} is set for archive operations.
+     */
+    public record BulkOperationResult(
+            long targetId,
+            String jvmId,
+            URI connectUrl,
+            Outcome outcome,
+            LinkedRecordingDescriptor recording,
+            String archivedFilename,
+            String error) {
+        static BulkOperationResult success(
+                Target target, LinkedRecordingDescriptor recording, String archivedFilename) {
+            return new BulkOperationResult(
+                    target.id,
+                    target.jvmId,
+                    target.connectUrl,
+                    Outcome.SUCCEEDED,
+                    recording,
+                    archivedFilename,
+                    null);
+        }
+
+        static BulkOperationResult failure(Target target, Outcome outcome, String error) {
+            return new BulkOperationResult(
+                    target.id, target.jvmId, target.connectUrl, outcome, null, null, error);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.util.Optional;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * A single satisfiable byte range from an HTTP {@code Range} request header, resolved against the
+ * length of the representation being served. Multi-range requests are not supported and are treated
+ * as if no range was requested, which RFC 9110 permits.
+ */
+public record ByteRange(long start, long end) {
+
+    public static final String ACCEPT_RANGES = "Accept-Ranges";
+    public static final String CONTENT_RANGE = "Content-Range";
+    public static final String RANGE = "Range";
+    public static final String IF_RANGE = "If-Range";
+    public static final String UNIT = "bytes";
+    public static final String NONE = "none";
+
+    public ByteRange {
+        if (start < 0 || end < start) {
+            throw new IllegalArgumentException(String.format("Invalid range %d-%d", start, end));
+        }
+    }
+
+    public long length() {
+        return end - start + 1;
+    }
+
+    /** Range specifier for a ranged storage request, ex. {@code bytes=0-1023}. */
+    public String toRangeHeader() {
+        return String.format("%s=%d-%d", UNIT, start, end);
+    }
+
+    /**
+     * {@code Content-Range} value for a 206 response. A negative total indicates that the complete
+     * length is not known.
+     */
+    public String toContentRange(long total) {
+        return String.format(
+                "%s %d-%d/%s", UNIT, start, end, total < 0 ? "*" : String.valueOf(total));
+    }
+
+    /** {@code Content-Range} value for a 416 response. */
+    public static String unsatisfiable(long total) {
+        return String.format("%s */%d", UNIT, total);
+    }
+
+    /**
+     * Parse a {@code Range} header value against a representation of the given length. A negative
+     * length indicates that the complete length is not known, in which case suffix ranges cannot be
+     * resolved and open-ended ranges are left unbounded at {@link Long#MAX_VALUE}.
+     *
+     * @return empty if the header is absent, malformed, or requests multiple ranges, in which case
+     *     the full representation should be served.
+     * @throws UnsatisfiableRangeException if the range lies entirely beyond the representation.
+     */
+    public static Optional<ByteRange> parse(String header, long length) {
+        if (StringUtils.isBlank(header)) {
+            return Optional.empty();
+        }
+        String prefix = UNIT + "=";
+        String spec = header.strip();
+        if (!spec.regionMatches(true, 0, prefix, 0, prefix.length())) {
+            return Optional.empty();
+        }
+        spec = spec.substring(prefix.length()).strip();
+        if (spec.contains(",")) {
+            return Optional.empty();
+        }
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return Optional.empty();
+        }
+        String first = spec.substring(0, dash).strip();
+        String last = spec.substring(dash + 1).strip();
+        long max = length < 0 ? Long.MAX_VALUE : length - 1;
+        try {
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                if (length < 0 || suffix < 0) {
+                    return Optional.empty();
+                }
+                if (suffix == 0 || length == 0) {
+                    throw new UnsatisfiableRangeException(length);
+                }
+                return Optional.of(new ByteRange(Math.max(0, length - suffix), max));
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? max : Long.parseLong(last);
+            // an open-ended range starting beyond the representation is unsatisfiable, not invalid
+            if (start < 0 || (!last.isEmpty() && end < start)) {
+                return Optional.empty();
+            }
+            if (start > max) {
+                throw new UnsatisfiableRangeException(length);
+            }
+            return Optional.of(new ByteRange(start, Math.min(end, max)));
+        } catch (NumberFormatException nfe) {
+            return Optional.empty();
+        }
+    }
+
+    public static class UnsatisfiableRangeException extends RuntimeException {
+        private final long length;
+
+        UnsatisfiableRangeException(long length) {
+            super(String.format("Requested range not satisfiable for length %d", length));
+            this.length = length;
+        }
+
+        public long getLength() {
+            return length;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import io.cryostat.recordings.MultipartUploadCheckpoint.ChunkBoundary;
+import io.cryostat.recordings.MultipartUploader.Part;
+import io.cryostat.recordings.MultipartUploader.PartSource;
+
+/**
+ * Reads a JFR stream into multipart upload parts which end at JFR chunk boundaries where possible.
+ * Each run of parts up to a boundary is encoded as an independent {@link StorageCodec} segment, so
+ * an upload can be resumed after any part which ends at a boundary by reading the recording again
+ * from the following chunk and starting a new segment.
+ *
+ * <p>A part is ended at a chunk boundary once it holds at least the minimum part size and the next
+ * chunk may not fit in it. A chunk which does not fit then is split across parts, and the parts
+ * which end within it cannot be resumed after.
+ */
+class ChunkAlignedPartReader implements PartSource {
+
+    // room left in a part for the encoder's buffered data and trailer when a segment is finished
+    static final int SEGMENT_SLACK = 256 * 1024;
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final StorageCodec codec;
+    private final int minPartSize;
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private final Sink sink = new Sink();
+    private OutputStream encoder;
+    private JfrChunkHeader chunk;
+    private long chunkRemaining;
+    private byte[] pendingHeader;
+    private long sourceBytes;
+    private long lastChunkStartNanos;
+    private boolean started;
+
+    /**
+     * @param in the JFR stream, beginning with the first chunk after the given boundary
+     * @param from the boundary the stream begins after, or null if it begins at the start of the
+     *     recording
+     */
+    ChunkAlignedPartReader(
+            InputStream in, StorageCodec codec, int minPartSize, ChunkBoundary from) {
+        this.in = in;
+        this.codec = codec;
+        this.minPartSize = minPartSize;
+        this.sourceBytes = from == null ? 0 : from.sourceBytes();
+        this.lastChunkStartNanos = from == null ? -1 : from.lastChunkStartNanos();
+        this.started = from != null;
+    }
+
+    @Override
+    public Part next(ByteBuffer buf) throws IOException {
+        sink.target = buf;
+        sink.drain();
+        while (buf.hasRemaining()) {
+            if (chunkRemaining > 0) {
+                int n = in.read(block, 0, (int) Math.min(block.length, chunkRemaining));
+                if (n < 0) {
+                    throw new EOFException("Truncated JFR chunk");
+                }
+                write(block, n);
+                chunkRemaining -= n;
+                if (chunkRemaining == 0) {
+                    lastChunkStartNanos = chunk.startNanos();
+                }
+                continue;
+            }
+            byte[] header =
+                    pendingHeader != null ? pendingHeader : in.readNBytes(JfrChunkHeader.SIZE);
+            pendingHeader = null;
+            if (header.length == 0) {
+                if (!started) {
+                    // an empty recording still needs a valid encoding
+                    encoder = codec.encoder(sink);
+                    started = true;
+                }
+                if (encoder != null) {
+                    finishSegment();
+                }
+                // a trailer which did not fit is carried into one more part
+                return sink.hasOverflow() ? new Part(false, null) : new Part(true, boundary());
+            }
+            var next = JfrChunkHeader.parse(header);
+            if (encoder != null
+                    && buf.position() >= minPartSize
+                    && buf.position() + next.size() + SEGMENT_SLACK > buf.capacity()) {
+                pendingHeader = header;
+                finishSegment();
+                return new Part(false, sink.hasOverflow() ? null : boundary());
+            }
+            chunk = next;
+            chunkRemaining = next.size() - header.length;
+            write(header, header.length);
+        }
+        return new Part(false, null);
+    }
+
+    @Override
+    public long sourceBytes() {
+        return sourceBytes;
+    }
+
+    private void write(byte[] b, int len) throws IOException {
+        if (encoder == null) {
+            encoder = codec.encoder(sink);
+            started = true;
+        }
+        encoder.write(b, 0, len);
+        sourceBytes += len;
+    }
+
+    private void finishSegment() throws IOException {
+        encoder.close();
+        encoder = null;
+    }
+
+    private ChunkBoundary boundary() {
+        return new ChunkBoundary(lastChunkStartNanos, sourceBytes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Writes encoded output into the current part buffer. Output which does not fit is held until
+     * the next part.
+     */
+    private static class Sink extends OutputStream {
+        private final ByteArrayOutputStream overflow = new ByteArrayOutputStream();
+        private ByteBuffer target;
+
+        @Override
+        public void write(int b) {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (overflow.size() == 0) {
+                int n = Math.min(len, target.remaining());
+                target.put(b, off, n);
+                off += n;
+                len -= n;
+            }
+            if (len > 0) {
+                overflow.write(b, off, len);
+            }
+        }
+
+        void drain() {
+            if (overflow.size() == 0) {
+                return;
+            }
+            byte[] held = overflow.toByteArray();
+            overflow.reset();
+            write(held, 0, held.length);
+        }
+
+        boolean hasOverflow() {
+            return overflow.size() > 0;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.cryostat.ConfigProperties;
+import io.cryostat.util.InputStreamMulti;
+
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.unchecked.Unchecked;
+import io.vertx.core.buffer.Buffer;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+/**
+ * Shared memory budget for recording data in transit between targets, S3 storage, and clients. The
+ * total is capped by {@link ConfigProperties#STORAGE_BUFFERS_MAX_BYTES} and is accounted in slices
+ * of {@link #SLICE_SIZE} bytes.
+ *
+ * <p>Multipart upload parts, including those of transient archives, are staged in fixed-size direct
+ * {@link ByteBuffer} chunks taken with {@link #acquire()}. Chunks are allocated lazily and reused
+ * once released. Streamed transfers, such as active recording downloads and jfr-datasource uploads,
+ * are read one slice at a time through {@link #stream(Callable, Executor)}, which reserves a slice
+ * of the budget for as long as the transfer is open. Callers block while the budget is exhausted,
+ * so a burst of concurrent archive operations queues up rather than allocating unbounded amounts of
+ * memory.
+ */
+@ApplicationScoped
+public class ChunkBufferPool {
+
+    public static final int CHUNK_SIZE = 20 * 1024 * 1024;
+    public static final int SLICE_SIZE = InputStreamMulti.DEFAULT_CHUNK_SIZE;
+    static final int SLICES_PER_CHUNK = CHUNK_SIZE / SLICE_SIZE;
+
+    @Inject Logger logger;
+
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger allocated = new AtomicInteger();
+    private final Semaphore permits;
+    private final int capacity;
+    private final int slices;
+    private final Runnable occupancyHook = this::emitOccupancy;
+
+    ChunkBufferPool(
+            @ConfigProperty(name = ConfigProperties.STORAGE_BUFFERS_MAX_BYTES) long maxBytes) {
+        this.capacity = (int) Math.max(1, maxBytes / CHUNK_SIZE);
+        this.slices = capacity * SLICES_PER_CHUNK;
+        this.permits = new Semaphore(slices, true);
+    }
+
+    void onStart(@Observes StartupEvent evt) {
+        logger.infov("Archive buffer pool capacity: {0} chunks of {1} bytes", capacity, CHUNK_SIZE);
+        FlightRecorder.addPeriodicEvent(ChunkBufferPoolOccupancy.class, occupancyHook);
+    }
+
+    void onStop(@Observes ShutdownEvent evt) {
+        FlightRecorder.removePeriodicEvent(occupancyHook);
+        free.clear();
+    }
+
+    /** The maximum number of chunks which may be allocated at once. */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Take a cleared chunk from the pool, blocking until one is available if the pool budget is
+     * exhausted. The chunk must be returned with {@link #release(ByteBuffer)} once the caller is
+     * finished with it.
+     */
+    public ByteBuffer acquire() throws InterruptedException {
+        reserve(SLICES_PER_CHUNK);
+        ByteBuffer buf = free.poll();
+        if (buf == null) {
+            buf = ByteBuffer.allocateDirect(CHUNK_SIZE);
+            allocated.incrementAndGet();
+        }
+        return buf.clear();
+    }
+
+    public void release(ByteBuffer buf) {
+        if (buf == null) {
+            return;
+        }
+        free.offer(buf.clear());
+        permits.release(SLICES_PER_CHUNK);
+    }
+
+    /**
+     * Stream the opened {@link InputStream} in chunks of {@link #SLICE_SIZE} bytes, as {@link
+     * InputStreamMulti#from(Callable, Executor)}. Only one chunk is read per downstream request, so
+     * one slice of the budget is reserved on the executor before the stream is opened and released
+     * when the stream terminates or is cancelled.
+     */
+    public Multi<Buffer> stream(Callable<InputStream> opener, Executor executor) {
+        var reserved = new AtomicBoolean();
+        return Uni.createFrom()
+                .item(
+                        Unchecked.supplier(
+                                () -> {
+                                    reserve(1);
+                                    reserved.set(true);
+                                    return reserved;
+                                }))
+                .runSubscriptionOn(executor)
+                .onItem()
+                .transformToMulti(r -> InputStreamMulti.from(opener, SLICE_SIZE, executor))
+                .onTermination()
+                .invoke(
+                        () -> {
+                            if (reserved.getAndSet(false)) {
+                                permits.release();
+                            }
+                        });
+    }
+
+    private void reserve(int n) throws InterruptedException {
+        if (!permits.tryAcquire(n)) {
+            logger.debugv(
+                    "Archive buffer pool exhausted, {0} threads waiting", permits.getQueueLength());
+            permits.acquire(n);
+        }
+    }
+
+    private void emitOccupancy() {
+        int available = permits.availablePermits();
+        var evt = new ChunkBufferPoolOccupancy();
+        evt.chunkSize = CHUNK_SIZE;
+        evt.capacityBytes = (long) capacity * CHUNK_SIZE;
+        evt.allocatedBytes = (long) allocated.get() * CHUNK_SIZE;
+        evt.inUseBytes = (long) (slices - available) * SLICE_SIZE;
+        evt.waitingThreads = permits.getQueueLength();
+        evt.commit();
+    }
+
+    @Name("io.cryostat.recordings.ChunkBufferPool.ChunkBufferPoolOccupancy")
+    @Label("Archive Buffer Pool Occupancy")
+    @Category("Cryostat")
+    @Period("10 s")
+    public static class ChunkBufferPoolOccupancy extends Event {
+        @DataAmount long chunkSize;
+        @DataAmount long capacityBytes;
+        @DataAmount long allocatedBytes;
+        @DataAmount long inUseBytes;
+        int waitingThreads;
+    }
+}
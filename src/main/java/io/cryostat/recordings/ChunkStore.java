@@ -0,0 +1,366 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+import io.cryostat.ConfigProperties;
+import io.cryostat.StorageBuckets;
+import io.cryostat.core.sys.Clock;
+import io.cryostat.core.sys.FileSystem;
+
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.persistence.PersistenceException;
+import jakarta.transaction.Transactional;
+import jakarta.transaction.Transactional.TxType;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+/**
+ * Content-addressed store of JFR chunks. Recordings are split on chunk boundaries and each chunk is
+ * stored once in the chunks bucket under the SHA-256 digest of its content, so that the many chunks
+ * shared between successive archives of the same continuous recording are only stored once. An
+ * archive stored this way is a manifest of {@link ChunkRef}s, and its content is the concatenation
+ * of the referenced chunks.
+ *
+ * <p>Chunks are reference counted by {@link ArchivedChunk}. Chunks which are no longer referenced,
+ * and chunk objects which were uploaded but never referenced, are removed by a periodic garbage
+ * collection once they are older than the configured grace period. Storing and collecting are
+ * mutually exclusive so that a chunk cannot be collected between being found and being referenced.
+ */
+@ApplicationScoped
+public class ChunkStore {
+
+    /** S3 user metadata key marking an archive object as a chunk manifest. */
+    public static final String MANIFEST_METADATA_KEY = "manifest";
+
+    public static final int MANIFEST_VERSION = 1;
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    @ConfigProperty(name = ConfigProperties.STORAGE_ARCHIVES_DEDUP_ENABLED)
+    boolean enabled;
+
+    @ConfigProperty(name = ConfigProperties.AWS_BUCKET_NAME_ARCHIVE_CHUNKS)
+    String bucket;
+
+    @ConfigProperty(name = ConfigProperties.STORAGE_ARCHIVES_DEDUP_GC_GRACE)
+    Duration gcGrace;
+
+    @ConfigProperty(name = ConfigProperties.STORAGE_ARCHIVES_CODEC)
+    StorageCodec codec;
+
+    @Inject S3Client storage;
+    @Inject StorageBuckets storageBuckets;
+    @Inject ScheduledExecutorService scheduler;
+    @Inject FileSystem fs;
+    @Inject Clock clock;
+    @Inject Logger logger;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    void onStart(@Observes StartupEvent evt) {
+        if (!enabled) {
+            return;
+        }
+        storageBuckets.createIfNecessary(bucket);
+        long period = Math.max(1, gcGrace.toMinutes() / 4);
+        scheduler.scheduleAtFixedRate(
+                () -> {
+                    try {
+                        collectGarbage();
+                    } catch (Exception e) {
+                        logger.error("Failed to collect unreferenced archive chunks", e);
+                    }
+                },
+                period,
+                period,
+                TimeUnit.MINUTES);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Split a JFR stream into chunks, upload any chunks which are not already stored, and take a
+     * reference to every chunk. The caller owns the returned references and must {@link
+     * #release(List)} them if they do not end up recorded in an indexed archive.
+     */
+    public List<ChunkRef> store(InputStream jfr) throws IOException {
+        List<ChunkRef> refs = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            while (true) {
+                byte[] header = jfr.readNBytes(JfrChunkHeader.SIZE);
+                if (header.length == 0) {
+                    break;
+                }
+                JfrChunkHeader chunk = JfrChunkHeader.parse(header);
+                refs.add(storeChunk(header, chunk, jfr));
+            }
+            return refs;
+        } catch (IOException | RuntimeException e) {
+            release(refs);
+            throw e;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private ChunkRef storeChunk(byte[] header, JfrChunkHeader chunk, InputStream jfr)
+            throws IOException {
+        Path tmp = fs.createTempFile(null, null);
+        try {
+            MessageDigest digest = newDigest();
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(tmp), digest)) {
+                out.write(header);
+                long remaining = chunk.size() - header.length;
+                if (IOUtils.copyLarge(jfr, out, 0, remaining) < remaining) {
+                    throw new EOFException("Truncated JFR chunk");
+                }
+            }
+            String hash = toHex(digest.digest());
+            var existing = reference(hash);
+            if (existing.isPresent()) {
+                return new ChunkRef(hash, chunk.size(), existing.get().codec);
+            }
+            try (var in = codec.encode(fs.newInputStream(tmp))) {
+                // the encoded length is not known up front and chunks are small, so buffer them
+                storage.putObject(
+                        PutObjectRequest.builder()
+                                .bucket(bucket)
+                                .key(hash)
+                                .contentType(RecordingHelper.JFR_MIME)
+                                .build(),
+                        RequestBody.fromBytes(in.readAllBytes()));
+            }
+            String codecId = codec.isIdentity() ? null : codec.id();
+            try {
+                insert(hash, chunk.size(), codecId);
+            } catch (PersistenceException e) {
+                // the same chunk was stored concurrently by another archive, which will have
+                // uploaded identical content
+                codecId = reference(hash).orElseThrow(() -> e).codec;
+            }
+            return new ChunkRef(hash, chunk.size(), codecId);
+        } finally {
+            fs.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * @return the referenced chunk, or empty if the chunk is not known
+     */
+    @Transactional(TxType.REQUIRES_NEW)
+    Optional<ArchivedChunk> reference(String hash) {
+        if (!ArchivedChunk.adjustRefCount(hash, 1, clock.now())) {
+            return Optional.empty();
+        }
+        return ArchivedChunk.getByHash(hash);
+    }
+
+    @Transactional(TxType.REQUIRES_NEW)
+    void insert(String hash, long size, String codecId) {
+        ArchivedChunk chunk = new ArchivedChunk();
+        chunk.hash = hash;
+        chunk.size = size;
+        chunk.codec = codecId;
+        chunk.refCount = 1;
+        chunk.updated = clock.now();
+        chunk.persistAndFlush();
+    }
+
+    /**
+     * Take a reference to each of the given chunks, ex. when re-indexing an archive manifest which
+     * was found in storage.
+     */
+    @Transactional
+    public void reference(List<ChunkRef> refs) {
+        lock.readLock().lock();
+        try {
+            Instant now = clock.now();
+            for (ChunkRef ref : refs) {
+                if (!ArchivedChunk.adjustRefCount(ref.hash(), 1, now)) {
+                    ArchivedChunk chunk = new ArchivedChunk();
+                    chunk.hash = ref.hash();
+                    chunk.size = ref.size();
+                    chunk.codec = ref.codec();
+                    chunk.refCount = 1;
+                    chunk.updated = now;
+                    chunk.persist();
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Transactional
+    public void release(List<ChunkRef> refs) {
+        Instant now = clock.now();
+        for (ChunkRef ref : refs) {
+            ArchivedChunk.adjustRefCount(ref.hash(), -1, now);
+        }
+    }
+
+    /** Open a stream over the concatenated content of the given chunks. */
+    public InputStream open(List<ChunkRef> refs) {
+        Iterator<ChunkRef> it = refs.iterator();
+        return new SequenceInputStream(
+                new Enumeration<InputStream>() {
+                    @Override
+                    public boolean hasMoreElements() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public InputStream nextElement() {
+                        ChunkRef ref = it.next();
+                        try {
+                            return StorageCodec.fromId(ref.codec())
+                                    .decode(
+                                            storage.getObject(
+                                                    GetObjectRequest.builder()
+                                                            .bucket(bucket)
+                                                            .key(ref.hash())
+                                                            .build()));
+                        } catch (IOException ioe) {
+                            throw new UncheckedIOException(ioe);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Delete chunks which have been unreferenced for longer than the grace period, and chunk
+     * objects which were left behind by archives that failed before referencing them.
+     */
+    void collectGarbage() {
+        Instant before = clock.now().minus(gcGrace);
+        lock.writeLock().lock();
+        try {
+            int removed = 0;
+            for (ArchivedChunk chunk : listUnreferencedBefore(before)) {
+                deleteObject(chunk.hash);
+                deleteChunk(chunk.hash);
+                removed++;
+            }
+            int orphans = 0;
+            for (var page :
+                    storage.listObjectsV2Paginator(
+                            ListObjectsV2Request.builder().bucket(bucket).build())) {
+                Set<String> known =
+                        knownHashes(page.contents().stream().map(o -> o.key()).toList());
+                for (var o : page.contents()) {
+                    if (!known.contains(o.key()) && o.lastModified().isBefore(before)) {
+                        deleteObject(o.key());
+                        orphans++;
+                    }
+                }
+            }
+            if (removed > 0 || orphans > 0) {
+                logger.infov(
+                        "Collected {0} unreferenced and {1} orphaned archive chunks",
+                        removed, orphans);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Transactional
+    List<ArchivedChunk> listUnreferencedBefore(Instant before) {
+        return ArchivedChunk.listUnreferencedBefore(before);
+    }
+
+    @Transactional
+    void deleteChunk(String hash) {
+        ArchivedChunk.delete("hash = ?1 and refCount <= 0", hash);
+    }
+
+    @Transactional
+    Set<String> knownHashes(List<String> hashes) {
+        if (hashes.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return ArchivedChunk.<ArchivedChunk>list("hash in ?1", hashes).stream()
+                .map(c -> c.hash)
+                .collect(Collectors.toCollection(HashSet::new));
+    }
+
+    private void deleteObject(String key) {
+        storage.deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(key).build());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        return HexFormat.of().formatHex(bytes);
+    }
+
+    /** Reference to a stored chunk from an archive manifest. */
+    public record ChunkRef(String hash, long size, String codec) {}
+
+    /** Content of an archive manifest object. */
+    public record Manifest(int version, List<ChunkRef> chunks) {
+        public long size() {
+            return chunks.stream().mapToLong(ChunkRef::size).sum();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Passes through only those chunks of an underlying JFR stream which are accepted by a filter.
+ * Rejected chunks are skipped without being buffered, so the output is itself a valid JFR stream
+ * consisting of the accepted chunks in their original order.
+ */
+public class JfrChunkFilterInputStream extends InputStream {
+
+    private final InputStream in;
+    private final Predicate<JfrChunkHeader> filter;
+    private final Consumer<JfrChunkHeader> onAccept;
+    private byte[] header = new byte[0];
+    private int headerPos;
+    private long remaining;
+    private boolean eof;
+
+    public JfrChunkFilterInputStream(
+            InputStream in, Predicate<JfrChunkHeader> filter, Consumer<JfrChunkHeader> onAccept) {
+        this.in = in;
+        this.filter = filter;
+        this.onAccept = onAccept;
+    }
+
+    /**
+     * Pass through only the chunks which overlap the given time window. Either bound may be null to
+     * leave that side of the window open. Filtering is at chunk granularity, so the output may
+     * contain events from somewhat outside of the window.
+     */
+    public static JfrChunkFilterInputStream window(InputStream in, Instant start, Instant end) {
+        long startNanos = start == null ? Long.MIN_VALUE : toEpochNanos(start);
+        long endNanos = end == null ? Long.MAX_VALUE : toEpochNanos(end);
+        return new JfrChunkFilterInputStream(
+                in,
+                chunk -> chunk.endNanos() >= startNanos && chunk.startNanos() <= endNanos,
+                chunk -> {});
+    }
+
+    private static long toEpochNanos(Instant instant) {
+        return TimeUnit.SECONDS.toNanos(instant.getEpochSecond()) + instant.getNano();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return n < 0 ? -1 : Byte.toUnsignedInt(b[0]);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            if (headerPos < header.length) {
+                int n = Math.min(len, header.length - headerPos);
+                System.arraycopy(header, headerPos, b, off, n);
+                headerPos += n;
+                return n;
+            }
+            if (remaining > 0) {
+                int n = in.read(b, off, (int) Math.min(len, remaining));
+                if (n < 0) {
+                    throw new EOFException("Truncated JFR chunk");
+                }
+                remaining -= n;
+                return n;
+            }
+            if (eof || !nextChunk()) {
+                eof = true;
+                return -1;
+            }
+        }
+    }
+
+    private boolean nextChunk() throws IOException {
+        byte[] hdr = in.readNBytes(JfrChunkHeader.SIZE);
+        if (hdr.length == 0) {
+            return false;
+        }
+        JfrChunkHeader chunk = JfrChunkHeader.parse(hdr);
+        long body = chunk.size() - JfrChunkHeader.SIZE;
+        if (filter.test(chunk)) {
+            onAccept.accept(chunk);
+            header = hdr;
+            headerPos = 0;
+            remaining = body;
+        } else {
+            in.skipNBytes(body);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
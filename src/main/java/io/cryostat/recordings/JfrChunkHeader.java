@@ -0,0 +1,56 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The fixed leading fields of a JFR chunk header. A JFR file is a sequence of self-contained
+ * chunks, each beginning with this header, so a recording stream can be split, filtered, or
+ * reassembled at chunk boundaries without parsing event data.
+ */
+public record JfrChunkHeader(
+        int majorVersion, int minorVersion, long size, long startNanos, long durationNanos) {
+
+    /** Number of header bytes needed to {@link #parse(byte[])} a chunk header. */
+    public static final int SIZE = 48;
+
+    private static final int MAGIC = 0x464c5200; // "FLR\0"
+
+    public long endNanos() {
+        return startNanos + durationNanos;
+    }
+
+    public static JfrChunkHeader parse(byte[] header) throws IOException {
+        if (header.length < SIZE) {
+            throw new IOException("Truncated JFR chunk header");
+        }
+        ByteBuffer buf = ByteBuffer.wrap(header);
+        if (buf.getInt(0) != MAGIC) {
+            throw new IOException("Invalid JFR chunk header magic");
+        }
+        int major = Short.toUnsignedInt(buf.getShort(4));
+        int minor = Short.toUnsignedInt(buf.getShort(6));
+        long size = buf.getLong(8);
+        long startNanos = buf.getLong(32);
+        long durationNanos = buf.getLong(40);
+        if (size < SIZE) {
+            throw new IOException(String.format("Invalid JFR chunk size %d", size));
+        }
+        return new JfrChunkHeader(major, minor, size, startNanos, durationNanos);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntity;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.PositiveOrZero;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+/**
+ * Progress of an in-flight resumable multipart upload. Parts are recorded here in order as they
+ * complete, so that if the upload fails part way through it can later be resumed from the last
+ * contiguous completed part which ends at a JFR chunk boundary rather than restarting from the
+ * beginning. The checkpoint is removed when the upload is completed or aborted.
+ */
+@Entity
+@Table(
+        uniqueConstraints = {@UniqueConstraint(columnNames = {"bucket", "objectKey"})},
+        indexes = {@Index(columnList = "recordingId")})
+public class MultipartUploadCheckpoint extends PanacheEntity {
+
+    @Column(nullable = false)
+    @NotBlank
+    public String bucket;
+
+    @Column(nullable = false)
+    @NotBlank
+    public String objectKey;
+
+    @Column(nullable = false)
+    @NotBlank
+    public String uploadId;
+
+    /** ID of the {@link ActiveRecording} being uploaded, if any. */
+    public Long recordingId;
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @NotNull
+    public List<UploadedPart> parts = new ArrayList<>();
+
+    /** Total stored size of all {@link #parts}. */
+    @PositiveOrZero public long committedBytes;
+
+    @NotNull public Instant created;
+
+    @NotNull public Instant updated;
+
+    public static Optional<MultipartUploadCheckpoint> getByKey(String bucket, String objectKey) {
+        return find("bucket = ?1 and objectKey = ?2", bucket, objectKey).firstResultOptional();
+    }
+
+    public static Optional<MultipartUploadCheckpoint> getByRecordingId(long recordingId) {
+        return find("recordingId", recordingId).firstResultOptional();
+    }
+
+    public static List<MultipartUploadCheckpoint> listUpdatedBefore(Instant instant) {
+        return list("updated < ?1", instant);
+    }
+
+    /**
+     * @param boundary the source position at the end of this part, if the part ends at a JFR chunk
+     *     boundary and so can be resumed after, or null
+     */
+    public record UploadedPart(int partNumber, String eTag, long size, ChunkBoundary boundary) {}
+
+    /**
+     * @param lastChunkStartNanos start time of the last JFR chunk before the boundary
+     * @param sourceBytes number of unencoded source bytes before the boundary
+     */
+    public record ChunkBoundary(long lastChunkStartNanos, long sourceBytes) {}
+}
@@ -0,0 +1,582 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import io.cryostat.ConfigProperties;
+import io.cryostat.core.sys.Clock;
+import io.cryostat.recordings.MultipartUploadCheckpoint.ChunkBoundary;
+import io.cryostat.recordings.MultipartUploadCheckpoint.UploadedPart;
+import io.cryostat.util.HttpMimeType;
+
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import jakarta.transaction.Transactional.TxType;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+/**
+ * Uploads an {@link InputStream} of unknown length to S3 storage as a multipart upload. Reading
+ * from the source stream is pipelined with part uploads: while up to {@link
+ * ConfigProperties#STORAGE_UPLOADS_CONCURRENCY} parts are in flight to storage, the next part is
+ * already being read from the source. Once the concurrency limit is reached, reading blocks until
+ * an in-flight part completes, so each upload holds at most concurrency + 1 part buffers. Part
+ * buffers are drawn from the shared {@link ChunkBufferPool}.
+ *
+ * <p>Each part is retried independently up to {@link ConfigProperties#STORAGE_UPLOADS_PART_RETRIES}
+ * times. Resumable uploads of JFR data additionally split their parts at JFR chunk boundaries and
+ * record their completed parts in a {@link MultipartUploadCheckpoint}. Rather than being aborted on
+ * failure they are left open, so that a later attempt with the same object key can re-open the
+ * recording from the chunk after the last stored boundary and continue from the next part, without
+ * transferring the stored chunks from the target again. Checkpoints which are not resumed within
+ * {@link ConfigProperties#STORAGE_UPLOADS_CHECKPOINT_TTL} are aborted.
+ */
+@ApplicationScoped
+public class MultipartUploader {
+
+    static final int PART_SIZE = ChunkBufferPool.CHUNK_SIZE;
+    // S3 API limits
+    static final int MAX_PARTS = 10_000;
+    static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+    private static final int MAX_EMPTY_READS = 30;
+    private static final Duration PART_RETRY_BACKOFF = Duration.ofSeconds(1);
+
+    @Inject S3Client storage;
+    @Inject ScheduledExecutorService scheduler;
+    @Inject Clock clock;
+    @Inject Logger logger;
+
+    @ConfigProperty(name = ConfigProperties.STORAGE_UPLOADS_PART_RETRIES)
+    int partRetries;
+
+    @ConfigProperty(name = ConfigProperties.STORAGE_UPLOADS_CHECKPOINT_TTL)
+    Duration checkpointTtl;
+
+    private final int concurrency;
+    private final ChunkBufferPool buffers;
+    private final ExecutorService executor;
+    private final Set<String> activeKeys = ConcurrentHashMap.newKeySet();
+
+    MultipartUploader(
+            @ConfigProperty(name = ConfigProperties.STORAGE_UPLOADS_CONCURRENCY) int concurrency,
+            ChunkBufferPool buffers) {
+        this.concurrency = Math.max(1, concurrency);
+        this.buffers = buffers;
+        // each upload has at most its concurrency limit of parts in flight, and every in-flight
+        // part holds a pooled buffer, so across all uploads there are never more parts in flight
+        // than the pool has buffers and a submitted part never waits for a thread
+        this.executor =
+                Executors.newFixedThreadPool(
+                        buffers.capacity(),
+                        r -> {
+                            var t = new Thread(r, "multipart-upload");
+                            t.setDaemon(true);
+                            return t;
+                        });
+    }
+
+    void onStart(@Observes StartupEvent evt) {
+        long period = Math.max(1, checkpointTtl.toMinutes() / 4);
+        scheduler.scheduleAtFixedRate(
+                () -> {
+                    try {
+                        abortAbandonedUploads();
+                    } catch (Exception e) {
+                        logger.error("Failed to abort abandoned multipart uploads", e);
+                    }
+                },
+                period,
+                period,
+                TimeUnit.MINUTES);
+    }
+
+    void onStop(@Observes ShutdownEvent evt) {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Create a multipart upload, transfer the full contents of the stream, and complete the upload.
+     * If the upload fails then the multipart upload is aborted. The stream is not closed.
+     *
+     * @return the total number of bytes uploaded
+     */
+    public long upload(CreateMultipartUploadRequest request, InputStream stream) throws Exception {
+        return doUpload(request, from -> new StreamPartSource(stream), null);
+    }
+
+    /**
+     * Upload a JFR recording, encoded with the given codec. Progress is checkpointed and the
+     * multipart upload is left open if it fails. If a checkpoint already exists for the requested
+     * bucket and key then the upload is resumed from the last stored part which ends at a JFR chunk
+     * boundary: the source is re-opened from the chunk after that boundary, and uploading continues
+     * from the next part.
+     *
+     * @param recordingId the ID of the {@link ActiveRecording} the source is read from
+     * @return the total number of unencoded bytes uploaded, including those from previous attempts
+     */
+    public long uploadResumable(
+            CreateMultipartUploadRequest request,
+            StorageCodec codec,
+            ResumableSource source,
+            long recordingId)
+            throws Exception {
+        return doUpload(
+                request,
+                from -> new ChunkAlignedPartReader(source.open(from), codec, MIN_PART_SIZE, from),
+                recordingId);
+    }
+
+    /**
+     * Find a checkpointed upload of the given recording which can be resumed, ie. one which is not
+     * currently in progress.
+     */
+    @Transactional
+    public Optional<MultipartUploadCheckpoint> findResumableCheckpoint(long recordingId) {
+        return MultipartUploadCheckpoint.getByRecordingId(recordingId)
+                .filter(cp -> !activeKeys.contains(activeKey(cp.bucket, cp.objectKey)));
+    }
+
+    @Transactional
+    public boolean hasCheckpoint(String bucket, String key) {
+        return MultipartUploadCheckpoint.getByKey(bucket, key).isPresent();
+    }
+
+    private long doUpload(
+            CreateMultipartUploadRequest request, PartSourceFactory sources, Long recordingId)
+            throws Exception {
+        String bucket = request.bucket();
+        String key = request.key();
+        boolean resumable = recordingId != null;
+        if (!activeKeys.add(activeKey(bucket, key))) {
+            throw new IllegalStateException(
+                    String.format("An upload to %s/%s is already in progress", bucket, key));
+        }
+        try {
+            return transfer(request, sources, recordingId, resumable);
+        } finally {
+            activeKeys.remove(activeKey(bucket, key));
+        }
+    }
+
+    private long transfer(
+            CreateMultipartUploadRequest request,
+            PartSourceFactory sources,
+            Long recordingId,
+            boolean resumable)
+            throws Exception {
+        String bucket = request.bucket();
+        String key = request.key();
+        List<UploadedPart> committed = new ArrayList<>();
+        String uploadId;
+        long accum = 0;
+        ChunkBoundary from = null;
+        Optional<MultipartUploadCheckpoint> checkpoint =
+                resumable ? findCheckpoint(bucket, key) : Optional.empty();
+        if (checkpoint.isPresent()) {
+            uploadId = checkpoint.get().uploadId;
+            // resume after the last stored part which ends at a chunk boundary. Any parts stored
+            // after it are uploaded again, replacing the stored ones
+            var parts = checkpoint.get().parts;
+            int resumeAfter = 0;
+            for (int i = 0; i < parts.size() && parts.get(i).partNumber() == i + 1; i++) {
+                if (parts.get(i).boundary() != null) {
+                    resumeAfter = i + 1;
+                }
+            }
+            committed.addAll(parts.subList(0, resumeAfter));
+            accum = committed.stream().mapToLong(UploadedPart::size).sum();
+            from = resumeAfter > 0 ? committed.get(resumeAfter - 1).boundary() : null;
+            logger.infov(
+                    "Resuming upload to {0} from part {1} ({2} source bytes)",
+                    key, committed.size() + 1, from == null ? 0 : from.sourceBytes());
+        } else {
+            uploadId = storage.createMultipartUpload(request).uploadId();
+            if (resumable) {
+                createCheckpoint(bucket, key, uploadId, recordingId);
+            }
+        }
+
+        Semaphore permits = new Semaphore(concurrency);
+        List<Future<UploadedPart>> parts = new ArrayList<>();
+        int checked = 0;
+        try (PartSource source = sources.open(from)) {
+            for (int partNumber = committed.size() + 1; ; partNumber++) {
+                ByteBuffer buf = buffers.acquire();
+                boolean submitted = false;
+                try {
+                    Part part = source.next(buf);
+                    // always upload at least one part, even if empty, so that the upload can
+                    // complete
+                    if (part.last() && buf.position() == 0 && partNumber > 1) {
+                        break;
+                    }
+                    if (partNumber > MAX_PARTS) {
+                        throw new IndexOutOfBoundsException("Exceeded S3 maximum part count");
+                    }
+                    accum += buf.position();
+                    buf.flip();
+
+                    permits.acquire();
+                    // fail fast rather than continuing to read from the source after a part
+                    // failed, and checkpoint the parts which have completed in order so far
+                    int before = checked;
+                    while (checked < parts.size() && parts.get(checked).isDone()) {
+                        committed.add(getPart(parts.get(checked)));
+                        checked++;
+                    }
+                    if (resumable && checked > before) {
+                        updateCheckpoint(bucket, key, committed);
+                    }
+                    int n = partNumber;
+                    parts.add(
+                            executor.submit(
+                                    () -> {
+                                        try {
+                                            return uploadPart(
+                                                    bucket, key, uploadId, n, buf, part.boundary());
+                                        } finally {
+                                            buffers.release(buf);
+                                            permits.release();
+                                        }
+                                    }));
+                    submitted = true;
+                    if (part.last()) {
+                        break;
+                    }
+                } finally {
+                    if (!submitted) {
+                        buffers.release(buf);
+                    }
+                }
+            }
+
+            while (checked < parts.size()) {
+                committed.add(getPart(parts.get(checked)));
+                checked++;
+            }
+            storage.completeMultipartUpload(
+                    CompleteMultipartUploadRequest.builder()
+                            .bucket(bucket)
+                            .key(key)
+                            .uploadId(uploadId)
+                            .multipartUpload(
+                                    CompletedMultipartUpload.builder()
+                                            .parts(
+                                                    committed.stream()
+                                                            .map(
+                                                                    p ->
+                                                                            CompletedPart.builder()
+                                                                                    .partNumber(
+                                                                                            p
+                                                                                                    .partNumber())
+                                                                                    .eTag(p.eTag())
+                                                                                    .build())
+                                                            .toList())
+                                            .build())
+                            .build());
+            if (resumable) {
+                deleteCheckpoint(bucket, key);
+            }
+            logger.infov(
+                    "Completed upload of {0} chunks ({1} bytes) to {2}",
+                    committed.size(), accum, key);
+            return source.sourceBytes();
+        } catch (Exception e) {
+            // let in-flight parts finish so that their buffers are returned to the pool and so
+            // that no part is still uploading when the multipart upload is aborted or checkpointed
+            boolean contiguous = true;
+            for (; checked < parts.size(); checked++) {
+                try {
+                    var part = getPart(parts.get(checked));
+                    if (contiguous) {
+                        committed.add(part);
+                    }
+                } catch (Exception ignored) {
+                    contiguous = false;
+                }
+            }
+            if (resumable && !(e instanceof IndexOutOfBoundsException)) {
+                boolean retained = false;
+                try {
+                    updateCheckpoint(bucket, key, committed);
+                    retained = true;
+                } catch (Exception e2) {
+                    logger.error("Could not checkpoint S3 multipart upload", e2);
+                }
+                if (retained) {
+                    logger.warnv(
+                            "Upload to {0} failed after {1} committed parts, retaining for resume",
+                            key, committed.size());
+                    throw e;
+                }
+            }
+            abort(bucket, key, uploadId);
+            if (resumable) {
+                deleteCheckpoint(bucket, key);
+            }
+            throw e;
+        }
+    }
+
+    private UploadedPart uploadPart(
+            String bucket,
+            String key,
+            String uploadId,
+            int partNumber,
+            ByteBuffer buf,
+            ChunkBoundary boundary)
+            throws InterruptedException {
+        int length = buf.remaining();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                logger.debugv("Writing chunk {0} of {1} bytes", partNumber, length);
+                String eTag =
+                        storage.uploadPart(
+                                        UploadPartRequest.builder()
+                                                .bucket(bucket)
+                                                .key(key)
+                                                .uploadId(uploadId)
+                                                .partNumber(partNumber)
+                                                .contentLength(Long.valueOf(length))
+                                                .build(),
+                                        RequestBody.fromContentProvider(
+                                                () ->
+                                                        new ByteBufferBackedInputStream(
+                                                                buf.duplicate()),
+                                                length,
+                                                HttpMimeType.OCTET_STREAM.mime()))
+                                .eTag();
+                return new UploadedPart(partNumber, eTag, length, boundary);
+            } catch (SdkException e) {
+                if (attempt >= partRetries || !isRetryable(e)) {
+                    throw e;
+                }
+                logger.warnv(
+                        "Upload of chunk {0} to {1} failed, retrying ({2} of {3})",
+                        partNumber, key, attempt + 1, partRetries);
+                Thread.sleep(PART_RETRY_BACKOFF.toMillis() * (attempt + 1));
+            }
+        }
+    }
+
+    private static boolean isRetryable(SdkException e) {
+        if (e instanceof S3Exception s3e) {
+            int status = s3e.statusCode();
+            return status >= 500 || status == 408 || status == 429;
+        }
+        return true;
+    }
+
+    private void abort(String bucket, String key, String uploadId) {
+        try {
+            storage.abortMultipartUpload(
+                    AbortMultipartUploadRequest.builder()
+                            .bucket(bucket)
+                            .key(key)
+                            .uploadId(uploadId)
+                            .build());
+        } catch (Exception e) {
+            logger.error("Could not abort S3 multipart upload", e);
+        }
+    }
+
+    void abortAbandonedUploads() {
+        for (var checkpoint : listAbandonedCheckpoints()) {
+            if (activeKeys.contains(activeKey(checkpoint.bucket, checkpoint.objectKey))) {
+                continue;
+            }
+            logger.infov(
+                    "Aborting abandoned multipart upload to {0}/{1}",
+                    checkpoint.bucket, checkpoint.objectKey);
+            abort(checkpoint.bucket, checkpoint.objectKey, checkpoint.uploadId);
+            deleteCheckpoint(checkpoint.bucket, checkpoint.objectKey);
+        }
+    }
+
+    @Transactional
+    List<MultipartUploadCheckpoint> listAbandonedCheckpoints() {
+        return MultipartUploadCheckpoint.listUpdatedBefore(clock.now().minus(checkpointTtl));
+    }
+
+    @Transactional
+    Optional<MultipartUploadCheckpoint> findCheckpoint(String bucket, String key) {
+        return MultipartUploadCheckpoint.getByKey(bucket, key);
+    }
+
+    // checkpoint writes must commit independently of any transaction the caller is in, otherwise
+    // they would be rolled back along with it when the upload fails
+    @Transactional(TxType.REQUIRES_NEW)
+    void createCheckpoint(String bucket, String key, String uploadId, Long recordingId) {
+        var checkpoint = new MultipartUploadCheckpoint();
+        checkpoint.bucket = bucket;
+        checkpoint.objectKey = key;
+        checkpoint.uploadId = uploadId;
+        checkpoint.recordingId = recordingId;
+        checkpoint.created = clock.now();
+        checkpoint.updated = checkpoint.created;
+        checkpoint.persist();
+    }
+
+    @Transactional(TxType.REQUIRES_NEW)
+    void updateCheckpoint(String bucket, String key, List<UploadedPart> parts) {
+        MultipartUploadCheckpoint.getByKey(bucket, key)
+                .ifPresent(
+                        checkpoint -> {
+                            checkpoint.parts = new ArrayList<>(parts);
+                            checkpoint.committedBytes =
+                                    parts.stream().mapToLong(UploadedPart::size).sum();
+                            checkpoint.updated = clock.now();
+                            checkpoint.persist();
+                        });
+    }
+
+    @Transactional(TxType.REQUIRES_NEW)
+    void deleteCheckpoint(String bucket, String key) {
+        MultipartUploadCheckpoint.delete("bucket = ?1 and objectKey = ?2", bucket, key);
+    }
+
+    private static String activeKey(String bucket, String key) {
+        return bucket + "/" + key;
+    }
+
+    private static UploadedPart getPart(Future<UploadedPart> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof Exception e) {
+                throw e;
+            }
+            throw ee;
+        }
+    }
+
+    /** A source of JFR data which can be re-read from any chunk. */
+    @FunctionalInterface
+    public interface ResumableSource {
+        /**
+         * Open the recording from the first chunk after the given boundary, or from its beginning
+         * if the boundary is null. Chunks starting at or before the boundary's last chunk must not
+         * be included.
+         */
+        InputStream open(ChunkBoundary from) throws Exception;
+    }
+
+    @FunctionalInterface
+    interface PartSourceFactory {
+        PartSource open(ChunkBoundary from) throws Exception;
+    }
+
+    interface PartSource extends Closeable {
+        /** Fill the buffer with the contents of the next part. */
+        Part next(ByteBuffer buf) throws IOException;
+
+        /** The number of unencoded source bytes consumed so far, including any resumed from. */
+        long sourceBytes();
+    }
+
+    /**
+     * @param last whether this is the final part of the upload
+     * @param boundary the source position at the end of the part if it can be resumed after, or
+     *     null
+     */
+    record Part(boolean last, ChunkBoundary boundary) {}
+
+    /** Parts the stream into full buffers. The stream is not closed. */
+    private class StreamPartSource implements PartSource {
+        private final ReadableByteChannel ch;
+        private long bytes;
+
+        StreamPartSource(InputStream stream) {
+            this.ch = Channels.newChannel(stream);
+        }
+
+        @Override
+        public Part next(ByteBuffer buf) throws IOException {
+            int read = readFully(ch, buf);
+            bytes += read;
+            return new Part(buf.hasRemaining(), null);
+        }
+
+        @Override
+        public long sourceBytes() {
+            return bytes;
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    /**
+     * Read from the channel until the buffer is full or the end of stream is reached. S3 requires
+     * every part except the last to be at least 5MiB, so a short read from the source must not
+     * produce a short part.
+     *
+     * @return the number of bytes read into the buffer
+     */
+    private int readFully(ReadableByteChannel ch, ByteBuffer buf) throws IOException {
+        int emptyReads = 0;
+        while (buf.hasRemaining()) {
+            int read = ch.read(buf);
+            if (read < 0) {
+                break;
+            }
+            if (read == 0) {
+                if (++emptyReads >= MAX_EMPTY_READS) {
+                    throw new IOException(
+                            String.format("No bytes read after %d retry attempts", emptyReads));
+                }
+                logger.info("No bytes read, retrying...");
+            } else {
+                emptyReads = 0;
+            }
+        }
+        return buf.position();
+    }
+}
@@ -17,33 +17,41 @@ package io.cryostat.recordings;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
-import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLDecoder;
-import java.nio.ByteBuffer;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.openjdk.jmc.common.unit.IConstrainedMap;
+import org.openjdk.jmc.common.unit.IQuantity;
 import org.openjdk.jmc.flightrecorder.configuration.events.EventOptionID;
 import org.openjdk.jmc.flightrecorder.configuration.recording.RecordingOptionsBuilder;
 import org.openjdk.jmc.rjmx.services.jfr.IEventTypeInfo;
@@ -51,6 +59,7 @@ import org.openjdk.jmc.rjmx.services.jfr.IRecordingDescriptor;
 
 import io.cryostat.ConfigProperties;
 import io.cryostat.Producers;
+import io.cryostat.ProgressInputStream;
 import io.cryostat.core.EventOptionsBuilder;
 import io.cryostat.core.FlightRecorderException;
 import io.cryostat.core.net.JFRConnection;
@@ -63,9 +72,14 @@ import io.cryostat.events.S3TemplateService;
 import io.cryostat.events.TargetTemplateService;
 import io.cryostat.recordings.ActiveRecording.Listener.ActiveRecordingEvent;
 import io.cryostat.recordings.ActiveRecording.Listener.ArchivedRecordingEvent;
+import io.cryostat.recordings.Recordings.ArchiveKey;
 import io.cryostat.recordings.Recordings.ArchivedRecording;
+import io.cryostat.recordings.Recordings.ArchivedRecordingBatch;
+import io.cryostat.recordings.Recordings.BulkArchiveDeleteError;
+import io.cryostat.recordings.Recordings.BulkArchiveDeleteResult;
 import io.cryostat.recordings.Recordings.LinkedRecordingDescriptor;
 import io.cryostat.recordings.Recordings.Metadata;
+import io.cryostat.targets.DescriptorCachingFlightRecorderService;
 import io.cryostat.targets.Target;
 import io.cryostat.targets.TargetConnectionManager;
 import io.cryostat.util.EntityExistsException;
@@ -73,53 +87,71 @@ import io.cryostat.util.HttpMimeType;
 import io.cryostat.ws.MessagingServer;
 import io.cryostat.ws.Notification;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.quarkus.narayana.jta.QuarkusTransaction;
 import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
+import io.vertx.core.http.HttpHeaders;
 import io.vertx.ext.web.handler.HttpException;
+import io.vertx.mutiny.core.buffer.Buffer;
 import io.vertx.mutiny.core.eventbus.EventBus;
 import io.vertx.mutiny.ext.web.client.HttpResponse;
 import io.vertx.mutiny.ext.web.client.WebClient;
-import io.vertx.mutiny.ext.web.multipart.MultipartForm;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.event.Observes;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
+import jakarta.transaction.Transactional;
 import jakarta.ws.rs.BadRequestException;
 import jakarta.ws.rs.ServerErrorException;
 import jdk.jfr.RecordingState;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.validator.routines.UrlValidator;
 import org.apache.hc.core5.http.HttpStatus;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
-import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
-import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
-import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
-import software.amazon.awssdk.services.s3.model.CompletedPart;
 import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.Delete;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectTaggingRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
 import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectTaggingRequest;
 import software.amazon.awssdk.services.s3.model.S3Object;
 import software.amazon.awssdk.services.s3.model.Tag;
 import software.amazon.awssdk.services.s3.model.Tagging;
-import software.amazon.awssdk.services.s3.model.UploadPartRequest;
 
 @ApplicationScoped
 public class RecordingHelper {
 
     public static final String JFR_MIME = HttpMimeType.JFR.mime();
+    public static final String DELTA_START_LABEL = "deltaStartNanos";
+    public static final String DELTA_END_LABEL = "deltaEndNanos";
 
     private static final Pattern TEMPLATE_PATTERN =
             Pattern.compile("^template=([\\w]+)(?:,type=([\\w]+))?$");
     public static final String DATASOURCE_FILENAME = "cryostat-analysis.jfr";
+    // S3 DeleteObjects accepts at most this many keys per request
+    public static final int DELETE_OBJECTS_BATCH_SIZE = 1000;
+    private static final int RETENTION_PAGE_SIZE = 100;
+    private static final int INDEX_PRUNE_PAGE_SIZE = 500;
 
     @Inject S3Client storage;
 
@@ -128,6 +160,11 @@ public class RecordingHelper {
     @Inject Clock clock;
     @Inject TargetConnectionManager connectionManager;
     @Inject RemoteRecordingInputStreamFactory remoteRecordingStreamFactory;
+    @Inject MultipartUploader uploader;
+    @Inject ChunkBufferPool buffers;
+    @Inject ChunkStore chunkStore;
+    @Inject ArchiveDiskCache archiveDiskCache;
+    @Inject ObjectMapper mapper;
     @Inject RecordingOptionsBuilderFactory recordingOptionsBuilderFactory;
     @Inject EventOptionsBuilder.Factory eventOptionsBuilderFactory;
     @Inject TargetTemplateService.Factory targetTemplateServiceFactory;
@@ -138,6 +175,8 @@ public class RecordingHelper {
     Base64 base64Url;
 
     @Inject EventBus bus;
+    @Inject ExecutorService worker;
+    @Inject ScheduledExecutorService scheduler;
     @Inject Logger logger;
 
     @ConfigProperty(name = ConfigProperties.AWS_BUCKET_NAME_ARCHIVES)
@@ -146,15 +185,34 @@ public class RecordingHelper {
     @ConfigProperty(name = ConfigProperties.AWS_OBJECT_EXPIRATION_LABELS)
     String objectExpirationLabel;
 
+    @ConfigProperty(name = ConfigProperties.STORAGE_ARCHIVES_CODEC)
+    StorageCodec archiveCodec;
+
+    @ConfigProperty(name = ConfigProperties.STORAGE_UPLOADS_RESUME_ATTEMPTS)
+    int resumeAttempts;
+
     @ConfigProperty(name = ConfigProperties.CONNECTIONS_FAILED_TIMEOUT)
     Duration connectionFailedTimeout;
 
+    @ConfigProperty(name = ConfigProperties.RECORDINGS_SNAPSHOT_COALESCE_WINDOW)
+    Duration snapshotCoalesceWindow;
+
     @ConfigProperty(name = ConfigProperties.GRAFANA_DATASOURCE_URL)
     Optional<String> grafanaDatasourceURLProperty;
 
     CompletableFuture<URL> grafanaDatasourceURL = new CompletableFuture<>();
 
+    private final Map<Long, SharedSnapshot> snapshots = new ConcurrentHashMap<>();
+
     void onStart(@Observes StartupEvent evt) {
+        worker.submit(
+                () -> {
+                    try {
+                        reconcileArchivedRecordingIndex();
+                    } catch (Exception e) {
+                        logger.error("Failed to reconcile archived recording index", e);
+                    }
+                });
         if (grafanaDatasourceURLProperty.isEmpty()) {
             grafanaDatasourceURL.completeExceptionally(
                     new HttpException(
@@ -239,6 +297,59 @@ public class RecordingHelper {
         return recording;
     }
 
+    /**
+     * Create a snapshot of the target's recordings, coalescing concurrent requests. Requests for a
+     * target made while a snapshot of it is being created, or within {@link
+     * ConfigProperties#RECORDINGS_SNAPSHOT_COALESCE_WINDOW} after one was created, share that
+     * snapshot instead of creating another on the target. Failures are not shared with later
+     * requests.
+     *
+     * <p>The snapshot is created when the first of the sharing requests subscribes, as part of that
+     * request's chain. It is persisted in the caller's transaction if the task runs on the caller's
+     * thread, or else in a transaction of its own.
+     */
+    public Uni<LinkedRecordingDescriptor> createSnapshot(Target target) {
+        return snapshots
+                .compute(
+                        target.id,
+                        (id, existing) ->
+                                existing != null && existing.isShareable(clock.now())
+                                        ? existing
+                                        : new SharedSnapshot())
+                .result(shared -> createSharedSnapshot(target, shared));
+    }
+
+    private Uni<LinkedRecordingDescriptor> createSharedSnapshot(
+            Target target, SharedSnapshot shared) {
+        long targetId = target.id;
+        return connectionManager
+                .executeConnectedTaskUni(
+                        target,
+                        connection ->
+                                QuarkusTransaction.joiningExisting()
+                                        .call(
+                                                () -> {
+                                                    var managed = Target.getTargetById(targetId);
+                                                    return toExternalForm(
+                                                            createSnapshot(managed, connection));
+                                                }))
+                .onItem()
+                .invoke(
+                        descriptor -> {
+                            shared.shareableUntil = clock.now().plus(snapshotCoalesceWindow);
+                            scheduler.schedule(
+                                    () -> snapshots.remove(targetId, shared),
+                                    snapshotCoalesceWindow.toMillis(),
+                                    TimeUnit.MILLISECONDS);
+                        })
+                .onFailure()
+                .invoke(
+                        t -> {
+                            shared.failed = true;
+                            snapshots.remove(targetId, shared);
+                        });
+    }
+
     public ActiveRecording createSnapshot(Target target, JFRConnection connection)
             throws Exception {
         IRecordingDescriptor desc = connection.getService().getSnapshotRecording();
@@ -261,12 +372,10 @@ public class RecordingHelper {
 
         desc = updatedDescriptor.get();
 
-        try (InputStream snapshot = remoteRecordingStreamFactory.open(connection, target, desc)) {
-            if (!snapshotIsReadable(target, snapshot)) {
-                connection.getService().close(desc);
-                throw new SnapshotCreationException(
-                        "Snapshot was not readable - are there any source recordings?");
-            }
+        if (!snapshotIsReadable(target, connection, desc)) {
+            connection.getService().close(desc);
+            throw new SnapshotCreationException(
+                    "Snapshot was not readable - are there any source recordings?");
         }
 
         ActiveRecording recording =
@@ -296,13 +405,24 @@ public class RecordingHelper {
         return recording;
     }
 
-    private boolean snapshotIsReadable(Target target, InputStream snapshot) throws IOException {
-        if (!connectionManager.markConnectionInUse(target)) {
-            throw new IOException(
-                    "Target connection unexpectedly closed while streaming recording");
+    /**
+     * A snapshot taken while the target has no recordings contains no data, which is visible from
+     * its descriptor's data time bounds without reading the snapshot. The content is only probed if
+     * the descriptor does not report those bounds.
+     */
+    private boolean snapshotIsReadable(
+            Target target, JFRConnection connection, IRecordingDescriptor desc) throws Exception {
+        IQuantity dataStart = desc.getDataStartTime();
+        IQuantity dataEnd = desc.getDataEndTime();
+        if (dataStart != null && dataEnd != null) {
+            return dataEnd.compareTo(dataStart) > 0;
         }
 
-        try {
+        try (InputStream snapshot = remoteRecordingStreamFactory.open(connection, target, desc)) {
+            if (!connectionManager.markConnectionInUse(target)) {
+                throw new IOException(
+                        "Target connection unexpectedly closed while streaming recording");
+            }
             return snapshot.read() != -1;
         } catch (IOException e) {
             return false;
@@ -444,7 +564,11 @@ public class RecordingHelper {
     static Optional<IRecordingDescriptor> getDescriptorById(
             JFRConnection connection, long remoteId) {
         try {
-            return connection.getService().getAvailableRecordings().stream()
+            var service = connection.getService();
+            if (service instanceof DescriptorCachingFlightRecorderService cachingService) {
+                return cachingService.getRecordingById(remoteId);
+            }
+            return service.getAvailableRecordings().stream()
                     .filter(r -> remoteId == r.getId())
                     .findFirst();
         } catch (Exception e) {
@@ -460,7 +584,11 @@ public class RecordingHelper {
     public static Optional<IRecordingDescriptor> getDescriptorByName(
             JFRConnection connection, String recordingName) {
         try {
-            return connection.getService().getAvailableRecordings().stream()
+            var service = connection.getService();
+            if (service instanceof DescriptorCachingFlightRecorderService cachingService) {
+                return cachingService.getRecordingByName(recordingName);
+            }
+            return service.getAvailableRecordings().stream()
                     .filter(r -> Objects.equals(r.getName(), recordingName))
                     .findFirst();
         } catch (Exception e) {
@@ -484,25 +612,355 @@ public class RecordingHelper {
         }
     }
 
-    public List<S3Object> listArchivedRecordingObjects() {
-        return listArchivedRecordingObjects(null);
+    public List<ArchivedRecordingEntry> listArchivedRecordings() {
+        return ArchivedRecordingEntry.listRetained();
     }
 
-    public List<S3Object> listArchivedRecordingObjects(String jvmId) {
-        var builder = ListObjectsV2Request.builder().bucket(archiveBucket);
-        if (StringUtils.isNotBlank(jvmId)) {
-            builder = builder.prefix(jvmId);
+    public List<ArchivedRecordingEntry> listArchivedRecordings(String jvmId) {
+        if (StringUtils.isBlank(jvmId)) {
+            return listArchivedRecordings();
         }
-        return storage.listObjectsV2(builder.build()).contents().stream()
+        return ArchivedRecordingEntry.listRetained(jvmId);
+    }
+
+    @Transactional
+    public List<ArchivedRecordingEntry> listArchivedRecordingsPage(
+            String jvmId, long afterId, int limit) {
+        if (StringUtils.isBlank(jvmId)) {
+            return ArchivedRecordingEntry.listRetainedPage(afterId, limit);
+        }
+        return ArchivedRecordingEntry.listRetainedPage(jvmId, afterId, limit);
+    }
+
+    @Transactional
+    public List<ArchivedRecordingEntry> listArchivedRecordingsPageByJvmId(
+            String afterJvmId, long afterId, int limit) {
+        return ArchivedRecordingEntry.listRetainedPageByJvmId(afterJvmId, afterId, limit);
+    }
+
+    /**
+     * Archives, retained or transient, matching all of the given criteria. Null or empty criteria
+     * are ignored.
+     */
+    @Transactional
+    public List<ArchivedRecordingEntry> listArchivedRecordings(
+            String jvmId, Instant archivedBefore, Map<String, String> labels) {
+        return ArchivedRecordingEntry.listMatching(
+                        StringUtils.isBlank(jvmId) ? null : jvmId, archivedBefore)
+                .stream()
                 .filter(
-                        o -> {
-                            var metadata = getArchivedRecordingMetadata(o.key());
-                            var temporary = metadata.map(m -> m.expiry() != null).orElse(false);
-                            return !temporary;
-                        })
+                        e ->
+                                labels == null
+                                        || labels.isEmpty()
+                                        || e.metadata
+                                                .labels()
+                                                .entrySet()
+                                                .containsAll(labels.entrySet()))
                 .toList();
     }
 
+    public Optional<ArchivedRecordingEntry> getArchivedRecording(String jvmId, String filename) {
+        return ArchivedRecordingEntry.getByKey(jvmId, filename);
+    }
+
+    @Transactional
+    public ArchivedRecordingEntry indexArchivedRecording(
+            String jvmId, String filename, long size, Instant archivedTime, Metadata metadata) {
+        return indexArchivedRecording(
+                jvmId, filename, size, archivedTime, metadata, StorageCodec.IDENTITY);
+    }
+
+    @Transactional
+    public ArchivedRecordingEntry indexArchivedRecording(
+            String jvmId,
+            String filename,
+            long size,
+            Instant archivedTime,
+            Metadata metadata,
+            StorageCodec codec) {
+        return indexArchivedRecording(jvmId, filename, size, archivedTime, metadata, codec, null);
+    }
+
+    /**
+     * @param chunks the chunks making up an archive stored as a {@link ChunkStore} manifest, or
+     *     null. The index entry takes ownership of the caller's references to these chunks.
+     */
+    @Transactional
+    public ArchivedRecordingEntry indexArchivedRecording(
+            String jvmId,
+            String filename,
+            long size,
+            Instant archivedTime,
+            Metadata metadata,
+            StorageCodec codec,
+            List<ChunkStore.ChunkRef> chunks) {
+        var entry =
+                ArchivedRecordingEntry.getByKey(jvmId, filename)
+                        .orElseGet(ArchivedRecordingEntry::new);
+        boolean wasRetained = entry.isPersistent() && !entry.isTransient();
+        long previousSize = entry.size;
+        long previousArchivedTime = entry.archivedTime;
+        entry.jvmId = jvmId;
+        entry.filename = filename;
+        entry.size = size;
+        entry.archivedTime = archivedTime.getEpochSecond();
+        entry.expiry = metadata.expiry();
+        entry.metadata = new Metadata(metadata);
+        entry.codec = codec.isIdentity() ? null : codec.id();
+        // the ETag of a newly written object is not known here, so it is recorded on the next
+        // reconciliation
+        entry.storageETag = null;
+        if (entry.isChunked()) {
+            chunkStore.release(entry.chunks);
+        }
+        entry.chunks = chunks;
+        entry.persist();
+        if (wasRetained) {
+            ArchivedRecordingLedger.removed(jvmId, previousSize, previousArchivedTime);
+        }
+        if (!entry.isTransient()) {
+            ArchivedRecordingLedger.added(jvmId, entry.size, entry.archivedTime);
+        }
+        return entry;
+    }
+
+    @Transactional
+    public boolean unindexArchivedRecording(String jvmId, String filename) {
+        var entry = ArchivedRecordingEntry.getByKey(jvmId, filename);
+        entry.filter(ArchivedRecordingEntry::isChunked)
+                .ifPresent(e -> chunkStore.release(e.chunks));
+        boolean deleted = ArchivedRecordingEntry.deleteByKey(jvmId, filename);
+        entry.filter(e -> deleted && !e.isTransient())
+                .ifPresent(e -> ArchivedRecordingLedger.removed(jvmId, e.size, e.archivedTime));
+        return deleted;
+    }
+
+    /**
+     * Remove the oldest retained archives of a JVM as needed to satisfy the given limits. Limits
+     * which are not positive are not applied.
+     *
+     * @param maxAge maximum archive age, in seconds
+     */
+    public void enforceRetention(String jvmId, int maxFiles, long maxBytes, long maxAge) {
+        var toRemove =
+                listRetentionOverflow(
+                        jvmId,
+                        maxFiles > 0 ? maxFiles : Long.MAX_VALUE,
+                        maxBytes > 0 ? maxBytes : Long.MAX_VALUE,
+                        maxAge > 0 ? Duration.ofSeconds(maxAge) : null);
+        if (toRemove.isEmpty()) {
+            return;
+        }
+        logger.infov("Removing {0}", toRemove);
+        deleteArchivedRecordings(toRemove)
+                .errors()
+                .forEach(
+                        err ->
+                                logger.errorv(
+                                        "Deletion failure: {0} due to {1}",
+                                        err.key(), err.message()));
+    }
+
+    /**
+     * Select the oldest retained archives of a JVM which must be removed so that it satisfies the
+     * given retention limits. At least one archive is always kept. Limits are checked against the
+     * {@link ArchivedRecordingLedger} first, so the JVM's archives are only listed when a limit is
+     * actually exceeded.
+     *
+     * @param maxAge archives older than this are expired, or null for no age limit
+     */
+    @Transactional
+    public List<ArchivedRecordingEntry> listRetentionOverflow(
+            String jvmId, long maxFiles, long maxBytes, Duration maxAge) {
+        long minArchivedTime = maxAge == null ? 0 : clock.now().minus(maxAge).getEpochSecond();
+        var ledger = ArchivedRecordingLedger.getByJvmId(jvmId);
+        if (ledger.isEmpty() || !ledger.get().exceeds(maxFiles, maxBytes, minArchivedTime)) {
+            return List.of();
+        }
+        long count = ledger.get().count;
+        long bytes = ledger.get().totalSize;
+        List<ArchivedRecordingEntry> overflow = new ArrayList<>();
+        for (int page = 0; ; page++) {
+            var entries =
+                    ArchivedRecordingEntry.listRetainedOldestPage(jvmId, page, RETENTION_PAGE_SIZE);
+            for (var entry : entries) {
+                if (count <= 1
+                        || (count <= maxFiles
+                                && bytes <= maxBytes
+                                && entry.archivedTime >= minArchivedTime)) {
+                    return overflow;
+                }
+                overflow.add(entry);
+                count--;
+                bytes -= entry.size;
+            }
+            if (entries.size() < RETENTION_PAGE_SIZE) {
+                return overflow;
+            }
+        }
+    }
+
+    /**
+     * Rebuild the archived recording index from the contents of the archives bucket. Objects whose
+     * ETag matches the one recorded on their index entry by a previous reconciliation are not
+     * re-examined, so tagging lookups are only performed for objects which have been written since,
+     * whether by this instance or another writer. Changes to an object's tags alone do not change
+     * its ETag, so they are not picked up. Index entries for objects which no longer exist in the
+     * bucket are removed, unless they were indexed after the reconciliation began.
+     */
+    public void reconcileArchivedRecordingIndex() {
+        Instant start = clock.now();
+        Set<String> seen = new HashSet<>();
+        int added = 0;
+        logger.infov("Reconciling archived recording index with bucket \"{0}\"", archiveBucket);
+        for (var page :
+                storage.listObjectsV2Paginator(
+                        ListObjectsV2Request.builder().bucket(archiveBucket).build())) {
+            page.contents().forEach(o -> seen.add(o.key().strip()));
+            added += reconcileArchivedRecordingIndexPage(page.contents());
+        }
+        long removed = pruneArchivedRecordingIndex(seen, start);
+        rebuildArchivedRecordingLedger();
+        logger.infov(
+                "Archived recording index reconciled: {0} objects, {1} indexed, {2} removed",
+                seen.size(), added, removed);
+    }
+
+    @Transactional
+    int reconcileArchivedRecordingIndexPage(List<S3Object> objects) {
+        int count = 0;
+        for (S3Object o : objects) {
+            String[] parts = o.key().strip().split("/");
+            if (parts.length != 2) {
+                logger.warnv("Ignoring unexpected archive object key: {0}", o.key());
+                continue;
+            }
+            String jvmId = parts[0];
+            String filename = parts[1];
+            var existing = ArchivedRecordingEntry.getByKey(jvmId, filename);
+            if (existing.map(e -> o.eTag() != null && o.eTag().equals(e.storageETag))
+                    .orElse(false)) {
+                continue;
+            }
+            var metadata = getArchivedRecordingMetadata(o.key());
+            if (metadata.isEmpty()) {
+                continue;
+            }
+            var objectMetadata =
+                    storage.headObject(
+                                    HeadObjectRequest.builder()
+                                            .bucket(archiveBucket)
+                                            .key(o.key())
+                                            .build())
+                            .metadata();
+            var codec = StorageCodec.fromId(objectMetadata.get(StorageCodec.METADATA_KEY));
+            if (objectMetadata.containsKey(ChunkStore.MANIFEST_METADATA_KEY)) {
+                ChunkStore.Manifest manifest;
+                try (var stream =
+                        storage.getObject(
+                                GetObjectRequest.builder()
+                                        .bucket(archiveBucket)
+                                        .key(o.key())
+                                        .build())) {
+                    manifest = mapper.readValue(stream, ChunkStore.Manifest.class);
+                } catch (IOException e) {
+                    logger.warnv(e, "Ignoring unreadable archive manifest: {0}", o.key());
+                    continue;
+                }
+                chunkStore.reference(manifest.chunks());
+                indexArchivedRecording(
+                                        jvmId,
+                                        filename,
+                                        manifest.size(),
+                                        o.lastModified(),
+                                        metadata.get(),
+                                        StorageCodec.IDENTITY,
+                                        manifest.chunks())
+                                .storageETag =
+                        o.eTag();
+            } else {
+                indexArchivedRecording(
+                                        jvmId,
+                                        filename,
+                                        o.size(),
+                                        o.lastModified(),
+                                        metadata.get(),
+                                        codec)
+                                .storageETag =
+                        o.eTag();
+            }
+            count++;
+        }
+        return count;
+    }
+
+    // the index is walked a page at a time, each in its own transaction, so that a large index is
+    // neither loaded into memory at once nor held in one long transaction
+    long pruneArchivedRecordingIndex(Set<String> storageKeys, Instant before) {
+        long count = 0;
+        long afterId = 0;
+        while (true) {
+            var page = pruneArchivedRecordingIndexPage(storageKeys, before, afterId);
+            count += page.removed();
+            if (page.lastId() < 0) {
+                return count;
+            }
+            afterId = page.lastId();
+        }
+    }
+
+    /**
+     * @return the number of entries removed, and the last ID examined or -1 if there were none
+     */
+    @Transactional
+    PrunedPage pruneArchivedRecordingIndexPage(
+            Set<String> storageKeys, Instant before, long afterId) {
+        var entries = ArchivedRecordingEntry.listPage(afterId, INDEX_PRUNE_PAGE_SIZE);
+        long removed = 0;
+        for (var entry : entries) {
+            if (storageKeys.contains(entry.storageKey())
+                    || entry.archivedTime >= before.getEpochSecond()) {
+                continue;
+            }
+            if (entry.isChunked()) {
+                chunkStore.release(entry.chunks);
+            }
+            entry.delete();
+            removed++;
+        }
+        return new PrunedPage(removed, entries.isEmpty() ? -1 : entries.get(entries.size() - 1).id);
+    }
+
+    record PrunedPage(long removed, long lastId) {}
+
+    // each ledger is recomputed in its own transaction so that uploads for one JVM only wait on
+    // the recomputation of their own ledger
+    void rebuildArchivedRecordingLedger() {
+        for (String jvmId : listArchivedRecordingLedgerJvmIds()) {
+            rebuildArchivedRecordingLedger(jvmId);
+        }
+    }
+
+    @Transactional
+    Set<String> listArchivedRecordingLedgerJvmIds() {
+        return ArchivedRecordingLedger.listJvmIds();
+    }
+
+    @Transactional
+    void rebuildArchivedRecordingLedger(String jvmId) {
+        ArchivedRecordingLedger.rebuild(jvmId);
+    }
+
+    public ArchivedRecording toExternalForm(ArchivedRecordingEntry entry) {
+        return new ArchivedRecording(
+                entry.filename,
+                downloadUrl(entry.jvmId, entry.filename),
+                reportUrl(entry.jvmId, entry.filename),
+                new Metadata(entry.metadata),
+                entry.size,
+                entry.archivedTime);
+    }
+
     public String saveRecording(ActiveRecording recording) throws Exception {
         return saveRecording(recording, null);
     }
@@ -513,131 +971,294 @@ public class RecordingHelper {
 
     public String saveRecording(ActiveRecording recording, String savename, Instant expiry)
             throws Exception {
-        // AWS object key name guidelines advise characters to avoid (% so we should not pass url
-        // encoded characters)
-        String transformedAlias =
-                URLDecoder.decode(recording.target.alias, StandardCharsets.UTF_8)
-                        .replaceAll("[\\._/]+", "-");
-        String timestamp =
-                clock.now().truncatedTo(ChronoUnit.SECONDS).toString().replaceAll("[-:]+", "");
-        String filename =
-                String.format("%s_%s_%s.jfr", transformedAlias, recording.name, timestamp);
+        return saveRecording(recording, savename, expiry, n -> {});
+    }
+
+    public String saveRecording(
+            ActiveRecording recording,
+            String savename,
+            Instant expiry,
+            Consumer<Integer> onProgress)
+            throws Exception {
+        // a failed upload is resumed by re-opening the recording from the chunk after the last
+        // one stored, so the chunks already stored are not transferred from the target again.
+        // Transient archives are not worth resuming
+        boolean resumable = expiry == null;
+        AtomicLong reported = new AtomicLong();
+        return saveRecording(
+                recording,
+                savename,
+                expiry,
+                from -> {
+                    long after = from == null ? -1 : from.lastChunkStartNanos();
+                    InputStream stream =
+                            from == null
+                                    ? remoteRecordingStreamFactory.open(recording)
+                                    : remoteRecordingStreamFactory.open(
+                                            recording, Instant.ofEpochSecond(0, after), n -> {});
+                    // only report progress past the furthest point reached by any attempt, so
+                    // that chunks read again after a failure are not counted twice
+                    AtomicLong position = new AtomicLong(from == null ? 0 : from.sourceBytes());
+                    return new ProgressInputStream(
+                            new JfrChunkFilterInputStream(
+                                    stream, chunk -> chunk.startNanos() > after, chunk -> {}),
+                            n -> {
+                                long end = position.addAndGet(n);
+                                long prev = reported.getAndAccumulate(end, Math::max);
+                                if (end > prev) {
+                                    onProgress.accept((int) (end - prev));
+                                }
+                            });
+                },
+                resumable);
+    }
+
+    /**
+     * Archive the recording from a stream which has already been opened by the caller, ex. one
+     * branch of a {@link RecordingStreamFanOut}. The stream cannot be re-read, so the upload is not
+     * resumable.
+     */
+    public String saveRecordingStream(ActiveRecording recording, InputStream stream)
+            throws Exception {
+        return saveRecording(recording, null, null, from -> stream, false);
+    }
+
+    /**
+     * Archive the recording as a manifest of content-addressed chunks in the {@link ChunkStore}, so
+     * that chunks shared with previous archives of the same recording are not stored again.
+     */
+    public String saveRecordingChunked(ActiveRecording recording) throws Exception {
+        String filename = archiveFilename(recording);
+        List<ChunkStore.ChunkRef> chunks;
+        try (var stream = remoteRecordingStreamFactory.open(recording)) {
+            chunks = chunkStore.store(stream);
+        }
+        try {
+            writeChunkedArchive(
+                    recording.target.jvmId,
+                    filename,
+                    chunks,
+                    new Metadata(activeRecordingLabels(recording)));
+        } catch (Exception e) {
+            chunkStore.release(chunks);
+            throw e;
+        }
+        notifySaved(recording);
+        return filename;
+    }
+
+    /**
+     * Write and index a {@link ChunkStore} manifest archive. The index entry takes ownership of the
+     * caller's references to the chunks.
+     */
+    ArchivedRecordingEntry writeChunkedArchive(
+            String jvmId, String filename, List<ChunkStore.ChunkRef> chunks, Metadata metadata)
+            throws IOException {
+        var manifest = new ChunkStore.Manifest(ChunkStore.MANIFEST_VERSION, chunks);
+        storage.putObject(
+                PutObjectRequest.builder()
+                        .bucket(archiveBucket)
+                        .key(archivedRecordingKey(jvmId, filename))
+                        .contentType(HttpMimeType.JSON.mime())
+                        .metadata(
+                                Map.of(
+                                        ChunkStore.MANIFEST_METADATA_KEY,
+                                        String.valueOf(manifest.version())))
+                        .tagging(createMetadataTagging(metadata))
+                        .build(),
+                RequestBody.fromBytes(mapper.writeValueAsBytes(manifest)));
+        return indexArchivedRecording(
+                jvmId,
+                filename,
+                manifest.size(),
+                clock.now(),
+                metadata,
+                StorageCodec.IDENTITY,
+                chunks);
+    }
+
+    private String saveRecording(
+            ActiveRecording recording,
+            String savename,
+            Instant expiry,
+            MultipartUploader.ResumableSource source,
+            boolean resumable)
+            throws Exception {
+        String filename = archiveFilename(recording);
+        if (resumable) {
+            String prefix = archivedRecordingKey(recording.target.jvmId, "");
+            var checkpoint =
+                    uploader.findResumableCheckpoint(recording.id)
+                            .filter(cp -> cp.bucket.equals(archiveBucket))
+                            .filter(cp -> cp.objectKey.startsWith(prefix));
+            if (checkpoint.isPresent()) {
+                filename = checkpoint.get().objectKey.substring(prefix.length());
+            }
+        }
         if (StringUtils.isBlank(savename)) {
             savename = filename;
         }
-        int mib = 1024 * 1024;
         String key = archivedRecordingKey(recording.target.jvmId, filename);
-        String multipartId = null;
-        List<Pair<Integer, String>> parts = new ArrayList<>();
-        try (var stream = remoteRecordingStreamFactory.open(recording);
-                var ch = Channels.newChannel(stream)) {
-            ByteBuffer buf = ByteBuffer.allocate(20 * mib);
-            CreateMultipartUploadRequest.Builder builder =
+        CreateMultipartUploadRequest.Builder builder =
+                CreateMultipartUploadRequest.builder()
+                        .bucket(archiveBucket)
+                        .key(key)
+                        .contentType(JFR_MIME)
+                        .contentDisposition(String.format("attachment; filename=\"%s\"", savename))
+                        .metadata(Map.of(StorageCodec.METADATA_KEY, archiveCodec.id()))
+                        .tagging(createActiveRecordingTagging(recording, expiry));
+        if (expiry != null && expiry.isAfter(Instant.now())) {
+            builder = builder.expires(expiry);
+        }
+        CreateMultipartUploadRequest request = builder.build();
+        long accum;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                if (resumable) {
+                    accum = uploader.uploadResumable(request, archiveCodec, source, recording.id);
+                } else {
+                    try (var raw = new CountingInputStream(source.open(null));
+                            var stream = archiveCodec.encode(raw)) {
+                        uploader.upload(request, stream);
+                        accum = raw.getByteCount();
+                    }
+                }
+                break;
+            } catch (Exception e) {
+                if (!resumable
+                        || attempt >= resumeAttempts
+                        || !uploader.hasCheckpoint(archiveBucket, key)) {
+                    logger.error("Could not upload recording to S3 storage", e);
+                    throw e;
+                }
+                logger.warnv(
+                        e,
+                        "Upload of {0} failed, resuming ({1} of {2})",
+                        key,
+                        attempt + 1,
+                        resumeAttempts);
+            }
+        }
+        indexArchivedRecording(
+                recording.target.jvmId,
+                filename,
+                accum,
+                clock.now(),
+                new Metadata(activeRecordingLabels(recording), expiry),
+                archiveCodec);
+        if (expiry == null) {
+            notifySaved(recording);
+        }
+        return filename;
+    }
+
+    /**
+     * Archive only the chunks of the recording which have not already been archived by a previous
+     * delta, as identified by the given watermark. Chunks are requested from the target starting at
+     * the watermark's end time, and any chunk beginning at or before the last previously archived
+     * chunk is dropped since chunk time ranges may overlap the requested start time.
+     *
+     * @return the new delta archive, or empty if the recording has no new complete chunks
+     */
+    public Optional<DeltaArchive> saveRecordingDelta(
+            ActiveRecording recording, Optional<DeltaArchive> previous) throws Exception {
+        long lastChunkStartNanos = previous.map(DeltaArchive::lastChunkStartNanos).orElse(-1L);
+        Instant start =
+                previous.map(d -> Instant.ofEpochSecond(0, d.endNanos())).orElse(Instant.EPOCH);
+        String filename = archiveFilename(recording);
+        String key = archivedRecordingKey(recording.target.jvmId, filename);
+        AtomicLong firstStart = new AtomicLong(-1);
+        AtomicLong lastStart = new AtomicLong(lastChunkStartNanos);
+        AtomicLong end = new AtomicLong(previous.map(DeltaArchive::endNanos).orElse(0L));
+        try (var stream =
+                new PushbackInputStream(
+                        new JfrChunkFilterInputStream(
+                                remoteRecordingStreamFactory.open(recording, start, n -> {}),
+                                chunk -> chunk.startNanos() > lastChunkStartNanos,
+                                chunk -> {
+                                    firstStart.compareAndSet(-1, chunk.startNanos());
+                                    lastStart.set(Math.max(lastStart.get(), chunk.startNanos()));
+                                    end.set(Math.max(end.get(), chunk.endNanos()));
+                                }))) {
+            int b = stream.read();
+            if (b < 0) {
+                logger.debugv("No new chunks in {0} since last delta archive", recording.name);
+                return Optional.empty();
+            }
+            stream.unread(b);
+            Map<String, String> labels = activeRecordingLabels(recording);
+            labels.put(DELTA_START_LABEL, String.valueOf(firstStart.get()));
+            var request =
                     CreateMultipartUploadRequest.builder()
                             .bucket(archiveBucket)
                             .key(key)
                             .contentType(JFR_MIME)
                             .contentDisposition(
-                                    String.format("attachment; filename=\"%s\"", savename))
-                            .tagging(createActiveRecordingTagging(recording, expiry));
-            if (expiry != null && expiry.isAfter(Instant.now())) {
-                builder = builder.expires(expiry);
-            }
-            CreateMultipartUploadRequest request = builder.build();
-            multipartId = storage.createMultipartUpload(request).uploadId();
-            int read = 0;
-            long accum = 0;
-            for (int i = 1; i <= 10_000; i++) {
-                read = ch.read(buf);
-
-                if (read == 0) {
-                    read = retryRead(ch, buf);
-                }
-                accum += read;
-                if (read == -1) {
-                    logger.infov("Completed upload of {0} chunks ({1} bytes)", i - 1, accum + 1);
-                    logger.infov("Key: {0}", key);
-                    break;
-                }
-
-                logger.infov("Writing chunk {0} of {1} bytes", i, read);
-                String eTag =
-                        storage.uploadPart(
-                                        UploadPartRequest.builder()
-                                                .bucket(archiveBucket)
-                                                .key(key)
-                                                .uploadId(multipartId)
-                                                .partNumber(i)
-                                                .contentLength(Long.valueOf(read))
-                                                .build(),
-                                        RequestBody.fromByteBuffer(buf.slice(0, read)))
-                                .eTag();
-                parts.add(Pair.of(i, eTag));
-                buf.clear();
-                // S3 API limit
-                if (i == 10_000) {
-                    throw new IndexOutOfBoundsException("Exceeded S3 maximum part count");
-                }
-            }
-        } catch (Exception e) {
-            logger.error("Could not upload recording to S3 storage", e);
-            try {
-                if (multipartId != null) {
-                    storage.abortMultipartUpload(
-                            AbortMultipartUploadRequest.builder()
-                                    .bucket(archiveBucket)
-                                    .key(key)
-                                    .uploadId(multipartId)
-                                    .build());
-                }
-            } catch (Exception e2) {
-                logger.error("Could not abort S3 multipart upload", e2);
-            }
-            throw e;
-        }
-        try {
-            storage.completeMultipartUpload(
-                    CompleteMultipartUploadRequest.builder()
+                                    String.format("attachment; filename=\"%s\"", filename))
+                            .metadata(Map.of(StorageCodec.METADATA_KEY, archiveCodec.id()))
+                            .tagging(createMetadataTagging(new Metadata(labels)))
+                            .build();
+            var raw = new CountingInputStream(stream);
+            uploader.upload(request, archiveCodec.encode(raw));
+            long accum = raw.getByteCount();
+            // the end of the delta is only known once all of its chunks have been read
+            labels.put(DELTA_END_LABEL, String.valueOf(end.get()));
+            Metadata metadata = new Metadata(labels);
+            storage.putObjectTagging(
+                    PutObjectTaggingRequest.builder()
                             .bucket(archiveBucket)
                             .key(key)
-                            .uploadId(multipartId)
-                            .multipartUpload(
-                                    CompletedMultipartUpload.builder()
-                                            .parts(
-                                                    parts.stream()
-                                                            .map(
-                                                                    part ->
-                                                                            CompletedPart.builder()
-                                                                                    .partNumber(
-                                                                                            part
-                                                                                                    .getLeft())
-                                                                                    .eTag(
-                                                                                            part
-                                                                                                    .getRight())
-                                                                                    .build())
-                                                            .toList())
-                                            .build())
+                            .tagging(createMetadataTagging(metadata))
                             .build());
-        } catch (SdkClientException e) {
-            // Amazon S3 couldn't be contacted for a response, or the client
-            // couldn't parse the response from Amazon S3.
+            indexArchivedRecording(
+                    recording.target.jvmId, filename, accum, clock.now(), metadata, archiveCodec);
+        } catch (Exception e) {
+            logger.error("Could not upload recording delta to S3 storage", e);
             throw e;
         }
-        if (expiry == null) {
-            var event =
-                    new ActiveRecordingEvent(
-                            Recordings.RecordingEventCategory.ACTIVE_SAVED,
-                            ActiveRecordingEvent.Payload.of(this, recording));
-            bus.publish(event.category().category(), event.payload().recording());
-            bus.publish(
-                    MessagingServer.class.getName(),
-                    new Notification(event.category().category(), event.payload()));
-        }
-        return filename;
+        notifySaved(recording);
+        return Optional.of(new DeltaArchive(filename, lastStart.get(), end.get()));
+    }
+
+    private String archiveFilename(ActiveRecording recording) {
+        // AWS object key name guidelines advise characters to avoid (% so we should not pass url
+        // encoded characters)
+        String transformedAlias =
+                URLDecoder.decode(recording.target.alias, StandardCharsets.UTF_8)
+                        .replaceAll("[\\._/]+", "-");
+        String timestamp =
+                clock.now().truncatedTo(ChronoUnit.SECONDS).toString().replaceAll("[-:]+", "");
+        return String.format("%s_%s_%s.jfr", transformedAlias, recording.name, timestamp);
+    }
+
+    void notifyArchiveCreated(ArchivedRecordingEntry entry) {
+        var target = Target.getTargetByJvmId(entry.jvmId);
+        var event =
+                new ArchivedRecordingEvent(
+                        Recordings.RecordingEventCategory.ARCHIVED_CREATED,
+                        ArchivedRecordingEvent.Payload.of(
+                                target.map(t -> t.connectUrl).orElse(null), toExternalForm(entry)));
+        bus.publish(event.category().category(), event.payload().recording());
+        bus.publish(
+                MessagingServer.class.getName(),
+                new Notification(event.category().category(), event.payload()));
+    }
+
+    private void notifySaved(ActiveRecording recording) {
+        var event =
+                new ActiveRecordingEvent(
+                        Recordings.RecordingEventCategory.ACTIVE_SAVED,
+                        ActiveRecordingEvent.Payload.of(this, recording));
+        bus.publish(event.category().category(), event.payload().recording());
+        bus.publish(
+                MessagingServer.class.getName(),
+                new Notification(event.category().category(), event.payload()));
     }
 
     public Optional<Metadata> getArchivedRecordingMetadata(String jvmId, String filename) {
-        return getArchivedRecordingMetadata(archivedRecordingKey(jvmId, filename));
+        return getArchivedRecording(jvmId, filename)
+                .map(e -> new Metadata(e.metadata, e.expiry))
+                .or(() -> getArchivedRecordingMetadata(archivedRecordingKey(jvmId, filename)));
     }
 
     public Optional<Metadata> getArchivedRecordingMetadata(String storageKey) {
@@ -698,12 +1319,63 @@ public class RecordingHelper {
     }
 
     public InputStream getArchivedRecordingStream(String encodedKey) {
-        String key = new String(base64Url.decode(encodedKey), StandardCharsets.UTF_8);
+        Pair<String, String> pair = decodedKey(encodedKey);
+        String key = archivedRecordingKey(pair);
+
+        var entry = getArchivedRecording(pair.getKey(), pair.getValue());
+        if (entry.map(ArchivedRecordingEntry::isChunked).orElse(false)) {
+            return chunkStore.open(entry.get().chunks);
+        }
+        try {
+            return entry.map(ArchivedRecordingEntry::storageCodec)
+                    .orElse(StorageCodec.IDENTITY)
+                    .decode(archiveDiskCache.open(archiveBucket, key));
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    public HeadObjectResponse headArchivedRecording(String jvmId, String filename) {
+        return storage.headObject(
+                HeadObjectRequest.builder()
+                        .bucket(archiveBucket)
+                        .key(archivedRecordingKey(jvmId, filename))
+                        .build());
+    }
 
-        GetObjectRequest getRequest =
-                GetObjectRequest.builder().bucket(archiveBucket).key(key).build();
+    /**
+     * The stored archive object, without decoding. Served from the {@link ArchiveDiskCache} when it
+     * holds a current copy.
+     */
+    public ArchiveDiskCache.StoredObject getArchivedRecordingObject(String jvmId, String filename) {
+        return archiveDiskCache.openObject(archiveBucket, archivedRecordingKey(jvmId, filename));
+    }
+
+    /**
+     * A byte range of the stored archive object, without decoding. The object must still have the
+     * given ETag, so that a range is never taken from a different version of the object than the
+     * one its bounds were computed against.
+     */
+    public ArchiveDiskCache.StoredObject getArchivedRecordingObject(
+            String jvmId, String filename, ByteRange range, String eTag) {
+        return archiveDiskCache.openRange(
+                archiveBucket, archivedRecordingKey(jvmId, filename), range, eTag);
+    }
 
-        return storage.getObject(getRequest);
+    public ArchiveDiskCache.ObjectInfo getArchivedRecordingObjectInfo(
+            String jvmId, String filename) {
+        return archiveDiskCache.head(archiveBucket, archivedRecordingKey(jvmId, filename));
+    }
+
+    /**
+     * Whether the archive object holds the recording content exactly as it was recorded. Archives
+     * which are stored encoded or as chunk manifests must be reassembled by Cryostat before being
+     * served, so they cannot be downloaded directly from storage.
+     */
+    public boolean isArchivedRecordingStoredVerbatim(String jvmId, String filename) {
+        return getArchivedRecording(jvmId, filename)
+                .map(e -> e.storageCodec().isIdentity() && !e.isChunked())
+                .orElse(true);
     }
 
     public String downloadUrl(ActiveRecording recording) {
@@ -723,36 +1395,19 @@ public class RecordingHelper {
         return String.format("/api/v3/reports/%s", encodedKey(jvmId, filename));
     }
 
-    private int retryRead(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
-        int attempts = 30;
-        int read = 0;
-
-        while (attempts > 0) {
-            logger.info("No bytes read, retrying...");
-            read = channel.read(buffer);
-            if (read > 0 || read < 0) {
-                break;
-            } else {
-                attempts--;
-            }
-        }
-
-        if (read == 0) {
-            throw new IOException("No bytes read after 30 retry attempts");
-        }
-
-        return read;
-    }
-
     /* Archived Recording Helpers */
     public void deleteArchivedRecording(String jvmId, String filename) {
+        var metadata =
+                getArchivedRecording(jvmId, filename)
+                        .map(e -> new Metadata(e.metadata))
+                        .orElseGet(Metadata::empty);
         storage.deleteObject(
                 DeleteObjectRequest.builder()
                         .bucket(archiveBucket)
                         .key(archivedRecordingKey(jvmId, filename))
                         .build());
+        unindexArchivedRecording(jvmId, filename);
 
-        var metadata = Metadata.empty(); // TODO
         var target = Target.getTargetByJvmId(jvmId);
         var event =
                 new ArchivedRecordingEvent(
@@ -772,12 +1427,113 @@ public class RecordingHelper {
                 new Notification(event.category().category(), event.payload()));
     }
 
+    /**
+     * Delete many archives, issuing storage deletions in batches of up to {@link
+     * #DELETE_OBJECTS_BATCH_SIZE} keys. Archives which storage reports as deleted are removed from
+     * the index, and one {@link Recordings#ARCHIVED_RECORDING_BATCH_DELETED} event and notification
+     * is published covering all of them. Per-key storage failures, and failures of whole batches,
+     * are returned rather than thrown, and the corresponding archives remain indexed.
+     */
+    public BulkArchiveDeleteResult deleteArchivedRecordings(List<ArchivedRecordingEntry> entries) {
+        Map<String, ArchivedRecordingEntry> byKey = new LinkedHashMap<>();
+        entries.forEach(e -> byKey.put(archivedRecordingKey(e.jvmId, e.filename), e));
+        List<ArchiveKey> deleted = new ArrayList<>();
+        List<BulkArchiveDeleteError> errors = new ArrayList<>();
+        List<ArchivedRecording> recordings = new ArrayList<>();
+        List<String> keys = List.copyOf(byKey.keySet());
+        for (int i = 0; i < keys.size(); i += DELETE_OBJECTS_BATCH_SIZE) {
+            var batch = keys.subList(i, Math.min(keys.size(), i + DELETE_OBJECTS_BATCH_SIZE));
+            DeleteObjectsResponse resp;
+            try {
+                resp =
+                        storage.deleteObjects(
+                                DeleteObjectsRequest.builder()
+                                        .bucket(archiveBucket)
+                                        .delete(
+                                                Delete.builder()
+                                                        .quiet(false)
+                                                        .objects(
+                                                                batch.stream()
+                                                                        .map(
+                                                                                k ->
+                                                                                        ObjectIdentifier
+                                                                                                .builder()
+                                                                                                .key(
+                                                                                                        k)
+                                                                                                .build())
+                                                                        .toList())
+                                                        .build())
+                                        .build());
+            } catch (SdkException e) {
+                // a failed batch, ex. from a storage outage or a client-side timeout, is reported
+                // against each of its keys so that the remaining batches are still attempted
+                logger.warn(e);
+                String code = e.getClass().getSimpleName();
+                String message = e.getMessage();
+                if (e instanceof AwsServiceException ase && ase.awsErrorDetails() != null) {
+                    code = ase.awsErrorDetails().errorCode();
+                    message = ase.awsErrorDetails().errorMessage();
+                }
+                for (var k : batch) {
+                    var entry = byKey.get(k);
+                    errors.add(
+                            new BulkArchiveDeleteError(
+                                    new ArchiveKey(entry.jvmId, entry.filename), code, message));
+                }
+                continue;
+            }
+            for (var err : resp.errors()) {
+                var entry = byKey.get(err.key());
+                if (entry == null) {
+                    continue;
+                }
+                errors.add(
+                        new BulkArchiveDeleteError(
+                                new ArchiveKey(entry.jvmId, entry.filename),
+                                err.code(),
+                                err.message()));
+            }
+            for (var d : resp.deleted()) {
+                var entry = byKey.get(d.key());
+                if (entry == null) {
+                    continue;
+                }
+                unindexArchivedRecording(entry.jvmId, entry.filename);
+                deleted.add(new ArchiveKey(entry.jvmId, entry.filename));
+                Map<String, String> labels = new HashMap<>(entry.metadata.labels());
+                labels.put("jvmId", entry.jvmId);
+                recordings.add(
+                        new ArchivedRecording(
+                                entry.filename,
+                                downloadUrl(entry.jvmId, entry.filename),
+                                reportUrl(entry.jvmId, entry.filename),
+                                new Metadata(labels, entry.metadata.expiry()),
+                                entry.size,
+                                entry.archivedTime));
+            }
+        }
+
+        if (!recordings.isEmpty()) {
+            var batch = new ArchivedRecordingBatch(recordings);
+            bus.publish(Recordings.ARCHIVED_RECORDING_BATCH_DELETED, batch);
+            bus.publish(
+                    MessagingServer.class.getName(),
+                    new Notification(
+                            Recordings.RecordingEventCategory.ARCHIVED_BATCH_DELETED.category(),
+                            batch));
+        }
+        return new BulkArchiveDeleteResult(deleted, errors);
+    }
+
     Tagging createActiveRecordingTagging(ActiveRecording recording, Instant expiry) {
+        return createMetadataTagging(new Metadata(activeRecordingLabels(recording), expiry));
+    }
+
+    private Map<String, String> activeRecordingLabels(ActiveRecording recording) {
         Map<String, String> labels = new HashMap<>(recording.metadata.labels());
         labels.put("connectUrl", recording.target.connectUrl.toString());
         labels.put("jvmId", recording.target.jvmId);
-        Metadata metadata = new Metadata(labels, expiry);
-        return createMetadataTagging(metadata);
+        return labels;
     }
 
     // Metadata
@@ -841,94 +1597,89 @@ public class RecordingHelper {
         Objects.requireNonNull(target, "Target from targetId not found");
         ActiveRecording recording = target.getRecordingById(remoteId);
         Objects.requireNonNull(recording, "ActiveRecording from remoteId not found");
-        Path recordingPath =
-                connectionManager.executeConnectedTask(
-                        target,
-                        connection -> {
-                            return getRecordingCopyPath(connection, target, recording.name)
-                                    .orElseThrow(
-                                            () ->
-                                                    new RecordingNotFoundException(
-                                                            target.targetId(), recording.name));
-                        });
-
-        return uploadToJFRDatasource(recordingPath);
+        return uploadToJFRDatasource(() -> getActiveInputStream(recording));
     }
 
     public Uni<String> uploadToJFRDatasource(Pair<String, String> key) throws Exception {
         Objects.requireNonNull(key);
         Objects.requireNonNull(key.getKey());
         Objects.requireNonNull(key.getValue());
-        GetObjectRequest getRequest =
-                GetObjectRequest.builder()
-                        .bucket(archiveBucket)
-                        .key(archivedRecordingKey(key))
-                        .build();
-
-        Path recordingPath = fs.createTempFile(null, null);
-        // the S3 client will create the file at this path, we just need to get a fresh temp file
-        // path but one that does not yet exist
-        fs.deleteIfExists(recordingPath);
-
-        storage.getObject(getRequest, recordingPath);
-
-        return uploadToJFRDatasource(recordingPath);
-    }
-
-    private Uni<String> uploadToJFRDatasource(Path recordingPath)
-            throws URISyntaxException, InterruptedException, ExecutionException {
-        MultipartForm form =
-                MultipartForm.create()
-                        .binaryFileUpload(
-                                "file", DATASOURCE_FILENAME, recordingPath.toString(), JFR_MIME);
-
-        var asyncRequest =
-                webClient
-                        .postAbs(
-                                grafanaDatasourceURL
-                                        .get()
-                                        .toURI()
-                                        .resolve("/load")
-                                        .normalize()
-                                        .toString())
-                        .addQueryParam("overwrite", "true")
-                        .timeout(connectionFailedTimeout.toMillis())
-                        .sendMultipartForm(form);
-        return asyncRequest
+        return uploadToJFRDatasource(
+                () -> getArchivedRecordingStream(key.getKey(), key.getValue()));
+    }
+
+    /**
+     * Upload a recording to jfr-datasource as a multipart form whose file part is streamed from the
+     * source as the request body is sent, so the upload begins immediately and the recording is
+     * never staged on local disk. The source is opened on the calling thread, and then read on the
+     * Vert.x worker pool as the request body is sent.
+     */
+    private Uni<String> uploadToJFRDatasource(Callable<InputStream> source) throws Exception {
+        String uri = grafanaDatasourceURL.get().toURI().resolve("/load").normalize().toString();
+        String boundary = "cryostat-" + UUID.randomUUID();
+        var head =
+                Buffer.buffer(
+                        String.format(
+                                "--%s\r\nContent-Disposition: form-data; name=\"file\";"
+                                        + " filename=\"%s\"\r\nContent-Type: %s\r\n\r\n",
+                                boundary, DATASOURCE_FILENAME, JFR_MIME));
+        var tail = Buffer.buffer(String.format("\r\n--%s--\r\n", boundary));
+
+        InputStream stream = source.call();
+        Multi<Buffer> body =
+                Multi.createBy()
+                        .concatenating()
+                        .streams(
+                                Multi.createFrom().item(head),
+                                buffers.stream(() -> stream, Infrastructure.getDefaultWorkerPool())
+                                        .map(Buffer::newInstance),
+                                Multi.createFrom().item(tail));
+
+        return webClient
+                .postAbs(uri)
+                .addQueryParam("overwrite", "true")
+                .putHeader(
+                        HttpHeaders.CONTENT_TYPE.toString(),
+                        "multipart/form-data; boundary=" + boundary)
+                .timeout(connectionFailedTimeout.toMillis())
+                .sendStream(body)
                 .onItem()
                 .transform(HttpResponse::bodyAsString)
-                .eventually(
-                        () -> {
-                            try {
-                                fs.deleteIfExists(recordingPath);
-                            } catch (IOException e) {
-                                logger.warn(e);
-                            }
-                        });
+                // the body stream closes the source once it has been fully sent, but the request
+                // may fail before the body is ever subscribed to
+                .eventually(() -> IOUtils.closeQuietly(stream));
     }
 
-    Optional<Path> getRecordingCopyPath(
-            JFRConnection connection, Target target, String recordingName) throws Exception {
-        return connection.getService().getAvailableRecordings().stream()
-                .filter(recording -> recording.getName().equals(recordingName))
-                .findFirst()
-                .map(
-                        descriptor -> {
-                            try {
-                                Path tempFile = fs.createTempFile(null, null);
-                                try (var stream =
-                                        remoteRecordingStreamFactory.open(
-                                                connection, target, descriptor)) {
-                                    fs.copy(stream, tempFile, StandardCopyOption.REPLACE_EXISTING);
-                                }
-                                return tempFile;
-                            } catch (Exception e) {
-                                logger.error(e);
-                                throw new BadRequestException(e);
-                            }
-                        });
+    /**
+     * A snapshot shared by the requests for it. The work is memoized, so it is performed once when
+     * the first request subscribes and its outcome is replayed to every request.
+     */
+    private static class SharedSnapshot {
+        private Uni<LinkedRecordingDescriptor> result;
+        // null until the snapshot has been created
+        private volatile Instant shareableUntil;
+        private volatile boolean failed;
+
+        synchronized Uni<LinkedRecordingDescriptor> result(
+                Function<SharedSnapshot, Uni<LinkedRecordingDescriptor>> work) {
+            if (result == null) {
+                result = work.apply(this).memoize().indefinitely();
+            }
+            return result;
+        }
+
+        boolean isShareable(Instant now) {
+            Instant until = shareableUntil;
+            return until == null ? !failed : now.isBefore(until);
+        }
     }
 
+    /**
+     * An archive holding the chunks of a recording up to {@code endNanos}, the latest of which
+     * began at {@code lastChunkStartNanos}.
+     */
+    public record DeltaArchive(String filename, long lastChunkStartNanos, long endNanos) {}
+
     public enum RecordingReplace {
         ALWAYS,
         NEVER,
@@ -0,0 +1,361 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmc.rjmx.services.jfr.IRecordingDescriptor;
+
+import io.cryostat.ConfigProperties;
+import io.cryostat.core.sys.Clock;
+import io.cryostat.recordings.Recordings.Metadata;
+import io.cryostat.targets.Target;
+import io.cryostat.targets.TargetConnectionManager;
+
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.RecordingState;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+/**
+ * Keeps the {@link ActiveRecording} table in sync with the recordings actually present in targets,
+ * so that recordings started, stopped or closed by other tools are reflected without clients having
+ * to poll targets themselves.
+ *
+ * <p>Each pass fetches the recording descriptors of the due targets in parallel, then applies all
+ * of the resulting inserts, updates and deletes in one transaction. Only targets which already have
+ * an open connection are polled, so reconciliation never opens connections or keeps idle ones
+ * alive. Each target's polling interval adapts to how often its recordings change: it is reset to
+ * the minimum interval whenever a change is observed, and doubles up to the maximum interval
+ * otherwise. The ordinary {@link ActiveRecording} entity listeners emit notifications for the
+ * applied changes, so unchanged recordings produce no notifications.
+ */
+@ApplicationScoped
+public class RecordingReconciler {
+
+    @Inject TargetConnectionManager connectionManager;
+    @Inject Clock clock;
+    @Inject Logger logger;
+
+    @ConfigProperty(name = ConfigProperties.RECORDINGS_RECONCILE_ENABLED)
+    boolean enabled;
+
+    @ConfigProperty(name = ConfigProperties.RECORDINGS_RECONCILE_MIN_INTERVAL)
+    Duration minInterval;
+
+    @ConfigProperty(name = ConfigProperties.RECORDINGS_RECONCILE_MAX_INTERVAL)
+    Duration maxInterval;
+
+    @ConfigProperty(name = ConfigProperties.RECORDINGS_RECONCILE_PARALLELISM)
+    int parallelism;
+
+    private final Map<Long, PollState> states = new ConcurrentHashMap<>();
+    private ScheduledExecutorService ticker;
+    private ExecutorService workers;
+
+    void onStart(@Observes StartupEvent evt) {
+        if (!enabled) {
+            return;
+        }
+        workers = Executors.newFixedThreadPool(Math.max(1, parallelism));
+        ticker =
+                Executors.newSingleThreadScheduledExecutor(
+                        r -> {
+                            var t = new Thread(r, "recording-reconciler");
+                            t.setDaemon(true);
+                            return t;
+                        });
+        ticker.scheduleWithFixedDelay(
+                this::reconcile,
+                minInterval.toMillis(),
+                minInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    void onStop(@Observes ShutdownEvent evt) {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    void reconcile() {
+        var evt = new RecordingReconciliation();
+        try {
+            evt.begin();
+            Instant now = clock.now();
+            List<Poll> polls = listDuePolls(now);
+            if (polls.isEmpty()) {
+                return;
+            }
+            List<Observation> observations =
+                    Multi.createFrom()
+                            .iterable(polls)
+                            .onItem()
+                            .transformToUni(this::observe)
+                            .merge(Math.max(1, parallelism))
+                            .select()
+                            .where(o -> o.descriptors().isPresent())
+                            .collect()
+                            .asList()
+                            .await()
+                            .indefinitely();
+            evt.targets = observations.size();
+
+            Set<Long> changed = tryApply(observations);
+            evt.changedTargets = changed.size();
+
+            Instant end = clock.now();
+            for (Observation observation : observations) {
+                states.computeIfPresent(
+                        observation.poll().targetId(),
+                        (id, state) -> {
+                            state.interval =
+                                    changed.contains(id)
+                                            ? minInterval
+                                            : min(state.interval.multipliedBy(2), maxInterval);
+                            state.nextDue = end.plus(state.interval);
+                            return state;
+                        });
+            }
+        } catch (Exception e) {
+            logger.warn("Recording reconciliation failed", e);
+        } finally {
+            evt.end();
+            if (evt.shouldCommit()) {
+                evt.commit();
+            }
+        }
+    }
+
+    /**
+     * List the targets which are due to be polled, along with the IDs of the {@link
+     * ActiveRecording}s known for each of them before their descriptors are fetched.
+     */
+    @Transactional
+    List<Poll> listDuePolls(Instant now) {
+        List<Target> targets = Target.listAll();
+        Set<Long> present = new HashSet<>();
+        List<Poll> polls = new ArrayList<>();
+        for (Target target : targets) {
+            present.add(target.id);
+            PollState state = states.computeIfAbsent(target.id, id -> new PollState(minInterval));
+            if (state.nextDue.isAfter(now)) {
+                continue;
+            }
+            Set<Long> known = new HashSet<>();
+            target.activeRecordings.forEach(r -> known.add(r.id));
+            polls.add(new Poll(target.id, target, known));
+        }
+        states.keySet().retainAll(present);
+        return polls;
+    }
+
+    private Uni<Observation> observe(Poll poll) {
+        return Uni.createFrom()
+                .item(
+                        () -> {
+                            try {
+                                return new Observation(
+                                        poll,
+                                        connectionManager.executeIfConnected(
+                                                poll.target(),
+                                                conn ->
+                                                        List.copyOf(
+                                                                conn.getService()
+                                                                        .getAvailableRecordings())));
+                            } catch (Exception e) {
+                                logger.debugv(
+                                        e,
+                                        "Failed to fetch recordings of {0}",
+                                        poll.target().connectUrl);
+                                return new Observation(poll, Optional.empty());
+                            }
+                        })
+                .runSubscriptionOn(workers);
+    }
+
+    private Set<Long> tryApply(List<Observation> observations) {
+        try {
+            return apply(observations);
+        } catch (Exception e) {
+            // the whole batch is rolled back, and is retried when the targets are next polled
+            logger.warn("Failed to apply reconciled recording state", e);
+            return Set.of();
+        }
+    }
+
+    /**
+     * Apply the differences between the observed descriptors and the {@link ActiveRecording} table.
+     *
+     * @return IDs of the targets whose recordings changed
+     */
+    @Transactional
+    Set<Long> apply(List<Observation> observations) {
+        Set<Long> changed = new HashSet<>();
+        for (Observation observation : observations) {
+            long targetId = observation.poll().targetId();
+            Target target = Target.findById(targetId);
+            PollState state = states.get(targetId);
+            if (target == null || state == null) {
+                continue;
+            }
+            Diff diff = diff(target.activeRecordings, observation, state.pending);
+            for (ActiveRecording recording : diff.deleted()) {
+                logger.debugv("Recording {0} was closed on {1}", recording.name, target.alias);
+                recording.delete();
+            }
+            diff.updated()
+                    .forEach(
+                            (recording, recordingState) -> {
+                                recording.state = recordingState;
+                                recording.persist();
+                            });
+            ActiveRecording.flush();
+            for (IRecordingDescriptor descriptor : diff.created()) {
+                logger.debugv(
+                        "Recording {0} was created on {1}", descriptor.getName(), target.alias);
+                ActiveRecording.from(target, descriptor, new Metadata(Map.of())).persist();
+            }
+            state.pending = diff.pending();
+            if (diff.hasChanges()) {
+                changed.add(targetId);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Compute the differences between a target's {@link ActiveRecording}s and the descriptors
+     * observed in it.
+     *
+     * <p>A recording missing from its target is only deleted if it was already known before the
+     * target was polled, since a recording created concurrently through the API would otherwise be
+     * seen as missing. Conversely, an unknown recording is only inserted once it has been observed
+     * in two consecutive polls, so that it is not raced against the API transaction which is about
+     * to persist it.
+     *
+     * @param pending IDs of the unknown remote recordings observed in the previous poll
+     */
+    static Diff diff(List<ActiveRecording> local, Observation observation, Set<Long> pending) {
+        Map<Long, IRecordingDescriptor> remote = new HashMap<>();
+        observation.descriptors().get().forEach(d -> remote.put(d.getId(), d));
+
+        List<ActiveRecording> deleted = new ArrayList<>();
+        Map<ActiveRecording, RecordingState> updated = new HashMap<>();
+        Set<Long> localRemoteIds = new HashSet<>();
+        Set<String> localNames = new HashSet<>();
+        for (ActiveRecording recording : local) {
+            IRecordingDescriptor descriptor = remote.get(recording.remoteId);
+            if (descriptor == null) {
+                if (observation.poll().knownRecordings().contains(recording.id)) {
+                    deleted.add(recording);
+                    continue;
+                }
+            } else {
+                // recording states only move forward. A remote state behind the local one
+                // was observed before a concurrent API update, such as a stop, took effect
+                var remoteState = ActiveRecording.toState(descriptor.getState());
+                if (remoteState.compareTo(recording.state) > 0) {
+                    updated.put(recording, remoteState);
+                }
+            }
+            localRemoteIds.add(recording.remoteId);
+            localNames.add(recording.name);
+        }
+
+        List<IRecordingDescriptor> created = new ArrayList<>();
+        Set<Long> stillPending = new HashSet<>();
+        for (IRecordingDescriptor descriptor : remote.values()) {
+            if (localRemoteIds.contains(descriptor.getId())) {
+                continue;
+            }
+            if (!pending.contains(descriptor.getId())
+                    || localNames.contains(descriptor.getName())) {
+                stillPending.add(descriptor.getId());
+                continue;
+            }
+            created.add(descriptor);
+        }
+        return new Diff(deleted, updated, created, stillPending);
+    }
+
+    private static Duration min(Duration a, Duration b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    static class PollState {
+        volatile Duration interval;
+        volatile Instant nextDue = Instant.EPOCH;
+        volatile Set<Long> pending = Set.of();
+
+        PollState(Duration interval) {
+            this.interval = interval;
+        }
+    }
+
+    record Poll(long targetId, Target target, Set<Long> knownRecordings) {}
+
+    record Observation(Poll poll, Optional<List<IRecordingDescriptor>> descriptors) {}
+
+    /**
+     * @param pending IDs of the unknown remote recordings to be inserted if they are observed again
+     *     in the next poll
+     */
+    record Diff(
+            List<ActiveRecording> deleted,
+            Map<ActiveRecording, RecordingState> updated,
+            List<IRecordingDescriptor> created,
+            Set<Long> pending) {
+        boolean hasChanges() {
+            return !deleted.isEmpty() || !updated.isEmpty() || !created.isEmpty();
+        }
+    }
+
+    @Name("io.cryostat.recordings.RecordingReconciler.RecordingReconciliation")
+    @Label("Recording Reconciliation")
+    @Category("Cryostat")
+    public static class RecordingReconciliation extends Event {
+        int targets;
+        int changedTargets;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.cryostat.ConfigProperties;
+import io.cryostat.core.sys.Clock;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import jdk.jfr.RecordingState;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+/**
+ * Stops fixed-duration recordings once their duration elapses. Due times are persisted as {@link
+ * RecordingStopTimer}s and tracked in memory by a hashed timer wheel, which only hands due timers
+ * off to a bounded worker pool, so that many timers coming due together are stopped and archived
+ * concurrently rather than one after another. Timers which came due while Cryostat was not running
+ * fire at startup. A timer which fails, ex. because the target is temporarily unreachable, is
+ * retried a limited number of times.
+ */
+@ApplicationScoped
+public class RecordingStopScheduler {
+
+    private static final Duration TICK = Duration.ofMillis(100);
+    private static final int TICKS_PER_WHEEL = 512;
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(30);
+    private static final int MAX_ATTEMPTS = 5;
+
+    @ConfigProperty(name = ConfigProperties.RECORDINGS_TIMERS_WORKERS)
+    int workers;
+
+    @Inject RecordingHelper recordingHelper;
+    @Inject Event<TimerArmed> armed;
+    @Inject Clock clock;
+    @Inject Logger logger;
+
+    private Timer wheel;
+    private ExecutorService pool;
+
+    void onStart(@Observes StartupEvent evt) {
+        pool = Executors.newFixedThreadPool(Math.max(1, workers));
+        wheel =
+                new HashedWheelTimer(
+                        r -> {
+                            var t = new Thread(r, "recording-stop-timer");
+                            t.setDaemon(true);
+                            return t;
+                        },
+                        TICK.toMillis(),
+                        TimeUnit.MILLISECONDS,
+                        TICKS_PER_WHEEL);
+        var timers = listTimers();
+        long overdue = timers.stream().filter(t -> !t.dueTime.isAfter(clock.now())).count();
+        logger.infov("Restoring {0} recording stop timers, {1} overdue", timers.size(), overdue);
+        timers.forEach(t -> arm(t.recordingId, t.dueTime, 1));
+    }
+
+    void onStop(@Observes ShutdownEvent evt) {
+        wheel.stop();
+        pool.shutdownNow();
+    }
+
+    /**
+     * Stop the recording once its duration has elapsed, replacing any existing timer for it. The
+     * timer is armed once the current transaction commits.
+     */
+    @Transactional
+    public void schedule(ActiveRecording recording, boolean archive) {
+        var timer =
+                RecordingStopTimer.getByRecordingId(recording.id)
+                        .orElseGet(RecordingStopTimer::new);
+        timer.recordingId = recording.id;
+        timer.dueTime = clock.now().plusMillis(recording.duration);
+        timer.archive = archive;
+        timer.persist();
+        armed.fire(new TimerArmed(timer.recordingId, timer.dueTime));
+    }
+
+    void onArmed(@Observes(during = TransactionPhase.AFTER_SUCCESS) TimerArmed evt) {
+        arm(evt.recordingId(), evt.dueTime(), 1);
+    }
+
+    @Transactional
+    List<RecordingStopTimer> listTimers() {
+        return RecordingStopTimer.listAll();
+    }
+
+    private void arm(long recordingId, Instant dueTime, int attempt) {
+        Instant fireAt = attempt > 1 ? clock.now().plus(RETRY_DELAY) : dueTime;
+        long delay = Math.max(0, Duration.between(clock.now(), fireAt).toMillis());
+        wheel.newTimeout(
+                t -> pool.execute(() -> fire(recordingId, dueTime, attempt)),
+                delay,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private void fire(long recordingId, Instant dueTime, int attempt) {
+        try {
+            stop(recordingId, dueTime);
+        } catch (Exception e) {
+            if (attempt >= MAX_ATTEMPTS) {
+                logger.errorv(e, "Failed to stop recording {0}, giving up", recordingId);
+                discard(recordingId, dueTime);
+                return;
+            }
+            logger.warnv(e, "Failed to stop recording {0}, will retry", recordingId);
+            arm(recordingId, dueTime, attempt + 1);
+        }
+    }
+
+    /**
+     * @param dueTime the due time the timer was armed for. If the timer has since been rescheduled
+     *     to a later time then this firing is ignored, since the later time is armed separately.
+     */
+    @Transactional
+    void stop(long recordingId, Instant dueTime) throws Exception {
+        var timer = RecordingStopTimer.getByRecordingId(recordingId);
+        if (timer.isEmpty() || timer.get().isRescheduledAfter(dueTime)) {
+            return;
+        }
+        var recording = ActiveRecording.<ActiveRecording>findByIdOptional(recordingId);
+        if (recording.isPresent()) {
+            recording.get().state = RecordingState.STOPPED;
+            recording.get().persist();
+            if (timer.get().archive) {
+                recordingHelper.saveRecording(recording.get());
+            }
+        }
+        timer.get().delete();
+    }
+
+    @Transactional
+    void discard(long recordingId, Instant dueTime) {
+        RecordingStopTimer.getByRecordingId(recordingId)
+                .filter(t -> !t.isRescheduledAfter(dueTime))
+                .ifPresent(RecordingStopTimer::delete);
+    }
+
+    record TimerArmed(long recordingId, Instant dueTime) {}
+}
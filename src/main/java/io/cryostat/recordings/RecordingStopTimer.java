@@ -0,0 +1,54 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntity;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * Due time at which a fixed-duration {@link ActiveRecording} is to be stopped, and optionally
+ * archived. Timers are persisted so that they survive restarts, and are removed once they fire.
+ */
+@Entity
+@Table(indexes = {@Index(columnList = "dueTime")})
+public class RecordingStopTimer extends PanacheEntity {
+
+    @Column(nullable = false, unique = true)
+    public long recordingId;
+
+    @NotNull public Instant dueTime;
+
+    public boolean archive;
+
+    public static Optional<RecordingStopTimer> getByRecordingId(long recordingId) {
+        return find("recordingId", recordingId).firstResultOptional();
+    }
+
+    /**
+     * @return true if the timer has been rescheduled to a later time than the given due time it was
+     *     armed for, in which case firing it at the earlier time must have no effect
+     */
+    public boolean isRescheduledAfter(Instant armedFor) {
+        return dueTime.isAfter(armedFor);
+    }
+}
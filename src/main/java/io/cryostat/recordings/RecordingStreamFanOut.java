@@ -0,0 +1,93 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import io.cryostat.ConfigProperties;
+import io.cryostat.util.StreamFanOut;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * Opens a single stream from a target for an active recording and splits it into several branches,
+ * so that operations which each need the full recording content (archiving, analysis, downloading,
+ * uploading to Grafana) can be performed together while only transferring the recording from the
+ * target once. Each open fan-out holds one reader thread for as long as the source is being read,
+ * and at most {@link ConfigProperties#RECORDINGS_FAN_OUT_MAX_CONCURRENT} fan-outs may be open at
+ * once.
+ */
+@ApplicationScoped
+public class RecordingStreamFanOut {
+
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    @Inject RemoteRecordingInputStreamFactory remoteRecordingStreamFactory;
+
+    @ConfigProperty(name = ConfigProperties.RECORDINGS_FAN_OUT_BUFFER_CHUNKS)
+    int bufferChunks;
+
+    private final ExecutorService executor;
+
+    RecordingStreamFanOut(
+            @ConfigProperty(name = ConfigProperties.RECORDINGS_FAN_OUT_MAX_CONCURRENT)
+                    int maxConcurrent) {
+        // readers are handed directly to threads rather than queued, since the consumers of a
+        // fan-out whose reader has not started would block waiting for it
+        this.executor =
+                new ThreadPoolExecutor(
+                        0,
+                        maxConcurrent,
+                        60,
+                        TimeUnit.SECONDS,
+                        new SynchronousQueue<>(),
+                        r -> {
+                            var t = new Thread(r, "recording-fan-out");
+                            t.setDaemon(true);
+                            return t;
+                        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return a started fan-out with the given number of branches. Each branch must be consumed on
+     *     its own thread, and the fan-out should be closed once all consumers are finished.
+     * @throws RejectedExecutionException if the maximum number of fan-outs are already open
+     */
+    public StreamFanOut open(ActiveRecording recording, int branches) throws Exception {
+        var source = remoteRecordingStreamFactory.open(recording);
+        var fanOut = new StreamFanOut(source, branches, CHUNK_SIZE, bufferChunks);
+        try {
+            fanOut.start(executor);
+        } catch (RejectedExecutionException e) {
+            IOUtils.closeQuietly(source);
+            throw e;
+        }
+        return fanOut;
+    }
+}
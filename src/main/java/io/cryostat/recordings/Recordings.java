@@ -19,17 +19,23 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -54,6 +60,7 @@ import io.cryostat.core.templates.TemplateType;
 import io.cryostat.recordings.ActiveRecording.Listener.ArchivedRecordingEvent;
 import io.cryostat.recordings.RecordingHelper.RecordingReplace;
 import io.cryostat.recordings.RecordingHelper.SnapshotCreationException;
+import io.cryostat.storage.StorageBackend;
 import io.cryostat.targets.Target;
 import io.cryostat.targets.TargetConnectionManager;
 import io.cryostat.util.HttpMimeType;
@@ -64,7 +71,12 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.quarkus.runtime.StartupEvent;
 import io.smallrye.common.annotation.Blocking;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
+import io.smallrye.mutiny.unchecked.Unchecked;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.handler.HttpException;
 import io.vertx.mutiny.core.eventbus.EventBus;
@@ -80,7 +92,11 @@ import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.PATCH;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.RedirectionException;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.ResponseBuilder;
 import jdk.jfr.RecordingState;
@@ -90,19 +106,19 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
 import org.jboss.resteasy.reactive.RestForm;
+import org.jboss.resteasy.reactive.RestHeader;
 import org.jboss.resteasy.reactive.RestPath;
 import org.jboss.resteasy.reactive.RestQuery;
 import org.jboss.resteasy.reactive.RestResponse;
+import org.jboss.resteasy.reactive.RestStreamElementType;
+import org.jboss.resteasy.reactive.common.util.RestMediaType;
 import org.jboss.resteasy.reactive.multipart.FileUpload;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
-import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
-import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
-import software.amazon.awssdk.services.s3.model.S3Object;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
 import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
@@ -110,6 +126,9 @@ import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequ
 @Path("")
 public class Recordings {
 
+    static final int ARCHIVES_PAGE_SIZE_DEFAULT = 100;
+    static final int ARCHIVES_PAGE_SIZE_MAX = 1000;
+
     @Inject TargetConnectionManager connectionManager;
     @Inject EventBus bus;
     @Inject RecordingOptionsBuilderFactory recordingOptionsBuilderFactory;
@@ -120,9 +139,13 @@ public class Recordings {
     @Inject StorageBuckets storageBuckets;
     @Inject S3Presigner presigner;
     @Inject RemoteRecordingInputStreamFactory remoteRecordingStreamFactory;
-    @Inject ScheduledExecutorService scheduler;
+    @Inject RecordingStopScheduler recordingStopScheduler;
     @Inject ObjectMapper mapper;
     @Inject RecordingHelper recordingHelper;
+    @Inject MultipartUploader uploader;
+    @Inject ChunkBufferPool buffers;
+    @Inject ArchiveMerger archiveMerger;
+    @Inject ArchiveJobService archiveJobs;
     @Inject Logger logger;
 
     @Inject
@@ -144,6 +167,12 @@ public class Recordings {
     @ConfigProperty(name = ConfigProperties.STORAGE_PRESIGNED_DOWNLOADS_ENABLED)
     boolean presignedDownloadsEnabled;
 
+    @ConfigProperty(name = ConfigProperties.STORAGE_BACKEND)
+    StorageBackend storageBackend;
+
+    @ConfigProperty(name = ConfigProperties.STORAGE_ARCHIVES_CODEC)
+    StorageCodec archiveCodec;
+
     @ConfigProperty(name = ConfigProperties.STORAGE_EXT_URL)
     Optional<String> externalStorageUrl;
 
@@ -156,29 +185,9 @@ public class Recordings {
     @Path("/api/v1/recordings")
     @RolesAllowed("read")
     public List<ArchivedRecording> listArchivesV1() {
-        var result = new ArrayList<ArchivedRecording>();
-        recordingHelper
-                .listArchivedRecordingObjects()
-                .forEach(
-                        item -> {
-                            String path = item.key().strip();
-                            String[] parts = path.split("/");
-                            String jvmId = parts[0];
-                            String filename = parts[1];
-                            Metadata metadata =
-                                    recordingHelper
-                                            .getArchivedRecordingMetadata(jvmId, filename)
-                                            .orElseGet(Metadata::empty);
-                            result.add(
-                                    new ArchivedRecording(
-                                            filename,
-                                            recordingHelper.downloadUrl(jvmId, filename),
-                                            recordingHelper.reportUrl(jvmId, filename),
-                                            metadata,
-                                            item.size(),
-                                            item.lastModified().getEpochSecond()));
-                        });
-        return result;
+        return recordingHelper.listArchivedRecordings().stream()
+                .map(recordingHelper::toExternalForm)
+                .toList();
     }
 
     @POST
@@ -204,13 +213,11 @@ public class Recordings {
             @RestPath String jvmId,
             @RestForm("recording") FileUpload recording,
             @RestForm("labels") JsonObject rawLabels,
-            @RestForm("maxFiles") int maxFiles)
+            @RestForm("maxFiles") int maxFiles,
+            @RestForm("maxBytes") long maxBytes,
+            @RestForm("maxAge") long maxAge)
             throws Exception {
         jvmId = jvmId.strip();
-        int max = Integer.MAX_VALUE;
-        if (maxFiles > 0) {
-            max = maxFiles;
-        }
         Map<String, String> labels = new HashMap<>();
         if (rawLabels != null) {
             rawLabels.getMap().forEach((k, v) -> labels.put(k, v.toString()));
@@ -218,62 +225,10 @@ public class Recordings {
         labels.put("jvmId", jvmId);
         Metadata metadata = new Metadata(labels);
         logger.infov(
-                "recording:{0}, labels:{1}, maxFiles:{2}", recording.fileName(), labels, maxFiles);
+                "recording:{0}, labels:{1}, maxFiles:{2}, maxBytes:{3}, maxAge:{4}",
+                recording.fileName(), labels, maxFiles, maxBytes, maxAge);
         doUpload(recording, metadata, jvmId);
-        var objs = new ArrayList<S3Object>();
-        recordingHelper.listArchivedRecordingObjects(jvmId).iterator().forEachRemaining(objs::add);
-        var toRemove =
-                objs.stream()
-                        .sorted((a, b) -> b.lastModified().compareTo(a.lastModified()))
-                        .skip(max)
-                        .toList();
-        if (toRemove.isEmpty()) {
-            return;
-        }
-        logger.infov("Removing {0}", toRemove);
-
-        // FIXME this notification should be emitted in the deletion operation stream so that there
-        // is one notification per deleted object
-        var target = Target.getTargetByJvmId(jvmId);
-        var event =
-                new ArchivedRecordingEvent(
-                        Recordings.RecordingEventCategory.ARCHIVED_DELETED,
-                        ArchivedRecordingEvent.Payload.of(
-                                target.map(t -> t.connectUrl).orElse(null),
-                                new ArchivedRecording(
-                                        recording.fileName(),
-                                        recordingHelper.downloadUrl(jvmId, recording.fileName()),
-                                        recordingHelper.reportUrl(jvmId, recording.fileName()),
-                                        metadata,
-                                        0,
-                                        clock.getMonotonicTime())));
-        bus.publish(event.category().category(), event.payload().recording());
-        bus.publish(
-                MessagingServer.class.getName(),
-                new Notification(event.category().category(), event.payload()));
-        storage.deleteObjects(
-                        DeleteObjectsRequest.builder()
-                                .bucket(bucket)
-                                .delete(
-                                        Delete.builder()
-                                                .objects(
-                                                        toRemove.stream()
-                                                                .map(S3Object::key)
-                                                                .map(
-                                                                        k ->
-                                                                                ObjectIdentifier
-                                                                                        .builder()
-                                                                                        .key(k)
-                                                                                        .build())
-                                                                .toList())
-                                                .build())
-                                .build())
-                .errors()
-                .forEach(
-                        err -> {
-                            logger.errorv(
-                                    "Deletion failure: {0} due to {1}", err.key(), err.message());
-                        });
+        recordingHelper.enforceRetention(jvmId, maxFiles, maxBytes, maxAge);
     }
 
     @GET
@@ -281,27 +236,9 @@ public class Recordings {
     @Path("/api/beta/recordings/{jvmId}")
     @RolesAllowed("read")
     public List<ArchivedRecording> agentGet(@RestPath String jvmId) {
-        var result = new ArrayList<ArchivedRecording>();
-        recordingHelper
-                .listArchivedRecordingObjects(jvmId)
-                .forEach(
-                        item -> {
-                            String objectName = item.key().strip();
-                            String filename = objectName.split("/")[1];
-                            Metadata metadata =
-                                    recordingHelper
-                                            .getArchivedRecordingMetadata(jvmId, filename)
-                                            .orElseGet(Metadata::empty);
-                            result.add(
-                                    new ArchivedRecording(
-                                            filename,
-                                            recordingHelper.downloadUrl(jvmId, filename),
-                                            recordingHelper.reportUrl(jvmId, filename),
-                                            metadata,
-                                            item.size(),
-                                            item.lastModified().getEpochSecond()));
-                        });
-        return result;
+        return recordingHelper.listArchivedRecordings(jvmId).stream()
+                .map(recordingHelper::toExternalForm)
+                .toList();
     }
 
     @DELETE
@@ -316,9 +253,10 @@ public class Recordings {
         } else {
             jvmId = Target.getTargetByConnectUrl(URI.create(connectUrl)).jvmId;
         }
-        if (!recordingHelper.listArchivedRecordingObjects(jvmId).stream()
-                .map(item -> item.key().strip().split("/")[1])
-                .anyMatch(fn -> Objects.equals(fn, filename))) {
+        if (recordingHelper
+                .getArchivedRecording(jvmId, filename)
+                .filter(e -> !e.isTransient())
+                .isEmpty()) {
             return Response.status(RestResponse.Status.NOT_FOUND).build();
         }
         recordingHelper.deleteArchivedRecording(jvmId, filename);
@@ -326,7 +264,8 @@ public class Recordings {
     }
 
     @Blocking
-    Map<String, Object> doUpload(FileUpload recording, Metadata metadata, String jvmId) {
+    Map<String, Object> doUpload(FileUpload recording, Metadata metadata, String jvmId)
+            throws Exception {
         logger.infov(
                 "Upload: {0} {1} {2} {3}",
                 recording.name(), recording.fileName(), recording.filePath(), metadata.labels);
@@ -340,15 +279,33 @@ public class Recordings {
         Map<String, String> labels = new HashMap<>(metadata.labels);
         labels.put("jvmId", jvmId);
         String key = recordingHelper.archivedRecordingKey(jvmId, filename);
-        storage.putObject(
-                PutObjectRequest.builder()
-                        .bucket(bucket)
-                        .key(key)
-                        .contentType(RecordingHelper.JFR_MIME)
-                        .tagging(recordingHelper.createMetadataTagging(new Metadata(labels)))
-                        .build(),
-                RequestBody.fromFile(recording.filePath()));
+        if (archiveCodec.isIdentity()) {
+            storage.putObject(
+                    PutObjectRequest.builder()
+                            .bucket(bucket)
+                            .key(key)
+                            .contentType(RecordingHelper.JFR_MIME)
+                            .tagging(recordingHelper.createMetadataTagging(new Metadata(labels)))
+                            .build(),
+                    RequestBody.fromFile(recording.filePath()));
+        } else {
+            // the encoded length is not known up front, so stream it through a multipart upload
+            try (var stream = archiveCodec.encode(Files.newInputStream(recording.filePath()))) {
+                uploader.upload(
+                        CreateMultipartUploadRequest.builder()
+                                .bucket(bucket)
+                                .key(key)
+                                .contentType(RecordingHelper.JFR_MIME)
+                                .metadata(Map.of(StorageCodec.METADATA_KEY, archiveCodec.id()))
+                                .tagging(
+                                        recordingHelper.createMetadataTagging(new Metadata(labels)))
+                                .build(),
+                        stream);
+            }
+        }
         logger.info("Upload complete");
+        recordingHelper.indexArchivedRecording(
+                jvmId, filename, recording.size(), clock.now(), new Metadata(labels), archiveCodec);
 
         var target = Target.getTargetByJvmId(jvmId);
         var event =
@@ -371,6 +328,67 @@ public class Recordings {
         return Map.of("name", filename, "metadata", Map.of("labels", metadata.labels));
     }
 
+    /**
+     * Delete many archives at once. Storage deletions are batched, and a single notification is
+     * emitted for the whole batch rather than one per archive. Archives which could not be deleted
+     * are reported individually in the result.
+     */
+    @POST
+    @Blocking
+    @Path("/api/beta/recordings/delete")
+    @RolesAllowed("write")
+    public BulkArchiveDeleteResult bulkDeleteArchives(BulkArchiveDeleteRequest request) {
+        if (request == null || (request.keys().isEmpty() && !request.hasCriteria())) {
+            throw new BadRequestException("Archive keys or selection criteria are required");
+        }
+        List<BulkArchiveDeleteError> missing = new ArrayList<>();
+        List<ArchivedRecordingEntry> entries;
+        if (!request.keys().isEmpty()) {
+            entries = new ArrayList<>();
+            for (var key : request.keys()) {
+                recordingHelper
+                        .getArchivedRecording(key.jvmId(), key.filename())
+                        .ifPresentOrElse(
+                                entries::add,
+                                () ->
+                                        missing.add(
+                                                new BulkArchiveDeleteError(
+                                                        key, "NoSuchKey", "Archive not found")));
+            }
+        } else {
+            entries =
+                    recordingHelper.listArchivedRecordings(
+                            request.jvmId(),
+                            Optional.ofNullable(request.archivedBefore())
+                                    .map(Instant::ofEpochMilli)
+                                    .orElse(null),
+                            request.labels());
+        }
+        var result = recordingHelper.deleteArchivedRecordings(entries);
+        if (missing.isEmpty()) {
+            return result;
+        }
+        missing.addAll(result.errors());
+        return new BulkArchiveDeleteResult(result.deleted(), missing);
+    }
+
+    /**
+     * Concatenate several archives of one JVM into a new archive, in the given order. The merge is
+     * performed within storage where possible, so archive data does not pass through Cryostat.
+     */
+    @POST
+    @Blocking
+    @Path("/api/beta/recordings/{jvmId}/merge")
+    @RolesAllowed("write")
+    public ArchivedRecording mergeArchives(@RestPath String jvmId, ArchiveMergeRequest request)
+            throws Exception {
+        if (request == null) {
+            throw new BadRequestException();
+        }
+        return archiveMerger.merge(
+                jvmId.strip(), request.filenames(), request.filename(), request.deleteSources());
+    }
+
     @DELETE
     @Blocking
     @Path("/api/v1/recordings/{filename}")
@@ -382,6 +400,7 @@ public class Recordings {
                         .bucket(bucket)
                         .key(String.format("%s/%s", "uploads", filename))
                         .build());
+        recordingHelper.unindexArchivedRecording("uploads", filename);
     }
 
     @GET
@@ -389,41 +408,136 @@ public class Recordings {
     @Path("/api/beta/fs/recordings")
     @RolesAllowed("read")
     public Collection<ArchivedRecordingDirectory> listFsArchives() {
-        var map = new HashMap<String, ArchivedRecordingDirectory>();
+        var map = new LinkedHashMap<String, ArchivedRecordingDirectory>();
         recordingHelper
-                .listArchivedRecordingObjects()
+                .listArchivedRecordings()
                 .forEach(
                         item -> {
-                            String path = item.key().strip();
-                            String[] parts = path.split("/");
-                            String jvmId = parts[0];
-                            String filename = parts[1];
-
-                            Metadata metadata =
-                                    recordingHelper
-                                            .getArchivedRecordingMetadata(jvmId, filename)
-                                            .orElseGet(Metadata::empty);
-
+                            String jvmId = item.jvmId;
+                            ArchivedRecording recording = recordingHelper.toExternalForm(item);
                             String connectUrl =
-                                    metadata.labels.computeIfAbsent("connectUrl", k -> jvmId);
+                                    recording
+                                            .metadata()
+                                            .labels
+                                            .computeIfAbsent("connectUrl", k -> jvmId);
                             var dir =
                                     map.computeIfAbsent(
                                             jvmId,
                                             id ->
                                                     new ArchivedRecordingDirectory(
                                                             connectUrl, id, new ArrayList<>()));
-                            dir.recordings.add(
-                                    new ArchivedRecording(
-                                            filename,
-                                            recordingHelper.downloadUrl(jvmId, filename),
-                                            recordingHelper.reportUrl(jvmId, filename),
-                                            metadata,
-                                            item.size(),
-                                            item.lastModified().getEpochSecond()));
+                            dir.recordings.add(recording);
                         });
         return map.values();
     }
 
+    /**
+     * Stream the same directories as {@link #listFsArchives()} as newline-delimited JSON, one page
+     * of the archive index at a time. A directory holding more recordings than fit in one page is
+     * sent as several consecutive items with the same jvmId, each carrying part of its recordings,
+     * so that memory use does not grow with the size of the largest directory. Clients must merge
+     * consecutive items with the same jvmId to obtain whole directories. Items for different
+     * directories are never interleaved.
+     */
+    @GET
+    @Path("/api/beta/fs/recordings/stream")
+    @RolesAllowed("read")
+    @Produces(RestMediaType.APPLICATION_NDJSON)
+    @RestStreamElementType(MediaType.APPLICATION_JSON)
+    public Multi<ArchivedRecordingDirectory> streamFsArchives() {
+        return Multi.createBy()
+                .repeating()
+                .uni(
+                        FsArchivesCursor::new,
+                        cursor ->
+                                Uni.createFrom()
+                                        .item(() -> nextFsArchiveDirectories(cursor))
+                                        .runSubscriptionOn(Infrastructure.getDefaultWorkerPool()))
+                .until(List::isEmpty)
+                .onItem()
+                .disjoint();
+    }
+
+    /**
+     * Read pages of the archive index until at least one directory is complete, ie. the next page
+     * begins with a different jvmId, or until the index is exhausted. Directories holding more than
+     * one page of recordings are emitted in page-sized parts, so memory use stays bounded by about
+     * two pages. Consecutive items with the same jvmId are parts of the same directory, see {@link
+     * #streamFsArchives()}.
+     */
+    private List<ArchivedRecordingDirectory> nextFsArchiveDirectories(FsArchivesCursor cursor) {
+        var complete = new ArrayList<ArchivedRecordingDirectory>();
+        while (complete.isEmpty() && !cursor.exhausted) {
+            var page =
+                    recordingHelper.listArchivedRecordingsPageByJvmId(
+                            cursor.jvmId, cursor.id, ARCHIVES_PAGE_SIZE_DEFAULT);
+            cursor.exhausted = page.size() < ARCHIVES_PAGE_SIZE_DEFAULT;
+            for (var entry : page) {
+                if (cursor.pending != null && !cursor.pending.jvmId().equals(entry.jvmId)) {
+                    complete.add(cursor.pending);
+                    cursor.pending = null;
+                }
+                String jvmId = entry.jvmId;
+                ArchivedRecording recording = recordingHelper.toExternalForm(entry);
+                String connectUrl =
+                        recording.metadata().labels.computeIfAbsent("connectUrl", k -> jvmId);
+                if (cursor.pending == null) {
+                    cursor.pending =
+                            new ArchivedRecordingDirectory(connectUrl, jvmId, new ArrayList<>());
+                }
+                cursor.pending.recordings().add(recording);
+                if (cursor.pending.recordings().size() >= ARCHIVES_PAGE_SIZE_DEFAULT) {
+                    complete.add(cursor.pending);
+                    cursor.pending = null;
+                }
+                cursor.jvmId = jvmId;
+                cursor.id = entry.id;
+            }
+        }
+        if (cursor.exhausted && cursor.pending != null) {
+            complete.add(cursor.pending);
+            cursor.pending = null;
+        }
+        return complete;
+    }
+
+    @GET
+    @Blocking
+    @Path("/api/v3/recordings")
+    @RolesAllowed("read")
+    public ArchivedRecordingPage listArchivesV3(
+            @RestQuery String jvmId, @RestQuery Integer limit, @RestQuery String cursor) {
+        int pageSize = limit == null ? ARCHIVES_PAGE_SIZE_DEFAULT : limit;
+        if (pageSize < 1 || pageSize > ARCHIVES_PAGE_SIZE_MAX) {
+            throw new BadRequestException(
+                    String.format("limit must be between 1 and %d", ARCHIVES_PAGE_SIZE_MAX));
+        }
+        long afterId = decodeCursor(cursor);
+        var page = recordingHelper.listArchivedRecordingsPage(jvmId, afterId, pageSize);
+        String next = null;
+        if (page.size() == pageSize) {
+            next = encodeCursor(page.get(page.size() - 1).id);
+        }
+        return new ArchivedRecordingPage(
+                page.stream().map(recordingHelper::toExternalForm).toList(), next);
+    }
+
+    private String encodeCursor(long id) {
+        return base64Url.encodeAsString(Long.toString(id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long decodeCursor(String cursor) {
+        if (StringUtils.isBlank(cursor)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(
+                    new String(base64Url.decode(cursor), StandardCharsets.UTF_8).strip());
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Invalid cursor", e);
+        }
+    }
+
     @GET
     @Path("/api/v3/targets/{id}/recordings")
     @RolesAllowed("read")
@@ -447,7 +561,7 @@ public class Recordings {
     @Blocking
     @Path("/api/v3/targets/{targetId}/recordings/{remoteId}")
     @RolesAllowed("write")
-    public String patch(@RestPath long targetId, @RestPath long remoteId, String body)
+    public Response patch(@RestPath long targetId, @RestPath long remoteId, String body)
             throws Exception {
         Target target = Target.find("id", targetId).singleResult();
         Optional<ActiveRecording> recording =
@@ -462,20 +576,15 @@ public class Recordings {
             case "stop":
                 activeRecording.state = RecordingState.STOPPED;
                 activeRecording.persist();
-                return null;
+                return Response.noContent().build();
             case "save":
-                try {
-                    // FIXME this operation might take a long time to complete, depending on the
-                    // amount of JFR data in the target and the speed of the connection between the
-                    // target and Cryostat. We should not make the client wait until this operation
-                    // completes before sending a response - it should be async. Here we should just
-                    // return an Accepted response, and if a failure occurs that should be indicated
-                    // as a websocket notification.
-                    return recordingHelper.saveRecording(activeRecording);
-                } catch (IOException ioe) {
-                    logger.warn(ioe);
-                    return null;
-                }
+                // the transfer may take a long time depending on the amount of JFR data in the
+                // target and the speed of the connection to it, so it is performed as a background
+                // job. Progress and the final outcome are reported as websocket notifications.
+                var job = archiveJobs.submit(activeRecording);
+                return Response.accepted(job.id())
+                        .location(URI.create(String.format("/api/v3/archive_jobs/%s", job.id())))
+                        .build();
             default:
                 throw new BadRequestException(body);
         }
@@ -495,6 +604,20 @@ public class Recordings {
         if (recording.isEmpty()) {
             throw new NotFoundException();
         }
+        if ("save".equalsIgnoreCase(body)) {
+            // the V1 API responds to a save with the archived filename once the save is complete,
+            // rather than with a background job ID as in V3
+            ActiveRecording activeRecording = target.getRecordingById(recording.get().getId());
+            if (activeRecording == null) {
+                throw new NotFoundException();
+            }
+            try {
+                return Response.ok(recordingHelper.saveRecording(activeRecording)).build();
+            } catch (IOException ioe) {
+                logger.warn(ioe);
+                return Response.noContent().build();
+            }
+        }
         return Response.status(RestResponse.Status.PERMANENT_REDIRECT)
                 .location(
                         URI.create(
@@ -510,13 +633,14 @@ public class Recordings {
     @RolesAllowed("write")
     public Uni<Response> createSnapshotV1(@RestPath URI connectUrl) throws Exception {
         Target target = Target.getTargetByConnectUrl(connectUrl);
-        return connectionManager
-                .executeConnectedTaskUni(
-                        target, connection -> recordingHelper.createSnapshot(target, connection))
+        return recordingHelper
+                .createSnapshot(target)
                 .onItem()
                 .transform(
                         recording ->
-                                Response.status(Response.Status.OK).entity(recording.name).build())
+                                Response.status(Response.Status.OK)
+                                        .entity(recording.name())
+                                        .build())
                 .onFailure(SnapshotCreationException.class)
                 .recoverWithItem(Response.status(Response.Status.ACCEPTED).build());
     }
@@ -527,17 +651,13 @@ public class Recordings {
     @RolesAllowed("write")
     public Uni<Response> createSnapshotV2(@RestPath URI connectUrl) throws Exception {
         Target target = Target.getTargetByConnectUrl(connectUrl);
-        return connectionManager
-                .executeConnectedTaskUni(
-                        target, connection -> recordingHelper.createSnapshot(target, connection))
+        return recordingHelper
+                .createSnapshot(target)
                 .onItem()
                 .transform(
                         recording ->
                                 Response.status(Response.Status.CREATED)
-                                        .entity(
-                                                V2Response.json(
-                                                        Response.Status.CREATED,
-                                                        recordingHelper.toExternalForm(recording)))
+                                        .entity(V2Response.json(Response.Status.CREATED, recording))
                                         .build())
                 .onFailure(SnapshotCreationException.class)
                 .recoverWithItem(
@@ -552,15 +672,11 @@ public class Recordings {
     @RolesAllowed("write")
     public Uni<Response> createSnapshot(@RestPath long id) throws Exception {
         Target target = Target.find("id", id).singleResult();
-        return connectionManager
-                .executeConnectedTaskUni(
-                        target, connection -> recordingHelper.createSnapshot(target, connection))
+        return recordingHelper
+                .createSnapshot(target)
                 .onItem()
                 .transform(
-                        recording ->
-                                Response.status(Response.Status.OK)
-                                        .entity(recordingHelper.toExternalForm(recording))
-                                        .build())
+                        recording -> Response.status(Response.Status.OK).entity(recording).build())
                 .onFailure(SnapshotCreationException.class)
                 .recoverWithItem(Response.status(Response.Status.ACCEPTED).build());
     }
@@ -644,10 +760,7 @@ public class Recordings {
                         });
 
         if (recording.duration > 0) {
-            scheduler.schedule(
-                    () -> stopRecording(recording.id, archiveOnStop.orElse(false)),
-                    recording.duration,
-                    TimeUnit.MILLISECONDS);
+            recordingStopScheduler.schedule(recording, archiveOnStop.orElse(false));
         }
 
         return Response.status(Response.Status.CREATED)
@@ -655,23 +768,6 @@ public class Recordings {
                 .build();
     }
 
-    @Transactional
-    void stopRecording(long id, boolean archive) {
-        ActiveRecording.<ActiveRecording>findByIdOptional(id)
-                .ifPresent(
-                        recording -> {
-                            try {
-                                recording.state = RecordingState.STOPPED;
-                                recording.persist();
-                                if (archive) {
-                                    recordingHelper.saveRecording(recording);
-                                }
-                            } catch (Exception e) {
-                                logger.error("couldn't update recording", e);
-                            }
-                        });
-    }
-
     @POST
     @Transactional
     @Blocking
@@ -766,6 +862,7 @@ public class Recordings {
                 "Got SDK response {0} {1}",
                 resp.sdkHttpResponse().statusCode(), resp.sdkHttpResponse().statusText());
         if (resp.sdkHttpResponse().isSuccessful()) {
+            recordingHelper.unindexArchivedRecording(jvmId, filename);
             var event =
                     new ArchivedRecordingEvent(
                             Recordings.RecordingEventCategory.ARCHIVED_DELETED,
@@ -851,12 +948,10 @@ public class Recordings {
     public Uni<String> uploadArchivedToGrafana(@RestPath String encodedKey) throws Exception {
         var key = recordingHelper.decodedKey(encodedKey);
         var found =
-                recordingHelper.listArchivedRecordingObjects().stream()
-                        .anyMatch(
-                                o ->
-                                        Objects.equals(
-                                                o.key(),
-                                                recordingHelper.archivedRecordingKey(key)));
+                recordingHelper
+                        .getArchivedRecording(key.getKey(), key.getValue())
+                        .filter(e -> !e.isTransient())
+                        .isPresent();
         if (!found) {
             throw new NotFoundException();
         }
@@ -966,22 +1061,62 @@ public class Recordings {
     }
 
     @GET
-    @Blocking
     @Path("/api/v3/activedownload/{id}")
     @RolesAllowed("read")
-    public Response handleActiveDownload(@RestPath long id) throws Exception {
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public Multi<Buffer> handleActiveDownload(
+            @RestPath long id,
+            @RestQuery Long startTime,
+            @RestQuery Long endTime,
+            @Context HttpServerResponse response) {
+        Instant start = toInstant(startTime);
+        Instant end = toInstant(endTime);
+        validateTimeWindow(start, end);
+        boolean windowed = start != null || end != null;
+        var worker = Infrastructure.getDefaultWorkerPool();
+        return Uni.createFrom()
+                .item(Unchecked.supplier(() -> prepareActiveDownload(id, windowed)))
+                .runSubscriptionOn(worker)
+                .onItem()
+                .transformToMulti(
+                        recording -> {
+                            response.putHeader(
+                                    HttpHeaders.CONTENT_DISPOSITION,
+                                    String.format(
+                                            "attachment; filename=\"%s.jfr\"", recording.name));
+                            // the length and content of a stream taken directly from the target
+                            // are not stable between requests, so byte ranges cannot be honoured
+                            response.putHeader(ByteRange.ACCEPT_RANGES, ByteRange.NONE);
+                            // the remote stream is read in bounded chunks on worker threads as the
+                            // client consumes the response, so a slow client pauses reads from the
+                            // target instead of pinning a worker for the whole transfer
+                            return buffers.stream(
+                                    () ->
+                                            windowed
+                                                    ? JfrChunkFilterInputStream.window(
+                                                            remoteRecordingStreamFactory.open(
+                                                                    recording, start, end),
+                                                            start,
+                                                            end)
+                                                    : recordingHelper.getActiveInputStream(
+                                                            recording),
+                                    worker);
+                        });
+    }
+
+    /**
+     * Look up the active recording to be downloaded. When transient archives are enabled the
+     * recording is instead saved to a short-lived archive and the client is redirected to download
+     * that, unless only a time window of the recording was requested, which can be read from the
+     * target more cheaply than archiving the whole recording.
+     */
+    ActiveRecording prepareActiveDownload(long id, boolean windowed) throws Exception {
         ActiveRecording recording = ActiveRecording.findById(id);
         if (recording == null) {
             throw new NotFoundException();
         }
-        if (!transientArchivesEnabled) {
-            return Response.status(RestResponse.Status.OK)
-                    .header(
-                            HttpHeaders.CONTENT_DISPOSITION,
-                            String.format("attachment; filename=\"%s.jfr\"", recording.name))
-                    .header(HttpHeaders.CONTENT_TYPE, HttpMimeType.OCTET_STREAM.mime())
-                    .entity(recordingHelper.getActiveInputStream(recording))
-                    .build();
+        if (!transientArchivesEnabled || windowed) {
+            return recording;
         }
 
         String savename = recording.name;
@@ -992,38 +1127,183 @@ public class Recordings {
         if (!savename.endsWith(".jfr")) {
             savename += ".jfr";
         }
-        return Response.status(RestResponse.Status.PERMANENT_REDIRECT)
-                .header(
-                        HttpHeaders.CONTENT_DISPOSITION,
-                        String.format("attachment; filename=\"%s\"", savename))
-                .location(
-                        URI.create(
-                                String.format(
-                                        "/api/v3/download/%s?f=%s",
-                                        encodedKey,
-                                        base64Url.encodeAsString(
-                                                savename.getBytes(StandardCharsets.UTF_8)))))
-                .build();
+        throw new RedirectionException(
+                Response.status(RestResponse.Status.PERMANENT_REDIRECT)
+                        .header(
+                                HttpHeaders.CONTENT_DISPOSITION,
+                                String.format("attachment; filename=\"%s\"", savename))
+                        .location(
+                                URI.create(
+                                        String.format(
+                                                "/api/v3/download/%s?f=%s",
+                                                encodedKey,
+                                                base64Url.encodeAsString(
+                                                        savename.getBytes(
+                                                                StandardCharsets.UTF_8)))))
+                        .build());
+    }
+
+    private static Instant toInstant(Long epochMillis) {
+        return epochMillis == null ? null : Instant.ofEpochMilli(epochMillis);
+    }
+
+    private static void validateTimeWindow(Instant start, Instant end) {
+        if (start != null && end != null && end.isBefore(start)) {
+            throw new BadRequestException("endTime must not be before startTime");
+        }
+    }
+
+    /**
+     * Serve an unencoded archive from storage or the local {@link ArchiveDiskCache}, honouring a
+     * single-range {@code Range} request by mapping it onto a ranged read. {@code If-Range} is
+     * evaluated against the object's ETag or modification time, and a full 200 response is sent if
+     * it does not match.
+     */
+    Response handleArchivedRangeDownload(Pair<String, String> pair, String range, String ifRange) {
+        String jvmId = pair.getKey();
+        String filename = pair.getValue();
+        if (StringUtils.isNotBlank(range)) {
+            var head = recordingHelper.getArchivedRecordingObjectInfo(jvmId, filename);
+            if (ifRangeMatches(ifRange, head.eTag(), head.lastModified())) {
+                Optional<ByteRange> byteRange;
+                try {
+                    byteRange = ByteRange.parse(range, head.contentLength());
+                } catch (ByteRange.UnsatisfiableRangeException e) {
+                    return Response.status(RestResponse.Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                            .header(ByteRange.ACCEPT_RANGES, ByteRange.UNIT)
+                            .header(
+                                    ByteRange.CONTENT_RANGE,
+                                    ByteRange.unsatisfiable(head.contentLength()))
+                            .build();
+                }
+                if (byteRange.isPresent()) {
+                    var r = byteRange.get();
+                    var object =
+                            recordingHelper.getArchivedRecordingObject(
+                                    jvmId, filename, r, head.eTag());
+                    return archiveDownloadResponse(
+                                    RestResponse.Status.PARTIAL_CONTENT,
+                                    filename,
+                                    object.info().eTag(),
+                                    object.info().lastModified())
+                            .header(ByteRange.CONTENT_RANGE, r.toContentRange(head.contentLength()))
+                            .header(HttpHeaders.CONTENT_LENGTH, r.length())
+                            .entity(object.entity())
+                            .build();
+                }
+            }
+        }
+        var object = recordingHelper.getArchivedRecordingObject(jvmId, filename);
+        ResponseBuilder response =
+                archiveDownloadResponse(
+                        RestResponse.Status.OK,
+                        filename,
+                        object.info().eTag(),
+                        object.info().lastModified());
+        if (object.info().contentLength() >= 0) {
+            response = response.header(HttpHeaders.CONTENT_LENGTH, object.info().contentLength());
+        }
+        return response.entity(object.entity()).build();
+    }
+
+    private ResponseBuilder archiveDownloadResponse(
+            RestResponse.Status status, String filename, String eTag, Instant lastModified) {
+        ResponseBuilder response =
+                Response.status(status)
+                        .header(
+                                HttpHeaders.CONTENT_DISPOSITION,
+                                String.format("attachment; filename=\"%s\"", filename))
+                        .header(HttpHeaders.CONTENT_TYPE, HttpMimeType.OCTET_STREAM.mime())
+                        .header(ByteRange.ACCEPT_RANGES, ByteRange.UNIT);
+        if (StringUtils.isNotBlank(eTag)) {
+            response = response.header(HttpHeaders.ETAG, eTag);
+        }
+        if (lastModified != null) {
+            response =
+                    response.header(
+                            HttpHeaders.LAST_MODIFIED,
+                            DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                                    lastModified.atZone(ZoneOffset.UTC)));
+        }
+        return response;
+    }
+
+    static boolean ifRangeMatches(String ifRange, String eTag, Instant lastModified) {
+        if (StringUtils.isBlank(ifRange)) {
+            return true;
+        }
+        String validator = ifRange.strip();
+        if (validator.startsWith("\"")) {
+            // If-Range requires a strong comparison, and S3 ETags are always strong
+            return validator.equals(eTag);
+        }
+        if (validator.startsWith("W/") || lastModified == null) {
+            return false;
+        }
+        try {
+            Instant date =
+                    ZonedDateTime.parse(validator, DateTimeFormatter.RFC_1123_DATE_TIME)
+                            .toInstant();
+            return date.equals(lastModified.truncatedTo(ChronoUnit.SECONDS));
+        } catch (DateTimeParseException e) {
+            return false;
+        }
     }
 
     @GET
     @Blocking
     @Path("/api/v3/download/{encodedKey}")
     @RolesAllowed("read")
-    public Response handleStorageDownload(@RestPath String encodedKey, @RestQuery String f)
+    public Response handleStorageDownload(
+            @RestPath String encodedKey,
+            @RestQuery String f,
+            @RestQuery Long startTime,
+            @RestQuery Long endTime,
+            @RestHeader(ByteRange.RANGE) String range,
+            @RestHeader(ByteRange.IF_RANGE) String ifRange)
             throws URISyntaxException {
         Pair<String, String> pair = recordingHelper.decodedKey(encodedKey);
+        Instant start = toInstant(startTime);
+        Instant end = toInstant(endTime);
+        validateTimeWindow(start, end);
+
+        // a time window is cut from the recording on the way out, so the result is neither the
+        // stored object nor stable enough to be ranged
+        if (start != null || end != null) {
+            return Response.status(RestResponse.Status.OK)
+                    .header(
+                            HttpHeaders.CONTENT_DISPOSITION,
+                            String.format("attachment; filename=\"%s\"", pair.getValue()))
+                    .header(HttpHeaders.CONTENT_TYPE, HttpMimeType.OCTET_STREAM.mime())
+                    .header(ByteRange.ACCEPT_RANGES, ByteRange.NONE)
+                    .entity(
+                            JfrChunkFilterInputStream.window(
+                                    recordingHelper.getArchivedRecordingStream(encodedKey),
+                                    start,
+                                    end))
+                    .build();
+        }
 
-        if (!presignedDownloadsEnabled) {
+        // encoded and chunked archives must be reassembled on the way out, so they cannot be handed
+        // off to storage. Byte offsets into the reassembled stream do not correspond to offsets
+        // into the stored object, so ranges are not supported for these either.
+        if (!recordingHelper.isArchivedRecordingStoredVerbatim(pair.getKey(), pair.getValue())) {
             return Response.status(RestResponse.Status.OK)
                     .header(
                             HttpHeaders.CONTENT_DISPOSITION,
                             String.format("attachment; filename=\"%s\"", pair.getValue()))
                     .header(HttpHeaders.CONTENT_TYPE, HttpMimeType.OCTET_STREAM.mime())
+                    .header(ByteRange.ACCEPT_RANGES, ByteRange.NONE)
                     .entity(recordingHelper.getArchivedRecordingStream(encodedKey))
                     .build();
         }
 
+        // there is no separate service to redirect clients to when archives are stored on the local
+        // filesystem
+        if (!presignedDownloadsEnabled || storageBackend != StorageBackend.S3) {
+            return handleArchivedRangeDownload(pair, range, ifRange);
+        }
+
         logger.infov("Handling presigned download request for {0}", pair);
         GetObjectRequest getRequest =
                 GetObjectRequest.builder()
@@ -1142,6 +1422,62 @@ public class Recordings {
         }
     }
 
+    @SuppressFBWarnings("EI_EXPOSE_REP")
+    public record ArchivedRecordingPage(List<ArchivedRecording> data, String next) {
+        public ArchivedRecordingPage {
+            if (data == null) {
+                data = Collections.emptyList();
+            }
+        }
+    }
+
+    private static class FsArchivesCursor {
+        String jvmId = "";
+        long id;
+        ArchivedRecordingDirectory pending;
+        boolean exhausted;
+    }
+
+    public record ArchiveKey(String jvmId, String filename) {
+        public ArchiveKey {
+            Objects.requireNonNull(jvmId);
+            Objects.requireNonNull(filename);
+        }
+    }
+
+    /**
+     * Selects archives for bulk deletion, either by an explicit list of keys or by any combination
+     * of jvmId, labels which must all match, and archival time.
+     */
+    public record BulkArchiveDeleteRequest(
+            List<ArchiveKey> keys, String jvmId, Map<String, String> labels, Long archivedBefore) {
+        public BulkArchiveDeleteRequest {
+            if (keys == null) {
+                keys = Collections.emptyList();
+            }
+            if (labels == null) {
+                labels = Collections.emptyMap();
+            }
+        }
+
+        boolean hasCriteria() {
+            return StringUtils.isNotBlank(jvmId) || !labels.isEmpty() || archivedBefore != null;
+        }
+    }
+
+    public record BulkArchiveDeleteError(ArchiveKey key, String code, String message) {}
+
+    @SuppressFBWarnings("EI_EXPOSE_REP")
+    public record BulkArchiveDeleteResult(
+            List<ArchiveKey> deleted, List<BulkArchiveDeleteError> errors) {}
+
+    @SuppressFBWarnings("EI_EXPOSE_REP")
+    public record ArchivedRecordingBatch(List<ArchivedRecording> recordings) {}
+
+    @SuppressFBWarnings("EI_EXPOSE_REP")
+    public record ArchiveMergeRequest(
+            List<String> filenames, String filename, boolean deleteSources) {}
+
     @SuppressFBWarnings("EI_EXPOSE_REP")
     public record ArchivedRecordingDirectory(
             String connectUrl, String jvmId, List<ArchivedRecording> recordings) {
@@ -1181,6 +1517,7 @@ public class Recordings {
     public static final String ACTIVE_RECORDING_STOPPED = "ActiveRecordingStopped";
     public static final String ARCHIVED_RECORDING_DELETED = "ArchivedRecordingDeleted";
     public static final String ARCHIVED_RECORDING_CREATED = "ArchivedRecordingCreated";
+    public static final String ARCHIVED_RECORDING_BATCH_DELETED = "ArchivedRecordingDeletedBatch";
     public static final String ACTIVE_RECORDING_DELETED = "ActiveRecordingDeleted";
     public static final String ACTIVE_RECORDING_SAVED = "ActiveRecordingSaved";
     public static final String SNAPSHOT_RECORDING_CREATED = "SnapshotCreated";
@@ -1192,6 +1529,7 @@ public class Recordings {
         ACTIVE_DELETED(ACTIVE_RECORDING_DELETED),
         ARCHIVED_CREATED(ARCHIVED_RECORDING_CREATED),
         ARCHIVED_DELETED(ARCHIVED_RECORDING_DELETED),
+        ARCHIVED_BATCH_DELETED(ARCHIVED_RECORDING_BATCH_DELETED),
         SNAPSHOT_CREATED(SNAPSHOT_RECORDING_CREATED),
         ;
 
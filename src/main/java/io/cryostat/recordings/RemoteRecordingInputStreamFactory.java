@@ -16,7 +16,10 @@
 package io.cryostat.recordings;
 
 import java.io.InputStream;
+import java.time.Instant;
+import java.util.function.Consumer;
 
+import org.openjdk.jmc.common.unit.UnitLookup;
 import org.openjdk.jmc.rjmx.services.jfr.IRecordingDescriptor;
 
 import io.cryostat.ProgressInputStream;
@@ -33,19 +36,91 @@ public class RemoteRecordingInputStreamFactory {
     @Inject TargetConnectionManager connectionManager;
 
     public ProgressInputStream open(ActiveRecording recording) throws Exception {
+        return open(recording, n -> {});
+    }
+
+    public ProgressInputStream open(ActiveRecording recording, Consumer<Integer> onProgress)
+            throws Exception {
         return connectionManager.executeConnectedTask(
                 recording.target,
                 conn -> {
                     IRecordingDescriptor desc =
                             RecordingHelper.getDescriptor(conn, recording).orElseThrow();
-                    return open(conn, recording.target, desc);
+                    return open(conn, recording.target, desc, onProgress);
+                });
+    }
+
+    /**
+     * Open a stream of only the recording data from chunks which end after the given start time.
+     */
+    public ProgressInputStream open(
+            ActiveRecording recording, Instant start, Consumer<Integer> onProgress)
+            throws Exception {
+        return connectionManager.executeConnectedTask(
+                recording.target,
+                conn -> {
+                    IRecordingDescriptor desc =
+                            RecordingHelper.getDescriptor(conn, recording).orElseThrow();
+                    InputStream bareStream =
+                            conn.getService()
+                                    .openStream(
+                                            desc,
+                                            UnitLookup.EPOCH_MS.quantity(start.toEpochMilli()),
+                                            false);
+                    return new ProgressInputStream(
+                            bareStream,
+                            n -> {
+                                connectionManager.markConnectionInUse(recording.target);
+                                onProgress.accept(n);
+                            });
+                });
+    }
+
+    /**
+     * Open a stream of only the recording data from chunks which overlap the given time window.
+     * Either bound may be null to leave that side of the window open.
+     */
+    public ProgressInputStream open(ActiveRecording recording, Instant start, Instant end)
+            throws Exception {
+        if (end == null) {
+            return open(recording, start == null ? Instant.EPOCH : start, n -> {});
+        }
+        return connectionManager.executeConnectedTask(
+                recording.target,
+                conn -> {
+                    IRecordingDescriptor desc =
+                            RecordingHelper.getDescriptor(conn, recording).orElseThrow();
+                    InputStream bareStream =
+                            conn.getService()
+                                    .openStream(
+                                            desc,
+                                            UnitLookup.EPOCH_MS.quantity(
+                                                    start == null ? 0 : start.toEpochMilli()),
+                                            UnitLookup.EPOCH_MS.quantity(end.toEpochMilli()),
+                                            false);
+                    return new ProgressInputStream(
+                            bareStream,
+                            n -> connectionManager.markConnectionInUse(recording.target));
                 });
     }
 
     public ProgressInputStream open(JFRConnection conn, Target target, IRecordingDescriptor desc)
             throws Exception {
+        return open(conn, target, desc, n -> {});
+    }
+
+    public ProgressInputStream open(
+            JFRConnection conn,
+            Target target,
+            IRecordingDescriptor desc,
+            Consumer<Integer> onProgress)
+            throws Exception {
         InputStream bareStream = conn.getService().openStream(desc, false);
         return new ProgressInputStream(
-                bareStream, n -> connectionManager.markConnectionInUse(target));
+                bareStream,
+                n -> {
+                    connectionManager.markConnectionInUse(target);
+                    onProgress.accept(n);
+                });
     }
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import io.cryostat.ConfigProperties;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.quarkus.runtime.configuration.MemorySize;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * Applies {@link ConfigProperties#HTTP_LIMITS_MAX_BODY_SIZE} to request bodies on every route
+ * except the {@link StreamingUploadRoute}, which never holds the body locally. The global {@code
+ * quarkus.http.limits.max-body-size} cannot be lifted for a single route, so it is set to the
+ * streaming upload limit instead and this handler, which runs immediately after the global check,
+ * applies the stricter limit elsewhere in the same way: requests declaring a larger Content-Length
+ * are rejected up front, and the limit is passed on for bodies of unknown length. Multipart forms
+ * sent without a Content-Length are still only bounded by the global limit while they are decoded.
+ */
+@ApplicationScoped
+class RequestBodyLimit {
+
+    // the global limit is checked at order -2
+    static final int ORDER = -1;
+    // read by Quarkus and RESTEasy Reactive when consuming bodies of unknown length
+    static final String MAX_REQUEST_SIZE_KEY = "io.quarkus.max-request-size";
+
+    @ConfigProperty(name = ConfigProperties.HTTP_LIMITS_MAX_BODY_SIZE)
+    MemorySize maxBodySize;
+
+    void init(@Observes Router router) {
+        router.route().order(ORDER).handler(this::handle);
+    }
+
+    void handle(RoutingContext ctx) {
+        if (StreamingUploadRoute.PATH.matcher(ctx.normalizedPath()).matches()) {
+            ctx.next();
+            return;
+        }
+        long limit = maxBodySize.asLongValue();
+        long length =
+                NumberUtils.toLong(ctx.request().getHeader(HttpHeaderNames.CONTENT_LENGTH), -1);
+        if (length > limit) {
+            ctx.response().putHeader(HttpHeaderNames.CONNECTION, "close");
+            ctx.response().setStatusCode(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE.code()).end();
+            return;
+        }
+        ctx.put(MAX_REQUEST_SIZE_KEY, limit);
+        ctx.next();
+    }
+}
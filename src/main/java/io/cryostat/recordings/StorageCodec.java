@@ -0,0 +1,278 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Compression applied to archived recording data at rest in object storage. Encoding and decoding
+ * are both streaming transformations of an {@link InputStream}, so archives are compressed chunk by
+ * chunk as they are uploaded and decompressed as they are read back, without being buffered in
+ * full. The codec used for an archive is recorded in its object metadata and in the archive index.
+ *
+ * <p>Encoded data may also be a concatenation of several independently encoded segments, which
+ * decodes to the concatenation of the segments' contents. This allows an upload to be resumed by
+ * starting a new segment, rather than having to restore the state of the encoder.
+ */
+public enum StorageCodec {
+    IDENTITY("identity"),
+    DEFLATE("deflate"),
+    LZ4("lz4"),
+    ;
+
+    /** S3 user metadata key under which the codec ID is stored. */
+    public static final String METADATA_KEY = "codec";
+
+    private final String id;
+
+    StorageCodec(String id) {
+        this.id = id;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public boolean isIdentity() {
+        return this == IDENTITY;
+    }
+
+    public InputStream encode(InputStream in) throws IOException {
+        switch (this) {
+            case DEFLATE:
+                return new DeflaterInputStream(in);
+            case LZ4:
+                return new EncodingInputStream(in, LZ4FrameOutputStream::new);
+            default:
+                return in;
+        }
+    }
+
+    /**
+     * Encode data written to the returned stream into the given stream. Closing the returned stream
+     * finishes the encoded segment but does not close the given stream.
+     */
+    public OutputStream encoder(OutputStream out) throws IOException {
+        OutputStream target =
+                new FilterOutputStream(out) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        flush();
+                    }
+                };
+        switch (this) {
+            case DEFLATE:
+                return new DeflaterOutputStream(target);
+            case LZ4:
+                // small blocks keep the data buffered by the encoder, and so flushed when the
+                // segment is finished, small
+                return new LZ4FrameOutputStream(target, LZ4FrameOutputStream.BLOCKSIZE.SIZE_64KB);
+            default:
+                return target;
+        }
+    }
+
+    public InputStream decode(InputStream in) throws IOException {
+        switch (this) {
+            case DEFLATE:
+                return new ConcatenatedInflaterInputStream(in);
+            case LZ4:
+                return new LZ4FrameInputStream(in);
+            default:
+                return in;
+        }
+    }
+
+    public static StorageCodec fromId(String id) {
+        if (StringUtils.isBlank(id)) {
+            return IDENTITY;
+        }
+        for (StorageCodec codec : values()) {
+            if (codec.id.equalsIgnoreCase(id)) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown storage codec \"%s\"", id));
+    }
+
+    /**
+     * Inflates a sequence of concatenated zlib streams, which {@link
+     * java.util.zip.InflaterInputStream} would stop reading after the first of.
+     */
+    private static class ConcatenatedInflaterInputStream extends InputStream {
+        private final InputStream in;
+        private final Inflater inflater = new Inflater();
+        private final byte[] input = new byte[8192];
+        private int inputEnd;
+        private boolean eof;
+
+        ConcatenatedInflaterInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n < 0 ? -1 : Byte.toUnsignedInt(b[0]);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (!eof) {
+                int n;
+                try {
+                    n = inflater.inflate(b, off, len);
+                } catch (DataFormatException e) {
+                    throw new ZipException(e.getMessage());
+                }
+                if (n > 0) {
+                    return n;
+                }
+                if (inflater.finished()) {
+                    // any input left over belongs to the next stream
+                    int remaining = inflater.getRemaining();
+                    inflater.reset();
+                    if (remaining > 0) {
+                        inflater.setInput(input, inputEnd - remaining, remaining);
+                    } else if (!fill()) {
+                        eof = true;
+                    }
+                } else if (inflater.needsDictionary()) {
+                    throw new ZipException("Unsupported preset dictionary");
+                } else if (inflater.needsInput() && !fill()) {
+                    throw new EOFException("Unexpected end of ZLIB input stream");
+                }
+            }
+            return -1;
+        }
+
+        private boolean fill() throws IOException {
+            int n = in.read(input);
+            if (n < 0) {
+                return false;
+            }
+            inflater.setInput(input, 0, n);
+            inputEnd = n;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                inflater.end();
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    private interface EncoderFactory {
+        OutputStream create(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Adapts an {@link OutputStream}-based encoder into a pull-based {@link InputStream}: source
+     * data is read one block at a time and written through the encoder into a small buffer, from
+     * which the encoded bytes are then served.
+     */
+    private static class EncodingInputStream extends InputStream {
+        private static final int BLOCK_SIZE = 64 * 1024;
+
+        private final InputStream source;
+        private final Buffer buffer = new Buffer();
+        private final OutputStream encoder;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private int pos;
+        private boolean finished;
+
+        EncodingInputStream(InputStream source, EncoderFactory factory) throws IOException {
+            this.source = source;
+            this.encoder = factory.create(buffer);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n < 0 ? -1 : Byte.toUnsignedInt(b[0]);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (pos >= buffer.size()) {
+                if (finished) {
+                    return -1;
+                }
+                buffer.reset();
+                pos = 0;
+                int n = source.read(block);
+                if (n < 0) {
+                    encoder.close();
+                    finished = true;
+                } else {
+                    encoder.write(block, 0, n);
+                }
+            }
+            int n = Math.min(len, buffer.size() - pos);
+            System.arraycopy(buffer.array(), pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (!finished) {
+                    encoder.close();
+                }
+            } finally {
+                source.close();
+            }
+        }
+
+        private static class Buffer extends ByteArrayOutputStream {
+            byte[] array() {
+                return buf;
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+import io.cryostat.ConfigProperties;
+import io.cryostat.core.sys.Clock;
+import io.cryostat.recordings.Recordings.Metadata;
+import io.cryostat.util.ReadStreamInputStream;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.MultiMap;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.enterprise.context.control.ActivateRequestContext;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.core.Context;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import org.jboss.resteasy.reactive.RestPath;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectTaggingRequest;
+
+/**
+ * Agent push endpoint which streams the uploaded recording into a storage multipart upload as the
+ * request body arrives, rather than spooling it to local disk first as the JAX-RS multipart
+ * endpoints do. Only part-sized buffers are held per upload, so many agents can push concurrently
+ * without consuming local storage. It accepts the same multipart form as {@code POST
+ * /api/beta/recordings/{jvmId}}, which remains the default agent push endpoint; agents opt in to
+ * streaming by pushing to this path instead. Form fields which arrive after the recording part are
+ * applied to the archive once the upload completes.
+ *
+ * <p>Since the body is never held locally, this path is exempt from the request body size limit
+ * applied to other endpoints, see {@link RequestBodyLimit}.
+ *
+ * <p>Each upload occupies one thread of a dedicated pool for as long as its body is being received.
+ * Uploads beyond {@link ConfigProperties#STORAGE_UPLOADS_STREAMING_WORKERS} wait for a thread with
+ * their request bodies paused, rather than competing with other users of the shared worker pools.
+ */
+@Path("/api/beta/recordings/{jvmId}/stream")
+public class StreamingUploadRoute {
+
+    static final Pattern PATH = Pattern.compile("/api/beta/recordings/[^/]+/stream/?");
+
+    // the HTTP server delivers the body in small buffers, so this only bounds the data in transit
+    // between the event loop and the upload thread
+    private static final int MAX_QUEUED_BUFFERS = 64;
+
+    @ConfigProperty(name = ConfigProperties.AWS_BUCKET_NAME_ARCHIVES)
+    String bucket;
+
+    @ConfigProperty(name = ConfigProperties.STORAGE_ARCHIVES_CODEC)
+    StorageCodec archiveCodec;
+
+    @Inject RecordingHelper recordingHelper;
+    @Inject MultipartUploader uploader;
+    @Inject S3Client storage;
+    @Inject Clock clock;
+    @Inject Logger logger;
+
+    private final ExecutorService workers;
+
+    StreamingUploadRoute(
+            @ConfigProperty(name = ConfigProperties.STORAGE_UPLOADS_STREAMING_WORKERS)
+                    int workers) {
+        this.workers =
+                Executors.newFixedThreadPool(
+                        Math.max(1, workers),
+                        r -> {
+                            var t = new Thread(r, "streaming-upload");
+                            t.setDaemon(true);
+                            return t;
+                        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        workers.shutdownNow();
+    }
+
+    @POST
+    @RolesAllowed("write")
+    public Uni<Map<String, Object>> upload(@RestPath String jvmId, @Context RoutingContext ctx) {
+        var request = ctx.request();
+        String id = jvmId.strip();
+        var context = ctx.vertx().getOrCreateContext();
+        var upload = new AtomicReference<CompletableFuture<Upload>>();
+        var body = new AtomicReference<ReadStreamInputStream>();
+        var result = new CompletableFuture<Map<String, Object>>();
+        request.setExpectMultipart(true);
+        request.uploadHandler(
+                part -> {
+                    String filename = part.filename().strip();
+                    if (!"recording".equals(part.name())
+                            || StringUtils.isBlank(filename)
+                            || upload.get() != null) {
+                        part.handler(b -> {});
+                        return;
+                    }
+                    if (!filename.endsWith(".jfr")) {
+                        filename = filename + ".jfr";
+                    }
+                    // labels are validated when the upload completes, in case they arrive later
+                    Metadata initial;
+                    try {
+                        initial = parseMetadata(id, request.formAttributes());
+                    } catch (DecodeException e) {
+                        initial = new Metadata(Map.of("jvmId", id));
+                    }
+                    var stream = new ReadStreamInputStream(context, part, MAX_QUEUED_BUFFERS);
+                    body.set(stream);
+                    String name = filename;
+                    var metadata = initial;
+                    upload.set(
+                            CompletableFuture.supplyAsync(
+                                    () -> store(id, name, metadata, stream), workers));
+                });
+        request.exceptionHandler(
+                t -> {
+                    logger.warnv(t, "Streaming upload for {0} failed", id);
+                    // the request may fail without the part failing, so the upload thread must be
+                    // woken here rather than left waiting for the rest of the body
+                    var stream = body.get();
+                    if (stream != null) {
+                        stream.fail(t);
+                    }
+                    result.completeExceptionally(t);
+                });
+        request.endHandler(
+                v -> {
+                    var pending = upload.get();
+                    if (pending == null) {
+                        result.completeExceptionally(
+                                new BadRequestException("No recording was uploaded"));
+                        return;
+                    }
+                    pending.thenApplyAsync(u -> complete(u, request.formAttributes()), workers)
+                            .whenComplete(
+                                    (response, t) -> {
+                                        if (t == null) {
+                                            result.complete(response);
+                                            return;
+                                        }
+                                        if (t instanceof CompletionException) {
+                                            t = t.getCause();
+                                        }
+                                        logger.error(t);
+                                        result.completeExceptionally(t);
+                                    });
+                });
+        request.resume();
+        return Uni.createFrom().completionStage(result);
+    }
+
+    private Upload store(String jvmId, String filename, Metadata metadata, InputStream stream) {
+        logger.infov("Streaming upload: {0}/{1} {2}", jvmId, filename, metadata.labels());
+        var builder =
+                CreateMultipartUploadRequest.builder()
+                        .bucket(bucket)
+                        .key(recordingHelper.archivedRecordingKey(jvmId, filename))
+                        .contentType(RecordingHelper.JFR_MIME)
+                        .tagging(recordingHelper.createMetadataTagging(metadata));
+        if (!archiveCodec.isIdentity()) {
+            builder.metadata(Map.of(StorageCodec.METADATA_KEY, archiveCodec.id()));
+        }
+        try (stream;
+                var counter = new CountingInputStream(stream);
+                var encoded = archiveCodec.encode(counter)) {
+            uploader.upload(builder.build(), encoded);
+            return new Upload(jvmId, filename, metadata, counter.getByteCount());
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    @ActivateRequestContext
+    Map<String, Object> complete(Upload upload, MultiMap form) {
+        String key = recordingHelper.archivedRecordingKey(upload.jvmId(), upload.filename());
+        Metadata metadata;
+        try {
+            metadata = parseMetadata(upload.jvmId(), form);
+        } catch (DecodeException e) {
+            storage.deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(key).build());
+            throw new BadRequestException("Invalid labels", e);
+        }
+        if (!metadata.labels().equals(upload.metadata().labels())) {
+            storage.putObjectTagging(
+                    PutObjectTaggingRequest.builder()
+                            .bucket(bucket)
+                            .key(key)
+                            .tagging(recordingHelper.createMetadataTagging(metadata))
+                            .build());
+        }
+        var entry =
+                recordingHelper.indexArchivedRecording(
+                        upload.jvmId(),
+                        upload.filename(),
+                        upload.size(),
+                        clock.now(),
+                        metadata,
+                        archiveCodec);
+        logger.infov("Streaming upload complete: {0}, {1} bytes", entry.storageKey(), entry.size);
+        recordingHelper.notifyArchiveCreated(entry);
+        recordingHelper.enforceRetention(
+                upload.jvmId(),
+                NumberUtils.toInt(form.get("maxFiles")),
+                NumberUtils.toLong(form.get("maxBytes")),
+                NumberUtils.toLong(form.get("maxAge")));
+        return Map.of("name", upload.filename(), "metadata", Map.of("labels", metadata.labels()));
+    }
+
+    private static Metadata parseMetadata(String jvmId, MultiMap form) {
+        Map<String, String> labels = new HashMap<>();
+        String rawLabels = form.get("labels");
+        if (StringUtils.isNotBlank(rawLabels)) {
+            new JsonObject(rawLabels).getMap().forEach((k, v) -> labels.put(k, String.valueOf(v)));
+        }
+        labels.put("jvmId", jvmId);
+        return new Metadata(labels);
+    }
+
+    private record Upload(String jvmId, String filename, Metadata metadata, long size) {}
+}
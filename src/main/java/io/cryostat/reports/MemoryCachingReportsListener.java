@@ -21,6 +21,7 @@ import io.cryostat.recordings.ActiveRecording;
 import io.cryostat.recordings.RecordingHelper;
 import io.cryostat.recordings.Recordings;
 import io.cryostat.recordings.Recordings.ArchivedRecording;
+import io.cryostat.recordings.Recordings.ArchivedRecordingBatch;
 import io.cryostat.targets.Target;
 import io.cryostat.targets.Target.TargetDiscovery;
 
@@ -70,6 +71,17 @@ class MemoryCachingReportsListener {
         archivedCache.invalidate(key);
     }
 
+    @ConsumeEvent(value = Recordings.ARCHIVED_RECORDING_BATCH_DELETED)
+    public void handleArchivedRecordingBatchDeletion(ArchivedRecordingBatch batch) {
+        logger.tracev(
+                "archived recording batch cache invalidation: {0} recordings",
+                batch.recordings().size());
+        if (!quarkusCache || !memoryCache) {
+            return;
+        }
+        batch.recordings().forEach(this::handleArchivedRecordingDeletion);
+    }
+
     @ConsumeEvent(value = Target.TARGET_JVM_DISCOVERY)
     public void handleTargetDiscovery(TargetDiscovery evt) {
         logger.tracev(
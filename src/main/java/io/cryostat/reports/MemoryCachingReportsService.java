@@ -15,6 +15,7 @@
  */
 package io.cryostat.reports;
 
+import java.io.InputStream;
 import java.util.Map;
 import java.util.function.Predicate;
 
@@ -98,4 +99,10 @@ class MemoryCachingReportsService implements ReportsService {
                     return delegate.reportFor(jvmId, filename);
                 });
     }
+
+    @Override
+    public Uni<Map<String, AnalysisResult>> reportFor(
+            InputStream stream, Predicate<IRule> predicate) {
+        return delegate.reportFor(stream, predicate);
+    }
 }
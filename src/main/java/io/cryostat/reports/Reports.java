@@ -23,21 +23,26 @@ import io.cryostat.ConfigProperties;
 import io.cryostat.StorageBuckets;
 import io.cryostat.core.reports.InterruptibleReportGenerator.AnalysisResult;
 import io.cryostat.recordings.RecordingHelper;
+import io.cryostat.recordings.RecordingStreamFanOut;
+import io.cryostat.recordings.Recordings.ArchivedRecording;
 import io.cryostat.targets.Target;
 
 import io.quarkus.runtime.StartupEvent;
 import io.smallrye.common.annotation.Blocking;
 import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
 import jakarta.annotation.security.RolesAllowed;
 import jakarta.enterprise.event.Observes;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.ClientErrorException;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import org.apache.commons.io.IOUtils;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
 import org.jboss.resteasy.reactive.RestPath;
@@ -55,6 +60,7 @@ public class Reports {
     @Inject StorageBuckets storageBuckets;
     @Inject RecordingHelper helper;
     @Inject ReportsService reportsService;
+    @Inject RecordingStreamFanOut fanOut;
     @Inject Logger logger;
 
     // FIXME this observer cannot be declared on the StorageCachingReportsService decorator.
@@ -73,14 +79,7 @@ public class Reports {
     @Deprecated(since = "3.0", forRemoval = true)
     public Response getV1(@RestPath String recordingName) {
         var result = new HashMap<String, String>();
-        helper.listArchivedRecordingObjects()
-                .forEach(
-                        item -> {
-                            String objectName = item.key().strip();
-                            String jvmId = objectName.split("/")[0];
-                            String filename = objectName.split("/")[1];
-                            result.put(jvmId, filename);
-                        });
+        helper.listArchivedRecordings().forEach(item -> result.put(item.jvmId, item.filename));
         if (result.size() == 0) {
             throw new NotFoundException();
         }
@@ -148,4 +147,46 @@ public class Reports {
         // TODO implement query parameter for evaluation predicate
         return reportsService.reportFor(recording);
     }
+
+    /**
+     * Archive an active recording and generate its analysis report in a single pass, reading the
+     * recording from the target only once and feeding it to both the storage upload and the report
+     * generator concurrently.
+     */
+    @POST
+    @Blocking
+    @Path("/api/beta/targets/{targetId}/reports/{recordingId}/archive")
+    @Produces({MediaType.APPLICATION_JSON})
+    @RolesAllowed("write")
+    public ArchivedAnalysis archiveAndAnalyze(@RestPath long targetId, @RestPath long recordingId)
+            throws Exception {
+        var target = Target.<Target>findById(targetId);
+        if (target == null) {
+            throw new NotFoundException();
+        }
+        var recording = target.getRecordingById(recordingId);
+        if (recording == null) {
+            throw new NotFoundException();
+        }
+        try (var branches = fanOut.open(recording, 2)) {
+            var analysisBranch = branches.branch(1);
+            // report generation may consume its stream on the calling thread, so it must be
+            // started elsewhere to allow the upload below to drain the other branch concurrently
+            var report =
+                    Uni.createFrom()
+                            .deferred(() -> reportsService.reportFor(analysisBranch, r -> true))
+                            .runSubscriptionOn(Infrastructure.getDefaultWorkerPool())
+                            .onTermination()
+                            .invoke(() -> IOUtils.closeQuietly(analysisBranch))
+                            .subscribeAsCompletionStage();
+            String filename = helper.saveRecordingStream(recording, branches.branch(0));
+            var archive =
+                    helper.getArchivedRecording(target.jvmId, filename)
+                            .map(helper::toExternalForm)
+                            .orElseThrow();
+            return new ArchivedAnalysis(archive, report.get());
+        }
+    }
+
+    public record ArchivedAnalysis(ArchivedRecording archive, Map<String, AnalysisResult> report) {}
 }
@@ -15,6 +15,7 @@
  */
 package io.cryostat.reports;
 
+import java.io.InputStream;
 import java.util.Map;
 import java.util.function.Predicate;
 
@@ -40,6 +41,12 @@ public interface ReportsService {
         return reportFor(jvmId, filename, r -> true);
     }
 
+    /**
+     * Analyze recording content from an already-opened stream. Results are not cached, since the
+     * stream does not identify which recording it belongs to.
+     */
+    Uni<Map<String, AnalysisResult>> reportFor(InputStream stream, Predicate<IRule> predicate);
+
     static String key(ActiveRecording recording) {
         return String.format("%s/%d", recording.target.jvmId, recording.id);
     }
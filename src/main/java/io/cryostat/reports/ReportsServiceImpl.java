@@ -115,6 +115,16 @@ class ReportsServiceImpl implements ReportsService {
         return Uni.createFrom().future(future);
     }
 
+    @Override
+    public Uni<Map<String, AnalysisResult>> reportFor(
+            InputStream stream, Predicate<IRule> predicate) {
+        Future<Map<String, AnalysisResult>> future =
+                sidecarUri
+                        .map(uri -> fireRequest(uri, stream))
+                        .orElseGet(() -> process(stream, predicate));
+        return Uni.createFrom().future(future);
+    }
+
     private Future<Map<String, AnalysisResult>> process(
             InputStream stream, Predicate<IRule> predicate) {
         return reportGenerator.generateEvalMapInterruptibly(
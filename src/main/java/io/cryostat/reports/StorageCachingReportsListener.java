@@ -15,20 +15,26 @@
  */
 package io.cryostat.reports;
 
+import java.util.List;
 import java.util.Optional;
 
 import io.cryostat.ConfigProperties;
 import io.cryostat.recordings.RecordingHelper;
 import io.cryostat.recordings.Recordings;
 import io.cryostat.recordings.Recordings.ArchivedRecording;
+import io.cryostat.recordings.Recordings.ArchivedRecordingBatch;
 
 import io.quarkus.vertx.ConsumeEvent;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.Delete;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
 import software.amazon.awssdk.services.s3.model.S3Exception;
 
 @ApplicationScoped
@@ -64,4 +70,44 @@ class StorageCachingReportsListener {
                             }
                         });
     }
+
+    @ConsumeEvent(value = Recordings.ARCHIVED_RECORDING_BATCH_DELETED, blocking = true)
+    public void handleArchivedRecordingBatchDeletion(ArchivedRecordingBatch batch) {
+        if (!enabled) {
+            return;
+        }
+        List<ObjectIdentifier> keys =
+                batch.recordings().stream()
+                        .filter(r -> r.metadata().labels().containsKey("jvmId"))
+                        .map(
+                                r ->
+                                        recordingHelper.archivedRecordingKey(
+                                                r.metadata().labels().get("jvmId"), r.name()))
+                        .map(k -> ObjectIdentifier.builder().key(k).build())
+                        .toList();
+        logger.tracev("Picked up deletion of {0} archived recordings", keys.size());
+        for (int i = 0; i < keys.size(); i += RecordingHelper.DELETE_OBJECTS_BATCH_SIZE) {
+            var req =
+                    DeleteObjectsRequest.builder()
+                            .bucket(bucket)
+                            .delete(
+                                    Delete.builder()
+                                            .quiet(true)
+                                            .objects(
+                                                    keys.subList(
+                                                            i,
+                                                            Math.min(
+                                                                    keys.size(),
+                                                                    i
+                                                                            + RecordingHelper
+                                                                                    .DELETE_OBJECTS_BATCH_SIZE)))
+                                            .build())
+                            .build();
+            try {
+                storage.deleteObjects(req);
+            } catch (SdkException e) {
+                logger.warn(e);
+            }
+        }
+    }
 }
@@ -16,6 +16,7 @@
 package io.cryostat.reports;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Map;
@@ -157,4 +158,10 @@ class StorageCachingReportsService implements ReportsService {
                             }
                         });
     }
+
+    @Override
+    public Uni<Map<String, AnalysisResult>> reportFor(
+            InputStream stream, Predicate<IRule> predicate) {
+        return delegate.reportFor(stream, predicate);
+    }
 }
@@ -82,6 +82,14 @@ public class Rule extends PanacheEntity {
     @Min(message = "maxAgeSeconds must be greater than -1", value = -1)
     public int maxSizeBytes;
 
+    /**
+     * If true, each periodic archival only uploads the recording chunks which were not included in
+     * the previous archive, rather than the full recording. Every delta is retained, since the
+     * stitched download of the recording needs the complete series, so {@link #preservedArchives}
+     * must be 0.
+     */
+    public boolean deltaArchives;
+
     public boolean enabled;
 
     public String getName() {
@@ -96,7 +104,7 @@ public class Rule extends PanacheEntity {
 
     @JsonIgnore
     public boolean isArchiver() {
-        return preservedArchives > 0 && archivalPeriodSeconds > 0;
+        return (preservedArchives > 0 || deltaArchives) && archivalPeriodSeconds > 0;
     }
 
     public static Rule getByName(String name) {
@@ -0,0 +1,78 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.rules;
+
+import java.util.Optional;
+
+import io.cryostat.recordings.RecordingHelper.DeltaArchive;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntity;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import jakarta.validation.constraints.NotBlank;
+
+/**
+ * Tracks how much of a rule's recording on a given target has already been archived, for rules
+ * which archive deltas. Each periodic archival only uploads the chunks beyond this watermark.
+ */
+@Entity
+@Table(uniqueConstraints = {@UniqueConstraint(columnNames = {"ruleName", "jvmId"})})
+public class RuleArchiveWatermark extends PanacheEntity {
+
+    @Column(nullable = false)
+    @NotBlank
+    public String ruleName;
+
+    @Column(nullable = false)
+    @NotBlank
+    public String jvmId;
+
+    public String lastFilename;
+
+    public long lastChunkStartNanos;
+
+    public long endNanos;
+
+    public DeltaArchive toDeltaArchive() {
+        return new DeltaArchive(lastFilename, lastChunkStartNanos, endNanos);
+    }
+
+    public static Optional<RuleArchiveWatermark> get(String ruleName, String jvmId) {
+        return find("ruleName = ?1 and jvmId = ?2", ruleName, jvmId).firstResultOptional();
+    }
+
+    public static void update(String ruleName, String jvmId, DeltaArchive delta) {
+        var watermark =
+                get(ruleName, jvmId)
+                        .orElseGet(
+                                () -> {
+                                    var w = new RuleArchiveWatermark();
+                                    w.ruleName = ruleName;
+                                    w.jvmId = jvmId;
+                                    return w;
+                                });
+        watermark.lastFilename = delta.filename();
+        watermark.lastChunkStartNanos = delta.lastChunkStartNanos();
+        watermark.endNanos = delta.endNanos();
+        watermark.persist();
+    }
+
+    public static long deleteByRuleName(String ruleName) {
+        return delete("ruleName", ruleName);
+    }
+}
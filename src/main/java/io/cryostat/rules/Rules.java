@@ -15,10 +15,20 @@
  */
 package io.cryostat.rules;
 
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
 import io.cryostat.V2Response;
 import io.cryostat.expressions.MatchExpression;
+import io.cryostat.recordings.RecordingHelper;
 import io.cryostat.util.EntityExistsException;
+import io.cryostat.util.HttpMimeType;
 
+import io.smallrye.common.annotation.Blocking;
 import io.vertx.core.json.JsonObject;
 import io.vertx.mutiny.core.eventbus.EventBus;
 import jakarta.annotation.security.RolesAllowed;
@@ -32,6 +42,7 @@ import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.PATCH;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import org.jboss.resteasy.reactive.RestForm;
@@ -44,6 +55,7 @@ import org.jboss.resteasy.reactive.RestResponse.ResponseBuilder;
 public class Rules {
 
     @Inject EventBus bus;
+    @Inject RecordingHelper recordingHelper;
 
     @GET
     @RolesAllowed("read")
@@ -71,6 +83,11 @@ public class Rules {
         if (ruleExists) {
             throw new EntityExistsException("Rule", rule.name);
         }
+        if (rule.deltaArchives && rule.preservedArchives > 0) {
+            // pruning deltas would drop the start of the recording from the stitched download
+            throw new BadRequestException(
+                    "preservedArchives cannot be used with deltaArchives, all deltas are retained");
+        }
         if (rule.description == null) {
             rule.description = "";
         }
@@ -114,6 +131,7 @@ public class Rules {
             @RestForm int preservedArchives,
             @RestForm int maxAgeSeconds,
             @RestForm int maxSizeBytes,
+            @RestForm boolean deltaArchives,
             @RestForm boolean enabled) {
         MatchExpression expr = new MatchExpression(matchExpression);
         expr.persist();
@@ -127,6 +145,7 @@ public class Rules {
         rule.preservedArchives = preservedArchives;
         rule.maxAgeSeconds = maxAgeSeconds;
         rule.maxSizeBytes = maxSizeBytes;
+        rule.deltaArchives = deltaArchives;
         rule.enabled = enabled;
         return create(rule);
     }
@@ -143,7 +162,54 @@ public class Rules {
         if (clean) {
             bus.send(Rule.RULE_ADDRESS + "?clean", rule);
         }
+        RuleArchiveWatermark.deleteByRuleName(rule.name);
         rule.delete();
         return RestResponse.ok(V2Response.json(Response.Status.OK, null));
     }
+
+    /**
+     * Download the delta archives produced by a rule for a target as a single recording, by
+     * concatenating them in the order they were archived. Only the deltas which are still retained
+     * are included.
+     */
+    @GET
+    @Blocking
+    @RolesAllowed("read")
+    @Path("/{name}/archives/{jvmId}/stitched")
+    public Response getStitchedArchive(@RestPath String name, @RestPath String jvmId) {
+        List<String> filenames =
+                recordingHelper.listArchivedRecordings(jvmId).stream()
+                        .filter(e -> Objects.equals(name, e.metadata.labels().get("rule")))
+                        .filter(
+                                e ->
+                                        e.metadata
+                                                .labels()
+                                                .containsKey(RecordingHelper.DELTA_START_LABEL))
+                        .map(e -> e.filename)
+                        .toList();
+        if (filenames.isEmpty()) {
+            throw new NotFoundException();
+        }
+        Iterator<String> it = filenames.iterator();
+        // open each archive lazily, only once the previous one has been fully read
+        InputStream stream =
+                new SequenceInputStream(
+                        new Enumeration<InputStream>() {
+                            @Override
+                            public boolean hasMoreElements() {
+                                return it.hasNext();
+                            }
+
+                            @Override
+                            public InputStream nextElement() {
+                                return recordingHelper.getArchivedRecordingStream(jvmId, it.next());
+                            }
+                        });
+        return Response.ok(stream)
+                .header(
+                        HttpHeaders.CONTENT_DISPOSITION,
+                        String.format("attachment; filename=\"%s_%s.jfr\"", name, jvmId))
+                .header(HttpHeaders.CONTENT_TYPE, HttpMimeType.OCTET_STREAM.mime())
+                .build();
+    }
 }
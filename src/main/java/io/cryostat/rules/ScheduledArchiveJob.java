@@ -23,9 +23,11 @@ import java.util.regex.Pattern;
 
 import io.cryostat.ConfigProperties;
 import io.cryostat.recordings.ActiveRecording;
+import io.cryostat.recordings.ChunkStore;
 import io.cryostat.recordings.RecordingHelper;
 import io.cryostat.targets.Target;
 
+import io.quarkus.narayana.jta.QuarkusTransaction;
 import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
@@ -41,6 +43,7 @@ class ScheduledArchiveJob implements Job {
                     "([A-Za-z\\d\\.-]*)_([A-Za-z\\d-_]*)_([\\d]*T[\\d]*Z)(\\.[\\d]+)?(\\.jfr)?");
 
     @Inject RecordingHelper recordingHelper;
+    @Inject ChunkStore chunkStore;
     @Inject Logger logger;
 
     @ConfigProperty(name = ConfigProperties.AWS_BUCKET_NAME_ARCHIVES)
@@ -53,6 +56,13 @@ class ScheduledArchiveJob implements Job {
             var target = (Target) ctx.getJobDetail().getJobDataMap().get("target");
             var recording = (ActiveRecording) ctx.getJobDetail().getJobDataMap().get("recording");
 
+            if (rule.deltaArchives) {
+                // deltas are never pruned, since each one only holds the chunks which are not in
+                // any other and the stitched download needs all of them
+                performDeltaArchival(rule, target, recording);
+                return;
+            }
+
             Queue<String> previousRecordings = new ArrayDeque<>(rule.preservedArchives);
 
             initPreviousRecordings(target, rule, previousRecordings);
@@ -69,21 +79,16 @@ class ScheduledArchiveJob implements Job {
 
     @Transactional
     void initPreviousRecordings(Target target, Rule rule, Queue<String> previousRecordings) {
-        recordingHelper.listArchivedRecordingObjects().stream()
-                .sorted((a, b) -> a.lastModified().compareTo(b.lastModified()))
+        recordingHelper
+                .listArchivedRecordings(target.jvmId)
                 .forEach(
                         item -> {
-                            String path = item.key().strip();
-                            String[] parts = path.split("/");
-                            String jvmId = parts[0];
-                            if (jvmId.equals(target.jvmId)) {
-                                String filename = parts[1];
-                                Matcher m = RECORDING_FILENAME_PATTERN.matcher(filename);
-                                if (m.matches()) {
-                                    String recordingName = m.group(2);
-                                    if (Objects.equals(recordingName, rule.getRecordingName())) {
-                                        previousRecordings.add(filename);
-                                    }
+                            String filename = item.filename;
+                            Matcher m = RECORDING_FILENAME_PATTERN.matcher(filename);
+                            if (m.matches()) {
+                                String recordingName = m.group(2);
+                                if (Objects.equals(recordingName, rule.getRecordingName())) {
+                                    previousRecordings.add(filename);
                                 }
                             }
                         });
@@ -92,10 +97,33 @@ class ScheduledArchiveJob implements Job {
     @Transactional
     void performArchival(ActiveRecording recording, Queue<String> previousRecordings)
             throws Exception {
-        String filename = recordingHelper.saveRecording(recording);
+        String filename =
+                chunkStore.isEnabled()
+                        ? recordingHelper.saveRecordingChunked(recording)
+                        : recordingHelper.saveRecording(recording);
         previousRecordings.add(filename);
     }
 
+    /**
+     * The watermark is read and advanced in short transactions of their own, and the delta is
+     * transferred from the target to storage between them, so that no transaction or database
+     * connection is held open for the duration of the transfer.
+     */
+    void performDeltaArchival(Rule rule, Target target, ActiveRecording recording)
+            throws Exception {
+        var previous =
+                QuarkusTransaction.requiringNew()
+                        .call(
+                                () ->
+                                        RuleArchiveWatermark.get(rule.name, target.jvmId)
+                                                .map(RuleArchiveWatermark::toDeltaArchive));
+        var delta = recordingHelper.saveRecordingDelta(recording, previous);
+        if (delta.isPresent()) {
+            QuarkusTransaction.requiringNew()
+                    .run(() -> RuleArchiveWatermark.update(rule.name, target.jvmId, delta.get()));
+        }
+    }
+
     @Transactional
     void pruneArchive(Target target, Queue<String> previousRecordings, String filename)
             throws Exception {
@@ -0,0 +1,818 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import io.cryostat.recordings.ByteRange;
+import io.cryostat.recordings.ByteRange.UnsatisfiableRangeException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.lang3.StringUtils;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.core.sync.ResponseTransformer;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CopyPartResult;
+import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
+import software.amazon.awssdk.services.s3.model.CreateBucketResponse;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.DeletedObject;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectTaggingRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectTaggingResponse;
+import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
+import software.amazon.awssdk.services.s3.model.HeadBucketResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.NoSuchUploadException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectTaggingRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectTaggingResponse;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.S3Response;
+import software.amazon.awssdk.services.s3.model.Tag;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+import software.amazon.awssdk.utils.http.SdkHttpUtils;
+
+/**
+ * {@link S3Client} backed by a local filesystem directory, for single-node deployments which would
+ * otherwise run an object storage service only to hold Cryostat's own data. Only the operations
+ * Cryostat uses are implemented, with the same semantics as S3 where Cryostat depends on them:
+ * ETags, conditional and ranged reads, tagging, paginated listing, and multipart uploads.
+ *
+ * <p>Each bucket is a directory under the root, and object keys map to paths within it, so that
+ * archives are laid out in one directory per JVM ID. Objects are written to a temporary file and
+ * atomically moved into place, so readers never see partially written objects. Tags, content type
+ * and ETag are kept in a JSON sidecar file per object, under a separate tree so that they do not
+ * appear in listings.
+ */
+public class FileSystemStorage implements S3Client {
+
+    static final String META_DIR = ".meta";
+    static final String UPLOADS_DIR = ".uploads";
+    static final String TMP_DIR = ".tmp";
+    static final String META_SUFFIX = ".json";
+    static final String UPLOAD_FILE = "upload.json";
+    static final String ETAG_SUFFIX = ".etag";
+    static final int DEFAULT_MAX_KEYS = 1000;
+
+    private final Path root;
+    private final ObjectMapper mapper;
+
+    public FileSystemStorage(Path root, ObjectMapper mapper) {
+        this.root = root.toAbsolutePath().normalize();
+        this.mapper = mapper;
+        try {
+            Files.createDirectories(this.root.resolve(META_DIR));
+            Files.createDirectories(this.root.resolve(UPLOADS_DIR));
+            Files.createDirectories(this.root.resolve(TMP_DIR));
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public HeadBucketResponse headBucket(HeadBucketRequest request) {
+        bucketDir(request.bucket());
+        return ok(HeadBucketResponse.builder());
+    }
+
+    @Override
+    public CreateBucketResponse createBucket(CreateBucketRequest request) {
+        String bucket = request.bucket();
+        if (StringUtils.isBlank(bucket) || bucket.startsWith(".") || bucket.contains("/")) {
+            throw failure(400, "InvalidBucketName", "Invalid bucket name: " + bucket);
+        }
+        try {
+            Files.createDirectories(root.resolve(bucket));
+            Files.createDirectories(root.resolve(META_DIR).resolve(bucket));
+        } catch (IOException ioe) {
+            throw clientFailure(ioe);
+        }
+        return ok(CreateBucketResponse.builder().location("/" + bucket));
+    }
+
+    @Override
+    public PutObjectResponse putObject(PutObjectRequest request, RequestBody body) {
+        Path path = objectPath(request.bucket(), request.key());
+        try (InputStream in = body.contentStreamProvider().newStream()) {
+            Path tmp = tempFile();
+            String eTag = writeFile(in, tmp);
+            commit(
+                    request.bucket(),
+                    request.key(),
+                    tmp,
+                    path,
+                    new ObjectAttributes(
+                            eTag, request.contentType(), parseTagging(request.tagging())));
+            return ok(PutObjectResponse.builder().eTag(eTag));
+        } catch (IOException ioe) {
+            throw clientFailure(ioe);
+        }
+    }
+
+    @Override
+    public HeadObjectResponse headObject(HeadObjectRequest request) {
+        Path path = objectPath(request.bucket(), request.key());
+        var stat = stat(request.bucket(), request.key(), path);
+        checkPreconditions(stat.attributes().eTag(), request.ifMatch(), request.ifNoneMatch());
+        return ok(
+                HeadObjectResponse.builder()
+                        .contentLength(stat.size())
+                        .contentType(stat.attributes().contentType())
+                        .eTag(stat.attributes().eTag())
+                        .lastModified(stat.lastModified())
+                        .acceptRanges(ByteRange.UNIT));
+    }
+
+    @Override
+    public <ReturnT> ReturnT getObject(
+            GetObjectRequest request,
+            ResponseTransformer<GetObjectResponse, ReturnT> responseTransformer) {
+        Path path = objectPath(request.bucket(), request.key());
+        var stat = stat(request.bucket(), request.key(), path);
+        checkPreconditions(stat.attributes().eTag(), request.ifMatch(), request.ifNoneMatch());
+        Optional<ByteRange> range;
+        try {
+            range = ByteRange.parse(request.range(), stat.size());
+        } catch (UnsatisfiableRangeException e) {
+            throw failure(416, "InvalidRange", e.getMessage());
+        }
+        long start = range.map(ByteRange::start).orElse(0L);
+        long length = range.map(ByteRange::length).orElse(stat.size());
+
+        var response =
+                GetObjectResponse.builder()
+                        .contentLength(length)
+                        .contentType(stat.attributes().contentType())
+                        .eTag(stat.attributes().eTag())
+                        .lastModified(stat.lastModified())
+                        .acceptRanges(ByteRange.UNIT)
+                        .tagCount(stat.attributes().tags().size());
+        range.ifPresent(r -> response.contentRange(r.toContentRange(stat.size())));
+        GetObjectResponse built =
+                ok(response, range.isPresent() ? 206 : 200, range.isPresent() ? "Partial" : "OK");
+
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            channel.position(start);
+            InputStream in = new BoundedInputStream(Channels.newInputStream(channel), length);
+            return responseTransformer.transform(built, AbortableInputStream.create(in));
+        } catch (NoSuchFileException nsfe) {
+            closeQuietly(channel);
+            throw noSuchKey(request.bucket(), request.key());
+        } catch (Exception e) {
+            closeQuietly(channel);
+            throw clientFailure(e);
+        }
+    }
+
+    @Override
+    public DeleteObjectResponse deleteObject(DeleteObjectRequest request) {
+        delete(request.bucket(), request.key());
+        // like S3, deleting an object which does not exist is not an error
+        return ok(DeleteObjectResponse.builder(), 204, "No Content");
+    }
+
+    @Override
+    public DeleteObjectsResponse deleteObjects(DeleteObjectsRequest request) {
+        List<DeletedObject> deleted = new ArrayList<>();
+        List<S3Error> errors = new ArrayList<>();
+        for (ObjectIdentifier id : request.delete().objects()) {
+            try {
+                delete(request.bucket(), id.key());
+                deleted.add(DeletedObject.builder().key(id.key()).build());
+            } catch (S3Exception e) {
+                errors.add(
+                        S3Error.builder()
+                                .key(id.key())
+                                .code(e.awsErrorDetails().errorCode())
+                                .message(e.awsErrorDetails().errorMessage())
+                                .build());
+            }
+        }
+        return ok(DeleteObjectsResponse.builder().deleted(deleted).errors(errors));
+    }
+
+    @Override
+    public GetObjectTaggingResponse getObjectTagging(GetObjectTaggingRequest request) {
+        Path path = objectPath(request.bucket(), request.key());
+        var attributes = stat(request.bucket(), request.key(), path).attributes();
+        return ok(GetObjectTaggingResponse.builder().tagSet(toTagSet(attributes.tags())));
+    }
+
+    @Override
+    public PutObjectTaggingResponse putObjectTagging(PutObjectTaggingRequest request) {
+        Path path = objectPath(request.bucket(), request.key());
+        var attributes = stat(request.bucket(), request.key(), path).attributes();
+        Map<String, String> tags = new LinkedHashMap<>();
+        request.tagging().tagSet().forEach(t -> tags.put(t.key(), t.value()));
+        try {
+            writeAttributes(
+                    request.bucket(),
+                    request.key(),
+                    new ObjectAttributes(attributes.eTag(), attributes.contentType(), tags));
+        } catch (IOException ioe) {
+            throw clientFailure(ioe);
+        }
+        return ok(PutObjectTaggingResponse.builder());
+    }
+
+    @Override
+    public ListObjectsV2Response listObjectsV2(ListObjectsV2Request request) {
+        Path bucketDir = bucketDir(request.bucket());
+        String prefix = StringUtils.defaultString(request.prefix());
+        // keys are returned in lexicographic order, so the last key of a page serves as the
+        // continuation token of the next
+        String after =
+                StringUtils.isNotBlank(request.continuationToken())
+                        ? request.continuationToken()
+                        : StringUtils.defaultString(request.startAfter());
+        int maxKeys = request.maxKeys() == null ? DEFAULT_MAX_KEYS : request.maxKeys();
+
+        List<String> keys;
+        try (Stream<Path> files = Files.walk(bucketDir)) {
+            keys =
+                    files.filter(Files::isRegularFile)
+                            .map(p -> toKey(bucketDir, p))
+                            .filter(k -> k.startsWith(prefix) && k.compareTo(after) > 0)
+                            .sorted()
+                            .limit(maxKeys + 1L)
+                            .toList();
+        } catch (IOException | UncheckedIOException e) {
+            throw clientFailure(e);
+        }
+        boolean truncated = keys.size() > maxKeys;
+        if (truncated) {
+            keys = keys.subList(0, maxKeys);
+        }
+
+        List<S3Object> contents = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            Path path = bucketDir.resolve(key);
+            try {
+                var stat = stat(request.bucket(), key, path);
+                contents.add(
+                        S3Object.builder()
+                                .key(key)
+                                .size(stat.size())
+                                .eTag(stat.attributes().eTag())
+                                .lastModified(stat.lastModified())
+                                .build());
+            } catch (NoSuchKeyException e) {
+                // deleted since the directory was walked
+            }
+        }
+        var response =
+                ListObjectsV2Response.builder()
+                        .name(request.bucket())
+                        .prefix(request.prefix())
+                        .maxKeys(maxKeys)
+                        .keyCount(contents.size())
+                        .contents(contents)
+                        .isTruncated(truncated);
+        if (truncated) {
+            response.nextContinuationToken(keys.get(keys.size() - 1));
+        }
+        return ok(response);
+    }
+
+    @Override
+    public CreateMultipartUploadResponse createMultipartUpload(
+            CreateMultipartUploadRequest request) {
+        objectPath(request.bucket(), request.key());
+        String uploadId = UUID.randomUUID().toString();
+        try {
+            Path dir = Files.createDirectories(root.resolve(UPLOADS_DIR).resolve(uploadId));
+            mapper.writeValue(
+                    dir.resolve(UPLOAD_FILE).toFile(),
+                    new MultipartUpload(
+                            request.bucket(),
+                            request.key(),
+                            request.contentType(),
+                            parseTagging(request.tagging())));
+        } catch (IOException ioe) {
+            throw clientFailure(ioe);
+        }
+        return ok(
+                CreateMultipartUploadResponse.builder()
+                        .bucket(request.bucket())
+                        .key(request.key())
+                        .uploadId(uploadId));
+    }
+
+    @Override
+    public UploadPartResponse uploadPart(UploadPartRequest request, RequestBody body) {
+        Path dir = uploadDir(request.uploadId(), request.bucket(), request.key());
+        try (InputStream in = body.contentStreamProvider().newStream()) {
+            return ok(UploadPartResponse.builder().eTag(writePart(dir, request.partNumber(), in)));
+        } catch (IOException ioe) {
+            throw clientFailure(ioe);
+        }
+    }
+
+    @Override
+    public UploadPartCopyResponse uploadPartCopy(UploadPartCopyRequest request) {
+        Path dir =
+                uploadDir(
+                        request.uploadId(), request.destinationBucket(), request.destinationKey());
+        Path source = objectPath(request.sourceBucket(), request.sourceKey());
+        var stat = stat(request.sourceBucket(), request.sourceKey(), source);
+        if (request.copySourceIfMatch() != null
+                && !eTagMatches(request.copySourceIfMatch(), stat.attributes().eTag())) {
+            throw failure(412, "PreconditionFailed", "Copy source ETag does not match");
+        }
+        ByteRange range;
+        try {
+            range =
+                    ByteRange.parse(request.copySourceRange(), stat.size())
+                            .orElse(new ByteRange(0, Math.max(0, stat.size() - 1)));
+        } catch (UnsatisfiableRangeException e) {
+            throw failure(416, "InvalidRange", e.getMessage());
+        }
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ);
+                InputStream in =
+                        new BoundedInputStream(
+                                Channels.newInputStream(channel.position(range.start())),
+                                stat.size() == 0 ? 0 : range.length())) {
+            String eTag = writePart(dir, request.partNumber(), in);
+            return ok(
+                    UploadPartCopyResponse.builder()
+                            .copyPartResult(
+                                    CopyPartResult.builder()
+                                            .eTag(eTag)
+                                            .lastModified(Instant.now())
+                                            .build()));
+        } catch (IOException ioe) {
+            throw clientFailure(ioe);
+        }
+    }
+
+    @Override
+    public CompleteMultipartUploadResponse completeMultipartUpload(
+            CompleteMultipartUploadRequest request) {
+        Path dir = uploadDir(request.uploadId(), request.bucket(), request.key());
+        Path path = objectPath(request.bucket(), request.key());
+        List<CompletedPart> parts = request.multipartUpload().parts();
+        try {
+            MultipartUpload upload =
+                    mapper.readValue(dir.resolve(UPLOAD_FILE).toFile(), MultipartUpload.class);
+            MessageDigest partDigests = md5();
+            Path tmp = tempFile();
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                for (CompletedPart part : parts) {
+                    Path partFile = dir.resolve(String.valueOf(part.partNumber()));
+                    Path eTagFile = dir.resolve(part.partNumber() + ETAG_SUFFIX);
+                    if (!Files.exists(eTagFile)) {
+                        throw failure(400, "InvalidPart", "No such part " + part.partNumber());
+                    }
+                    String eTag = Files.readString(eTagFile);
+                    if (!eTagMatches(part.eTag(), eTag)) {
+                        throw failure(400, "InvalidPart", "ETag mismatch " + part.partNumber());
+                    }
+                    partDigests.update(Hex.decodeHex(unquote(eTag)));
+                    try (FileChannel in = FileChannel.open(partFile, StandardOpenOption.READ)) {
+                        long size = in.size();
+                        long position = 0;
+                        while (position < size) {
+                            position += in.transferTo(position, size - position, out);
+                        }
+                    }
+                }
+            }
+            String eTag = quote(Hex.encodeHexString(partDigests.digest()) + "-" + parts.size());
+            commit(
+                    request.bucket(),
+                    request.key(),
+                    tmp,
+                    path,
+                    new ObjectAttributes(eTag, upload.contentType(), upload.tags()));
+            deleteRecursively(dir);
+            return ok(
+                    CompleteMultipartUploadResponse.builder()
+                            .bucket(request.bucket())
+                            .key(request.key())
+                            .eTag(eTag));
+        } catch (S3Exception e) {
+            throw e;
+        } catch (Exception e) {
+            throw clientFailure(e);
+        }
+    }
+
+    @Override
+    public AbortMultipartUploadResponse abortMultipartUpload(AbortMultipartUploadRequest request) {
+        Path dir = uploadDir(request.uploadId(), request.bucket(), request.key());
+        try {
+            deleteRecursively(dir);
+        } catch (IOException ioe) {
+            throw clientFailure(ioe);
+        }
+        return ok(AbortMultipartUploadResponse.builder(), 204, "No Content");
+    }
+
+    private Path bucketDir(String bucket) {
+        if (StringUtils.isBlank(bucket) || bucket.startsWith(".") || bucket.contains("/")) {
+            throw noSuchBucket(bucket);
+        }
+        Path dir = root.resolve(bucket);
+        if (!Files.isDirectory(dir)) {
+            throw noSuchBucket(bucket);
+        }
+        return dir;
+    }
+
+    private Path objectPath(String bucket, String key) {
+        Path bucketDir = bucketDir(bucket);
+        if (StringUtils.isBlank(key)
+                || key.startsWith("/")
+                || key.endsWith("/")
+                || key.indexOf('\0') >= 0) {
+            throw failure(400, "InvalidKey", "Invalid object key: " + key);
+        }
+        for (String segment : key.split("/")) {
+            if (segment.isEmpty() || ".".equals(segment) || "..".equals(segment)) {
+                throw failure(400, "InvalidKey", "Invalid object key: " + key);
+            }
+        }
+        return bucketDir.resolve(key);
+    }
+
+    private Path attributesPath(String bucket, String key) {
+        return root.resolve(META_DIR).resolve(bucket).resolve(key + META_SUFFIX);
+    }
+
+    private Path uploadDir(String uploadId, String bucket, String key) {
+        objectPath(bucket, key);
+        if (StringUtils.isBlank(uploadId) || uploadId.contains("/") || uploadId.startsWith(".")) {
+            throw noSuchUpload(uploadId);
+        }
+        Path dir = root.resolve(UPLOADS_DIR).resolve(uploadId);
+        try {
+            MultipartUpload upload =
+                    mapper.readValue(dir.resolve(UPLOAD_FILE).toFile(), MultipartUpload.class);
+            if (!Objects.equals(upload.bucket(), bucket) || !Objects.equals(upload.key(), key)) {
+                throw noSuchUpload(uploadId);
+            }
+        } catch (IOException ioe) {
+            throw noSuchUpload(uploadId);
+        }
+        return dir;
+    }
+
+    private ObjectStat stat(String bucket, String key, Path path) {
+        try {
+            long size = Files.size(path);
+            Instant lastModified =
+                    Files.getLastModifiedTime(path).toInstant().truncatedTo(ChronoUnit.SECONDS);
+            return new ObjectStat(size, lastModified, readAttributes(bucket, key, path));
+        } catch (NoSuchFileException nsfe) {
+            throw noSuchKey(bucket, key);
+        } catch (IOException ioe) {
+            throw clientFailure(ioe);
+        }
+    }
+
+    private ObjectAttributes readAttributes(String bucket, String key, Path path)
+            throws IOException {
+        Path attributes = attributesPath(bucket, key);
+        try {
+            return mapper.readValue(attributes.toFile(), ObjectAttributes.class);
+        } catch (IOException ioe) {
+            if (Files.exists(attributes) || !Files.exists(path)) {
+                throw ioe;
+            }
+            // an object placed directly into the storage directory, rather than written through
+            // this client
+            String eTag;
+            try (InputStream in = Files.newInputStream(path)) {
+                eTag = digest(in);
+            }
+            return new ObjectAttributes(eTag, null, Map.of());
+        }
+    }
+
+    private void writeAttributes(String bucket, String key, ObjectAttributes attributes)
+            throws IOException {
+        Path tmp = tempFile();
+        mapper.writeValue(tmp.toFile(), attributes);
+        move(tmp, attributesPath(bucket, key));
+    }
+
+    /**
+     * Move a fully written temporary file into place as the given object. The sidecar is written
+     * first so that the object never becomes visible without its tags.
+     */
+    private void commit(String bucket, String key, Path tmp, Path path, ObjectAttributes attributes)
+            throws IOException {
+        try {
+            writeAttributes(bucket, key, attributes);
+            move(tmp, path);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private void delete(String bucket, String key) {
+        Path path = objectPath(bucket, key);
+        Path attributes = attributesPath(bucket, key);
+        try {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(attributes);
+            pruneEmptyParents(path.getParent(), root.resolve(bucket));
+            pruneEmptyParents(attributes.getParent(), root.resolve(META_DIR).resolve(bucket));
+        } catch (IOException ioe) {
+            throw clientFailure(ioe);
+        }
+    }
+
+    private String writePart(Path dir, int partNumber, InputStream in) throws IOException {
+        Path tmp = tempFile();
+        try {
+            String eTag = writeFile(in, tmp);
+            move(tmp, dir.resolve(String.valueOf(partNumber)));
+            Files.writeString(dir.resolve(partNumber + ETAG_SUFFIX), eTag);
+            return eTag;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private Path tempFile() throws IOException {
+        return Files.createTempFile(root.resolve(TMP_DIR), "object-", ".tmp");
+    }
+
+    private static String writeFile(InputStream in, Path file) throws IOException {
+        MessageDigest md5 = md5();
+        try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.TRUNCATE_EXISTING);
+                InputStream digesting = new DigestInputStream(in, md5)) {
+            digesting.transferTo(out);
+        }
+        return quote(Hex.encodeHexString(md5.digest()));
+    }
+
+    private static String digest(InputStream in) throws IOException {
+        MessageDigest md5 = md5();
+        try (InputStream digesting = new DigestInputStream(in, md5)) {
+            digesting.transferTo(OutputStream.nullOutputStream());
+        }
+        return quote(Hex.encodeHexString(md5.digest()));
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void pruneEmptyParents(Path dir, Path stop) throws IOException {
+        while (dir != null && dir.startsWith(stop) && !dir.equals(stop)) {
+            try {
+                if (!Files.deleteIfExists(dir)) {
+                    return;
+                }
+            } catch (DirectoryNotEmptyException e) {
+                return;
+            }
+            dir = dir.getParent();
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : paths.sorted((a, b) -> b.compareTo(a)).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    private static String toKey(Path bucketDir, Path file) {
+        List<String> segments = new ArrayList<>();
+        bucketDir.relativize(file).forEach(p -> segments.add(p.toString()));
+        return String.join("/", segments);
+    }
+
+    private static void checkPreconditions(String eTag, String ifMatch, String ifNoneMatch) {
+        if (ifMatch != null && !eTagMatches(ifMatch, eTag)) {
+            throw failure(412, "PreconditionFailed", "ETag does not match");
+        }
+        if (ifNoneMatch != null && eTagMatches(ifNoneMatch, eTag)) {
+            throw failure(304, "NotModified", "Not Modified");
+        }
+    }
+
+    private static boolean eTagMatches(String condition, String eTag) {
+        if ("*".equals(condition.strip())) {
+            return true;
+        }
+        for (String candidate : condition.split(",")) {
+            if (unquote(candidate.strip()).equals(unquote(eTag))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Map<String, String> parseTagging(String tagging) {
+        Map<String, String> tags = new LinkedHashMap<>();
+        if (StringUtils.isBlank(tagging)) {
+            return tags;
+        }
+        for (String pair : tagging.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            tags.put(SdkHttpUtils.urlDecode(key), SdkHttpUtils.urlDecode(value));
+        }
+        return tags;
+    }
+
+    private static List<Tag> toTagSet(Map<String, String> tags) {
+        return tags.entrySet().stream()
+                .map(e -> Tag.builder().key(e.getKey()).value(e.getValue()).build())
+                .toList();
+    }
+
+    private static String quote(String eTag) {
+        return '"' + eTag + '"';
+    }
+
+    private static String unquote(String eTag) {
+        return StringUtils.removeStart(StringUtils.removeEnd(eTag, "\""), "\"");
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ioe) {
+            // ignored
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends S3Response> T ok(S3Response.Builder builder) {
+        return ok(builder, 200, "OK");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends S3Response> T ok(
+            S3Response.Builder builder, int status, String text) {
+        builder.sdkHttpResponse(
+                SdkHttpResponse.builder().statusCode(status).statusText(text).build());
+        return (T) builder.build();
+    }
+
+    private static S3Exception failure(int status, String code, String message) {
+        return (S3Exception)
+                S3Exception.builder()
+                        .statusCode(status)
+                        .message(message)
+                        .awsErrorDetails(errorDetails(code, message))
+                        .build();
+    }
+
+    private static NoSuchKeyException noSuchKey(String bucket, String key) {
+        String message = String.format("No such key %s in bucket %s", key, bucket);
+        return (NoSuchKeyException)
+                NoSuchKeyException.builder()
+                        .statusCode(404)
+                        .message(message)
+                        .awsErrorDetails(errorDetails("NoSuchKey", message))
+                        .build();
+    }
+
+    private static NoSuchBucketException noSuchBucket(String bucket) {
+        String message = String.format("No such bucket %s", bucket);
+        return (NoSuchBucketException)
+                NoSuchBucketException.builder()
+                        .statusCode(404)
+                        .message(message)
+                        .awsErrorDetails(errorDetails("NoSuchBucket", message))
+                        .build();
+    }
+
+    private static NoSuchUploadException noSuchUpload(String uploadId) {
+        String message = String.format("No such upload %s", uploadId);
+        return (NoSuchUploadException)
+                NoSuchUploadException.builder()
+                        .statusCode(404)
+                        .message(message)
+                        .awsErrorDetails(errorDetails("NoSuchUpload", message))
+                        .build();
+    }
+
+    private static AwsErrorDetails errorDetails(String code, String message) {
+        return AwsErrorDetails.builder()
+                .serviceName(SERVICE_NAME)
+                .errorCode(code)
+                .errorMessage(message)
+                .build();
+    }
+
+    private static SdkClientException clientFailure(Exception cause) {
+        return SdkClientException.create(cause.getMessage(), cause);
+    }
+
+    record ObjectAttributes(String eTag, String contentType, Map<String, String> tags) {
+        ObjectAttributes {
+            tags = tags == null ? Map.of() : new LinkedHashMap<>(tags);
+        }
+    }
+
+    record MultipartUpload(
+            String bucket, String key, String contentType, Map<String, String> tags) {
+        MultipartUpload {
+            tags = tags == null ? new HashMap<>() : tags;
+        }
+    }
+
+    private record ObjectStat(long size, Instant lastModified, ObjectAttributes attributes) {}
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.storage;
+
+/** Implementation backing the {@link software.amazon.awssdk.services.s3.S3Client} storage bean. */
+public enum StorageBackend {
+    /** An S3-compatible object storage service, configured by the {@code quarkus.s3} properties. */
+    S3,
+    /** A local directory, for single-node deployments. See {@link FileSystemStorage}. */
+    FILESYSTEM,
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.targets;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.IntrospectionException;
+import javax.management.ReflectionException;
+import javax.management.remote.JMXServiceURL;
+
+import org.openjdk.jmc.rjmx.ConnectionException;
+import org.openjdk.jmc.rjmx.IConnectionHandle;
+import org.openjdk.jmc.rjmx.ServiceNotAvailableException;
+
+import io.cryostat.core.JvmIdentifier;
+import io.cryostat.core.net.CryostatFlightRecorderService;
+import io.cryostat.core.net.IDException;
+import io.cryostat.core.net.JFRConnection;
+import io.cryostat.core.net.MBeanMetrics;
+import io.cryostat.core.sys.Clock;
+import io.cryostat.core.templates.TemplateService;
+
+/**
+ * A cached target connection whose flight recorder service is wrapped in a {@link
+ * DescriptorCachingFlightRecorderService}, so that the descriptor cache lives and dies with the
+ * connection.
+ */
+class DescriptorCachingConnection implements JFRConnection {
+
+    private final JFRConnection delegate;
+    private final Duration ttl;
+    private DescriptorCachingFlightRecorderService service;
+
+    DescriptorCachingConnection(JFRConnection delegate, Duration ttl) {
+        this.delegate = delegate;
+        this.ttl = ttl;
+    }
+
+    @Override
+    public synchronized CryostatFlightRecorderService getService()
+            throws ConnectionException, IOException, ServiceNotAvailableException {
+        if (service == null) {
+            service = new DescriptorCachingFlightRecorderService(delegate.getService(), ttl);
+        }
+        return service;
+    }
+
+    @Override
+    public IConnectionHandle getHandle() throws ConnectionException, IOException {
+        return delegate.getHandle();
+    }
+
+    @Override
+    public TemplateService getTemplateService() {
+        return delegate.getTemplateService();
+    }
+
+    @Override
+    public long getApproximateServerTime(Clock clock) {
+        return delegate.getApproximateServerTime(clock);
+    }
+
+    @Override
+    public JMXServiceURL getJMXURL() throws IOException {
+        return delegate.getJMXURL();
+    }
+
+    @Override
+    public String getHost() {
+        return delegate.getHost();
+    }
+
+    @Override
+    public int getPort() {
+        return delegate.getPort();
+    }
+
+    @Override
+    public String getJvmId() throws IDException, IOException {
+        return delegate.getJvmId();
+    }
+
+    @Override
+    public JvmIdentifier getJvmIdentifier() throws IDException, IOException {
+        return delegate.getJvmIdentifier();
+    }
+
+    @Override
+    public MBeanMetrics getMBeanMetrics()
+            throws ConnectionException,
+                    IOException,
+                    InstanceNotFoundException,
+                    IntrospectionException,
+                    ReflectionException {
+        return delegate.getMBeanMetrics();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return delegate.isConnected();
+    }
+
+    @Override
+    public synchronized void connect() throws ConnectionException {
+        service = null;
+        delegate.connect();
+    }
+
+    @Override
+    public synchronized void disconnect() {
+        service = null;
+        delegate.disconnect();
+    }
+
+    @Override
+    public void close() throws Exception {
+        delegate.close();
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.targets;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.openjdk.jmc.common.unit.IConstrainedMap;
+import org.openjdk.jmc.common.unit.IDescribedMap;
+import org.openjdk.jmc.common.unit.IOptionDescriptor;
+import org.openjdk.jmc.common.unit.IQuantity;
+import org.openjdk.jmc.common.unit.QuantityConversionException;
+import org.openjdk.jmc.flightrecorder.configuration.events.EventOptionID;
+import org.openjdk.jmc.flightrecorder.configuration.events.IEventTypeID;
+import org.openjdk.jmc.rjmx.ConnectionException;
+import org.openjdk.jmc.rjmx.ServiceNotAvailableException;
+import org.openjdk.jmc.rjmx.services.jfr.FlightRecorderException;
+import org.openjdk.jmc.rjmx.services.jfr.IEventTypeInfo;
+import org.openjdk.jmc.rjmx.services.jfr.IRecordingDescriptor;
+
+import io.cryostat.core.EventOptionsBuilder.EventOptionException;
+import io.cryostat.core.EventOptionsBuilder.EventTypeException;
+import io.cryostat.core.net.CryostatFlightRecorderService;
+import io.cryostat.core.templates.Template;
+import io.cryostat.core.templates.TemplateType;
+
+import org.jsoup.nodes.Document;
+
+/**
+ * Decorates the flight recorder service of a cached target connection with a short-lived cache of
+ * the target's recording descriptors, indexed by remote ID and by name. Listing or looking up
+ * recordings is served from the cache until it is older than the configured TTL, and any operation
+ * made through this service which creates, modifies, or removes a recording discards the cache, so
+ * a sequence of operations on one connection only lists the target's recordings when it needs to.
+ * Recordings changed on the target by other clients are picked up once the TTL elapses.
+ */
+public class DescriptorCachingFlightRecorderService implements CryostatFlightRecorderService {
+
+    private final CryostatFlightRecorderService delegate;
+    private final long ttlNanos;
+    private volatile Descriptors cached;
+
+    DescriptorCachingFlightRecorderService(CryostatFlightRecorderService delegate, Duration ttl) {
+        this.delegate = delegate;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    public Optional<IRecordingDescriptor> getRecordingById(long remoteId)
+            throws FlightRecorderException {
+        return Optional.ofNullable(descriptors().byId().get(remoteId));
+    }
+
+    public Optional<IRecordingDescriptor> getRecordingByName(String name)
+            throws FlightRecorderException {
+        return Optional.ofNullable(descriptors().byName().get(name));
+    }
+
+    public void invalidate() {
+        cached = null;
+    }
+
+    private Descriptors descriptors() throws FlightRecorderException {
+        Descriptors d = cached;
+        if (d != null && System.nanoTime() - d.loadedAt() < ttlNanos) {
+            return d;
+        }
+        List<IRecordingDescriptor> list = List.copyOf(delegate.getAvailableRecordings());
+        Map<Long, IRecordingDescriptor> byId = new HashMap<>();
+        Map<String, IRecordingDescriptor> byName = new HashMap<>();
+        for (var desc : list) {
+            byId.put(desc.getId(), desc);
+            // keep the first of any recordings sharing a name, as a linear scan would
+            byName.putIfAbsent(desc.getName(), desc);
+        }
+        d = new Descriptors(list, byId, byName, System.nanoTime());
+        if (ttlNanos > 0) {
+            cached = d;
+        }
+        return d;
+    }
+
+    @Override
+    public List<IRecordingDescriptor> getAvailableRecordings() throws FlightRecorderException {
+        return descriptors().list();
+    }
+
+    @Override
+    public IRecordingDescriptor getSnapshotRecording() throws FlightRecorderException {
+        invalidate();
+        return delegate.getSnapshotRecording();
+    }
+
+    @Override
+    public IRecordingDescriptor getUpdatedRecordingDescription(IRecordingDescriptor descriptor)
+            throws FlightRecorderException {
+        return delegate.getUpdatedRecordingDescription(descriptor);
+    }
+
+    @Override
+    public IRecordingDescriptor start(
+            IConstrainedMap<String> recordingOptions, IConstrainedMap<EventOptionID> eventOptions)
+            throws FlightRecorderException {
+        try {
+            return delegate.start(recordingOptions, eventOptions);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public IRecordingDescriptor start(
+            IConstrainedMap<String> recordingOptions, String templateName, TemplateType type)
+            throws io.cryostat.core.FlightRecorderException,
+                    FlightRecorderException,
+                    ConnectionException,
+                    IOException,
+                    ServiceNotAvailableException,
+                    QuantityConversionException,
+                    EventOptionException,
+                    EventTypeException {
+        try {
+            return delegate.start(recordingOptions, templateName, type);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public IRecordingDescriptor start(IConstrainedMap<String> recordingOptions, Template template)
+            throws io.cryostat.core.FlightRecorderException,
+                    FlightRecorderException,
+                    ConnectionException,
+                    IOException,
+                    ServiceNotAvailableException,
+                    QuantityConversionException,
+                    EventOptionException,
+                    EventTypeException {
+        try {
+            return delegate.start(recordingOptions, template);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public IRecordingDescriptor start(IConstrainedMap<String> recordingOptions, Document template)
+            throws FlightRecorderException, ParseException, IOException {
+        try {
+            return delegate.start(recordingOptions, template);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public void stop(IRecordingDescriptor descriptor) throws FlightRecorderException {
+        try {
+            delegate.stop(descriptor);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public void close(IRecordingDescriptor descriptor) throws FlightRecorderException {
+        try {
+            delegate.close(descriptor);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public void updateEventOptions(
+            IRecordingDescriptor descriptor, IConstrainedMap<EventOptionID> options)
+            throws FlightRecorderException {
+        try {
+            delegate.updateEventOptions(descriptor, options);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public void updateRecordingOptions(
+            IRecordingDescriptor descriptor, IConstrainedMap<String> options)
+            throws FlightRecorderException {
+        try {
+            delegate.updateRecordingOptions(descriptor, options);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public Map<String, IOptionDescriptor<?>> getAvailableRecordingOptions()
+            throws FlightRecorderException {
+        return delegate.getAvailableRecordingOptions();
+    }
+
+    @Override
+    public IConstrainedMap<String> getRecordingOptions(IRecordingDescriptor descriptor)
+            throws FlightRecorderException {
+        return delegate.getRecordingOptions(descriptor);
+    }
+
+    @Override
+    public Collection<? extends IEventTypeInfo> getAvailableEventTypes()
+            throws FlightRecorderException {
+        return delegate.getAvailableEventTypes();
+    }
+
+    @Override
+    public Map<? extends IEventTypeID, ? extends IEventTypeInfo> getEventTypeInfoMapByID()
+            throws FlightRecorderException {
+        return delegate.getEventTypeInfoMapByID();
+    }
+
+    @Override
+    public IConstrainedMap<EventOptionID> getCurrentEventTypeSettings()
+            throws FlightRecorderException {
+        return delegate.getCurrentEventTypeSettings();
+    }
+
+    @Override
+    public IConstrainedMap<EventOptionID> getEventSettings(IRecordingDescriptor descriptor)
+            throws FlightRecorderException {
+        return delegate.getEventSettings(descriptor);
+    }
+
+    @Override
+    public InputStream openStream(IRecordingDescriptor descriptor, boolean removeOnClose)
+            throws FlightRecorderException {
+        return delegate.openStream(descriptor, removeOnClose);
+    }
+
+    @Override
+    public InputStream openStream(
+            IRecordingDescriptor descriptor,
+            IQuantity startTime,
+            IQuantity endTime,
+            boolean removeOnClose)
+            throws FlightRecorderException {
+        return delegate.openStream(descriptor, startTime, endTime, removeOnClose);
+    }
+
+    @Override
+    public InputStream openStream(
+            IRecordingDescriptor descriptor, IQuantity lastPartDuration, boolean removeOnClose)
+            throws FlightRecorderException {
+        return delegate.openStream(descriptor, lastPartDuration, removeOnClose);
+    }
+
+    @Override
+    public List<String> getServerTemplates() throws FlightRecorderException {
+        return delegate.getServerTemplates();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return delegate.isEnabled();
+    }
+
+    @Override
+    public void enable() throws FlightRecorderException {
+        delegate.enable();
+    }
+
+    @Override
+    public String getVersion() {
+        return delegate.getVersion();
+    }
+
+    @Override
+    public IDescribedMap<String> getDefaultRecordingOptions() {
+        return delegate.getDefaultRecordingOptions();
+    }
+
+    @Override
+    public IDescribedMap<EventOptionID> getDefaultEventOptions() {
+        return delegate.getDefaultEventOptions();
+    }
+
+    private record Descriptors(
+            List<IRecordingDescriptor> list,
+            Map<Long, IRecordingDescriptor> byId,
+            Map<String, IRecordingDescriptor> byName,
+            long loadedAt) {}
+}
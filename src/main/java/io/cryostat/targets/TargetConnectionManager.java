@@ -82,6 +82,7 @@ public class TargetConnectionManager {
 
     private final Duration failedBackoff;
     private final Duration failedTimeout;
+    private final Duration descriptorCacheTtl;
 
     @Inject
     @SuppressFBWarnings(
@@ -99,6 +100,8 @@ public class TargetConnectionManager {
                     Duration failedBackoff,
             @ConfigProperty(name = ConfigProperties.CONNECTIONS_FAILED_TIMEOUT)
                     Duration failedTimeout,
+            @ConfigProperty(name = ConfigProperties.CONNECTIONS_DESCRIPTOR_CACHE_TTL)
+                    Duration descriptorCacheTtl,
             Executor executor,
             Logger logger) {
         FlightRecorder.register(TargetConnectionOpened.class);
@@ -108,6 +111,7 @@ public class TargetConnectionManager {
         this.agentConnectionFactory = agentConnectionFactory;
         this.failedBackoff = failedBackoff;
         this.failedTimeout = failedTimeout;
+        this.descriptorCacheTtl = descriptorCacheTtl;
 
         this.targetLocks = new ConcurrentHashMap<>();
         if (maxOpen > 0) {
@@ -221,6 +225,25 @@ public class TargetConnectionManager {
         return executeConnectedTaskUni(target, task).await().atMost(failedTimeout);
     }
 
+    /**
+     * Execute a task using the target's cached connection, only if one is already open. This does
+     * not open a new connection, retry on failure, or extend the lifetime of the cached connection,
+     * so that background tasks do not keep otherwise idle connections open.
+     *
+     * @return the task result, or empty if there was no open connection to the target
+     */
+    public <T> Optional<T> executeIfConnected(Target target, ConnectedTask<T> task)
+            throws Exception {
+        JFRConnection conn =
+                connections.synchronous().policy().getIfPresentQuietly(target.connectUrl);
+        if (conn == null) {
+            return Optional.empty();
+        }
+        synchronized (targetLocks.computeIfAbsent(target.connectUrl, k -> new Object())) {
+            return Optional.ofNullable(task.execute(conn));
+        }
+    }
+
     public <T> Uni<T> executeDirect(
             Target target, Optional<Credential> credentials, ConnectedTask<T> task) {
         return Uni.createFrom()
@@ -372,7 +395,8 @@ public class TargetConnectionManager {
                     () -> {
                         try {
                             logger.infov("Opening connection to {0}", key);
-                            return connect(key);
+                            return new DescriptorCachingConnection(
+                                    connect(key), descriptorCacheTtl);
                         } catch (Exception e) {
                             throw new CompletionException(e);
                         }
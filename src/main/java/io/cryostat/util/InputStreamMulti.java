@@ -0,0 +1,97 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.unchecked.Unchecked;
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Adapts a blocking {@link InputStream} into a backpressured {@link Multi} of {@link Buffer}
+ * chunks. The stream is opened, read, and closed on the given executor, one bounded chunk per
+ * downstream request, so that no thread is held between chunks and a slow subscriber (ex. a slow
+ * HTTP client) pauses reads from the source rather than causing data to queue up in memory.
+ */
+public final class InputStreamMulti {
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private InputStreamMulti() {}
+
+    public static Multi<Buffer> from(Callable<InputStream> opener, Executor executor) {
+        return from(opener, DEFAULT_CHUNK_SIZE, executor);
+    }
+
+    public static Multi<Buffer> from(
+            Callable<InputStream> opener, int chunkSize, Executor executor) {
+        return Uni.createFrom()
+                .item(Unchecked.supplier(opener::call))
+                .runSubscriptionOn(executor)
+                .onItem()
+                .transformToMulti(
+                        stream ->
+                                Multi.createFrom()
+                                        .resource(() -> stream, s -> chunks(s, chunkSize, executor))
+                                        .withFinalizer(
+                                                (Function<InputStream, Uni<Void>>)
+                                                        s -> close(s, executor)));
+    }
+
+    private static Multi<Buffer> chunks(InputStream stream, int chunkSize, Executor executor) {
+        return Multi.createBy()
+                .repeating()
+                .uni(
+                        () ->
+                                Uni.createFrom()
+                                        .item(
+                                                Unchecked.supplier(
+                                                        () -> readChunk(stream, chunkSize)))
+                                        .runSubscriptionOn(executor))
+                .until(b -> b.length() == 0);
+    }
+
+    private static Uni<Void> close(InputStream stream, Executor executor) {
+        return Uni.createFrom()
+                .<Void>item(
+                        Unchecked.supplier(
+                                () -> {
+                                    stream.close();
+                                    return null;
+                                }))
+                .runSubscriptionOn(executor);
+    }
+
+    /**
+     * Read up to one chunk from the stream, blocking until at least one byte is available. Returns
+     * an empty buffer at end of stream.
+     */
+    static Buffer readChunk(InputStream stream, int chunkSize) throws IOException {
+        byte[] chunk = new byte[chunkSize];
+        int n = stream.read(chunk);
+        if (n < 0) {
+            return Buffer.buffer(0);
+        }
+        return Buffer.buffer(n == chunkSize ? chunk : Arrays.copyOf(chunk, n));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.vertx.core.Context;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+
+/**
+ * Adapts a Vert.x {@link ReadStream} of {@link Buffer}s into a blocking {@link InputStream}, so
+ * that data arriving on an event loop can be consumed by blocking code on a worker thread. At most
+ * {@code maxQueued} buffers are held at once: the source is paused when that many are waiting to be
+ * read, and resumed once the reader has drained half of them, so a slow reader applies backpressure
+ * to the source rather than causing data to queue up in memory.
+ */
+public class ReadStreamInputStream extends InputStream {
+
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean paused = new AtomicBoolean();
+    private final ReadStream<Buffer> source;
+    private final Context context;
+    private final int maxQueued;
+    private volatile boolean closed;
+    private Buffer current;
+    private int position;
+    private boolean ended;
+
+    /**
+     * Must be called on the source's context. The source is resumed once the handlers are
+     * installed.
+     */
+    public ReadStreamInputStream(Context context, ReadStream<Buffer> source, int maxQueued) {
+        this.context = context;
+        this.source = source;
+        this.maxQueued = Math.max(2, maxQueued);
+        source.handler(this::onBuffer);
+        source.endHandler(v -> queue.add(END));
+        source.exceptionHandler(this::fail);
+        source.resume();
+    }
+
+    /**
+     * Fail the stream as if the source had failed, ex. when the request carrying it fails. The
+     * reader is raised the failure once it has read the data queued before it.
+     */
+    public void fail(Throwable t) {
+        queue.add(t);
+    }
+
+    private void onBuffer(Buffer buffer) {
+        if (closed) {
+            return;
+        }
+        queue.add(buffer);
+        if (queued.incrementAndGet() >= maxQueued && paused.compareAndSet(false, true)) {
+            source.pause();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return current.getByte(position++) & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, current.length() - position);
+        current.getBytes(position, position + n, b, off);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : current.length() - position;
+    }
+
+    /**
+     * @return true if the current buffer has unread data, or false at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        while (current == null || position >= current.length()) {
+            if (ended || closed) {
+                return false;
+            }
+            Object next;
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (next == END) {
+                ended = true;
+                return false;
+            }
+            if (next instanceof Throwable t) {
+                ended = true;
+                throw new IOException(t);
+            }
+            current = (Buffer) next;
+            position = 0;
+            if (queued.decrementAndGet() <= maxQueued / 2) {
+                resume();
+            }
+        }
+        return true;
+    }
+
+    private void resume() {
+        if (paused.compareAndSet(true, false)) {
+            context.runOnContext(v -> source.resume());
+        }
+    }
+
+    /**
+     * Closing before the end of the stream discards the remaining data from the source, and wakes
+     * any reader blocked waiting for more.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        queue.clear();
+        queue.add(END);
+        current = null;
+        paused.set(true);
+        resume();
+    }
+}
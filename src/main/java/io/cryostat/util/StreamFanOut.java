@@ -0,0 +1,195 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a source {@link InputStream} exactly once and replays its content to several branch
+ * streams. Each branch has its own bounded queue of chunks, so the source is only read as fast as
+ * the slowest live branch consumes it and memory use is bounded by {@code branches * capacity *
+ * chunkSize}. A branch which is closed before reaching the end of the stream is detached and no
+ * longer holds back the others. Each branch must be consumed by a different thread, since a branch
+ * which is not being read will eventually block the source.
+ */
+public class StreamFanOut implements Closeable {
+
+    private static final byte[] EOF = new byte[0];
+    private static final long OFFER_POLL_MS = 100;
+
+    private final InputStream source;
+    private final int chunkSize;
+    private final List<Branch> branches;
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    public StreamFanOut(InputStream source, int branches, int chunkSize, int capacity) {
+        if (branches < 1) {
+            throw new IllegalArgumentException("At least one branch is required");
+        }
+        this.source = source;
+        this.chunkSize = chunkSize;
+        List<Branch> list = new ArrayList<>(branches);
+        for (int i = 0; i < branches; i++) {
+            list.add(new Branch(capacity));
+        }
+        this.branches = Collections.unmodifiableList(list);
+    }
+
+    public InputStream branch(int i) {
+        return branches.get(i);
+    }
+
+    public List<? extends InputStream> branches() {
+        return branches;
+    }
+
+    /** Begin reading from the source on the given executor. */
+    public void start(Executor executor) {
+        executor.execute(this::pump);
+    }
+
+    private void pump() {
+        try (source) {
+            while (!closed) {
+                byte[] buf = new byte[chunkSize];
+                int n = source.read(buf);
+                if (n < 0) {
+                    break;
+                }
+                if (n == 0) {
+                    continue;
+                }
+                byte[] chunk = n == chunkSize ? buf : Arrays.copyOf(buf, n);
+                boolean live = false;
+                for (Branch branch : branches) {
+                    live |= branch.offer(chunk);
+                }
+                if (!live) {
+                    // every consumer has gone away, so there is no point reading any further
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = new InterruptedIOException();
+        } finally {
+            for (Branch branch : branches) {
+                branch.finish();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        for (Branch branch : branches) {
+            branch.close();
+        }
+    }
+
+    private class Branch extends InputStream {
+        private final BlockingQueue<byte[]> queue;
+        private volatile boolean detached;
+        private byte[] current = new byte[0];
+        private int pos;
+        private boolean done;
+
+        Branch(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        /**
+         * @return false if this branch has been detached and did not take the chunk
+         */
+        boolean offer(byte[] chunk) throws InterruptedException {
+            while (!detached) {
+                if (queue.offer(chunk, OFFER_POLL_MS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void finish() {
+            try {
+                while (!detached) {
+                    if (queue.offer(EOF, OFFER_POLL_MS, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n < 0 ? -1 : Byte.toUnsignedInt(b[0]);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (pos >= current.length) {
+                if (done || detached) {
+                    return -1;
+                }
+                try {
+                    current = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                pos = 0;
+                if (current == EOF) {
+                    done = true;
+                    if (failure != null) {
+                        throw new IOException(failure);
+                    }
+                    return -1;
+                }
+            }
+            int n = Math.min(len, current.length - pos);
+            System.arraycopy(current, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            detached = true;
+            queue.clear();
+        }
+    }
+}
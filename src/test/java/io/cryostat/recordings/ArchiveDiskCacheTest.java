@@ -0,0 +1,234 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import io.cryostat.core.sys.Clock;
+import io.cryostat.storage.FileSystemStorage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jboss.logging.Logger;
+import org.jboss.resteasy.reactive.PathPart;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+public class ArchiveDiskCacheTest {
+
+    static final String BUCKET = "archives";
+
+    @TempDir Path root;
+
+    FileSystemStorage storage;
+    ArchiveDiskCache cache;
+    Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+    @BeforeEach
+    void setup() throws IOException {
+        storage = new FileSystemStorage(root.resolve("storage"), new ObjectMapper());
+        storage.createBucket(b -> b.bucket(BUCKET));
+        cache = new ArchiveDiskCache();
+        cache.enabled = true;
+        cache.directory = Files.createDirectories(root.resolve("cache"));
+        cache.maxBytes = 10;
+        cache.validationTtl = Duration.ofSeconds(10);
+        cache.storage = storage;
+        cache.logger = Logger.getLogger(ArchiveDiskCacheTest.class);
+        cache.clock =
+                new Clock() {
+                    @Override
+                    public Instant now() {
+                        return now;
+                    }
+                };
+    }
+
+    @Test
+    void fullyReadObjectIsServedFromCache() throws IOException {
+        put("a", "abcd");
+        assertThat(readFully("a"), equalTo("abcd"));
+        assertThat(cachedFiles(), hasSize(1));
+
+        delete("a");
+        assertThat(readFully("a"), equalTo("abcd"));
+    }
+
+    @Test
+    void partiallyReadObjectIsNotCached() throws IOException {
+        put("a", "abcd");
+        try (InputStream in = cache.open(BUCKET, "a")) {
+            assertThat(in.read(), is((int) 'a'));
+        }
+        assertThat(cachedFiles(), hasSize(0));
+
+        delete("a");
+        assertThrows(NoSuchKeyException.class, () -> cache.open(BUCKET, "a"));
+    }
+
+    @Test
+    void skippedObjectIsNotCached() throws IOException {
+        put("a", "abcd");
+        try (InputStream in = cache.open(BUCKET, "a")) {
+            in.skip(2);
+            in.readAllBytes();
+        }
+        assertThat(cachedFiles(), hasSize(0));
+    }
+
+    @Test
+    void leastRecentlyUsedObjectIsEvicted() throws IOException {
+        put("a", "aaaa");
+        put("b", "bbbb");
+        put("c", "cccc");
+        readFully("a");
+        readFully("b");
+        // touch a so that b becomes the least recently used entry
+        readFully("a");
+        readFully("c");
+        assertThat(cachedFiles(), hasSize(2));
+
+        delete("a");
+        delete("b");
+        delete("c");
+        assertThat(readFully("a"), equalTo("aaaa"));
+        assertThat(readFully("c"), equalTo("cccc"));
+        assertThrows(NoSuchKeyException.class, () -> cache.open(BUCKET, "b"));
+    }
+
+    @Test
+    void objectLargerThanCacheIsNotCached() throws IOException {
+        put("a", "0123456789a");
+        assertThat(readFully("a"), equalTo("0123456789a"));
+        assertThat(cachedFiles(), hasSize(0));
+    }
+
+    @Test
+    void copyIsRevalidatedAfterTtl() throws IOException {
+        put("a", "abcd");
+        readFully("a");
+        put("a", "efgh");
+        assertThat(readFully("a"), equalTo("abcd"));
+
+        now = now.plus(cache.validationTtl);
+        assertThat(readFully("a"), equalTo("efgh"));
+    }
+
+    @Test
+    void copyIsDroppedOnInvalidate() throws IOException {
+        put("a", "abcd");
+        readFully("a");
+        put("a", "efgh");
+        cache.invalidate("a");
+        assertThat(readFully("a"), equalTo("efgh"));
+    }
+
+    @Test
+    void rangeIsServedFromCache() throws IOException {
+        put("a", "abcdef");
+        readFully("a");
+        var head = cache.head(BUCKET, "a");
+        assertThat(head.contentLength(), is(6L));
+
+        delete("a");
+        var object = cache.openRange(BUCKET, "a", new ByteRange(1, 3), head.eTag());
+        assertThat(object.entity(), instanceOf(PathPart.class));
+        assertThat(object.cached().offset, is(1L));
+        assertThat(object.cached().count, is(3L));
+        try (InputStream in = object.stream()) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8), equalTo("bcd"));
+        }
+    }
+
+    @Test
+    void hitIsServedAsFileRegion() throws IOException {
+        put("a", "abcdef");
+        var miss = cache.openObject(BUCKET, "a");
+        assertThat(miss.cached(), nullValue());
+        try (InputStream in = miss.stream()) {
+            in.readAllBytes();
+        }
+
+        var object = cache.openObject(BUCKET, "a");
+        assertThat(object.entity(), instanceOf(PathPart.class));
+        assertThat(object.cached().file, equalTo(cachedFiles().get(0)));
+        assertThat(object.cached().offset, is(0L));
+        assertThat(object.cached().count, is(6L));
+    }
+
+    @Test
+    void evictedHitFallsBackToStorage() throws IOException {
+        put("a", "abcdef");
+        readFully("a");
+        Files.delete(cachedFiles().get(0));
+
+        var object = cache.openObject(BUCKET, "a");
+        assertThat(object.cached(), nullValue());
+        try (InputStream in = object.stream()) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8), equalTo("abcdef"));
+        }
+    }
+
+    @Test
+    void rangeOfUncachedObjectIsReadFromStorage() throws IOException {
+        put("a", "abcdef");
+        var head = cache.head(BUCKET, "a");
+        var object = cache.openRange(BUCKET, "a", new ByteRange(2, 5), head.eTag());
+        assertThat(object.cached(), nullValue());
+        try (InputStream in = object.stream()) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8), equalTo("cdef"));
+        }
+        assertThat(cachedFiles(), hasSize(0));
+    }
+
+    private void put(String key, String content) {
+        storage.putObject(b -> b.bucket(BUCKET).key(key), RequestBody.fromString(content));
+    }
+
+    private void delete(String key) {
+        storage.deleteObject(b -> b.bucket(BUCKET).key(key));
+    }
+
+    private String readFully(String key) throws IOException {
+        try (InputStream in = cache.open(BUCKET, key)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private List<Path> cachedFiles() throws IOException {
+        try (Stream<Path> files = Files.list(cache.directory)) {
+            return files.toList();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.jupiter.api.Test;
+
+public class ArchivedRecordingLedgerTest {
+
+    static ArchivedRecordingLedger ledger(long count, long totalSize, long oldestArchivedTime) {
+        var ledger = new ArchivedRecordingLedger();
+        ledger.jvmId = "jvm";
+        ledger.count = count;
+        ledger.totalSize = totalSize;
+        ledger.oldestArchivedTime = oldestArchivedTime;
+        return ledger;
+    }
+
+    @Test
+    void withinAllLimits() {
+        assertThat(ledger(5, 500, 1000).exceeds(5, 500, 1000), is(false));
+    }
+
+    @Test
+    void exceedsFileCount() {
+        assertThat(ledger(6, 500, 1000).exceeds(5, 500, 1000), is(true));
+    }
+
+    @Test
+    void exceedsTotalSize() {
+        assertThat(ledger(5, 501, 1000).exceeds(5, 500, 1000), is(true));
+    }
+
+    @Test
+    void exceedsMaxAge() {
+        assertThat(ledger(5, 500, 999).exceeds(5, 500, 1000), is(true));
+    }
+
+    @Test
+    void noAgeLimit() {
+        assertThat(ledger(5, 500, 1).exceeds(5, 500, 0), is(false));
+    }
+
+    @Test
+    void emptyLedgerNeverExpires() {
+        assertThat(ledger(0, 0, 0).exceeds(0, 0, 1000), is(false));
+    }
+
+    @Test
+    void unboundedLimits() {
+        assertThat(
+                ledger(10_000, 1L << 40, 1).exceeds(Long.MAX_VALUE, Long.MAX_VALUE, 0), is(false));
+    }
+}
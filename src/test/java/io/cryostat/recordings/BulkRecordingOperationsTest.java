@@ -0,0 +1,93 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.*;
+
+import io.quarkus.test.common.http.TestHTTPEndpoint;
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+@TestHTTPEndpoint(BulkRecordingOperations.class)
+public class BulkRecordingOperationsTest {
+
+    JsonObject request;
+
+    @BeforeEach
+    public void setup() {
+        request = new JsonObject();
+        request.put("matchExpression", "true");
+        request.put("operation", "STOP");
+        request.put("recordingName", "my_recording");
+    }
+
+    @Test
+    public void testExecuteWithNoMatchedTargets() {
+        given().body(request.toString())
+                .contentType(ContentType.JSON)
+                .post()
+                .then()
+                .statusCode(200)
+                .body(is(emptyString()));
+    }
+
+    @Test
+    public void testExecuteThrowsOnInvalidMatchExpression() {
+        request.put("matchExpression", "this is not a valid expression(");
+        given().body(request.toString())
+                .contentType(ContentType.JSON)
+                .post()
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    public void testExecuteThrowsWhenRecordingNameMissing() {
+        request.remove("recordingName");
+        given().body(request.toString())
+                .contentType(ContentType.JSON)
+                .post()
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    public void testExecuteThrowsWhenStartEventsMissing() {
+        request.put("operation", "START");
+        given().body(request.toString())
+                .contentType(ContentType.JSON)
+                .post()
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    public void testSnapshotDoesNotRequireRecordingName() {
+        request.put("operation", "SNAPSHOT");
+        request.remove("recordingName");
+        given().body(request.toString())
+                .contentType(ContentType.JSON)
+                .post()
+                .then()
+                .statusCode(200)
+                .body(is(emptyString()));
+    }
+}
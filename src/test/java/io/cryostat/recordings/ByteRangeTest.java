@@ -0,0 +1,146 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class ByteRangeTest {
+
+    @Test
+    void parsesClosedRange() {
+        assertThat(ByteRange.parse("bytes=0-99", 1000), is(Optional.of(new ByteRange(0, 99))));
+    }
+
+    @Test
+    void parsesOpenEndedRange() {
+        assertThat(ByteRange.parse("bytes=900-", 1000), is(Optional.of(new ByteRange(900, 999))));
+    }
+
+    @Test
+    void parsesSuffixRange() {
+        assertThat(ByteRange.parse("bytes=-100", 1000), is(Optional.of(new ByteRange(900, 999))));
+    }
+
+    @Test
+    void suffixLongerThanRepresentationCoversAll() {
+        assertThat(ByteRange.parse("bytes=-5000", 1000), is(Optional.of(new ByteRange(0, 999))));
+    }
+
+    @Test
+    void endBeyondRepresentationIsClamped() {
+        assertThat(
+                ByteRange.parse("bytes=500-5000", 1000), is(Optional.of(new ByteRange(500, 999))));
+    }
+
+    @Test
+    void unitAndWhitespaceAreTolerated() {
+        assertThat(
+                ByteRange.parse(" Bytes= 10 - 19 ", 1000), is(Optional.of(new ByteRange(10, 19))));
+    }
+
+    @ParameterizedTest
+    @ValueSource(
+            strings = {
+                "",
+                "items=0-1",
+                "bytes=0-1,5-6",
+                "bytes=10",
+                "bytes=a-b",
+                "bytes=20-10",
+                "bytes=--1",
+            })
+    void unsupportedOrMalformedRangesAreIgnored(String header) {
+        assertThat(ByteRange.parse(header, 1000), is(Optional.empty()));
+    }
+
+    @Test
+    void absentHeaderIsIgnored() {
+        assertThat(ByteRange.parse(null, 1000), is(Optional.empty()));
+    }
+
+    @Test
+    void startBeyondRepresentationIsUnsatisfiable() {
+        var e =
+                assertThrows(
+                        ByteRange.UnsatisfiableRangeException.class,
+                        () -> ByteRange.parse("bytes=1000-", 1000));
+        assertThat(e.getLength(), is(1000L));
+    }
+
+    @Test
+    void zeroLengthSuffixIsUnsatisfiable() {
+        assertThrows(
+                ByteRange.UnsatisfiableRangeException.class,
+                () -> ByteRange.parse("bytes=-0", 1000));
+    }
+
+    @Test
+    void anyRangeOfEmptyRepresentationIsUnsatisfiable() {
+        assertThrows(
+                ByteRange.UnsatisfiableRangeException.class, () -> ByteRange.parse("bytes=0-", 0));
+        assertThrows(
+                ByteRange.UnsatisfiableRangeException.class, () -> ByteRange.parse("bytes=-10", 0));
+    }
+
+    @Test
+    void unknownLengthLeavesOpenRangeUnbounded() {
+        assertThat(
+                ByteRange.parse("bytes=10-", -1),
+                is(Optional.of(new ByteRange(10, Long.MAX_VALUE))));
+        assertThat(ByteRange.parse("bytes=-10", -1), is(Optional.empty()));
+    }
+
+    @Test
+    void formatsHeaders() {
+        var range = new ByteRange(10, 19);
+        assertThat(range.length(), is(10L));
+        assertThat(range.toRangeHeader(), is("bytes=10-19"));
+        assertThat(range.toContentRange(100), is("bytes 10-19/100"));
+        assertThat(range.toContentRange(-1), is("bytes 10-19/*"));
+        assertThat(ByteRange.unsatisfiable(100), is("bytes */100"));
+    }
+
+    @Test
+    void rejectsInvalidBounds() {
+        assertThrows(IllegalArgumentException.class, () -> new ByteRange(-1, 10));
+        assertThrows(IllegalArgumentException.class, () -> new ByteRange(10, 9));
+    }
+
+    @Test
+    void ifRangeMatchesStrongETagOrExactDate() {
+        Instant modified = Instant.parse("2024-01-02T03:04:05.678Z");
+        assertThat(Recordings.ifRangeMatches(null, "\"abc\"", modified), is(true));
+        assertThat(Recordings.ifRangeMatches("\"abc\"", "\"abc\"", modified), is(true));
+        assertThat(Recordings.ifRangeMatches("\"abd\"", "\"abc\"", modified), is(false));
+        assertThat(Recordings.ifRangeMatches("W/\"abc\"", "\"abc\"", modified), is(false));
+        assertThat(
+                Recordings.ifRangeMatches("Tue, 02 Jan 2024 03:04:05 GMT", "\"abc\"", modified),
+                is(true));
+        assertThat(
+                Recordings.ifRangeMatches("Tue, 02 Jan 2024 03:04:06 GMT", "\"abc\"", modified),
+                is(false));
+        assertThat(Recordings.ifRangeMatches("yesterday", "\"abc\"", modified), is(false));
+    }
+}
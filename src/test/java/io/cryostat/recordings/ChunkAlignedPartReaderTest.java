@@ -0,0 +1,169 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import io.cryostat.recordings.MultipartUploadCheckpoint.ChunkBoundary;
+import io.cryostat.recordings.MultipartUploader.Part;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+public class ChunkAlignedPartReaderTest {
+
+    static final int PART_CAPACITY = 2 * 1024 * 1024;
+    static final int MIN_PART_SIZE = 512 * 1024;
+
+    record StoredPart(byte[] data, Part part) {}
+
+    /** A recording of chunks with incompressible bodies, so encoded parts fill up. */
+    static byte[] recording(int chunks, int bodyLength) {
+        var random = new Random(chunks);
+        var out = new ByteArrayOutputStream();
+        for (int i = 0; i < chunks; i++) {
+            byte[] chunk = JfrChunkHeaderTest.chunk(1000L * (i + 1), 1000L, bodyLength);
+            byte[] body = new byte[bodyLength];
+            random.nextBytes(body);
+            System.arraycopy(body, 0, chunk, JfrChunkHeader.SIZE, bodyLength);
+            out.writeBytes(chunk);
+        }
+        return out.toByteArray();
+    }
+
+    static List<StoredPart> readAll(ChunkAlignedPartReader reader) throws IOException {
+        List<StoredPart> parts = new ArrayList<>();
+        while (true) {
+            var buf = ByteBuffer.allocate(PART_CAPACITY);
+            Part part = reader.next(buf);
+            parts.add(new StoredPart(Arrays.copyOf(buf.array(), buf.position()), part));
+            if (part.last()) {
+                return parts;
+            }
+        }
+    }
+
+    static byte[] decode(StorageCodec codec, List<StoredPart> parts) throws IOException {
+        var out = new ByteArrayOutputStream();
+        parts.forEach(p -> out.writeBytes(p.data()));
+        return codec.decode(new ByteArrayInputStream(out.toByteArray())).readAllBytes();
+    }
+
+    static InputStream after(byte[] recording, ChunkBoundary from) {
+        return new JfrChunkFilterInputStream(
+                new ByteArrayInputStream(recording),
+                chunk -> chunk.startNanos() > from.lastChunkStartNanos(),
+                chunk -> {});
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageCodec.class)
+    void partsEndAtChunkBoundaries(StorageCodec codec) throws IOException {
+        byte[] recording = recording(20, 300 * 1024);
+        var reader =
+                new ChunkAlignedPartReader(
+                        new ByteArrayInputStream(recording), codec, MIN_PART_SIZE, null);
+        var parts = readAll(reader);
+
+        assertThat(parts.size(), greaterThan(2));
+        for (var part : parts.subList(0, parts.size() - 1)) {
+            assertThat(part.data().length, greaterThanOrEqualTo(MIN_PART_SIZE));
+            assertThat(part.part().boundary(), notNullValue());
+        }
+        assertThat(decode(codec, parts), equalTo(recording));
+        assertThat(reader.sourceBytes(), is((long) recording.length));
+        var last = parts.get(parts.size() - 1).part().boundary();
+        assertThat(last, equalTo(new ChunkBoundary(20_000L, recording.length)));
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageCodec.class)
+    void resumesAfterAnyBoundary(StorageCodec codec) throws IOException {
+        byte[] recording = recording(20, 300 * 1024);
+        var parts =
+                readAll(
+                        new ChunkAlignedPartReader(
+                                new ByteArrayInputStream(recording), codec, MIN_PART_SIZE, null));
+
+        for (int kept = 1; kept < parts.size(); kept++) {
+            var from = parts.get(kept - 1).part().boundary();
+            var resumed =
+                    new ChunkAlignedPartReader(after(recording, from), codec, MIN_PART_SIZE, from);
+            var all = new ArrayList<>(parts.subList(0, kept));
+            all.addAll(readAll(resumed));
+
+            assertThat(decode(codec, all), equalTo(recording));
+            assertThat(resumed.sourceBytes(), is((long) recording.length));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageCodec.class)
+    void splitsChunksLargerThanAPart(StorageCodec codec) throws IOException {
+        byte[] recording = recording(2, 3 * 1024 * 1024);
+        var parts =
+                readAll(
+                        new ChunkAlignedPartReader(
+                                new ByteArrayInputStream(recording), codec, MIN_PART_SIZE, null));
+
+        assertThat(parts.size(), greaterThan(2));
+        assertThat(parts.get(0).part().boundary(), nullValue());
+        assertThat(parts.get(parts.size() - 1).part().boundary(), notNullValue());
+        assertThat(decode(codec, parts), equalTo(recording));
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageCodec.class)
+    void encodesEmptyRecording(StorageCodec codec) throws IOException {
+        var parts =
+                readAll(
+                        new ChunkAlignedPartReader(
+                                new ByteArrayInputStream(new byte[0]), codec, MIN_PART_SIZE, null));
+
+        assertThat(parts.size(), is(1));
+        assertThat(decode(codec, parts).length, is(0));
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageCodec.class)
+    void resumingWithNoNewChunksAddsNothing(StorageCodec codec) throws IOException {
+        var from = new ChunkBoundary(5000L, 1234L);
+        var reader =
+                new ChunkAlignedPartReader(
+                        new ByteArrayInputStream(new byte[0]), codec, MIN_PART_SIZE, from);
+        var parts = readAll(reader);
+
+        assertThat(parts.size(), is(1));
+        assertThat(parts.get(0).data().length, is(0));
+        assertThat(parts.get(0).part().boundary(), equalTo(from));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import io.smallrye.mutiny.helpers.test.AssertSubscriber;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ChunkBufferPoolTest {
+
+    ChunkBufferPool pool;
+    ExecutorService executor;
+
+    @BeforeEach
+    void setup() {
+        pool = new ChunkBufferPool(ChunkBufferPool.CHUNK_SIZE);
+        pool.logger = Logger.getLogger(ChunkBufferPool.class);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void streamReadsInSlices() {
+        byte[] data = new byte[ChunkBufferPool.SLICE_SIZE * 2 + 1];
+        var sub =
+                pool.stream(() -> new ByteArrayInputStream(data), executor)
+                        .subscribe()
+                        .withSubscriber(AssertSubscriber.create(Long.MAX_VALUE));
+
+        sub.awaitCompletion(Duration.ofSeconds(5));
+        assertThat(sub.getItems().size(), is(3));
+        assertThat(sub.getItems().get(0).length(), is(ChunkBufferPool.SLICE_SIZE));
+    }
+
+    @Test
+    void chunkWaitsForOpenStream() throws Exception {
+        var sub =
+                pool.stream(() -> new ByteArrayInputStream(new byte[16]), executor)
+                        .subscribe()
+                        .withSubscriber(AssertSubscriber.create(0));
+        // the stream has reserved a slice but not yet read anything
+        Thread.sleep(200);
+        var chunk = CompletableFuture.supplyAsync(this::acquire, executor);
+        assertThrows(TimeoutException.class, () -> chunk.get(200, TimeUnit.MILLISECONDS));
+
+        sub.cancel();
+        pool.release(chunk.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void streamWaitsForChunk() throws Exception {
+        var buf = pool.acquire();
+        var sub =
+                pool.stream(() -> new ByteArrayInputStream(new byte[16]), executor)
+                        .subscribe()
+                        .withSubscriber(AssertSubscriber.create(Long.MAX_VALUE));
+        Thread.sleep(200);
+        assertThat(sub.getItems().size(), is(0));
+
+        pool.release(buf);
+        sub.awaitCompletion(Duration.ofSeconds(5));
+        assertThat(sub.getItems().size(), is(1));
+    }
+
+    @Test
+    void streamReleasesSliceOnFailure() throws Exception {
+        var sub =
+                pool.stream(
+                                () -> {
+                                    throw new IOException("open failed");
+                                },
+                                executor)
+                        .subscribe()
+                        .withSubscriber(AssertSubscriber.create(1));
+        sub.awaitFailure(Duration.ofSeconds(5));
+
+        pool.release(
+                CompletableFuture.supplyAsync(this::acquire, executor).get(5, TimeUnit.SECONDS));
+    }
+
+    private ByteBuffer acquire() {
+        try {
+            return pool.acquire();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import io.cryostat.core.sys.Clock;
+import io.cryostat.core.sys.FileSystem;
+import io.cryostat.recordings.ChunkStore.ChunkRef;
+
+import jakarta.persistence.PersistenceException;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.paginators.ListObjectsV2Iterable;
+
+public class ChunkStoreTest {
+
+    static final Duration GRACE = Duration.ofHours(1);
+
+    record StoredObject(byte[] data, Instant lastModified) {}
+
+    TestClock clock;
+    Map<String, StoredObject> bucket;
+    volatile CountDownLatch uploadGate;
+    InMemoryChunkStore store;
+
+    @BeforeEach
+    void setup() {
+        clock = new TestClock();
+        bucket = new ConcurrentHashMap<>();
+        uploadGate = new CountDownLatch(0);
+
+        store = new InMemoryChunkStore();
+        store.enabled = true;
+        store.bucket = "chunks";
+        store.gcGrace = GRACE;
+        store.codec = StorageCodec.IDENTITY;
+        store.fs = new FileSystem();
+        store.clock = clock;
+        store.logger = Logger.getLogger(ChunkStoreTest.class);
+        store.storage = storage();
+    }
+
+    @AfterEach
+    void teardown() {
+        // let stalled stores and collections finish if a test failed while holding them back
+        uploadGate.countDown();
+        store.listGate.countDown();
+    }
+
+    static byte[] chunk(long startNanos) {
+        return JfrChunkHeaderTest.chunk(startNanos, 1000L, 1024);
+    }
+
+    static byte[] recording(byte[]... chunks) {
+        var out = new ByteArrayOutputStream();
+        Arrays.stream(chunks).forEach(out::writeBytes);
+        return out.toByteArray();
+    }
+
+    @Test
+    void sharedChunksAreUploadedOnce() throws IOException {
+        byte[] a = chunk(1000), b = chunk(2000), c = chunk(3000);
+        var first = store.store(new ByteArrayInputStream(recording(a, b)));
+        var second = store.store(new ByteArrayInputStream(recording(b, c)));
+
+        assertThat(bucket.size(), is(3));
+        assertThat(store.refCount(first.get(0)), is(1L));
+        assertThat(store.refCount(first.get(1)), is(2L));
+        assertThat(second.get(0), equalTo(first.get(1)));
+        assertThat(store.open(second).readAllBytes(), equalTo(recording(b, c)));
+    }
+
+    @Test
+    void failedStoreReleasesItsReferences() throws IOException {
+        byte[] a = chunk(1000), b = chunk(2000);
+        var kept = store.store(new ByteArrayInputStream(recording(a)));
+
+        byte[] truncated = Arrays.copyOf(b, b.length - 1);
+        assertThrows(
+                EOFException.class,
+                () -> store.store(new ByteArrayInputStream(recording(a, truncated))));
+
+        assertThat(store.refCount(kept.get(0)), is(1L));
+        assertThat(store.chunks.size(), is(1));
+    }
+
+    @Test
+    void releasedChunksAreCollectedAfterGrace() throws IOException {
+        byte[] a = chunk(1000), b = chunk(2000);
+        var released = store.store(new ByteArrayInputStream(recording(a)));
+        var kept = store.store(new ByteArrayInputStream(recording(b)));
+        store.release(released);
+        assertThat(store.refCount(released.get(0)), is(0L));
+
+        store.collectGarbage();
+        assertThat(bucket, hasKey(released.get(0).hash()));
+
+        clock.advance(GRACE.plusMinutes(1));
+        store.collectGarbage();
+        assertThat(bucket, not(hasKey(released.get(0).hash())));
+        assertThat(store.chunks, not(hasKey(released.get(0).hash())));
+        assertThat(bucket, hasKey(kept.get(0).hash()));
+        assertThat(store.refCount(kept.get(0)), is(1L));
+    }
+
+    @Test
+    void orphanedObjectsAreCollectedAfterGrace() {
+        bucket.put("old", new StoredObject(chunk(1000), clock.now()));
+        clock.advance(GRACE.plusMinutes(1));
+        bucket.put("recent", new StoredObject(chunk(2000), clock.now()));
+
+        store.collectGarbage();
+        assertThat(bucket, not(hasKey("old")));
+        assertThat(bucket, hasKey("recent"));
+    }
+
+    @Test
+    void collectionWaitsForInFlightStore() throws Exception {
+        byte[] a = chunk(1000), b = chunk(2000);
+        var expired = store.store(new ByteArrayInputStream(recording(a)));
+        store.release(expired);
+        clock.advance(GRACE.plusMinutes(1));
+
+        // the store references the expired chunk, then stalls uploading the next one
+        uploadGate = new CountDownLatch(1);
+        var storing =
+                CompletableFuture.supplyAsync(
+                        () -> {
+                            try {
+                                return store.store(new ByteArrayInputStream(recording(a, b)));
+                            } catch (IOException e) {
+                                throw new RuntimeException(e);
+                            }
+                        });
+        awaitRefCount(expired.get(0), 1);
+        var collecting = CompletableFuture.runAsync(store::collectGarbage);
+        assertThrows(TimeoutException.class, () -> collecting.get(300, TimeUnit.MILLISECONDS));
+
+        uploadGate.countDown();
+        var refs = storing.get(5, TimeUnit.SECONDS);
+        collecting.get(5, TimeUnit.SECONDS);
+
+        assertThat(bucket, hasKey(expired.get(0).hash()));
+        assertThat(store.refCount(expired.get(0)), is(1L));
+        assertThat(store.open(refs).readAllBytes(), equalTo(recording(a, b)));
+    }
+
+    @Test
+    void storeWaitsForInFlightCollection() throws Exception {
+        byte[] a = chunk(1000);
+        var expired = store.store(new ByteArrayInputStream(recording(a)));
+        store.release(expired);
+        clock.advance(GRACE.plusMinutes(1));
+
+        // the collection finds the expired chunk, then stalls before deleting it
+        store.listGate = new CountDownLatch(1);
+        var collecting = CompletableFuture.runAsync(store::collectGarbage);
+        store.listed.await(5, TimeUnit.SECONDS);
+        var storing =
+                CompletableFuture.supplyAsync(
+                        () -> {
+                            try {
+                                return store.store(new ByteArrayInputStream(recording(a)));
+                            } catch (IOException e) {
+                                throw new RuntimeException(e);
+                            }
+                        });
+        assertThrows(TimeoutException.class, () -> storing.get(300, TimeUnit.MILLISECONDS));
+
+        store.listGate.countDown();
+        collecting.get(5, TimeUnit.SECONDS);
+        var refs = storing.get(5, TimeUnit.SECONDS);
+
+        // the chunk was collected, so the store uploaded it again
+        assertThat(bucket, hasKey(expired.get(0).hash()));
+        assertThat(store.refCount(refs.get(0)), is(1L));
+        assertThat(store.open(refs).readAllBytes(), equalTo(a));
+    }
+
+    private void awaitRefCount(ChunkRef ref, long expected) throws InterruptedException {
+        for (int i = 0; i < 50 && store.refCount(ref) != expected; i++) {
+            Thread.sleep(100);
+        }
+        assertThat(store.refCount(ref), is(expected));
+    }
+
+    private S3Client storage() {
+        S3Client storage = mock(S3Client.class);
+        when(storage.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenAnswer(
+                        inv -> {
+                            uploadGate.await();
+                            PutObjectRequest req = inv.getArgument(0);
+                            RequestBody body = inv.getArgument(1);
+                            try (var in = body.contentStreamProvider().newStream()) {
+                                bucket.put(
+                                        req.key(),
+                                        new StoredObject(in.readAllBytes(), clock.now()));
+                            }
+                            return PutObjectResponse.builder().build();
+                        });
+        when(storage.getObject(any(GetObjectRequest.class)))
+                .thenAnswer(
+                        inv -> {
+                            GetObjectRequest req = inv.getArgument(0);
+                            return new ResponseInputStream<>(
+                                    GetObjectResponse.builder().build(),
+                                    AbortableInputStream.create(
+                                            new ByteArrayInputStream(
+                                                    bucket.get(req.key()).data())));
+                        });
+        when(storage.deleteObject(any(DeleteObjectRequest.class)))
+                .thenAnswer(
+                        inv -> {
+                            DeleteObjectRequest req = inv.getArgument(0);
+                            bucket.remove(req.key());
+                            return DeleteObjectResponse.builder().build();
+                        });
+        when(storage.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenAnswer(
+                        inv ->
+                                ListObjectsV2Response.builder()
+                                        .isTruncated(false)
+                                        .contents(
+                                                bucket.entrySet().stream()
+                                                        .map(
+                                                                e ->
+                                                                        S3Object.builder()
+                                                                                .key(e.getKey())
+                                                                                .lastModified(
+                                                                                        e.getValue()
+                                                                                                .lastModified())
+                                                                                .build())
+                                                        .toList())
+                                        .build());
+        when(storage.listObjectsV2Paginator(any(ListObjectsV2Request.class)))
+                .thenAnswer(inv -> new ListObjectsV2Iterable(storage, inv.getArgument(0)));
+        return storage;
+    }
+
+    static class TestClock extends Clock {
+        private volatile Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        @Override
+        public Instant now() {
+            return now;
+        }
+
+        void advance(Duration d) {
+            now = now.plus(d);
+        }
+    }
+
+    /** Keeps the chunk index in memory in place of the database. */
+    static class InMemoryChunkStore extends ChunkStore {
+        final Map<String, ArchivedChunk> chunks = new ConcurrentHashMap<>();
+        final CountDownLatch listed = new CountDownLatch(1);
+        volatile CountDownLatch listGate = new CountDownLatch(0);
+
+        synchronized long refCount(ChunkRef ref) {
+            var chunk = chunks.get(ref.hash());
+            return chunk == null ? -1 : chunk.refCount;
+        }
+
+        private synchronized boolean adjustRefCount(String hash, int delta) {
+            var chunk = chunks.get(hash);
+            if (chunk == null) {
+                return false;
+            }
+            chunk.refCount += delta;
+            chunk.updated = clock.now();
+            return true;
+        }
+
+        @Override
+        Optional<ArchivedChunk> reference(String hash) {
+            return adjustRefCount(hash, 1) ? Optional.of(chunks.get(hash)) : Optional.empty();
+        }
+
+        @Override
+        synchronized void insert(String hash, long size, String codecId) {
+            ArchivedChunk chunk = new ArchivedChunk();
+            chunk.hash = hash;
+            chunk.size = size;
+            chunk.codec = codecId;
+            chunk.refCount = 1;
+            chunk.updated = clock.now();
+            if (chunks.putIfAbsent(hash, chunk) != null) {
+                throw new PersistenceException("duplicate hash " + hash);
+            }
+        }
+
+        @Override
+        public void release(List<ChunkRef> refs) {
+            refs.forEach(ref -> adjustRefCount(ref.hash(), -1));
+        }
+
+        @Override
+        List<ArchivedChunk> listUnreferencedBefore(Instant before) {
+            List<ArchivedChunk> unreferenced;
+            synchronized (this) {
+                unreferenced =
+                        chunks.values().stream()
+                                .filter(c -> c.refCount <= 0 && c.updated.isBefore(before))
+                                .toList();
+            }
+            listed.countDown();
+            try {
+                listGate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return unreferenced;
+        }
+
+        @Override
+        synchronized void deleteChunk(String hash) {
+            chunks.computeIfPresent(hash, (k, c) -> c.refCount <= 0 ? null : c);
+        }
+
+        @Override
+        Set<String> knownHashes(List<String> hashes) {
+            if (hashes.isEmpty()) {
+                return Collections.emptySet();
+            }
+            return hashes.stream()
+                    .filter(chunks::containsKey)
+                    .collect(Collectors.toCollection(HashSet::new));
+        }
+    }
+}
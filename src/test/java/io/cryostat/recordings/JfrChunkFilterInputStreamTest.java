@@ -0,0 +1,137 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import static io.cryostat.recordings.JfrChunkHeaderTest.chunk;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+public class JfrChunkFilterInputStreamTest {
+
+    static final byte[] FIRST = chunk(1_000_000_000L, 1_000_000_000L, 16);
+    static final byte[] SECOND = chunk(2_000_000_000L, 1_000_000_000L, 32);
+    static final byte[] THIRD = chunk(3_000_000_000L, 1_000_000_000L, 8);
+
+    @Test
+    void passesAcceptedChunksThrough() throws IOException {
+        var accepted = new ArrayList<Long>();
+        var in =
+                new JfrChunkFilterInputStream(
+                        stream(FIRST, SECOND, THIRD),
+                        chunk -> true,
+                        chunk -> accepted.add(chunk.startNanos()));
+        assertThat(in.readAllBytes(), equalTo(concat(FIRST, SECOND, THIRD)));
+        assertThat(accepted, contains(1_000_000_000L, 2_000_000_000L, 3_000_000_000L));
+    }
+
+    @Test
+    void dropsRejectedChunks() throws IOException {
+        var in =
+                new JfrChunkFilterInputStream(
+                        stream(FIRST, SECOND, THIRD),
+                        chunk -> chunk.startNanos() != 2_000_000_000L,
+                        chunk -> {});
+        assertThat(in.readAllBytes(), equalTo(concat(FIRST, THIRD)));
+    }
+
+    @Test
+    void emptySourceProducesEmptyStream() throws IOException {
+        var in = new JfrChunkFilterInputStream(stream(), chunk -> true, chunk -> {});
+        assertThat(in.read(), is(-1));
+    }
+
+    @Test
+    void singleByteReadsMatchBulkReads() throws IOException {
+        var in = new JfrChunkFilterInputStream(stream(FIRST, SECOND), chunk -> true, c -> {});
+        var out = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) >= 0) {
+            out.write(b);
+        }
+        assertThat(out.toByteArray(), equalTo(concat(FIRST, SECOND)));
+    }
+
+    @Test
+    void truncatedChunkIsAnError() {
+        byte[] truncated = Arrays.copyOf(SECOND, SECOND.length - 1);
+        var in = new JfrChunkFilterInputStream(stream(FIRST, truncated), chunk -> true, c -> {});
+        assertThrows(EOFException.class, in::readAllBytes);
+    }
+
+    @Test
+    void windowKeepsOverlappingChunks() throws IOException {
+        var in =
+                JfrChunkFilterInputStream.window(
+                        stream(FIRST, SECOND, THIRD),
+                        Instant.ofEpochMilli(2_500),
+                        Instant.ofEpochMilli(3_000));
+        assertThat(in.readAllBytes(), equalTo(concat(SECOND, THIRD)));
+    }
+
+    @Test
+    void windowWithOpenBounds() throws IOException {
+        assertThat(
+                JfrChunkFilterInputStream.window(
+                                stream(FIRST, SECOND, THIRD), null, Instant.ofEpochMilli(1_500))
+                        .readAllBytes(),
+                equalTo(FIRST));
+        assertThat(
+                JfrChunkFilterInputStream.window(
+                                stream(FIRST, SECOND, THIRD), Instant.ofEpochMilli(3_500), null)
+                        .readAllBytes(),
+                equalTo(THIRD));
+    }
+
+    @Test
+    void closesSource() throws IOException {
+        var closed = new AtomicBoolean();
+        var source =
+                new ByteArrayInputStream(FIRST) {
+                    @Override
+                    public void close() {
+                        closed.set(true);
+                    }
+                };
+        new JfrChunkFilterInputStream(source, chunk -> true, c -> {}).close();
+        assertThat(closed.get(), is(true));
+    }
+
+    static InputStream stream(byte[]... chunks) {
+        return new ByteArrayInputStream(concat(chunks));
+    }
+
+    static byte[] concat(byte[]... chunks) {
+        var out = new ByteArrayOutputStream();
+        List.of(chunks).forEach(out::writeBytes);
+        return out.toByteArray();
+    }
+}
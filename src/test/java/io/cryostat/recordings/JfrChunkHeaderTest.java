@@ -0,0 +1,106 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import jdk.jfr.Recording;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class JfrChunkHeaderTest {
+
+    @TempDir Path dir;
+
+    @Test
+    void parsesHeaderFields() throws IOException {
+        var header = JfrChunkHeader.parse(chunk(1_000, 250, 100));
+        assertThat(header.majorVersion(), is(2));
+        assertThat(header.minorVersion(), is(1));
+        assertThat(header.size(), is((long) JfrChunkHeader.SIZE + 100));
+        assertThat(header.startNanos(), is(1_000L));
+        assertThat(header.durationNanos(), is(250L));
+        assertThat(header.endNanos(), is(1_250L));
+    }
+
+    @Test
+    void rejectsTruncatedHeader() {
+        byte[] truncated = Arrays.copyOf(chunk(0, 0, 0), JfrChunkHeader.SIZE - 1);
+        assertThrows(IOException.class, () -> JfrChunkHeader.parse(truncated));
+    }
+
+    @Test
+    void rejectsBadMagic() {
+        byte[] chunk = chunk(0, 0, 0);
+        chunk[0] = 'X';
+        assertThrows(IOException.class, () -> JfrChunkHeader.parse(chunk));
+    }
+
+    @Test
+    void rejectsSizeSmallerThanHeader() {
+        byte[] chunk = chunk(0, 0, 0);
+        ByteBuffer.wrap(chunk).putLong(8, JfrChunkHeader.SIZE - 1);
+        assertThrows(IOException.class, () -> JfrChunkHeader.parse(chunk));
+    }
+
+    @Test
+    void parsesRealRecording() throws Exception {
+        Path file = dir.resolve("recording.jfr");
+        try (var recording = new Recording()) {
+            recording.enable("jdk.CPULoad");
+            recording.start();
+            recording.stop();
+            recording.dump(file);
+        }
+        byte[] header;
+        try (InputStream in = Files.newInputStream(file)) {
+            header = in.readNBytes(JfrChunkHeader.SIZE);
+        }
+        var chunk = JfrChunkHeader.parse(header);
+        assertThat(chunk.majorVersion(), is(2));
+        assertThat(chunk.size(), lessThanOrEqualTo(Files.size(file)));
+        assertThat(chunk.startNanos(), greaterThan(0L));
+        assertThat(chunk.endNanos(), greaterThanOrEqualTo(chunk.startNanos()));
+    }
+
+    /**
+     * A synthetic JFR chunk with the given start time and duration, and a body of the given length
+     * filled with the low byte of the start time.
+     */
+    static byte[] chunk(long startNanos, long durationNanos, int bodyLength) {
+        var buf = ByteBuffer.allocate(JfrChunkHeader.SIZE + bodyLength);
+        buf.putInt(0x464c5200);
+        buf.putShort((short) 2);
+        buf.putShort((short) 1);
+        buf.putLong(JfrChunkHeader.SIZE + bodyLength);
+        buf.putLong(32, startNanos);
+        buf.putLong(40, durationNanos);
+        Arrays.fill(buf.array(), JfrChunkHeader.SIZE, buf.capacity(), (byte) startNanos);
+        return buf.array();
+    }
+}
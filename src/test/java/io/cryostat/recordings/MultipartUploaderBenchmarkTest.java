@@ -0,0 +1,149 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.cryostat.storage.FileSystemStorage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+/**
+ * Measures archive upload throughput against a local storage stand-in with simulated source and
+ * storage latency, at increasing part concurrency. Run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+public class MultipartUploaderBenchmarkTest {
+
+    static final String BUCKET = "archives";
+    static final int PARTS = 8;
+    // roughly a 200MiB/s JMX stream and a 40MiB/s connection to storage
+    static final Duration READ_LATENCY_PER_MIB = Duration.ofMillis(5);
+    static final Duration PART_UPLOAD_LATENCY = Duration.ofMillis(500);
+
+    @TempDir Path root;
+
+    @Test
+    void concurrentPartsImproveThroughput() throws Exception {
+        var storage = new SlowStorage(root);
+        storage.createBucket(b -> b.bucket(BUCKET));
+
+        Map<Integer, Duration> results = new LinkedHashMap<>();
+        for (int concurrency : new int[] {1, 2, 4, 8}) {
+            var uploader = uploader(storage, concurrency);
+            long size = (long) PARTS * MultipartUploader.PART_SIZE;
+            long start = System.nanoTime();
+            long uploaded =
+                    uploader.upload(
+                            CreateMultipartUploadRequest.builder()
+                                    .bucket(BUCKET)
+                                    .key("recording-" + concurrency + ".jfr")
+                                    .build(),
+                            new SlowSource(size));
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            assertThat(uploaded, is(size));
+            results.put(concurrency, elapsed);
+            uploader.onStop(null);
+            System.out.printf(
+                    "concurrency=%d parts=%d elapsed=%dms throughput=%.1fMiB/s%n",
+                    concurrency,
+                    PARTS,
+                    elapsed.toMillis(),
+                    size / (1024d * 1024d) / (elapsed.toNanos() / 1e9));
+        }
+
+        assertThat(results.get(4).toMillis(), lessThan(results.get(1).toMillis() / 2));
+    }
+
+    static MultipartUploader uploader(SlowStorage storage, int concurrency) {
+        var buffers = new ChunkBufferPool((concurrency + 1L) * ChunkBufferPool.CHUNK_SIZE);
+        buffers.logger = Logger.getLogger(ChunkBufferPool.class);
+        var uploader = new MultipartUploader(concurrency, buffers);
+        uploader.storage = storage;
+        uploader.logger = Logger.getLogger(MultipartUploader.class);
+        return uploader;
+    }
+
+    static class SlowStorage extends FileSystemStorage {
+        SlowStorage(Path root) {
+            super(root, new ObjectMapper());
+        }
+
+        @Override
+        public UploadPartResponse uploadPart(UploadPartRequest request, RequestBody body) {
+            try {
+                Thread.sleep(PART_UPLOAD_LATENCY.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.uploadPart(request, body);
+        }
+    }
+
+    /** Produces the given number of bytes, pausing after each MiB as a remote stream would. */
+    static class SlowSource extends InputStream {
+        static final int MIB = 1024 * 1024;
+
+        private long remaining;
+        private int untilPause = MIB;
+
+        SlowSource(long size) {
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0];
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            if (untilPause == 0) {
+                try {
+                    Thread.sleep(READ_LATENCY_PER_MIB.toMillis());
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                untilPause = MIB;
+            }
+            int n = (int) Math.min(Math.min(len, remaining), untilPause);
+            remaining -= n;
+            untilPause -= n;
+            return n;
+        }
+    }
+}
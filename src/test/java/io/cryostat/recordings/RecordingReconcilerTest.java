@@ -0,0 +1,158 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.anEmptyMap;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.openjdk.jmc.rjmx.services.jfr.IRecordingDescriptor;
+
+import io.cryostat.recordings.RecordingReconciler.Diff;
+import io.cryostat.recordings.RecordingReconciler.Observation;
+import io.cryostat.recordings.RecordingReconciler.Poll;
+
+import jdk.jfr.RecordingState;
+import org.junit.jupiter.api.Test;
+
+public class RecordingReconcilerTest {
+
+    static ActiveRecording local(long id, long remoteId, String name, RecordingState state) {
+        var recording = new ActiveRecording();
+        recording.id = id;
+        recording.remoteId = remoteId;
+        recording.name = name;
+        recording.state = state;
+        return recording;
+    }
+
+    static IRecordingDescriptor remote(
+            long id, String name, IRecordingDescriptor.RecordingState state) {
+        var descriptor = mock(IRecordingDescriptor.class);
+        when(descriptor.getId()).thenReturn(id);
+        when(descriptor.getName()).thenReturn(name);
+        when(descriptor.getState()).thenReturn(state);
+        return descriptor;
+    }
+
+    static Diff diff(
+            List<ActiveRecording> local,
+            Set<Long> knownBeforePoll,
+            List<IRecordingDescriptor> remote,
+            Set<Long> pending) {
+        var poll = new Poll(1, null, knownBeforePoll);
+        return RecordingReconciler.diff(local, new Observation(poll, Optional.of(remote)), pending);
+    }
+
+    @Test
+    void deletesRecordingKnownBeforePoll() {
+        var closed = local(1, 10, "closed", RecordingState.RUNNING);
+        var diff = diff(List.of(closed), Set.of(1L), List.of(), Set.of());
+
+        assertThat(diff.deleted(), contains(closed));
+        assertThat(diff.hasChanges(), is(true));
+    }
+
+    @Test
+    void keepsRecordingCreatedDuringPoll() {
+        // persisted through the API after the target's recordings were listed
+        var created = local(2, 11, "created", RecordingState.RUNNING);
+        var diff = diff(List.of(created), Set.of(), List.of(), Set.of());
+
+        assertThat(diff.deleted(), empty());
+        assertThat(diff.hasChanges(), is(false));
+    }
+
+    @Test
+    void insertsUnknownRecordingOnSecondPoll() {
+        var external = remote(20, "external", IRecordingDescriptor.RecordingState.RUNNING);
+
+        var first = diff(List.of(), Set.of(), List.of(external), Set.of());
+        assertThat(first.created(), empty());
+        assertThat(first.pending(), is(Set.of(20L)));
+        assertThat(first.hasChanges(), is(false));
+
+        var second = diff(List.of(), Set.of(), List.of(external), first.pending());
+        assertThat(second.created(), contains(external));
+        assertThat(second.pending(), empty());
+        assertThat(second.hasChanges(), is(true));
+    }
+
+    @Test
+    void forgetsPendingRecordingClosedBeforeSecondPoll() {
+        var diff = diff(List.of(), Set.of(), List.of(), Set.of(20L));
+
+        assertThat(diff.created(), empty());
+        assertThat(diff.pending(), empty());
+    }
+
+    @Test
+    void doesNotInsertPendingRecordingWithLocalName() {
+        // an API transaction has persisted the recording, but not yet its remote ID
+        var persisting = local(3, 0, "api", RecordingState.NEW);
+        var descriptor = remote(21, "api", IRecordingDescriptor.RecordingState.RUNNING);
+        var diff = diff(List.of(persisting), Set.of(), List.of(descriptor), Set.of(21L));
+
+        assertThat(diff.created(), empty());
+        assertThat(diff.deleted(), empty());
+        assertThat(diff.pending(), is(Set.of(21L)));
+    }
+
+    @Test
+    void matchesRecordingsByRemoteId() {
+        var known = local(4, 30, "known", RecordingState.RUNNING);
+        var descriptor = remote(30, "known", IRecordingDescriptor.RecordingState.RUNNING);
+        var diff = diff(List.of(known), Set.of(4L), List.of(descriptor), Set.of());
+
+        assertThat(diff.hasChanges(), is(false));
+        assertThat(diff.pending(), empty());
+    }
+
+    @Test
+    void updatesStateOnlyForwards() {
+        var running = local(5, 40, "running", RecordingState.RUNNING);
+        var stopped = local(6, 41, "stopped", RecordingState.STOPPED);
+        var diff =
+                diff(
+                        List.of(running, stopped),
+                        Set.of(5L, 6L),
+                        List.of(
+                                remote(40, "running", IRecordingDescriptor.RecordingState.STOPPED),
+                                // observed before a concurrent stop through the API took effect
+                                remote(41, "stopped", IRecordingDescriptor.RecordingState.RUNNING)),
+                        Set.of());
+
+        assertThat(diff.updated().size(), is(1));
+        assertThat(diff.updated().get(running), is(RecordingState.STOPPED));
+        assertThat(diff.deleted(), empty());
+    }
+
+    @Test
+    void noChangesWhenInSync() {
+        var diff = diff(List.of(), Set.of(), List.of(), Set.of());
+
+        assertThat(diff.updated(), anEmptyMap());
+        assertThat(diff.hasChanges(), is(false));
+    }
+}
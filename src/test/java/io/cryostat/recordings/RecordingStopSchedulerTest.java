@@ -0,0 +1,154 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import io.cryostat.core.sys.Clock;
+import io.cryostat.recordings.RecordingStopScheduler.TimerArmed;
+
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class RecordingStopSchedulerTest {
+
+    InMemoryScheduler scheduler;
+    Clock clock;
+
+    @BeforeEach
+    void setup() {
+        clock = new Clock();
+        scheduler = new InMemoryScheduler();
+        scheduler.workers = 2;
+        scheduler.clock = clock;
+        scheduler.logger = Logger.getLogger(RecordingStopSchedulerTest.class);
+    }
+
+    @AfterEach
+    void teardown() {
+        scheduler.onStop(null);
+    }
+
+    static RecordingStopTimer timer(long recordingId, Instant dueTime) {
+        var timer = new RecordingStopTimer();
+        timer.recordingId = recordingId;
+        timer.dueTime = dueTime;
+        return timer;
+    }
+
+    @Test
+    void overdueTimersFireAtStartup() throws InterruptedException {
+        Instant now = clock.now();
+        scheduler.put(timer(1, now.minus(Duration.ofHours(1))));
+        scheduler.put(timer(2, now.minusSeconds(1)));
+        scheduler.put(timer(3, now.plus(Duration.ofHours(1))));
+
+        scheduler.onStart(null);
+        awaitStopped(2);
+
+        assertThat(scheduler.stopped, containsInAnyOrder(1L, 2L));
+        assertThat(scheduler.timers.keySet(), contains(3L));
+    }
+
+    @Test
+    void rescheduledTimerDoesNotFire() throws InterruptedException {
+        scheduler.onStart(null);
+        Instant first = clock.now().plusMillis(200);
+        scheduler.put(timer(1, first));
+        scheduler.onArmed(new TimerArmed(1, first));
+
+        Instant later = clock.now().plus(Duration.ofHours(1));
+        scheduler.put(timer(1, later));
+        scheduler.onArmed(new TimerArmed(1, later));
+
+        awaitFired(1);
+        Thread.sleep(200);
+
+        // the timeout armed for the earlier time still fires, but has no effect
+        assertThat(scheduler.fired, contains(first));
+        assertThat(scheduler.stopped, empty());
+        assertThat(scheduler.timers, hasKey(1L));
+        assertThat(scheduler.timers.get(1L).dueTime, is(later));
+    }
+
+    @Test
+    void timerFiresAtDueTime() throws InterruptedException {
+        scheduler.onStart(null);
+        Instant due = clock.now().plusMillis(300);
+        scheduler.put(timer(1, due));
+        scheduler.onArmed(new TimerArmed(1, due));
+
+        awaitStopped(1);
+        assertThat(clock.now().isBefore(due), is(false));
+        assertThat(scheduler.timers.isEmpty(), is(true));
+    }
+
+    private void awaitStopped(int count) throws InterruptedException {
+        for (int i = 0; i < 50 && scheduler.stopped.size() < count; i++) {
+            Thread.sleep(100);
+        }
+        assertThat(scheduler.stopped.size(), is(count));
+    }
+
+    private void awaitFired(int count) throws InterruptedException {
+        for (int i = 0; i < 50 && scheduler.fired.size() < count; i++) {
+            Thread.sleep(100);
+        }
+        assertThat(scheduler.fired.size(), is(count));
+    }
+
+    /** Keeps the timers in memory in place of the database, and records the recordings stopped. */
+    static class InMemoryScheduler extends RecordingStopScheduler {
+        final Map<Long, RecordingStopTimer> timers = new ConcurrentHashMap<>();
+        final List<Instant> fired = new CopyOnWriteArrayList<>();
+        final List<Long> stopped = new CopyOnWriteArrayList<>();
+
+        void put(RecordingStopTimer timer) {
+            timers.put(timer.recordingId, timer);
+        }
+
+        @Override
+        List<RecordingStopTimer> listTimers() {
+            return new ArrayList<>(timers.values());
+        }
+
+        @Override
+        synchronized void stop(long recordingId, Instant dueTime) {
+            fired.add(dueTime);
+            var timer = timers.get(recordingId);
+            if (timer == null || timer.isRescheduledAfter(dueTime)) {
+                return;
+            }
+            stopped.add(recordingId);
+            timers.remove(recordingId);
+        }
+    }
+}
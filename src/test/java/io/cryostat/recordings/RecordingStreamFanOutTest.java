@@ -0,0 +1,193 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.cryostat.ProgressInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class RecordingStreamFanOutTest {
+
+    static final int BUFFER_CHUNKS = 4;
+
+    RecordingStreamFanOut fanOut;
+    byte[] data;
+    TrackingStream source;
+
+    @BeforeEach
+    void setup() throws Exception {
+        data = new byte[32 * RecordingStreamFanOut.CHUNK_SIZE];
+        new Random(1).nextBytes(data);
+        source = new TrackingStream(new ByteArrayInputStream(data), -1);
+
+        fanOut = new RecordingStreamFanOut(1);
+        fanOut.bufferChunks = BUFFER_CHUNKS;
+        fanOut.remoteRecordingStreamFactory = mock(RemoteRecordingInputStreamFactory.class);
+        when(fanOut.remoteRecordingStreamFactory.open(any(ActiveRecording.class)))
+                .thenAnswer(inv -> new ProgressInputStream(source, n -> {}));
+    }
+
+    @AfterEach
+    void teardown() {
+        fanOut.shutdown();
+    }
+
+    @Test
+    void consumerFailingMidStreamDoesNotStallOthers() throws Exception {
+        try (var branches = fanOut.open(new ActiveRecording(), 2)) {
+            var full = readAsync(branches.branch(0));
+            var failing =
+                    CompletableFuture.runAsync(
+                            () -> {
+                                try (var in = branches.branch(1)) {
+                                    in.readNBytes(100 * 1024);
+                                    // the consumer fails here, and closing its branch detaches it
+                                } catch (IOException e) {
+                                    throw new RuntimeException(e);
+                                }
+                            });
+
+            failing.get(5, TimeUnit.SECONDS);
+            assertThat(full.get(5, TimeUnit.SECONDS), equalTo(data));
+        }
+        awaitClosed();
+    }
+
+    @Test
+    void slowConsumerHoldsBackSource() throws Exception {
+        try (var branches = fanOut.open(new ActiveRecording(), 2)) {
+            var fast = readAsync(branches.branch(0));
+            Thread.sleep(300);
+
+            // the source is read no further than the slow branch's queue plus the chunk in hand
+            assertThat(
+                    source.bytesRead.get(),
+                    is((long) (BUFFER_CHUNKS + 1) * RecordingStreamFanOut.CHUNK_SIZE));
+            assertThat(fast.isDone(), is(false));
+
+            assertThat(branches.branch(1).readAllBytes(), equalTo(data));
+            assertThat(fast.get(5, TimeUnit.SECONDS), equalTo(data));
+        }
+        awaitClosed();
+    }
+
+    @Test
+    void closingEarlyStopsReadingSource() throws Exception {
+        var branches = fanOut.open(new ActiveRecording(), 2);
+        branches.branch(0).readNBytes(RecordingStreamFanOut.CHUNK_SIZE);
+        branches.close();
+
+        awaitClosed();
+        assertThat(branches.branch(0).read(), is(-1));
+        assertThat(branches.branch(1).read(), is(-1));
+        assertThat(source.bytesRead.get() < data.length, is(true));
+    }
+
+    @Test
+    void sourceFailingMidStreamFailsBranches() throws Exception {
+        source =
+                new TrackingStream(
+                        new ByteArrayInputStream(data), 3L * RecordingStreamFanOut.CHUNK_SIZE);
+        try (var branches = fanOut.open(new ActiveRecording(), 2)) {
+            var other = readAsync(branches.branch(1));
+            assertThrows(IOException.class, branches.branch(0)::readAllBytes);
+            var ex = assertThrows(Exception.class, () -> other.get(5, TimeUnit.SECONDS));
+            assertThat(ex.getCause().getCause() instanceof IOException, is(true));
+        }
+        awaitClosed();
+    }
+
+    @Test
+    void rejectsFanOutsBeyondMaximum() throws Exception {
+        try (var branches = fanOut.open(new ActiveRecording(), 1)) {
+            var second = new TrackingStream(new ByteArrayInputStream(data), -1);
+            when(fanOut.remoteRecordingStreamFactory.open(any(ActiveRecording.class)))
+                    .thenReturn(new ProgressInputStream(second, n -> {}));
+
+            assertThrows(
+                    RejectedExecutionException.class, () -> fanOut.open(new ActiveRecording(), 1));
+            assertThat(second.closed, is(true));
+            assertThat(branches.branch(0).readAllBytes(), equalTo(data));
+        }
+    }
+
+    private CompletableFuture<byte[]> readAsync(InputStream in) {
+        return CompletableFuture.supplyAsync(
+                () -> {
+                    try (in) {
+                        return in.readAllBytes();
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+    }
+
+    private void awaitClosed() throws InterruptedException {
+        for (int i = 0; i < 50 && !source.closed; i++) {
+            Thread.sleep(100);
+        }
+        assertThat(source.closed, is(true));
+    }
+
+    static class TrackingStream extends FilterInputStream {
+        final AtomicLong bytesRead = new AtomicLong();
+        final long failAt;
+        volatile boolean closed;
+
+        TrackingStream(InputStream in, long failAt) {
+            super(in);
+            this.failAt = failAt;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (failAt >= 0 && bytesRead.get() >= failAt) {
+                throw new IOException("connection lost");
+            }
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                bytesRead.addAndGet(n);
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+}
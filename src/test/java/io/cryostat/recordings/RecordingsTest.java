@@ -0,0 +1,123 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.*;
+
+import io.quarkus.test.common.http.TestHTTPEndpoint;
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+@TestHTTPEndpoint(Recordings.class)
+public class RecordingsTest {
+
+    @Test
+    public void testListArchivesPageEmpty() {
+        given().get("/api/v3/recordings")
+                .then()
+                .statusCode(200)
+                .body("data", empty(), "next", nullValue());
+    }
+
+    @Test
+    public void testListArchivesPageForUnknownJvm() {
+        given().queryParam("jvmId", "unknown")
+                .queryParam("limit", 10)
+                .get("/api/v3/recordings")
+                .then()
+                .statusCode(200)
+                .body("data", empty(), "next", nullValue());
+    }
+
+    @Test
+    public void testListArchivesPageThrowsWhenLimitTooSmall() {
+        given().queryParam("limit", 0).get("/api/v3/recordings").then().statusCode(400);
+    }
+
+    @Test
+    public void testListArchivesPageThrowsWhenLimitTooLarge() {
+        given().queryParam("limit", Recordings.ARCHIVES_PAGE_SIZE_MAX + 1)
+                .get("/api/v3/recordings")
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    public void testListArchivesPageThrowsOnInvalidCursor() {
+        given().queryParam("cursor", "bm90LWEtbnVtYmVy")
+                .get("/api/v3/recordings")
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    public void testActiveDownloadThrowsOnInvertedTimeWindow() {
+        given().queryParam("startTime", 2000)
+                .queryParam("endTime", 1000)
+                .get("/api/v3/activedownload/1")
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    public void testStorageDownloadThrowsOnInvertedTimeWindow() {
+        given().queryParam("startTime", 2000)
+                .queryParam("endTime", 1000)
+                .get("/api/v3/download/anZtL2ZpbGUuamZy")
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    public void testBulkDeleteThrowsWithoutKeysOrCriteria() {
+        given().body(new JsonObject().toString())
+                .contentType(ContentType.JSON)
+                .post("/api/beta/recordings/delete")
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    public void testBulkDeleteReportsMissingKeys() {
+        var key = new JsonObject().put("jvmId", "unknown").put("filename", "missing.jfr");
+        given().body(new JsonObject().put("keys", new JsonArray().add(key)).toString())
+                .contentType(ContentType.JSON)
+                .post("/api/beta/recordings/delete")
+                .then()
+                .statusCode(200)
+                .body(
+                        "deleted", empty(),
+                        "errors", hasSize(1),
+                        "errors[0].key.jvmId", is("unknown"),
+                        "errors[0].key.filename", is("missing.jfr"),
+                        "errors[0].code", is("NoSuchKey"));
+    }
+
+    @Test
+    public void testBulkDeleteByCriteriaWithNoMatches() {
+        given().body(new JsonObject().put("jvmId", "unknown").toString())
+                .contentType(ContentType.JSON)
+                .post("/api/beta/recordings/delete")
+                .then()
+                .statusCode(200)
+                .body("deleted", empty(), "errors", empty());
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.math.BigInteger;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.quarkus.runtime.configuration.MemorySize;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.RoutingContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class RequestBodyLimitTest {
+
+    static final long LIMIT = 1024;
+
+    RequestBodyLimit limit;
+    RoutingContext ctx;
+    HttpServerRequest request;
+    HttpServerResponse response;
+
+    @BeforeEach
+    void setup() {
+        limit = new RequestBodyLimit();
+        limit.maxBodySize = new MemorySize(BigInteger.valueOf(LIMIT));
+        ctx = mock(RoutingContext.class);
+        request = mock(HttpServerRequest.class);
+        response = mock(HttpServerResponse.class, RETURNS_SELF);
+        when(ctx.request()).thenReturn(request);
+        when(ctx.response()).thenReturn(response);
+    }
+
+    void given(String path, Long length) {
+        when(ctx.normalizedPath()).thenReturn(path);
+        when(request.getHeader(HttpHeaderNames.CONTENT_LENGTH))
+                .thenReturn(length == null ? null : String.valueOf(length));
+    }
+
+    @Test
+    void rejectsDeclaredLengthOverLimit() {
+        given("/api/v1/recordings", LIMIT + 1);
+        limit.handle(ctx);
+
+        verify(response).setStatusCode(413);
+        verify(response).putHeader(HttpHeaderNames.CONNECTION, "close");
+        verify(response).end();
+        verify(ctx, never()).next();
+    }
+
+    @Test
+    void passesLimitOnForUnknownLength() {
+        given("/api/beta/recordings/abc", null);
+        limit.handle(ctx);
+
+        verify(ctx).put(RequestBodyLimit.MAX_REQUEST_SIZE_KEY, LIMIT);
+        verify(ctx).next();
+        verify(response, never()).setStatusCode(anyInt());
+    }
+
+    @Test
+    void acceptsDeclaredLengthWithinLimit() {
+        given("/api/v1/recordings", LIMIT);
+        limit.handle(ctx);
+
+        verify(ctx).next();
+        verify(response, never()).setStatusCode(anyInt());
+    }
+
+    @Test
+    void exemptsStreamingUploads() {
+        given("/api/beta/recordings/abc/stream", LIMIT * 1024);
+        limit.handle(ctx);
+
+        verify(ctx).next();
+        verify(ctx, never()).put(anyString(), eq(LIMIT));
+        verify(response, never()).setStatusCode(anyInt());
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Compares the compression ratio and encode and decode throughput of each {@link StorageCodec} on a
+ * real recording, taken from this JVM with the "profile" event settings while it runs an
+ * allocation-heavy workload. Run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+public class StorageCodecBenchmarkTest {
+
+    static final Duration RECORDING_DURATION = Duration.ofSeconds(5);
+    static final int ITERATIONS = 5;
+
+    @TempDir Path dir;
+
+    @Test
+    void compareCodecs() throws Exception {
+        byte[] recording = record();
+        System.out.printf("recording size=%d bytes%n", recording.length);
+        for (StorageCodec codec : StorageCodec.values()) {
+            byte[] encoded = null;
+            long encodeNanos = Long.MAX_VALUE;
+            long decodeNanos = Long.MAX_VALUE;
+            for (int i = 0; i < ITERATIONS; i++) {
+                long start = System.nanoTime();
+                encoded = codec.encode(new ByteArrayInputStream(recording)).readAllBytes();
+                encodeNanos = Math.min(encodeNanos, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                byte[] decoded = codec.decode(new ByteArrayInputStream(encoded)).readAllBytes();
+                decodeNanos = Math.min(decodeNanos, System.nanoTime() - start);
+                assertThat(decoded, equalTo(recording));
+            }
+            double ratio = (double) recording.length / encoded.length;
+            System.out.printf(
+                    "codec=%s size=%d ratio=%.2f encode=%.1fMiB/s decode=%.1fMiB/s%n",
+                    codec.id(),
+                    encoded.length,
+                    ratio,
+                    throughput(recording.length, encodeNanos),
+                    throughput(recording.length, decodeNanos));
+            if (!codec.isIdentity()) {
+                assertThat(ratio, greaterThan(1.5));
+            }
+        }
+    }
+
+    private byte[] record() throws Exception {
+        Path file = dir.resolve("benchmark.jfr");
+        try (var recording = new Recording(Configuration.getConfiguration("profile"))) {
+            recording.start();
+            long deadline = System.nanoTime() + RECORDING_DURATION.toNanos();
+            List<Object> retained = new ArrayList<>();
+            while (System.nanoTime() < deadline) {
+                retained.add(new byte[ThreadLocalRandom.current().nextInt(16, 4096)]);
+                if (retained.size() > 10_000) {
+                    retained.clear();
+                }
+            }
+            recording.stop();
+            recording.dump(file);
+        }
+        return readAndDelete(file);
+    }
+
+    private static byte[] readAndDelete(Path file) throws IOException {
+        try {
+            return Files.readAllBytes(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static double throughput(long bytes, long nanos) {
+        return bytes / (1024d * 1024d) / (nanos / 1e9);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+public class StorageCodecTest {
+
+    static byte[] compressible(int length) {
+        byte[] data = new byte[length];
+        var random = new Random(0);
+        for (int i = 0; i < length; i++) {
+            // a small alphabet with long runs, roughly like JFR constant pools and event fields
+            data[i] = (byte) ('a' + (random.nextInt(64) == 0 ? random.nextInt(4) : i / 1024 % 4));
+        }
+        return data;
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageCodec.class)
+    void roundTrips(StorageCodec codec) throws IOException {
+        // larger than the encoder block size, so that several blocks are encoded
+        byte[] data = compressible(300 * 1024 + 17);
+        byte[] encoded = codec.encode(new ByteArrayInputStream(data)).readAllBytes();
+        byte[] decoded = codec.decode(new ByteArrayInputStream(encoded)).readAllBytes();
+        assertThat(decoded, equalTo(data));
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageCodec.class)
+    void roundTripsEmptyStream(StorageCodec codec) throws IOException {
+        byte[] encoded = codec.encode(new ByteArrayInputStream(new byte[0])).readAllBytes();
+        byte[] decoded = codec.decode(new ByteArrayInputStream(encoded)).readAllBytes();
+        assertThat(decoded.length, is(0));
+    }
+
+    @ParameterizedTest
+    @EnumSource(
+            value = StorageCodec.class,
+            mode = EnumSource.Mode.EXCLUDE,
+            names = {"IDENTITY"})
+    void compresses(StorageCodec codec) throws IOException {
+        byte[] data = compressible(1024 * 1024);
+        byte[] encoded = codec.encode(new ByteArrayInputStream(data)).readAllBytes();
+        assertThat(encoded.length, lessThan(data.length / 2));
+        assertThat(Arrays.equals(encoded, data), is(false));
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageCodec.class)
+    void singleByteReadsMatchBulkReads(StorageCodec codec) throws IOException {
+        byte[] data = compressible(4096);
+        InputStream in = codec.encode(new ByteArrayInputStream(data));
+        var out = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) >= 0) {
+            out.write(b);
+        }
+        assertThat(
+                codec.decode(new ByteArrayInputStream(out.toByteArray())).readAllBytes(),
+                equalTo(data));
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageCodec.class)
+    void decodesConcatenatedSegments(StorageCodec codec) throws IOException {
+        byte[] first = compressible(200 * 1024);
+        byte[] second = compressible(70 * 1024 + 3);
+        var out = new ByteArrayOutputStream();
+        for (byte[] segment : new byte[][] {first, new byte[0], second}) {
+            try (var encoder = codec.encoder(out)) {
+                encoder.write(segment);
+            }
+        }
+        var expected = new ByteArrayOutputStream();
+        expected.write(first);
+        expected.write(second);
+        assertThat(
+                codec.decode(new ByteArrayInputStream(out.toByteArray())).readAllBytes(),
+                equalTo(expected.toByteArray()));
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageCodec.class)
+    void encoderMatchesEncodingStream(StorageCodec codec) throws IOException {
+        byte[] data = compressible(100 * 1024);
+        var out = new ByteArrayOutputStream();
+        try (var encoder = codec.encoder(out)) {
+            encoder.write(data);
+        }
+        assertThat(
+                codec.decode(new ByteArrayInputStream(out.toByteArray())).readAllBytes(),
+                equalTo(codec.decode(codec.encode(new ByteArrayInputStream(data))).readAllBytes()));
+    }
+
+    @Test
+    void deflateRejectsTruncatedSegment() throws IOException {
+        var out = new ByteArrayOutputStream();
+        try (var encoder = StorageCodec.DEFLATE.encoder(out)) {
+            encoder.write(compressible(64 * 1024));
+        }
+        byte[] truncated = Arrays.copyOf(out.toByteArray(), out.size() / 2);
+        assertThrows(
+                IOException.class,
+                () ->
+                        StorageCodec.DEFLATE
+                                .decode(new ByteArrayInputStream(truncated))
+                                .readAllBytes());
+    }
+
+    @Test
+    void identityPassesStreamThrough() throws IOException {
+        var in = new ByteArrayInputStream(new byte[] {1, 2, 3});
+        assertThat(StorageCodec.IDENTITY.encode(in), is(in));
+        assertThat(StorageCodec.IDENTITY.decode(in), is(in));
+        assertThat(StorageCodec.IDENTITY.isIdentity(), is(true));
+        assertThat(StorageCodec.LZ4.isIdentity(), is(false));
+    }
+
+    @Test
+    void lz4EncoderClosesSource() throws IOException {
+        var closed = new AtomicBoolean();
+        var source =
+                new ByteArrayInputStream(compressible(1024)) {
+                    @Override
+                    public void close() {
+                        closed.set(true);
+                    }
+                };
+        StorageCodec.LZ4.encode(source).close();
+        assertThat(closed.get(), is(true));
+    }
+
+    @Test
+    void fromIdIsCaseInsensitive() {
+        assertThat(StorageCodec.fromId("LZ4"), is(StorageCodec.LZ4));
+        assertThat(StorageCodec.fromId("deflate"), is(StorageCodec.DEFLATE));
+    }
+
+    @Test
+    void fromIdDefaultsToIdentity() {
+        assertThat(StorageCodec.fromId(null), is(StorageCodec.IDENTITY));
+        assertThat(StorageCodec.fromId(" "), is(StorageCodec.IDENTITY));
+    }
+
+    @Test
+    void fromIdRejectsUnknownCodec() {
+        assertThrows(IllegalArgumentException.class, () -> StorageCodec.fromId("zip"));
+    }
+}
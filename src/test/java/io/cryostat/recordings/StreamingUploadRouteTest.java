@@ -0,0 +1,105 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.recordings;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.*;
+
+import java.nio.charset.StandardCharsets;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+public class StreamingUploadRouteTest {
+
+    static final String JVM_ID = "streaming-upload-test";
+    static final String PATH = "/api/beta/recordings/{jvmId}/stream";
+
+    @AfterEach
+    public void afterEach() {
+        given().body(new JsonObject().put("jvmId", JVM_ID).toString())
+                .contentType(ContentType.JSON)
+                .post("/api/beta/recordings/delete")
+                .then()
+                .statusCode(200);
+    }
+
+    @Test
+    public void testUpload() {
+        given().multiPart(
+                        "recording",
+                        "test",
+                        "not really a recording".getBytes(StandardCharsets.UTF_8),
+                        "application/octet-stream")
+                .multiPart("labels", new JsonObject().put("app", "test").toString())
+                .post(PATH, JVM_ID)
+                .then()
+                .statusCode(200)
+                .body(
+                        "name", is("test.jfr"),
+                        "metadata.labels.app", is("test"),
+                        "metadata.labels.jvmId", is(JVM_ID));
+
+        given().queryParam("jvmId", JVM_ID)
+                .get("/api/v3/recordings")
+                .then()
+                .statusCode(200)
+                .body("data", hasSize(1), "data[0].name", is("test.jfr"));
+    }
+
+    @Test
+    public void testUploadThrowsWithoutRecording() {
+        given().multiPart("labels", new JsonObject().toString())
+                .post(PATH, JVM_ID)
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    public void testUploadIgnoresOtherFileParts() {
+        given().multiPart(
+                        "other",
+                        "test.jfr",
+                        "not a recording".getBytes(StandardCharsets.UTF_8),
+                        "application/octet-stream")
+                .post(PATH, JVM_ID)
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    public void testUploadThrowsOnInvalidLabels() {
+        given().multiPart(
+                        "recording",
+                        "test.jfr",
+                        "not really a recording".getBytes(StandardCharsets.UTF_8),
+                        "application/octet-stream")
+                .multiPart("labels", "not json")
+                .post(PATH, JVM_ID)
+                .then()
+                .statusCode(400);
+
+        given().queryParam("jvmId", JVM_ID)
+                .get("/api/v3/recordings")
+                .then()
+                .statusCode(200)
+                .body("data", empty());
+    }
+}
@@ -178,6 +178,38 @@ public class RulesTest {
                 .statusCode(400);
     }
 
+    @Test
+    public void testCreateThrowsWhenDeltaArchivesPreserved() {
+        var badRule = rule.copy();
+        badRule.put("archivalPeriodSeconds", 60);
+        badRule.put("preservedArchives", 3);
+        badRule.put("deltaArchives", true);
+        given().body(badRule.toString())
+                .contentType(ContentType.JSON)
+                .post()
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    public void testCreateDeltaArchiver() {
+        var deltaRule = rule.copy();
+        deltaRule.put("archivalPeriodSeconds", 60);
+        deltaRule.put("deltaArchives", true);
+        given().body(deltaRule.toString())
+                .contentType(ContentType.JSON)
+                .post()
+                .then()
+                .statusCode(201);
+
+        given().get(RULE_NAME)
+                .then()
+                .statusCode(200)
+                .body(
+                        "data.result.deltaArchives", is(true),
+                        "data.result.preservedArchives", is(0));
+    }
+
     @Test
     public void testDeleteEmpty() {
         given().delete(RULE_NAME).then().statusCode(404);
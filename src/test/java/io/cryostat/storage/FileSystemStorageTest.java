@@ -0,0 +1,72 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.storage;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.services.s3.S3Client;
+
+public class FileSystemStorageTest extends StorageConformanceTest {
+
+    @TempDir Path root;
+
+    private FileSystemStorage storage;
+
+    @Override
+    protected S3Client storage() {
+        if (storage == null) {
+            storage = new FileSystemStorage(root, new ObjectMapper());
+        }
+        return storage;
+    }
+
+    @Test
+    void objectsAreLaidOutInDirectoryPerJvmId() throws IOException {
+        put("jvm-a/recording.jfr", "content");
+        assertThat(
+                Files.readString(root.resolve(bucket).resolve("jvm-a").resolve("recording.jfr")),
+                is("content"));
+        try (Stream<Path> tmp = Files.list(root.resolve(FileSystemStorage.TMP_DIR))) {
+            assertThat(tmp.toList(), empty());
+        }
+    }
+
+    @Test
+    void deletePrunesEmptyDirectories() {
+        put("jvm-a/recording.jfr", "content");
+        storage().deleteObject(b -> b.bucket(bucket).key("jvm-a/recording.jfr"));
+        assertThat(Files.exists(root.resolve(bucket).resolve("jvm-a")), is(false));
+        assertThat(Files.isDirectory(root.resolve(bucket)), is(true));
+    }
+
+    @Test
+    void objectsPlacedDirectlyAreReadable() throws IOException {
+        Path path = root.resolve(bucket).resolve("jvm-b").resolve("copied.jfr");
+        Files.createDirectories(path.getParent());
+        Files.writeString(path, "copied in");
+        assertThat(read("jvm-b/copied.jfr"), is("copied in"));
+    }
+}
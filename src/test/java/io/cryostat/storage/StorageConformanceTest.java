@@ -0,0 +1,507 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.storage;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectTaggingRequest;
+import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.NoSuchUploadException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectTaggingRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.Tag;
+import software.amazon.awssdk.services.s3.model.Tagging;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+/**
+ * Behaviour of the {@link S3Client} operations Cryostat depends on, shared by every storage backend
+ * so that the filesystem backend is held to the same semantics as S3.
+ */
+public abstract class StorageConformanceTest {
+
+    // S3 rejects multipart uploads where any part but the last is smaller than this
+    static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    protected String bucket;
+
+    protected abstract S3Client storage();
+
+    @BeforeEach
+    void createBucket() {
+        bucket = "conformance-" + UUID.randomUUID();
+        storage().createBucket(CreateBucketRequest.builder().bucket(bucket).build());
+    }
+
+    @Test
+    void headBucketSucceedsForCreatedBucket() {
+        var resp = storage().headBucket(HeadBucketRequest.builder().bucket(bucket).build());
+        assertThat(resp.sdkHttpResponse().isSuccessful(), is(true));
+    }
+
+    @Test
+    void headBucketFailsForMissingBucket() {
+        assertThrows(
+                NoSuchBucketException.class,
+                () ->
+                        storage()
+                                .headBucket(
+                                        HeadBucketRequest.builder()
+                                                .bucket(bucket + "-missing")
+                                                .build()));
+    }
+
+    @Test
+    void putThenGetRoundTrips() throws IOException {
+        var put = put("jvm-a/recording.jfr", "hello world");
+
+        var head =
+                storage()
+                        .headObject(
+                                HeadObjectRequest.builder()
+                                        .bucket(bucket)
+                                        .key("jvm-a/recording.jfr")
+                                        .build());
+        assertThat(head.contentLength(), equalTo(11L));
+        assertThat(head.eTag(), equalTo(put));
+
+        try (var in =
+                storage()
+                        .getObject(
+                                GetObjectRequest.builder()
+                                        .bucket(bucket)
+                                        .key("jvm-a/recording.jfr")
+                                        .build())) {
+            assertThat(
+                    new String(in.readAllBytes(), StandardCharsets.UTF_8), equalTo("hello world"));
+            assertThat(in.response().eTag(), equalTo(put));
+        }
+    }
+
+    @Test
+    void putReplacesExistingObject() throws IOException {
+        var first = put("jvm-a/recording.jfr", "first");
+        var second = put("jvm-a/recording.jfr", "second");
+        assertThat(second.equals(first), is(false));
+        assertThat(read("jvm-a/recording.jfr"), equalTo("second"));
+    }
+
+    @Test
+    void getMissingObjectThrowsNoSuchKey() {
+        assertThrows(
+                NoSuchKeyException.class,
+                () ->
+                        storage()
+                                .getObject(
+                                        GetObjectRequest.builder()
+                                                .bucket(bucket)
+                                                .key("jvm-a/missing.jfr")
+                                                .build()));
+        assertThrows(
+                NoSuchKeyException.class,
+                () ->
+                        storage()
+                                .headObject(
+                                        HeadObjectRequest.builder()
+                                                .bucket(bucket)
+                                                .key("jvm-a/missing.jfr")
+                                                .build()));
+    }
+
+    @Test
+    void rangedGetReturnsSlice() throws IOException {
+        put("jvm-a/recording.jfr", "0123456789");
+        try (var in =
+                storage()
+                        .getObject(
+                                GetObjectRequest.builder()
+                                        .bucket(bucket)
+                                        .key("jvm-a/recording.jfr")
+                                        .range("bytes=2-5")
+                                        .build())) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8), equalTo("2345"));
+            assertThat(in.response().contentLength(), equalTo(4L));
+            assertThat(in.response().contentRange(), equalTo("bytes 2-5/10"));
+        }
+    }
+
+    @Test
+    void conditionalGetHonoursETags() {
+        var eTag = put("jvm-a/recording.jfr", "content");
+        var notModified =
+                assertThrows(
+                        S3Exception.class,
+                        () ->
+                                storage()
+                                        .getObject(
+                                                GetObjectRequest.builder()
+                                                        .bucket(bucket)
+                                                        .key("jvm-a/recording.jfr")
+                                                        .ifNoneMatch(eTag)
+                                                        .build()));
+        assertThat(notModified.statusCode(), equalTo(304));
+
+        var preconditionFailed =
+                assertThrows(
+                        S3Exception.class,
+                        () ->
+                                storage()
+                                        .getObject(
+                                                GetObjectRequest.builder()
+                                                        .bucket(bucket)
+                                                        .key("jvm-a/recording.jfr")
+                                                        .ifMatch("\"0000\"")
+                                                        .build()));
+        assertThat(preconditionFailed.statusCode(), equalTo(412));
+    }
+
+    @Test
+    void taggingRoundTrips() {
+        storage()
+                .putObject(
+                        PutObjectRequest.builder()
+                                .bucket(bucket)
+                                .key("jvm-a/recording.jfr")
+                                .tagging(tagging(Map.of("label", "a value/with=symbols&more")))
+                                .build(),
+                        RequestBody.fromString("content"));
+        assertThat(
+                tags("jvm-a/recording.jfr"), contains(tag("label", "a value/with=symbols&more")));
+
+        storage()
+                .putObjectTagging(
+                        PutObjectTaggingRequest.builder()
+                                .bucket(bucket)
+                                .key("jvm-a/recording.jfr")
+                                .tagging(tagging(Map.of("other", "b")))
+                                .build());
+        assertThat(tags("jvm-a/recording.jfr"), contains(tag("other", "b")));
+    }
+
+    @Test
+    void listingIsSortedFilteredAndPaginated() {
+        for (String key :
+                List.of("jvm-b/2.jfr", "jvm-a/2.jfr", "jvm-a/1.jfr", "jvm-a/3.jfr", "other")) {
+            put(key, key);
+        }
+        List<String> keys =
+                storage()
+                        .listObjectsV2Paginator(
+                                ListObjectsV2Request.builder()
+                                        .bucket(bucket)
+                                        .prefix("jvm-")
+                                        .maxKeys(2)
+                                        .build())
+                        .contents()
+                        .stream()
+                        .map(S3Object::key)
+                        .toList();
+        assertThat(keys, contains("jvm-a/1.jfr", "jvm-a/2.jfr", "jvm-a/3.jfr", "jvm-b/2.jfr"));
+
+        var page =
+                storage()
+                        .listObjectsV2(
+                                ListObjectsV2Request.builder()
+                                        .bucket(bucket)
+                                        .prefix("jvm-a/")
+                                        .maxKeys(2)
+                                        .build());
+        assertThat(page.isTruncated(), is(true));
+        assertThat(page.contents().get(0).size(), equalTo(11L));
+    }
+
+    @Test
+    void deleteIsIdempotent() {
+        put("jvm-a/recording.jfr", "content");
+        var resp =
+                storage()
+                        .deleteObject(
+                                DeleteObjectRequest.builder()
+                                        .bucket(bucket)
+                                        .key("jvm-a/recording.jfr")
+                                        .build());
+        assertThat(resp.sdkHttpResponse().isSuccessful(), is(true));
+        storage()
+                .deleteObject(
+                        DeleteObjectRequest.builder()
+                                .bucket(bucket)
+                                .key("jvm-a/recording.jfr")
+                                .build());
+        assertThat(list(), empty());
+    }
+
+    @Test
+    void batchDeleteRemovesObjects() {
+        put("jvm-a/1.jfr", "1");
+        put("jvm-a/2.jfr", "2");
+        put("jvm-b/1.jfr", "3");
+        var resp =
+                storage()
+                        .deleteObjects(
+                                DeleteObjectsRequest.builder()
+                                        .bucket(bucket)
+                                        .delete(
+                                                Delete.builder()
+                                                        .objects(
+                                                                ObjectIdentifier.builder()
+                                                                        .key("jvm-a/1.jfr")
+                                                                        .build(),
+                                                                ObjectIdentifier.builder()
+                                                                        .key("jvm-a/2.jfr")
+                                                                        .build())
+                                                        .build())
+                                        .build());
+        assertThat(resp.errors(), empty());
+        assertThat(resp.deleted().size(), equalTo(2));
+        assertThat(list(), contains("jvm-b/1.jfr"));
+    }
+
+    @Test
+    void multipartUploadAssemblesPartsInOrder() throws IOException {
+        byte[] first = new byte[MIN_PART_SIZE];
+        Arrays.fill(first, (byte) 'a');
+        byte[] second = "tail".getBytes(StandardCharsets.UTF_8);
+        String uploadId =
+                storage()
+                        .createMultipartUpload(
+                                CreateMultipartUploadRequest.builder()
+                                        .bucket(bucket)
+                                        .key("jvm-a/recording.jfr")
+                                        .tagging(tagging(Map.of("label", "value")))
+                                        .build())
+                        .uploadId();
+        var part2 = uploadPart("jvm-a/recording.jfr", uploadId, 2, second);
+        var part1 = uploadPart("jvm-a/recording.jfr", uploadId, 1, first);
+        var resp =
+                storage()
+                        .completeMultipartUpload(
+                                CompleteMultipartUploadRequest.builder()
+                                        .bucket(bucket)
+                                        .key("jvm-a/recording.jfr")
+                                        .uploadId(uploadId)
+                                        .multipartUpload(
+                                                CompletedMultipartUpload.builder()
+                                                        .parts(part1, part2)
+                                                        .build())
+                                        .build());
+
+        try (var in =
+                storage()
+                        .getObject(
+                                GetObjectRequest.builder()
+                                        .bucket(bucket)
+                                        .key("jvm-a/recording.jfr")
+                                        .build())) {
+            byte[] content = in.readAllBytes();
+            assertThat(content.length, equalTo(first.length + second.length));
+            assertThat(
+                    new String(content, first.length, second.length, StandardCharsets.UTF_8),
+                    equalTo("tail"));
+            assertThat(in.response().eTag(), equalTo(resp.eTag()));
+        }
+        assertThat(tags("jvm-a/recording.jfr"), contains(tag("label", "value")));
+    }
+
+    @Test
+    void uploadPartCopyCopiesSourceRange() throws IOException {
+        byte[] source = new byte[MIN_PART_SIZE + 10];
+        Arrays.fill(source, (byte) 'b');
+        String sourceETag =
+                storage()
+                        .putObject(
+                                PutObjectRequest.builder()
+                                        .bucket(bucket)
+                                        .key("jvm-a/source.jfr")
+                                        .build(),
+                                RequestBody.fromBytes(source))
+                        .eTag();
+        String uploadId =
+                storage()
+                        .createMultipartUpload(
+                                CreateMultipartUploadRequest.builder()
+                                        .bucket(bucket)
+                                        .key("jvm-a/merged.jfr")
+                                        .build())
+                        .uploadId();
+        var copy =
+                storage()
+                        .uploadPartCopy(
+                                UploadPartCopyRequest.builder()
+                                        .sourceBucket(bucket)
+                                        .sourceKey("jvm-a/source.jfr")
+                                        .copySourceIfMatch(sourceETag)
+                                        .copySourceRange("bytes=0-" + (MIN_PART_SIZE - 1))
+                                        .destinationBucket(bucket)
+                                        .destinationKey("jvm-a/merged.jfr")
+                                        .uploadId(uploadId)
+                                        .partNumber(1)
+                                        .build());
+        var last =
+                uploadPart("jvm-a/merged.jfr", uploadId, 2, "end".getBytes(StandardCharsets.UTF_8));
+        storage()
+                .completeMultipartUpload(
+                        CompleteMultipartUploadRequest.builder()
+                                .bucket(bucket)
+                                .key("jvm-a/merged.jfr")
+                                .uploadId(uploadId)
+                                .multipartUpload(
+                                        CompletedMultipartUpload.builder()
+                                                .parts(
+                                                        CompletedPart.builder()
+                                                                .partNumber(1)
+                                                                .eTag(copy.copyPartResult().eTag())
+                                                                .build(),
+                                                        last)
+                                                .build())
+                                .build());
+        var head =
+                storage()
+                        .headObject(
+                                HeadObjectRequest.builder()
+                                        .bucket(bucket)
+                                        .key("jvm-a/merged.jfr")
+                                        .build());
+        assertThat(head.contentLength(), equalTo(MIN_PART_SIZE + 3L));
+    }
+
+    @Test
+    void abortedUploadCannotBeCompleted() {
+        String uploadId =
+                storage()
+                        .createMultipartUpload(
+                                CreateMultipartUploadRequest.builder()
+                                        .bucket(bucket)
+                                        .key("jvm-a/recording.jfr")
+                                        .build())
+                        .uploadId();
+        var part =
+                uploadPart(
+                        "jvm-a/recording.jfr",
+                        uploadId,
+                        1,
+                        "content".getBytes(StandardCharsets.UTF_8));
+        storage()
+                .abortMultipartUpload(
+                        AbortMultipartUploadRequest.builder()
+                                .bucket(bucket)
+                                .key("jvm-a/recording.jfr")
+                                .uploadId(uploadId)
+                                .build());
+        assertThrows(
+                NoSuchUploadException.class,
+                () ->
+                        storage()
+                                .completeMultipartUpload(
+                                        CompleteMultipartUploadRequest.builder()
+                                                .bucket(bucket)
+                                                .key("jvm-a/recording.jfr")
+                                                .uploadId(uploadId)
+                                                .multipartUpload(
+                                                        CompletedMultipartUpload.builder()
+                                                                .parts(part)
+                                                                .build())
+                                                .build()));
+        assertThat(list(), empty());
+    }
+
+    protected String put(String key, String content) {
+        return storage()
+                .putObject(
+                        PutObjectRequest.builder().bucket(bucket).key(key).build(),
+                        RequestBody.fromString(content))
+                .eTag();
+    }
+
+    protected String read(String key) throws IOException {
+        try (var in =
+                storage().getObject(GetObjectRequest.builder().bucket(bucket).key(key).build())) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    protected List<String> list() {
+        return storage()
+                .listObjectsV2Paginator(ListObjectsV2Request.builder().bucket(bucket).build())
+                .contents()
+                .stream()
+                .map(S3Object::key)
+                .toList();
+    }
+
+    private CompletedPart uploadPart(String key, String uploadId, int partNumber, byte[] content) {
+        String eTag =
+                storage()
+                        .uploadPart(
+                                UploadPartRequest.builder()
+                                        .bucket(bucket)
+                                        .key(key)
+                                        .uploadId(uploadId)
+                                        .partNumber(partNumber)
+                                        .build(),
+                                RequestBody.fromBytes(content))
+                        .eTag();
+        return CompletedPart.builder().partNumber(partNumber).eTag(eTag).build();
+    }
+
+    private List<Tag> tags(String key) {
+        return storage()
+                .getObjectTagging(GetObjectTaggingRequest.builder().bucket(bucket).key(key).build())
+                .tagSet();
+    }
+
+    private static Tagging tagging(Map<String, String> tags) {
+        return Tagging.builder()
+                .tagSet(tags.entrySet().stream().map(e -> tag(e.getKey(), e.getValue())).toList())
+                .build();
+    }
+
+    private static Tag tag(String key, String value) {
+        return Tag.builder().key(key).value(value).build();
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.smallrye.mutiny.helpers.test.AssertSubscriber;
+import io.vertx.core.buffer.Buffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class InputStreamMultiTest {
+
+    static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    ExecutorService executor;
+
+    @BeforeEach
+    void setup() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void emitsStreamContentInBoundedChunks() {
+        byte[] data = new byte[10_000];
+        new Random(0).nextBytes(data);
+        var source = new TrackingStream(data);
+
+        var subscriber =
+                InputStreamMulti.from(() -> source, 4096, executor)
+                        .subscribe()
+                        .withSubscriber(AssertSubscriber.<Buffer>create(Long.MAX_VALUE));
+        subscriber.awaitCompletion(TIMEOUT);
+
+        var out = new ByteArrayOutputStream();
+        for (Buffer b : subscriber.getItems()) {
+            assertThat(b.length(), lessThanOrEqualTo(4096));
+            out.writeBytes(b.getBytes());
+        }
+        assertThat(out.toByteArray(), equalTo(data));
+        awaitTrue(source.closed);
+    }
+
+    @Test
+    void readsOnlyAsRequested() {
+        var source = new TrackingStream(new byte[100 * 1024]);
+        var subscriber =
+                InputStreamMulti.from(() -> source, 1024, executor)
+                        .subscribe()
+                        .withSubscriber(AssertSubscriber.<Buffer>create(2));
+        subscriber.awaitItems(2, TIMEOUT);
+        assertThat(source.reads.get(), is(2));
+
+        subscriber.request(3).awaitItems(5, TIMEOUT);
+        assertThat(source.reads.get(), is(5));
+
+        subscriber.cancel();
+    }
+
+    @Test
+    void closesStreamOnCancellation() {
+        var source = new TrackingStream(new byte[100 * 1024]);
+        var subscriber =
+                InputStreamMulti.from(() -> source, 1024, executor)
+                        .subscribe()
+                        .withSubscriber(AssertSubscriber.<Buffer>create(1));
+        subscriber.awaitItems(1, TIMEOUT);
+        subscriber.cancel();
+        awaitTrue(source.closed);
+    }
+
+    @Test
+    void failsAndClosesStreamOnReadError() {
+        var source =
+                new TrackingStream(new byte[100]) {
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        throw new IOException("read failed");
+                    }
+                };
+        var subscriber =
+                InputStreamMulti.from(() -> source, 1024, executor)
+                        .subscribe()
+                        .withSubscriber(AssertSubscriber.<Buffer>create(1));
+        subscriber.awaitFailure(TIMEOUT);
+        assertThat(subscriber.getFailure().getCause(), instanceOf(IOException.class));
+        assertThat(subscriber.getFailure().getCause().getMessage(), equalTo("read failed"));
+        awaitTrue(source.closed);
+    }
+
+    @Test
+    void failsWhenStreamCannotBeOpened() {
+        var subscriber =
+                InputStreamMulti.from(
+                                () -> {
+                                    throw new IOException("open failed");
+                                },
+                                executor)
+                        .subscribe()
+                        .withSubscriber(AssertSubscriber.<Buffer>create(1));
+        subscriber.awaitFailure(TIMEOUT);
+        assertThat(subscriber.getFailure().getCause(), instanceOf(IOException.class));
+        assertThat(subscriber.getFailure().getCause().getMessage(), equalTo("open failed"));
+    }
+
+    @Test
+    void emptyStreamCompletesWithoutItems() {
+        var source = new TrackingStream(new byte[0]);
+        var subscriber =
+                InputStreamMulti.from(() -> source, executor)
+                        .subscribe()
+                        .withSubscriber(AssertSubscriber.<Buffer>create(1));
+        subscriber.awaitCompletion(TIMEOUT).assertHasNotReceivedAnyItem();
+        awaitTrue(source.closed);
+    }
+
+    @Test
+    void readChunkTrimsShortReads() throws IOException {
+        var stream = new ByteArrayInputStream(new byte[] {1, 2, 3});
+        Buffer chunk = InputStreamMulti.readChunk(stream, 8);
+        assertThat(chunk.getBytes(), equalTo(new byte[] {1, 2, 3}));
+        assertThat(InputStreamMulti.readChunk(stream, 8).length(), is(0));
+    }
+
+    private static void awaitTrue(AtomicBoolean flag) {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (!flag.get() && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertThat(flag.get(), is(true));
+    }
+
+    static class TrackingStream extends FilterInputStream {
+        final AtomicInteger reads = new AtomicInteger();
+        final AtomicBoolean closed = new AtomicBoolean();
+
+        TrackingStream(byte[] data) {
+            super(new ByteArrayInputStream(data));
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            reads.incrementAndGet();
+            return super.read(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed.set(true);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright The Cryostat Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.cryostat.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ReadStreamInputStreamTest {
+
+    static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    Vertx vertx;
+    FakeReadStream source;
+
+    @BeforeEach
+    void setup() {
+        vertx = Vertx.vertx();
+        source = new FakeReadStream();
+    }
+
+    @AfterEach
+    void teardown() {
+        vertx.close();
+    }
+
+    ReadStreamInputStream open(int maxQueued) {
+        return new ReadStreamInputStream(vertx.getOrCreateContext(), source, maxQueued);
+    }
+
+    @Test
+    void resumesSourceOnceHandlersAreInstalled() {
+        open(4);
+        assertThat(source.paused, is(false));
+        assertThat(source.resumes.get(), is(1));
+    }
+
+    @Test
+    void readsAllBuffersThenEndOfStream() throws IOException {
+        var in = open(4);
+        source.emit("abc");
+        source.emit("de");
+        source.emit("f");
+        source.end();
+
+        assertThat(new String(in.readAllBytes()), equalTo("abcdef"));
+        assertThat(in.read(), is(-1));
+        assertThat(in.read(new byte[4], 0, 4), is(-1));
+    }
+
+    @Test
+    void pausesWhenQueueIsFullAndResumesWhenHalfDrained() throws IOException {
+        var in = open(4);
+        for (int i = 0; i < 3; i++) {
+            source.emit("x");
+        }
+        assertThat(source.paused, is(false));
+        source.emit("x");
+        assertThat(source.paused, is(true));
+        assertThat(source.pauses.get(), is(1));
+
+        // one buffer taken leaves three queued, still above the low-water mark
+        in.read();
+        assertThat(source.paused, is(true));
+
+        // a second buffer taken leaves two queued, at which point the source is resumed
+        in.read();
+        await(() -> !source.paused);
+        assertThat(source.resumes.get(), is(2));
+    }
+
+    @Test
+    void sourceFailureIsRaisedToReader() throws IOException {
+        var in = open(4);
+        source.emit("a");
+        source.fail(new IllegalStateException("connection reset"));
+
+        assertThat(in.read(), is((int) 'a'));
+        var ex = assertThrows(IOException.class, in::read);
+        assertThat(ex.getCause().getMessage(), equalTo("connection reset"));
+        assertThat(in.read(), is(-1));
+    }
+
+    @Test
+    void failWakesBlockedReader() throws Exception {
+        var in = open(4);
+        var result =
+                CompletableFuture.supplyAsync(
+                        () -> {
+                            try {
+                                return in.read();
+                            } catch (IOException e) {
+                                return e;
+                            }
+                        });
+        Thread.sleep(100);
+        assertThat(result.isDone(), is(false));
+
+        in.fail(new IllegalStateException("request failed"));
+        var ex = (IOException) result.get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        assertThat(ex.getCause().getMessage(), equalTo("request failed"));
+    }
+
+    @Test
+    void closeDiscardsQueuedDataAndResumesSource() throws IOException {
+        var in = open(2);
+        source.emit("a");
+        source.emit("b");
+        assertThat(source.paused, is(true));
+
+        in.close();
+        await(() -> !source.paused);
+        source.emit("c");
+        assertThat(in.read(), is(-1));
+        assertThat(in.available(), is(0));
+    }
+
+    @Test
+    void closeWakesBlockedReader() throws Exception {
+        var in = open(4);
+        var result =
+                CompletableFuture.supplyAsync(
+                        () -> {
+                            try {
+                                return in.read();
+                            } catch (IOException e) {
+                                throw new RuntimeException(e);
+                            }
+                        });
+        Thread.sleep(100);
+        assertThat(result.isDone(), is(false));
+
+        in.close();
+        assertThat(result.get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS), is(-1));
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertThat(condition.getAsBoolean(), is(true));
+    }
+
+    static class FakeReadStream implements ReadStream<Buffer> {
+        final AtomicInteger pauses = new AtomicInteger();
+        final AtomicInteger resumes = new AtomicInteger();
+        volatile boolean paused = true;
+        Handler<Buffer> handler;
+        Handler<Void> endHandler;
+        Handler<Throwable> exceptionHandler;
+
+        void emit(String data) {
+            handler.handle(Buffer.buffer(data));
+        }
+
+        void end() {
+            endHandler.handle(null);
+        }
+
+        void fail(Throwable t) {
+            exceptionHandler.handle(t);
+        }
+
+        @Override
+        public ReadStream<Buffer> exceptionHandler(Handler<Throwable> handler) {
+            this.exceptionHandler = handler;
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> handler(Handler<Buffer> handler) {
+            this.handler = handler;
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> pause() {
+            pauses.incrementAndGet();
+            paused = true;
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> resume() {
+            resumes.incrementAndGet();
+            paused = false;
+            return this;
+        }
+
+        @Override
+        public ReadStream<Buffer> fetch(long amount) {
+            return resume();
+        }
+
+        @Override
+        public ReadStream<Buffer> endHandler(Handler<Void> endHandler) {
+            this.endHandler = endHandler;
+            return this;
+        }
+    }
+}